@@ -0,0 +1,353 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.Reference;
+import org.intermine.xml.full.ReferenceList;
+
+/**
+ * Stores items on a thread of its own, so that a converter can go on reading rows while the
+ * items it has finished are serialised and written.
+ *
+ * Items are handed over through a bounded queue: a converter getting ahead of the writer waits
+ * in store() until there is room again.  The writer thread takes items off the queue in
+ * batches and passes them to the Storer, which is the only code that touches the ItemWriter
+ * while the store is open.  A failure on the writer thread stops it, and is thrown, as an
+ * ObjectStoreException, from the next store(), flush() or close() of the converter.
+ *
+ * An item must not be changed once it has been passed to store(): the writer thread reads it
+ * later, without copying or locking it.  With checkStored set a copy of each item is kept and
+ * flush() and close() fail if an item was changed; it is meant for debugging a converter, as
+ * it holds on to every item.  The writer thread is started by the first store() after
+ * construction or close(), so a store can be reused.  With a queue size of 0 items are stored
+ * on the calling thread straight away.
+ *
+ * The converter must not write to its ItemWriter itself while items are queued: flush() first.
+ *
+ * @author
+ */
+public class AsyncItemStore {
+
+	private static final Logger LOG = Logger.getLogger(AsyncItemStore.class);
+	private static final int DEFAULT_QUEUE_SIZE = 10000;
+	private static final int DEFAULT_BATCH_SIZE = 500;
+	// how long store() waits for room before checking the writer thread is still alive
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * Stores items, on the writer thread.
+	 */
+	public interface Storer {
+		/**
+		 * @param items the items, in the order they were passed to store()
+		 * @throws ObjectStoreException if an item can't be stored
+		 */
+		void store(List<Item> items) throws ObjectStoreException;
+	}
+
+	private final String name;
+	private final Storer storer;
+	private final Object lock = new Object();
+	private int queueSize = DEFAULT_QUEUE_SIZE;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private boolean checkStored;
+	private final Map<Item, Item> stored = new IdentityHashMap<Item, Item>();
+	private BlockingQueue<Item> queue;
+	private Thread writer;
+	private volatile Throwable failure;
+	private volatile boolean closing;
+	private long queued;
+	private long written;
+	private long batches;
+	private long waitNanos;
+	private long writeNanos;
+
+	/**
+	 * Construct a new AsyncItemStore.
+	 *
+	 * @param name name used for the writer thread and in the report
+	 * @param storer stores the batches of items
+	 */
+	public AsyncItemStore(String name, Storer storer) {
+		this.name = name;
+		this.storer = storer;
+	}
+
+	/**
+	 * @param queueSize how many items may wait to be stored, 0 to store them on the calling
+	 *            thread
+	 */
+	public void setQueueSize(int queueSize) {
+		checkIdle();
+		this.queueSize = Math.max(0, queueSize);
+	}
+
+	/**
+	 * @param batchSize most items passed to the Storer at once
+	 */
+	public void setBatchSize(int batchSize) {
+		checkIdle();
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * @param checkStored if true, keep a copy of every item stored so that flush() and close()
+	 *            can fail if an item was changed after it was stored; for debugging, as it
+	 *            holds on to every item
+	 */
+	public void setCheckStored(boolean checkStored) {
+		checkIdle();
+		this.checkStored = checkStored;
+	}
+
+	/**
+	 * Queue an item to be stored, waiting for room in the queue if the writer is behind.
+	 *
+	 * @param item a finished item, not to be changed from now on
+	 * @throws ObjectStoreException if storing an earlier item failed, or the store is stopped
+	 *             while waiting for room
+	 */
+	public void store(Item item) throws ObjectStoreException {
+		checkFailure();
+		if (checkStored) {
+			stored.put(item, copy(item));
+		}
+		if (queueSize == 0) {
+			List<Item> items = new ArrayList<Item>(1);
+			items.add(item);
+			storer.store(items);
+			synchronized (lock) {
+				queued++;
+				written++;
+				batches++;
+			}
+			return;
+		}
+		BlockingQueue<Item> queue;
+		synchronized (lock) {
+			if (writer == null) {
+				start();
+			}
+			// counted before it is offered, so a stop() from now on sees it wasn't written
+			queue = this.queue;
+			queued++;
+		}
+		try {
+			if (!queue.offer(item)) {
+				long start = System.nanoTime();
+				while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					checkFailure();
+				}
+				waitNanos += System.nanoTime() - start;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ObjectStoreException("interrupted while queueing items for " + name, e);
+		}
+	}
+
+	/**
+	 * Wait until every item queued so far has been stored.
+	 *
+	 * @throws ObjectStoreException if storing an item failed, or the store was stopped before
+	 *             all of them were
+	 */
+	public void flush() throws ObjectStoreException {
+		synchronized (lock) {
+			while (written < queued && failure == null) {
+				try {
+					lock.wait(POLL_MILLIS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new ObjectStoreException("interrupted while storing items for " + name, e);
+				}
+			}
+		}
+		checkFailure();
+		if (checkStored) {
+			checkUnchanged();
+		}
+	}
+
+	/**
+	 * Store everything still queued, stop the writer thread and print and log what was stored
+	 * and how long the converter had to wait for the writer.
+	 *
+	 * @throws ObjectStoreException if storing an item failed
+	 */
+	public void close() throws ObjectStoreException {
+		try {
+			flush();
+		} finally {
+			stop();
+			stored.clear();
+		}
+		String report = String.format("%s: stored %d items in %d batches, %d ms writing,"
+				+ " %d ms waiting for room in the queue", name, written, batches,
+				writeNanos / 1000000, waitNanos / 1000000);
+		System.out.println(report);
+		LOG.info(report);
+	}
+
+	/**
+	 * Stop the writer thread without waiting for the queued items, e.g. after the conversion
+	 * failed.  Does nothing if the store isn't running.  If items were dropped, flush(),
+	 * close() and store() fail from then on.
+	 */
+	public void stop() {
+		Thread stopping;
+		synchronized (lock) {
+			stopping = writer;
+			if (stopping == null) {
+				return;
+			}
+			closing = true;
+		}
+		stopping.interrupt();
+		try {
+			stopping.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		synchronized (lock) {
+			writer = null;
+			queue = null;
+			closing = false;
+			if (written < queued && failure == null) {
+				failure = new ObjectStoreException(name + " was stopped with " + (queued - written)
+						+ " items not stored");
+			}
+			lock.notifyAll();
+		}
+	}
+
+	private void start() {
+		queue = new ArrayBlockingQueue<Item>(queueSize);
+		writer = new Thread(this::write, name + "-writer");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private void write() {
+		List<Item> batch = new ArrayList<Item>(batchSize);
+		try {
+			while (!closing) {
+				Item item = queue.take();
+				batch.add(item);
+				queue.drainTo(batch, batchSize - 1);
+				long start = System.nanoTime();
+				storer.store(batch);
+				writeNanos += System.nanoTime() - start;
+				synchronized (lock) {
+					written += batch.size();
+					batches++;
+					lock.notifyAll();
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			// stop() was called
+		} catch (Throwable t) {
+			LOG.error("storing items for " + name + " failed", t);
+			failure = t;
+			synchronized (lock) {
+				lock.notifyAll();
+			}
+		}
+	}
+
+	private void checkFailure() throws ObjectStoreException {
+		Throwable t = failure;
+		if (t != null) {
+			if (t instanceof ObjectStoreException) {
+				throw new ObjectStoreException(t);
+			}
+			throw new ObjectStoreException("storing items for " + name + " failed", t);
+		}
+	}
+
+	private void checkUnchanged() throws ObjectStoreException {
+		for (Map.Entry<Item, Item> entry : stored.entrySet()) {
+			Item item = entry.getKey();
+			if (!sameContent(item, entry.getValue())) {
+				throw new ObjectStoreException(item.getClassName() + " " + item.getIdentifier()
+						+ " was changed after it was passed to store() of " + name);
+			}
+		}
+	}
+
+	/**
+	 * @param item an item
+	 * @return a copy of the item that shares nothing with it that can be changed
+	 */
+	private static Item copy(Item item) {
+		Item copy = new Item(item.getIdentifier(), item.getClassName(), item.getImplementations());
+		for (Attribute attribute : item.getAttributes()) {
+			copy.addAttribute(new Attribute(attribute.getName(), attribute.getValue()));
+		}
+		for (Reference reference : item.getReferences()) {
+			copy.addReference(new Reference(reference.getName(), reference.getRefId()));
+		}
+		for (ReferenceList collection : item.getCollections()) {
+			copy.addCollection(new ReferenceList(collection.getName(),
+					new ArrayList<String>(collection.getRefIds())));
+		}
+		return copy;
+	}
+
+	private static boolean sameContent(Item item, Item copy) {
+		if (!Objects.equals(item.getIdentifier(), copy.getIdentifier())
+				|| item.getAttributes().size() != copy.getAttributes().size()
+				|| item.getReferences().size() != copy.getReferences().size()
+				|| item.getCollections().size() != copy.getCollections().size()) {
+			return false;
+		}
+		for (Attribute attribute : copy.getAttributes()) {
+			Attribute now = item.getAttribute(attribute.getName());
+			if (now == null || !Objects.equals(now.getValue(), attribute.getValue())) {
+				return false;
+			}
+		}
+		for (Reference reference : copy.getReferences()) {
+			Reference now = item.getReference(reference.getName());
+			if (now == null || !Objects.equals(now.getRefId(), reference.getRefId())) {
+				return false;
+			}
+		}
+		for (ReferenceList collection : copy.getCollections()) {
+			ReferenceList now = item.getCollection(collection.getName());
+			if (now == null || !collection.getRefIds().equals(now.getRefIds())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void checkIdle() {
+		if (writer != null) {
+			throw new IllegalStateException("can't change the settings of " + name
+					+ " while it is storing items");
+		}
+	}
+}
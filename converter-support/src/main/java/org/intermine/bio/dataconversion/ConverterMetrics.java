@@ -0,0 +1,274 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.ItemWriter;
+
+/**
+ * Records, for each phase of a database converter, how long its query took to return the
+ * first row, how many rows it read and how fast, how many items were created and stored, and
+ * how much the used heap grew.
+ *
+ * A converter marks its phases with startPhase(), calls row() for every row it reads and
+ * itemCreated() from createItem(); items stored are counted by the ItemWriter returned by
+ * track().  While a phase runs a progress line is logged every interval, and a line for each
+ * phase is logged when it ends, and written to a tab separated metrics file if one is set.
+ * close() prints a table of all phases.
+ *
+ * Not thread-safe apart from counting stored items and rows(): phases are expected to run one
+ * at a time, and a phase reading on several threads counts its rows with rows().
+ *
+ * @author
+ */
+public class ConverterMetrics {
+
+	private static final Logger LOG = Logger.getLogger(ConverterMetrics.class);
+	private static final String[] COLUMNS = {"time", "source", "phase", "event", "elapsed_ms",
+		"first_row_ms", "rows", "rows_per_s", "items_created", "items_stored", "heap_delta_kb"};
+	// rows between looks at the clock
+	private static final int CHECK_EVERY = 1024;
+
+	private final String source;
+	private final AtomicLong stored = new AtomicLong();
+	private final List<Phase> finished = new ArrayList<Phase>();
+	private String fileName;
+	private long intervalMillis = 60 * 1000;
+	private PrintWriter out;
+	private long created;
+	private Phase current;
+
+	/**
+	 * Construct a new ConverterMetrics.  Phases are only logged until setFile() names a
+	 * metrics file.
+	 *
+	 * @param source name of the source, used in the file name and log lines
+	 */
+	public ConverterMetrics(String source) {
+		this.source = source;
+	}
+
+	/**
+	 * @param fileName file to write the phase lines to, empty or "none" to write none
+	 */
+	public void setFile(String fileName) {
+		this.fileName = fileName.isEmpty() || "none".equals(fileName) ? null : fileName;
+	}
+
+	/**
+	 * @param seconds how often a running phase logs its progress
+	 */
+	public void setInterval(long seconds) {
+		this.intervalMillis = seconds * 1000;
+	}
+
+	/**
+	 * Wrap the ItemWriter a converter writes to so the items stored are counted.
+	 *
+	 * @param writer the writer passed to the converter
+	 * @return a writer counting items and passing everything on to writer
+	 */
+	public ItemWriter track(final ItemWriter writer) {
+		return (ItemWriter) Proxy.newProxyInstance(ItemWriter.class.getClassLoader(),
+				new Class<?>[] {ItemWriter.class}, (proxy, method, args) -> {
+					if (method.getName().startsWith("store") && args != null && args.length == 1) {
+						stored.addAndGet(args[0] instanceof Collection
+								? ((Collection<?>) args[0]).size() : 1);
+					}
+					try {
+						return method.invoke(writer, args);
+					} catch (InvocationTargetException e) {
+						throw e.getCause();
+					}
+				});
+	}
+
+	/**
+	 * End the current phase, if any, and start timing a new one.  Call it before running the
+	 * phase's query so the time to the first row includes the query.
+	 *
+	 * @param name name of the phase
+	 */
+	public void startPhase(String name) {
+		endPhase();
+		current = new Phase(name, created, stored.get());
+	}
+
+	/**
+	 * Count a row read by the current phase.  Does nothing outside a phase.
+	 */
+	public void row() {
+		Phase phase = current;
+		if (phase == null) {
+			return;
+		}
+		if (phase.rows++ == 0) {
+			phase.firstRowNanos = System.nanoTime() - phase.startNanos;
+		} else if (phase.rows % CHECK_EVERY == 0) {
+			long now = System.currentTimeMillis();
+			if (now - phase.lastReport >= intervalMillis) {
+				phase.lastReport = now;
+				LOG.info(line(phase, "progress"));
+			}
+		}
+	}
+
+	/**
+	 * Count several rows read by the current phase at once, e.g. by a worker thread when it
+	 * has finished a dataset.  Unlike row() it may be called from more than one thread.
+	 *
+	 * @param count number of rows
+	 */
+	public synchronized void rows(long count) {
+		Phase phase = current;
+		if (phase == null || count <= 0) {
+			return;
+		}
+		if (phase.rows == 0) {
+			phase.firstRowNanos = System.nanoTime() - phase.startNanos;
+		}
+		phase.rows += count;
+		long now = System.currentTimeMillis();
+		if (now - phase.lastReport >= intervalMillis) {
+			phase.lastReport = now;
+			LOG.info(line(phase, "progress"));
+		}
+	}
+
+	/**
+	 * Count an item created, to be called from the converter's createItem().
+	 */
+	public void itemCreated() {
+		created++;
+	}
+
+	/**
+	 * End the current phase, if any, writing its line to the log and the metrics file.
+	 */
+	public void endPhase() {
+		Phase phase = current;
+		if (phase == null) {
+			return;
+		}
+		current = null;
+		phase.end(created, stored.get());
+		finished.add(phase);
+		String line = line(phase, "end");
+		LOG.info(line);
+		write(line);
+	}
+
+	/**
+	 * End the current phase, print and log a table of all phases and close the metrics file.
+	 */
+	public void close() {
+		endPhase();
+		StringBuilder sb = new StringBuilder(source + " phase metrics:\n");
+		sb.append(String.format("%-36s %10s %10s %10s %10s %10s %10s %10s%n", "phase", "ms",
+				"first row", "rows", "rows/s", "created", "stored", "heap KB"));
+		for (Phase phase : finished) {
+			sb.append(String.format("%-36s %10d %10d %10d %10d %10d %10d %10d%n", phase.name,
+					phase.elapsedMillis(), phase.firstRowMillis(), phase.rows, phase.rowsPerSecond(),
+					phase.created, phase.stored, phase.heapDelta / 1024));
+		}
+		System.out.println(sb);
+		LOG.info(sb);
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	private String line(Phase phase, String event) {
+		long created = phase.endNanos == 0 ? this.created - phase.createdBefore : phase.created;
+		long stored = phase.endNanos == 0 ? this.stored.get() - phase.storedBefore : phase.stored;
+		long heap = phase.endNanos == 0 ? usedHeap() - phase.heapBefore : phase.heapDelta;
+		return new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss").format(new Date()) + "\t" + source
+				+ "\t" + phase.name + "\t" + event + "\t" + phase.elapsedMillis() + "\t"
+				+ phase.firstRowMillis() + "\t" + phase.rows + "\t" + phase.rowsPerSecond() + "\t"
+				+ created + "\t" + stored + "\t" + heap / 1024;
+	}
+
+	private void write(String line) {
+		if (fileName == null) {
+			return;
+		}
+		try {
+			if (out == null) {
+				out = new PrintWriter(new FileWriter(fileName));
+				out.println(String.join("\t", COLUMNS));
+			}
+			out.println(line);
+			out.flush();
+		} catch (IOException e) {
+			LOG.warn("couldn't write metrics to " + fileName + ", not writing any more", e);
+			fileName = null;
+		}
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private static final class Phase {
+		private final String name;
+		private final long createdBefore;
+		private final long storedBefore;
+		private final long heapBefore = usedHeap();
+		private final long startNanos = System.nanoTime();
+		private long lastReport = System.currentTimeMillis();
+		private long firstRowNanos = -1;
+		private long endNanos;
+		private long rows;
+		private long created;
+		private long stored;
+		private long heapDelta;
+
+		Phase(String name, long createdBefore, long storedBefore) {
+			this.name = name;
+			this.createdBefore = createdBefore;
+			this.storedBefore = storedBefore;
+		}
+
+		void end(long createdNow, long storedNow) {
+			endNanos = System.nanoTime();
+			created = createdNow - createdBefore;
+			stored = storedNow - storedBefore;
+			heapDelta = usedHeap() - heapBefore;
+		}
+
+		long elapsedMillis() {
+			return ((endNanos == 0 ? System.nanoTime() : endNanos) - startNanos) / 1000000;
+		}
+
+		long firstRowMillis() {
+			return firstRowNanos < 0 ? -1 : firstRowNanos / 1000000;
+		}
+
+		long rowsPerSecond() {
+			long nanos = (endNanos == 0 ? System.nanoTime() : endNanos) - startNanos;
+			return nanos == 0 ? 0 : (long) (rows * 1e9 / nanos);
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * The scores of one gene in one expression dataset, one per condition, as they are kept in
+ * the scores attribute of an ExpressionProfile.
+ *
+ * A vector is the scores as big-endian 32 bit floats, in the order of the conditions'
+ * ordernumber, base64 encoded so it fits in a String attribute.  A missing score, NA in SPELL,
+ * is NaN.  At 4 bytes a score, plus a third for the encoding, a dataset's profile for a gene
+ * takes less room than a single ExpressionScore item.
+ *
+ * @author
+ */
+public final class ExpressionVector {
+
+	private ExpressionVector() {
+		// static methods only
+	}
+
+	/**
+	 * @param score a score as written by SPELL
+	 * @return its value, NaN for NA, an empty or a null score
+	 * @throws NumberFormatException if it isn't a number
+	 */
+	public static float parseScore(String score) {
+		if (score == null) {
+			return Float.NaN;
+		}
+		String value = score.trim();
+		if (value.isEmpty() || "NA".equals(value)) {
+			return Float.NaN;
+		}
+		return Float.parseFloat(value);
+	}
+
+	/**
+	 * @param scores the scores
+	 * @param length how many of them to encode
+	 * @return the encoded vector
+	 */
+	public static String encode(float[] scores, int length) {
+		ByteBuffer buffer = ByteBuffer.allocate(length * 4);
+		for (int i = 0; i < length; i++) {
+			buffer.putFloat(scores[i]);
+		}
+		return Base64.getEncoder().encodeToString(buffer.array());
+	}
+
+	/**
+	 * @param vector an encoded vector
+	 * @return the scores, NaN where there was none
+	 * @throws IllegalArgumentException if it isn't a vector
+	 */
+	public static float[] decode(String vector) {
+		byte[] bytes = Base64.getDecoder().decode(vector);
+		if (bytes.length % 4 != 0) {
+			throw new IllegalArgumentException("not an expression vector, " + bytes.length
+					+ " bytes");
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(bytes);
+		float[] scores = new float[bytes.length / 4];
+		for (int i = 0; i < scores.length; i++) {
+			scores[i] = buffer.getFloat();
+		}
+		return scores;
+	}
+}
@@ -0,0 +1,441 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An index of located features by chromosome and coordinates, written by one converter and
+ * read, memory-mapped, by others that need to find the features at a position.
+ *
+ * The features of each sequence are sorted by start and laid out as an implicit augmented
+ * interval tree: the records at odd positions are the inner nodes of a balanced binary tree
+ * over the sorted array and each record holds the largest end in its subtree, so the features
+ * overlapping a range are found in O(log n) plus one step per feature found, without any
+ * pointers in the file.  This is the layout of Heng Li's cgranges.
+ *
+ * Coordinates are 1-based and inclusive, as in Location.  A file is written by a Builder and
+ * read with open():
+ * <pre>
+ * int magic, int version, long records offset, long strings offset, int sequence count
+ * per sequence: UTF-8 name (int length, bytes), int first record, int records, int tree height
+ * records: int start, int end, int max end of subtree, int strand, int feature, int type
+ * strings: int count, int[count + 1] offsets from the first byte, the UTF-8 bytes
+ * </pre>
+ *
+ * @author
+ */
+public final class FeatureIntervalIndex {
+
+	private static final int MAGIC = 0x53474949;
+	private static final int VERSION = 1;
+	private static final int RECORD = 24;
+	private static final int HEADER = 28;
+
+	private final ByteBuffer records;
+	private final ByteBuffer strings;
+	private final int[] stringOffsets;
+	private final Map<String, int[]> sequences = new LinkedHashMap<String, int[]>();
+
+	/**
+	 * Called with each feature found.
+	 */
+	public interface Visitor {
+		/**
+		 * @param feature the identifier of the feature
+		 * @param type the class of the feature
+		 * @param start the start of its location
+		 * @param end the end of its location
+		 * @param strand its strand, 1, -1 or 0
+		 */
+		void visit(String feature, String type, int start, int end, int strand);
+	}
+
+	private FeatureIntervalIndex(ByteBuffer buffer) throws IOException {
+		if (buffer.limit() < HEADER || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("not a feature interval index");
+		}
+		long recordsOffset = buffer.getLong(8);
+		long stringsOffset = buffer.getLong(16);
+		int count = buffer.getInt(24);
+		int position = HEADER;
+		for (int i = 0; i < count; i++) {
+			int length = buffer.getInt(position);
+			byte[] name = new byte[length];
+			for (int j = 0; j < length; j++) {
+				name[j] = buffer.get(position + 4 + j);
+			}
+			position += 4 + length;
+			sequences.put(new String(name, StandardCharsets.UTF_8), new int[] {
+				buffer.getInt(position), buffer.getInt(position + 4), buffer.getInt(position + 8)});
+			position += 12;
+		}
+		records = slice(buffer, (int) recordsOffset, (int) (stringsOffset - recordsOffset));
+		int stringCount = buffer.getInt((int) stringsOffset);
+		stringOffsets = new int[stringCount + 1];
+		for (int i = 0; i <= stringCount; i++) {
+			stringOffsets[i] = buffer.getInt((int) stringsOffset + 4 + 4 * i);
+		}
+		int bytes = (int) stringsOffset + 4 + 4 * (stringCount + 1);
+		strings = slice(buffer, bytes, buffer.limit() - bytes);
+	}
+
+	/**
+	 * Map an index file into memory.
+	 *
+	 * @param file the file written by Builder.write()
+	 * @return the index
+	 * @throws IOException if the file can't be read or isn't an index
+	 */
+	public static FeatureIntervalIndex open(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0,
+					raf.length());
+			return new FeatureIntervalIndex(buffer);
+		} catch (IndexOutOfBoundsException | IllegalArgumentException e) {
+			throw new IOException("truncated feature interval index " + file, e);
+		} finally {
+			// the mapping stays valid once the file is closed
+			raf.close();
+		}
+	}
+
+	/**
+	 * @return the names of the sequences with features, e.g. chrI
+	 */
+	public Set<String> getSequences() {
+		return Collections.unmodifiableSet(sequences.keySet());
+	}
+
+	/**
+	 * @param sequence name of a sequence
+	 * @return the number of features located on it
+	 */
+	public int size(String sequence) {
+		int[] meta = sequences.get(sequence);
+		return meta == null ? 0 : meta[1];
+	}
+
+	/**
+	 * Find the features overlapping a range, in order of start.
+	 *
+	 * @param sequence name of the sequence
+	 * @param start first base of the range
+	 * @param end last base of the range
+	 * @param visitor called with each feature
+	 * @return the number of features found
+	 */
+	public int overlaps(String sequence, int start, int end, Visitor visitor) {
+		int[] meta = sequences.get(sequence);
+		if (meta == null || meta[1] == 0) {
+			return 0;
+		}
+		int first = meta[0];
+		int n = meta[1];
+		int found = 0;
+		// stack of (node, height, visited left) for the in-order walk
+		int[] stack = new int[3 * 64];
+		int top = 0;
+		stack[top++] = (1 << meta[2]) - 1;
+		stack[top++] = meta[2];
+		stack[top++] = 0;
+		while (top > 0) {
+			int left = stack[--top];
+			int height = stack[--top];
+			int node = stack[--top];
+			if (height <= 3) {
+				// a small subtree, scan it
+				int i0 = node >> height << height;
+				int i1 = Math.min(n, i0 + (1 << (height + 1)) - 1);
+				for (int i = i0; i < i1 && start(first + i) <= end; i++) {
+					if (start <= end(first + i)) {
+						visit(first + i, visitor);
+						found++;
+					}
+				}
+			} else if (left == 0) {
+				int child = node - (1 << (height - 1));
+				stack[top++] = node;
+				stack[top++] = height;
+				stack[top++] = 1;
+				if (child >= n || max(first + child) >= start) {
+					stack[top++] = child;
+					stack[top++] = height - 1;
+					stack[top++] = 0;
+				}
+			} else if (node < n && start(first + node) <= end) {
+				if (start <= end(first + node)) {
+					visit(first + node, visitor);
+					found++;
+				}
+				stack[top++] = node + (1 << (height - 1));
+				stack[top++] = height - 1;
+				stack[top++] = 0;
+			}
+		}
+		return found;
+	}
+
+	private int start(int record) {
+		return records.getInt(record * RECORD);
+	}
+
+	private int end(int record) {
+		return records.getInt(record * RECORD + 4);
+	}
+
+	private int max(int record) {
+		return records.getInt(record * RECORD + 8);
+	}
+
+	private void visit(int record, Visitor visitor) {
+		int offset = record * RECORD;
+		visitor.visit(string(records.getInt(offset + 16)), string(records.getInt(offset + 20)),
+				records.getInt(offset), records.getInt(offset + 4), records.getInt(offset + 12));
+	}
+
+	private String string(int index) {
+		int from = stringOffsets[index];
+		byte[] bytes = new byte[stringOffsets[index + 1] - from];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = strings.get(from + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer copy = buffer.duplicate();
+		copy.position(offset);
+		copy.limit(offset + length);
+		return copy.slice();
+	}
+
+	/**
+	 * Collects the located features of a conversion and writes the index.
+	 */
+	public static final class Builder {
+		private final Map<String, Features> sequences = new LinkedHashMap<String, Features>();
+		private final Map<String, Integer> stringIndexes = new HashMap<String, Integer>();
+		private final List<String> strings = new ArrayList<String>();
+		private int size;
+
+		/**
+		 * Add the location of a feature.  The start and end may be given either way round.
+		 *
+		 * @param sequence name of the chromosome or plasmid
+		 * @param start one end of the location
+		 * @param end the other end
+		 * @param strand the strand, 1, -1 or 0
+		 * @param feature the identifier of the feature
+		 * @param type the class of the feature, e.g. ORF or Intron
+		 */
+		public void add(String sequence, int start, int end, int strand, String feature,
+				String type) {
+			Features features = sequences.get(sequence);
+			if (features == null) {
+				features = new Features();
+				sequences.put(sequence, features);
+			}
+			features.add(Math.min(start, end), Math.max(start, end), strand, string(feature),
+					string(type));
+			size++;
+		}
+
+		/**
+		 * @return the number of locations added
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Sort the features, build the trees and write the index.
+		 *
+		 * @param file the file to write, replaced if it exists
+		 * @throws IOException if the file can't be written
+		 */
+		public void write(File file) throws IOException {
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			DataOutputStream meta = new DataOutputStream(header);
+			int first = 0;
+			for (Map.Entry<String, Features> entry : sequences.entrySet()) {
+				Features features = entry.getValue();
+				features.sort();
+				byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+				meta.writeInt(name.length);
+				meta.write(name);
+				meta.writeInt(first);
+				meta.writeInt(features.size);
+				meta.writeInt(features.index());
+				first += features.size;
+			}
+			long recordsOffset = HEADER + header.size();
+			long stringsOffset = recordsOffset + (long) first * RECORD;
+
+			File tmp = new File(file.getPath() + ".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tmp), 1 << 16));
+			try {
+				out.writeInt(MAGIC);
+				out.writeInt(VERSION);
+				out.writeLong(recordsOffset);
+				out.writeLong(stringsOffset);
+				out.writeInt(sequences.size());
+				header.writeTo(out);
+				for (Features features : sequences.values()) {
+					for (int i = 0; i < features.size; i++) {
+						out.writeInt(features.starts[i]);
+						out.writeInt(features.ends[i]);
+						out.writeInt(features.maxEnds[i]);
+						out.writeInt(features.strands[i]);
+						out.writeInt(features.features[i]);
+						out.writeInt(features.types[i]);
+					}
+				}
+				List<byte[]> bytes = new ArrayList<byte[]>(strings.size());
+				out.writeInt(strings.size());
+				int offset = 0;
+				for (String s : strings) {
+					byte[] b = s.getBytes(StandardCharsets.UTF_8);
+					bytes.add(b);
+					out.writeInt(offset);
+					offset += b.length;
+				}
+				out.writeInt(offset);
+				for (byte[] b : bytes) {
+					out.write(b);
+				}
+			} finally {
+				out.close();
+			}
+			if (file.exists() && !file.delete() || !tmp.renameTo(file)) {
+				throw new IOException("can't replace " + file);
+			}
+		}
+
+		private int string(String s) {
+			String value = s == null ? "" : s;
+			Integer index = stringIndexes.get(value);
+			if (index == null) {
+				index = strings.size();
+				strings.add(value);
+				stringIndexes.put(value, index);
+			}
+			return index.intValue();
+		}
+	}
+
+	/**
+	 * The features of one sequence, as parallel arrays.
+	 */
+	private static final class Features {
+		private int[] starts = new int[64];
+		private int[] ends = new int[64];
+		private int[] maxEnds;
+		private int[] strands = new int[64];
+		private int[] features = new int[64];
+		private int[] types = new int[64];
+		private int size;
+
+		void add(int start, int end, int strand, int feature, int type) {
+			if (size == starts.length) {
+				int length = size * 2;
+				starts = Arrays.copyOf(starts, length);
+				ends = Arrays.copyOf(ends, length);
+				strands = Arrays.copyOf(strands, length);
+				features = Arrays.copyOf(features, length);
+				types = Arrays.copyOf(types, length);
+			}
+			starts[size] = start;
+			ends[size] = end;
+			strands[size] = strand;
+			features[size] = feature;
+			types[size] = type;
+			size++;
+		}
+
+		void sort() {
+			// by start then end, ties kept in the order added
+			Integer[] order = new Integer[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			Arrays.sort(order, (a, b) -> starts[a] != starts[b] ? Integer.compare(starts[a], starts[b])
+					: Integer.compare(ends[a], ends[b]));
+			starts = permute(starts, order);
+			ends = permute(ends, order);
+			strands = permute(strands, order);
+			features = permute(features, order);
+			types = permute(types, order);
+		}
+
+		/**
+		 * Fill in the max ends of the implicit tree.
+		 *
+		 * @return the height of the tree
+		 */
+		int index() {
+			maxEnds = new int[size];
+			if (size == 0) {
+				return 0;
+			}
+			int lastIndex = 0;
+			int last = 0;
+			for (int i = 0; i < size; i += 2) {
+				lastIndex = i;
+				last = ends[i];
+				maxEnds[i] = ends[i];
+			}
+			int k;
+			for (k = 1; 1 << k <= size; k++) {
+				int x = 1 << (k - 1);
+				int step = x << 2;
+				for (int i = (x << 1) - 1; i < size; i += step) {
+					int leftMax = maxEnds[i - x];
+					int rightMax = i + x < size ? maxEnds[i + x] : last;
+					maxEnds[i] = Math.max(ends[i], Math.max(leftMax, rightMax));
+				}
+				lastIndex = (lastIndex >> k & 1) != 0 ? lastIndex - x : lastIndex + x;
+				if (lastIndex < size && maxEnds[lastIndex] > last) {
+					last = maxEnds[lastIndex];
+				}
+			}
+			return k - 1;
+		}
+
+		private static int[] permute(int[] values, Integer[] order) {
+			int[] sorted = new int[values.length];
+			for (int i = 0; i < order.length; i++) {
+				sorted[i] = values[order[i]];
+			}
+			return sorted;
+		}
+	}
+}
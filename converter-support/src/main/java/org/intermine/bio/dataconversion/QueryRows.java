@@ -0,0 +1,110 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Reader;
+import java.sql.Array;
+import java.sql.SQLException;
+
+/**
+ * The rows of a query, read forward one at a time by a RowDecoder.  Either a JDBC result set
+ * (ResultSetRows) or rows a converter has read ahead or saved, read back with the same code.
+ *
+ * Columns are numbered from 1, as in JDBC.
+ *
+ * @author
+ */
+public interface QueryRows extends AutoCloseable {
+	/**
+	 * @return the column labels, or null if they aren't known
+	 * @throws SQLException if they can't be read
+	 */
+	String[] getLabels() throws SQLException;
+
+	/**
+	 * @return the column types, from java.sql.Types, or null if they aren't known
+	 * @throws SQLException if they can't be read
+	 */
+	int[] getTypes() throws SQLException;
+
+	/**
+	 * @param label a column label
+	 * @return the index of the column
+	 * @throws SQLException if there is no such column
+	 */
+	int findColumn(String label) throws SQLException;
+
+	/**
+	 * Move to the next row.
+	 *
+	 * @return true if there is one
+	 * @throws SQLException if the row can't be read
+	 */
+	boolean next() throws SQLException;
+
+	/**
+	 * @param column the column index
+	 * @return the value, or null
+	 * @throws SQLException if there is no such column
+	 */
+	String getString(int column) throws SQLException;
+
+	/**
+	 * @param column the column index
+	 * @return the value, or 0 if it is null
+	 * @throws SQLException if there is no such column or it isn't a number
+	 */
+	int getInt(int column) throws SQLException;
+
+	/**
+	 * @param column the column index
+	 * @return the value, or 0 if it is null
+	 * @throws SQLException if there is no such column or it isn't a number
+	 */
+	long getLong(int column) throws SQLException;
+
+	/**
+	 * @param column the column index
+	 * @return the value, or 0 if it is null
+	 * @throws SQLException if there is no such column or it isn't a number
+	 */
+	double getDouble(int column) throws SQLException;
+
+	/**
+	 * @param column the column index
+	 * @return the value, or null
+	 * @throws SQLException if there is no such column or it isn't an array
+	 */
+	Array getArray(int column) throws SQLException;
+
+	/**
+	 * Read a long text column without the driver making a String of it first.
+	 *
+	 * @param column the column index
+	 * @return the value, or null
+	 * @throws SQLException if there is no such column
+	 */
+	Reader getCharacterStream(int column) throws SQLException;
+
+	/**
+	 * @return true if the last value read was null
+	 * @throws SQLException if there is a database problem
+	 */
+	boolean wasNull() throws SQLException;
+
+	/**
+	 * Close the rows and whatever they are read from.
+	 *
+	 * @throws SQLException if they can't be closed
+	 */
+	@Override
+	void close() throws SQLException;
+}
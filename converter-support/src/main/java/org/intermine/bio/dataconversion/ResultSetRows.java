@@ -0,0 +1,153 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Reader;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * The rows of a JDBC result set.
+ *
+ * @author
+ */
+public final class ResultSetRows implements QueryRows {
+
+	private final ResultSet res;
+
+	/**
+	 * Construct a new ResultSetRows.
+	 *
+	 * @param res the result set, positioned before the first row
+	 */
+	public ResultSetRows(ResultSet res) {
+		this.res = res;
+	}
+
+	/**
+	 * @return the result set being read
+	 */
+	public ResultSet getResultSet() {
+		return res;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String[] getLabels() throws SQLException {
+		ResultSetMetaData meta = metaData();
+		if (meta == null) {
+			return null;
+		}
+		String[] labels = new String[meta.getColumnCount()];
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = meta.getColumnLabel(i + 1);
+		}
+		return labels;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int[] getTypes() throws SQLException {
+		ResultSetMetaData meta = metaData();
+		if (meta == null) {
+			return null;
+		}
+		int[] types = new int[meta.getColumnCount()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = meta.getColumnType(i + 1);
+		}
+		return types;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int findColumn(String label) throws SQLException {
+		return res.findColumn(label);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean next() throws SQLException {
+		return res.next();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getString(int column) throws SQLException {
+		return res.getString(column);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getInt(int column) throws SQLException {
+		return res.getInt(column);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getLong(int column) throws SQLException {
+		return res.getLong(column);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public double getDouble(int column) throws SQLException {
+		return res.getDouble(column);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Array getArray(int column) throws SQLException {
+		return res.getArray(column);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Reader getCharacterStream(int column) throws SQLException {
+		return res.getCharacterStream(column);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean wasNull() throws SQLException {
+		return res.wasNull();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void close() throws SQLException {
+		res.close();
+	}
+
+	// some test mocks have no metadata
+	private ResultSetMetaData metaData() throws SQLException {
+		try {
+			return res.getMetaData();
+		} catch (SQLFeatureNotSupportedException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,230 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Reader;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads the columns of query rows by name without looking the name up on every row.
+ *
+ * The column labels are read once, when the decoder is created.
+ * After that a column name is resolved to its index the first time it is used, and the index
+ * is remembered against that very String: column names are almost always literals, which are
+ * the same object every time round a loop, so later lookups are an identity hash probe rather
+ * than the driver's case-insensitive search.  Values are then read by index.
+ *
+ * As with the drivers, labels are matched ignoring case and a label that appears twice finds
+ * the first column.  Any other name is resolved by the rows' findColumn(), once, so
+ * names a driver supports beyond the labels, such as MySQL's table.column, still work, as
+ * do result sets without metadata (some test mocks).
+ *
+ * @author
+ */
+public final class RowDecoder {
+
+	private static final int MAX_CACHED = 256;
+
+	private final QueryRows rows;
+	private final Map<String, Integer> labels;
+	private String[] names = new String[16];
+	private int[] indexes = new int[16];
+	private int cached;
+
+	/**
+	 * Construct a new RowDecoder.
+	 *
+	 * @param rows the rows, positioned before the first
+	 * @throws SQLException if the labels can't be read
+	 */
+	public RowDecoder(QueryRows rows) throws SQLException {
+		this.rows = rows;
+		this.labels = readLabels(rows);
+	}
+
+	/**
+	 * Construct a new RowDecoder over a JDBC result set.
+	 *
+	 * @param res the result set, positioned before the first row
+	 * @throws SQLException if the metadata can't be read
+	 */
+	public RowDecoder(ResultSet res) throws SQLException {
+		this(new ResultSetRows(res));
+	}
+
+	/**
+	 * @return the rows being decoded
+	 */
+	public QueryRows getRows() {
+		return rows;
+	}
+
+	/**
+	 * Move to the next row.
+	 *
+	 * @return true if there is one
+	 * @throws SQLException if there is a database problem
+	 */
+	public boolean next() throws SQLException {
+		return rows.next();
+	}
+
+	/**
+	 * @param column the column label
+	 * @return the value, or null
+	 * @throws SQLException if there is no such column
+	 */
+	public String getString(String column) throws SQLException {
+		return rows.getString(column(column));
+	}
+
+	/**
+	 * @param column the 1-based column index
+	 * @return the value, or null
+	 * @throws SQLException if there is no such column
+	 */
+	public String getString(int column) throws SQLException {
+		return rows.getString(column);
+	}
+
+	/**
+	 * @param column the column label
+	 * @return the value, or 0 if it is null
+	 * @throws SQLException if there is no such column or it isn't a number
+	 */
+	public int getInt(String column) throws SQLException {
+		return rows.getInt(column(column));
+	}
+
+	/**
+	 * @param column the column label
+	 * @return the value, or 0 if it is null
+	 * @throws SQLException if there is no such column or it isn't a number
+	 */
+	public long getLong(String column) throws SQLException {
+		return rows.getLong(column(column));
+	}
+
+	/**
+	 * @param column the column label
+	 * @return the value, or 0 if it is null
+	 * @throws SQLException if there is no such column or it isn't a number
+	 */
+	public double getDouble(String column) throws SQLException {
+		return rows.getDouble(column(column));
+	}
+
+	/**
+	 * Read an array column, e.g. the result of array_agg.
+	 *
+	 * @param column the column label
+	 * @return the value, or null
+	 * @throws SQLException if there is no such column or it isn't an array
+	 */
+	public Array getArray(String column) throws SQLException {
+		return rows.getArray(column(column));
+	}
+
+	/**
+	 * Read a long text column, e.g. residues, as a stream.
+	 *
+	 * @param column the column label
+	 * @return the value, or null
+	 * @throws SQLException if there is no such column
+	 */
+	public Reader getCharacterStream(String column) throws SQLException {
+		return rows.getCharacterStream(column(column));
+	}
+
+	/**
+	 * @return true if the last value read was null
+	 * @throws SQLException if there is a database problem
+	 */
+	public boolean wasNull() throws SQLException {
+		return rows.wasNull();
+	}
+
+	/**
+	 * @param column the column label
+	 * @return the 1-based index of the column
+	 * @throws SQLException if there is no such column
+	 */
+	public int column(String column) throws SQLException {
+		int mask = names.length - 1;
+		int slot = System.identityHashCode(column) & mask;
+		while (names[slot] != null) {
+			if (names[slot] == column) {
+				return indexes[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		Integer index = labels == null ? null : labels.get(column.toLowerCase(Locale.ENGLISH));
+		if (index == null) {
+			// not a label, but the driver may know it, e.g. MySQL's qualified names like d.name
+			try {
+				index = Integer.valueOf(rows.findColumn(column));
+			} catch (SQLException e) {
+				throw new SQLException("no column named " + column
+						+ (labels == null ? "" : " in " + labels.keySet()), e);
+			}
+		}
+		// names built at run time would be new objects every row, don't let them fill the table
+		if (cached < MAX_CACHED) {
+			if ((cached + 1) * 2 > names.length) {
+				grow();
+				slot = System.identityHashCode(column) & (names.length - 1);
+				while (names[slot] != null) {
+					slot = (slot + 1) & (names.length - 1);
+				}
+			}
+			names[slot] = column;
+			indexes[slot] = index.intValue();
+			cached++;
+		}
+		return index.intValue();
+	}
+
+	private void grow() {
+		String[] oldNames = names;
+		int[] oldIndexes = indexes;
+		names = new String[oldNames.length * 2];
+		indexes = new int[oldNames.length * 2];
+		int mask = names.length - 1;
+		for (int i = 0; i < oldNames.length; i++) {
+			if (oldNames[i] != null) {
+				int slot = System.identityHashCode(oldNames[i]) & mask;
+				while (names[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+				names[slot] = oldNames[i];
+				indexes[slot] = oldIndexes[i];
+			}
+		}
+	}
+
+	private static Map<String, Integer> readLabels(QueryRows rows) throws SQLException {
+		String[] names = rows.getLabels();
+		if (names == null) {
+			return null;
+		}
+		Map<String, Integer> labels = new HashMap<String, Integer>();
+		for (int i = names.length; i > 0; i--) {
+			// from the last column down, so a label that appears twice finds the first
+			labels.put(names[i - 1].toLowerCase(Locale.ENGLISH), i);
+		}
+		return labels;
+	}
+}
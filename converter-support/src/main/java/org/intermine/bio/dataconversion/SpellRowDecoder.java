@@ -0,0 +1,209 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Decodes the cond_descs and data_table columns of a SPELL expression row.
+ *
+ * cond_descs, the names of the conditions separated by | or ~, is the same on every row of
+ * a dataset, so it is only split when it changes.  data_table, the gene's scores separated by
+ * commas, is scanned where it is into a float buffer that is reused from row to row: most
+ * scores are short decimals, which are converted exactly with float arithmetic without making
+ * a String, and anything else is handed to Float.parseFloat().  NA and empty scores are NaN,
+ * as in ExpressionVector.
+ *
+ * One decoder per thread.
+ *
+ * @author
+ */
+public final class SpellRowDecoder {
+
+	// 10^n is exact as a float up to 10^10, and a float holds any integer below 2^24 exactly
+	private static final float[] POWERS = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f,
+		1e9f, 1e10f};
+	private static final long MAX_EXACT = 1L << 24;
+
+	private String condDescs;
+	private String[] conditions = new String[0];
+	private String dataTable;
+	private float[] scores = new float[64];
+	private int[] starts = new int[64];
+	private int[] ends = new int[64];
+	private int size;
+
+	/**
+	 * Set the conditions of the row.
+	 *
+	 * @param condDescs the cond_descs column, null for no conditions
+	 * @return true if they aren't the conditions of the previous row
+	 */
+	public boolean setConditions(String condDescs) {
+		if (condDescs == null) {
+			condDescs = "";
+		}
+		if (condDescs.equals(this.condDescs)) {
+			return false;
+		}
+		this.condDescs = condDescs;
+		List<String> names = new ArrayList<String>();
+		int start = 0;
+		for (int i = 0; i <= condDescs.length(); i++) {
+			if (i == condDescs.length() || condDescs.charAt(i) == '|' || condDescs.charAt(i) == '~') {
+				names.add(condDescs.substring(start, i));
+				start = i + 1;
+			}
+		}
+		// like String.split(), no trailing empty names
+		int count = names.size();
+		while (count > 0 && names.get(count - 1).isEmpty()) {
+			count--;
+		}
+		conditions = names.subList(0, count).toArray(new String[count]);
+		return true;
+	}
+
+	/**
+	 * @return the number of conditions
+	 */
+	public int getConditionCount() {
+		return conditions.length;
+	}
+
+	/**
+	 * @param i the order number of a condition
+	 * @return its name
+	 */
+	public String getCondition(int i) {
+		return conditions[i];
+	}
+
+	/**
+	 * Read the scores of the row.
+	 *
+	 * @param dataTable the data_table column, null for no scores
+	 * @return the number of scores
+	 * @throws NumberFormatException if a score isn't a number or NA
+	 */
+	public int setScores(String dataTable) {
+		if (dataTable == null) {
+			dataTable = "";
+		}
+		this.dataTable = dataTable;
+		size = 0;
+		int start = 0;
+		int length = dataTable.length();
+		for (int i = 0; i <= length; i++) {
+			if (i == length || dataTable.charAt(i) == ',') {
+				if (size == scores.length) {
+					grow();
+				}
+				int from = start;
+				int to = i;
+				while (from < to && dataTable.charAt(from) <= ' ') {
+					from++;
+				}
+				while (to > from && dataTable.charAt(to - 1) <= ' ') {
+					to--;
+				}
+				starts[size] = from;
+				ends[size] = to;
+				scores[size] = parse(dataTable, from, to);
+				size++;
+				start = i + 1;
+			}
+		}
+		// like String.split(), no trailing empty scores
+		while (size > 0 && starts[size - 1] == ends[size - 1]) {
+			size--;
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of scores in the row
+	 */
+	public int getScoreCount() {
+		return size;
+	}
+
+	/**
+	 * @return the scores of the row, overwritten by the next; only the first getScoreCount()
+	 * are the row's
+	 */
+	public float[] getScores() {
+		return scores;
+	}
+
+	/**
+	 * @param i the order number of a condition
+	 * @return the score as written in data_table, null for NA
+	 */
+	public String getScoreText(int i) {
+		if (i >= size) {
+			throw new IndexOutOfBoundsException(i + " of " + size + " scores");
+		}
+		if (Float.isNaN(scores[i])) {
+			return null;
+		}
+		return dataTable.substring(starts[i], ends[i]);
+	}
+
+	private void grow() {
+		int length = scores.length * 2;
+		scores = Arrays.copyOf(scores, length);
+		starts = Arrays.copyOf(starts, length);
+		ends = Arrays.copyOf(ends, length);
+	}
+
+	private static float parse(String text, int from, int to) {
+		if (from == to || to - from == 2 && text.charAt(from) == 'N' && text.charAt(from + 1) == 'A') {
+			return Float.NaN;
+		}
+		int i = from;
+		boolean negative = false;
+		if (text.charAt(i) == '-' || text.charAt(i) == '+') {
+			negative = text.charAt(i) == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int scale = 0;
+		int digits = 0;
+		boolean point = false;
+		for (; i < to; i++) {
+			char c = text.charAt(i);
+			if (c >= '0' && c <= '9') {
+				if (mantissa >= MAX_EXACT) {
+					return Float.parseFloat(text.substring(from, to));
+				}
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (point) {
+					scale--;
+				}
+			} else if (c == '.' && !point) {
+				point = true;
+			} else {
+				// an exponent, or not a number at all: let parseFloat read it or say what's wrong
+				return Float.parseFloat(text.substring(from, to));
+			}
+		}
+		if (digits == 0 || mantissa >= MAX_EXACT || -scale >= POWERS.length) {
+			return Float.parseFloat(text.substring(from, to));
+		}
+		// both exact, so one correctly rounded division gives what parseFloat would
+		float value = scale == 0 ? (float) mantissa : (float) mantissa / POWERS[-scale];
+		return negative ? -value : value;
+	}
+}
@@ -0,0 +1,202 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+public class AsyncItemStoreTest extends TestCase
+{
+    private List<Item> stored;
+    private AsyncItemStore store;
+
+    public AsyncItemStoreTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        stored = Collections.synchronizedList(new ArrayList<Item>());
+        store = new AsyncItemStore("test", items -> stored.addAll(items));
+        store.setQueueSize(4);
+        store.setBatchSize(3);
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        store.stop();
+        super.tearDown();
+    }
+
+    public void testItemsStoredInOrder() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            store.store(gene(i));
+        }
+        store.close();
+        assertEquals(100, stored.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals("0_" + i, stored.get(i).getIdentifier());
+            assertEquals("g" + i, stored.get(i).getAttribute("symbol").getValue());
+        }
+    }
+
+    public void testNothingStored() throws Exception {
+        store.flush();
+        store.close();
+        assertTrue(stored.isEmpty());
+        // closed twice, or stopped once closed
+        store.close();
+        store.stop();
+        assertTrue(stored.isEmpty());
+    }
+
+    public void testItemsNotCopied() throws Exception {
+        Item gene = gene(1);
+        store.store(gene);
+        store.flush();
+        assertEquals(1, stored.size());
+        assertSame(gene, stored.get(0));
+    }
+
+    public void testCheckStoredFailsOnChange() throws Exception {
+        store.setCheckStored(true);
+        Item unchanged = gene(1);
+        Item changed = gene(2);
+        store.store(unchanged);
+        store.store(changed);
+        store.flush();
+        changed.setAttribute("symbol", "changed");
+        try {
+            store.flush();
+            fail("expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("0_2"));
+        }
+    }
+
+    public void testSynchronousStore() throws Exception {
+        store.setQueueSize(0);
+        Item gene = gene(1);
+        store.store(gene);
+        assertEquals(1, stored.size());
+        assertSame(gene, stored.get(0));
+        store.close();
+        store.store(gene(2));
+        assertEquals(2, stored.size());
+    }
+
+    public void testFailureReported() throws Exception {
+        store = new AsyncItemStore("failing", items -> {
+            throw new ObjectStoreException("no database");
+        });
+        store.setQueueSize(1);
+        try {
+            for (int i = 0; i < 1000; i++) {
+                store.store(gene(i));
+            }
+            store.flush();
+            fail("expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            // expected
+        }
+    }
+
+    public void testFlushAfterStop() throws Exception {
+        store = new AsyncItemStore("slow", items -> {
+            try {
+                Thread.sleep(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        store.setQueueSize(10);
+        // one item at a time, so at most one is written before stop()
+        store.setBatchSize(1);
+        for (int i = 0; i < 5; i++) {
+            store.store(gene(i));
+        }
+        // the conversion failed, the queued items are dropped
+        store.stop();
+        try {
+            store.close();
+            fail("expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("not stored"));
+        }
+        try {
+            store.store(gene(5));
+            fail("expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("not stored"));
+        }
+    }
+
+    public void testStopWhileStoreWaits() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        store = new AsyncItemStore("blocked", items -> {
+            writing.countDown();
+            // not interrupted by stop(), like a write that has to finish
+            while (true) {
+                try {
+                    release.await();
+                    return;
+                } catch (InterruptedException e) {
+                    // keep waiting
+                }
+            }
+        });
+        store.setQueueSize(1);
+        store.store(gene(0));
+        writing.await();
+        store.store(gene(1));
+        // the queue is full, this one waits for room
+        final Throwable[] thrown = new Throwable[1];
+        Thread converter = new Thread(() -> {
+            try {
+                store.store(gene(2));
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        });
+        converter.start();
+        Thread stopper = new Thread(() -> store.stop());
+        stopper.start();
+        Thread.sleep(200);
+        release.countDown();
+        stopper.join(5000);
+        converter.join(5000);
+        assertFalse(stopper.isAlive());
+        assertFalse(converter.isAlive());
+        assertTrue(String.valueOf(thrown[0]), thrown[0] instanceof ObjectStoreException);
+        try {
+            store.flush();
+            fail("expected an ObjectStoreException");
+        } catch (ObjectStoreException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("2 items not stored"));
+        }
+    }
+
+    private Item gene(int i) {
+        Item gene = new Item("0_" + i, "Gene", "");
+        gene.setAttribute("symbol", "g" + i);
+        gene.addToCollection("synonyms", "2_" + i);
+        return gene;
+    }
+}
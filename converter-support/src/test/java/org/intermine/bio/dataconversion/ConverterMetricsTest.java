@@ -0,0 +1,120 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ItemHelper;
+
+public class ConverterMetricsTest extends TestCase
+{
+    private File file;
+    private ConverterMetrics metrics;
+    private Map<String, org.intermine.model.fulldata.Item> written;
+    private ItemWriter writer;
+
+    public ConverterMetricsTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("metrics", ".tsv");
+        file.delete();
+        metrics = new ConverterMetrics("test");
+        written = new HashMap<String, org.intermine.model.fulldata.Item>();
+        writer = metrics.track(new MockItemWriter(written));
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testPhaseLines() throws Exception {
+        metrics.setFile(file.getPath());
+        // nothing is counted outside a phase
+        metrics.row();
+        metrics.rows(10);
+        metrics.itemCreated();
+        store("0_1");
+
+        metrics.startPhase("genes");
+        for (int i = 0; i < 3000; i++) {
+            metrics.row();
+        }
+        metrics.itemCreated();
+        metrics.itemCreated();
+        store("1_1");
+        metrics.startPhase("empty");
+        metrics.rows(0);
+        metrics.startPhase("datasets");
+        metrics.rows(5);
+        metrics.rows(-1);
+        metrics.rows(2);
+        store("2_1");
+        store("2_2");
+        metrics.close();
+        // the writer still passes everything on
+        assertEquals(4, written.size());
+
+        List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        assertEquals("time\tsource\tphase\tevent\telapsed_ms\tfirst_row_ms\trows\trows_per_s"
+                + "\titems_created\titems_stored\theap_delta_kb", lines.get(0));
+        assertLine(lines.get(1), "genes", 3000, 2, 1);
+        assertLine(lines.get(2), "empty", 0, 0, 0);
+        assertEquals("-1", lines.get(2).split("\t")[5]);
+        assertLine(lines.get(3), "datasets", 7, 0, 2);
+    }
+
+    public void testNoFile() throws Exception {
+        metrics.setFile("none");
+        metrics.startPhase("genes");
+        metrics.row();
+        metrics.endPhase();
+        metrics.endPhase();
+        metrics.close();
+        assertFalse(file.exists());
+        metrics.setFile("");
+        metrics.startPhase("genes");
+        metrics.close();
+        assertFalse(file.exists());
+    }
+
+    private void store(String identifier) throws Exception {
+        writer.store(ItemHelper.convert(new Item(identifier, "Gene", "")));
+    }
+
+    private static void assertLine(String line, String phase, long rows, long created,
+            long stored) {
+        String[] fields = line.split("\t");
+        assertEquals(11, fields.length);
+        assertEquals("test", fields[1]);
+        assertEquals(phase, fields[2]);
+        assertEquals("end", fields[3]);
+        assertEquals(String.valueOf(rows), fields[6]);
+        assertEquals(String.valueOf(created), fields[8]);
+        assertEquals(String.valueOf(stored), fields[9]);
+    }
+}
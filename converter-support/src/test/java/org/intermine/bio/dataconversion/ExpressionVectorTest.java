@@ -0,0 +1,70 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class ExpressionVectorTest extends TestCase
+{
+    public ExpressionVectorTest(String arg) {
+        super(arg);
+    }
+
+    public void testRoundTrip() throws Exception {
+        Random random = new Random(22);
+        for (int n = 0; n < 200; n++) {
+            float[] scores = new float[n + 5];
+            for (int i = 0; i < scores.length; i++) {
+                scores[i] = random.nextInt(8) == 0 ? Float.NaN : (float) random.nextGaussian() * 3;
+            }
+            scores[0] = -0.0f;
+            scores[1] = Float.MAX_VALUE;
+            float[] decoded = ExpressionVector.decode(ExpressionVector.encode(scores, n + 2));
+            assertEquals(n + 2, decoded.length);
+            for (int i = 0; i < decoded.length; i++) {
+                assertEquals(Float.floatToIntBits(scores[i]), Float.floatToIntBits(decoded[i]));
+            }
+        }
+        assertEquals("", ExpressionVector.encode(new float[] {1.0f}, 0));
+        assertEquals(0, ExpressionVector.decode("").length);
+        // big-endian float32: 1.0 is 3f800000
+        assertEquals("P4AAAA==", ExpressionVector.encode(new float[] {1.0f}, 1));
+    }
+
+    public void testParseScore() throws Exception {
+        assertTrue(Float.isNaN(ExpressionVector.parseScore("NA")));
+        assertTrue(Float.isNaN(ExpressionVector.parseScore(" ")));
+        assertTrue(Float.isNaN(ExpressionVector.parseScore(null)));
+        assertEquals(-1.25f, ExpressionVector.parseScore(" -1.25 "));
+        try {
+            ExpressionVector.parseScore("n/a");
+            fail("expected a NumberFormatException");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    public void testNotAVector() throws Exception {
+        // three bytes, not a whole float; not base64; bad padding; a vector cut short
+        String whole = ExpressionVector.encode(new float[] {1.0f, 2.0f}, 2);
+        for (String vector : new String[] {"AAA=", "P4AA AA==", "P4AAAA=", "@@@@",
+            whole.substring(0, whole.length() - 4)}) {
+            try {
+                ExpressionVector.decode(vector);
+                fail("expected an IllegalArgumentException for " + vector);
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class FeatureIntervalIndexTest extends TestCase
+{
+    private static final String[] SEQUENCES = {"chrI", "chrII", "chrmt", "2-micron"};
+
+    private File file;
+
+    public FeatureIntervalIndexTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        file = File.createTempFile("locations", ".index");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        file.delete();
+        super.tearDown();
+    }
+
+    public void testSameAsScanningEveryFeature() throws Exception {
+        Random random = new Random(20);
+        FeatureIntervalIndex.Builder builder = new FeatureIntervalIndex.Builder();
+        List<List<String>> features = new ArrayList<List<String>>();
+        List<int[]> locations = new ArrayList<int[]>();
+        // the last sequence gets none, another just one
+        int[] counts = {5000, 1, 777, 0};
+        for (int s = 0; s < SEQUENCES.length; s++) {
+            for (int i = 0; i < counts[s]; i++) {
+                int start = 1 + random.nextInt(200000);
+                int length = random.nextInt(10) == 0 ? random.nextInt(20000) : random.nextInt(2000);
+                int strand = random.nextInt(3) - 1;
+                String feature = "3_" + locations.size();
+                String type = random.nextBoolean() ? "ORF" : "Intron";
+                // either way round
+                if (strand < 0) {
+                    builder.add(SEQUENCES[s], start + length, start, strand, feature, type);
+                } else {
+                    builder.add(SEQUENCES[s], start, start + length, strand, feature, type);
+                }
+                locations.add(new int[] {s, start, start + length, strand});
+                features.add(Arrays.asList(feature, type));
+            }
+        }
+        assertEquals(locations.size(), builder.size());
+        builder.write(file);
+
+        FeatureIntervalIndex index = FeatureIntervalIndex.open(file);
+        assertEquals(3, index.getSequences().size());
+        assertEquals(5000, index.size("chrI"));
+        assertEquals(0, index.size("2-micron"));
+        for (int q = 0; q < 2000; q++) {
+            int s = random.nextInt(SEQUENCES.length);
+            int start = 1 + random.nextInt(220000);
+            int end = start + (q % 10 == 0 ? 0 : random.nextInt(5000));
+            List<String> expected = new ArrayList<String>();
+            for (int i = 0; i < locations.size(); i++) {
+                int[] location = locations.get(i);
+                if (location[0] == s && location[1] <= end && location[2] >= start) {
+                    expected.add(location[1] + " " + location[2] + " " + location[3] + " "
+                            + features.get(i).get(0) + " " + features.get(i).get(1));
+                }
+            }
+            final List<String> found = new ArrayList<String>();
+            final int[] lastStart = new int[1];
+            int count = index.overlaps(SEQUENCES[s], start, end,
+                    (feature, type, fStart, fEnd, strand) -> {
+                        assertTrue(fStart >= lastStart[0]);
+                        lastStart[0] = fStart;
+                        found.add(fStart + " " + fEnd + " " + strand + " " + feature + " " + type);
+                    });
+            assertEquals(found.size(), count);
+            Collections.sort(expected);
+            Collections.sort(found);
+            assertEquals(SEQUENCES[s] + ":" + start + "-" + end, expected, found);
+        }
+        assertEquals(0, index.overlaps("chrXVII", 1, 1000000, (f, t, a, b, c) -> fail()));
+    }
+
+    public void testNoFeatures() throws Exception {
+        FeatureIntervalIndex.Builder builder = new FeatureIntervalIndex.Builder();
+        assertEquals(0, builder.size());
+        builder.write(file);
+        FeatureIntervalIndex index = FeatureIntervalIndex.open(file);
+        assertTrue(index.getSequences().isEmpty());
+        assertEquals(0, index.size("chrI"));
+        assertEquals(0, index.overlaps("chrI", 1, 1000000, (f, t, a, b, c) -> fail()));
+    }
+
+    public void testNullFeatureAndType() throws Exception {
+        FeatureIntervalIndex.Builder builder = new FeatureIntervalIndex.Builder();
+        builder.add("chrI", 10, 10, 0, null, null);
+        builder.write(file);
+        final List<String> found = new ArrayList<String>();
+        FeatureIntervalIndex.open(file).overlaps("chrI", 10, 10,
+                (feature, type, start, end, strand) -> found.add("[" + feature + "][" + type + "]"));
+        assertEquals(Arrays.asList("[][]"), found);
+    }
+
+    public void testDamagedFiles() throws Exception {
+        // empty
+        assertNotIndex();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("chrI\t1\t100\n".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertNotIndex();
+
+        FeatureIntervalIndex.Builder builder = new FeatureIntervalIndex.Builder();
+        builder.add("chrI", 1, 100, 1, "3_1", "ORF");
+        builder.write(file);
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(raf.length() / 2);
+        } finally {
+            raf.close();
+        }
+        assertNotIndex();
+    }
+
+    private void assertNotIndex() {
+        try {
+            FeatureIntervalIndex.open(file);
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
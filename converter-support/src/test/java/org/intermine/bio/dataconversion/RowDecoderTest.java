@@ -0,0 +1,191 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Reader;
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.mockobjects.sql.MockMultiRowResultSet;
+
+public class RowDecoderTest extends TestCase
+{
+    private static final String[] LABELS = new String[] {"dbentity_id", "Display_Name",
+        "dbentity_id", "score"};
+
+    private List<String> found;
+
+    public RowDecoderTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        found = new ArrayList<String>();
+    }
+
+    public void testColumnsByLabel() throws Exception {
+        RowDecoder row = new RowDecoder(rows(LABELS, new Object[] {"1", "act1", "2", "0.5"},
+                new Object[] {null, null, "3", null}));
+        assertTrue(row.next());
+        // labels ignore case, and a label that appears twice finds the first column
+        assertEquals("act1", row.getString("display_name"));
+        assertEquals("act1", row.getString("DISPLAY_NAME"));
+        assertEquals(1, row.getInt("dbentity_id"));
+        assertEquals(1L, row.getLong("DBENTITY_ID"));
+        assertEquals(0.5, row.getDouble("score"), 0.0);
+        assertEquals("2", row.getString(3));
+        assertTrue(row.next());
+        assertNull(row.getString("display_name"));
+        assertTrue(row.wasNull());
+        assertEquals(0, row.getInt("dbentity_id"));
+        assertEquals(0.0, row.getDouble("score"), 0.0);
+        assertFalse(row.next());
+        // every name was a label
+        assertTrue(found.isEmpty());
+    }
+
+    public void testColumnsNotLabels() throws Exception {
+        RowDecoder row = new RowDecoder(rows(LABELS, new Object[] {"1", "act1", "2", "0.5"}));
+        row.next();
+        // the rows know qualified names the labels don't have
+        assertEquals("act1", row.getString("d.display_name"));
+        assertEquals("act1", row.getString("d.display_name"));
+        assertEquals(1, found.size());
+        try {
+            row.getString("systematic_name");
+            fail("expected an SQLException");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("no column named systematic_name"));
+        }
+    }
+
+    public void testNoLabels() throws Exception {
+        RowDecoder row = new RowDecoder(rows(null, new Object[] {"1", "act1", "2", "0.5"}));
+        row.next();
+        assertEquals("act1", row.getString("display_name"));
+        assertEquals(1, row.getInt("dbentity_id"));
+        try {
+            row.getString("systematic_name");
+            fail("expected an SQLException");
+        } catch (SQLException e) {
+            assertEquals("no column named systematic_name", e.getMessage());
+        }
+    }
+
+    public void testNamesBuiltAtRunTime() throws Exception {
+        String[] labels = new String[300];
+        Object[] values = new Object[300];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = "c" + i;
+            values[i] = String.valueOf(i);
+        }
+        RowDecoder row = new RowDecoder(rows(labels, values));
+        row.next();
+        // more distinct String objects than are cached, each asked for more than once
+        for (int pass = 0; pass < 3; pass++) {
+            for (int i = 0; i < labels.length; i++) {
+                assertEquals(i + 1, row.column(new String("c" + i)));
+                assertEquals(i + 1, row.column(labels[i]));
+            }
+        }
+        assertEquals("299", row.getString(labels[299]));
+    }
+
+    public void testResultSet() throws Exception {
+        // a mock without metadata: the names are found by the result set
+        MockMultiRowResultSet res = new MockMultiRowResultSet();
+        res.setupColumnNames(new String[] {"dbentity_id", "display_name"});
+        res.setupRows(new Object[][] {{"1", "act1"}});
+        RowDecoder row = new RowDecoder(res);
+        assertTrue(row.next());
+        assertEquals("act1", row.getString("display_name"));
+        assertEquals("1", row.getString("dbentity_id"));
+        assertFalse(row.next());
+    }
+
+    /**
+     * Rows of strings; findColumn() knows the labels and table-qualified labels, case
+     * sensitively.
+     */
+    private QueryRows rows(final String[] labels, final Object[]... rows) {
+        final String[] names = labels == null ? LABELS : labels;
+        return new QueryRows() {
+            private int row = -1;
+            private boolean wasNull;
+
+            public String[] getLabels() {
+                return labels;
+            }
+
+            public int[] getTypes() {
+                return null;
+            }
+
+            public int findColumn(String label) throws SQLException {
+                found.add(label);
+                String name = label.startsWith("d.") ? label.substring(2) : label;
+                for (int i = 0; i < names.length; i++) {
+                    if (names[i].equalsIgnoreCase(name)) {
+                        return i + 1;
+                    }
+                }
+                throw new SQLException("column " + label + " not found");
+            }
+
+            public boolean next() {
+                return ++row < rows.length;
+            }
+
+            public String getString(int column) {
+                String value = (String) rows[row][column - 1];
+                wasNull = value == null;
+                return value;
+            }
+
+            public int getInt(int column) {
+                String value = getString(column);
+                return value == null ? 0 : Integer.parseInt(value);
+            }
+
+            public long getLong(int column) {
+                String value = getString(column);
+                return value == null ? 0 : Long.parseLong(value);
+            }
+
+            public double getDouble(int column) {
+                String value = getString(column);
+                return value == null ? 0 : Double.parseDouble(value);
+            }
+
+            public Array getArray(int column) {
+                throw new UnsupportedOperationException();
+            }
+
+            public Reader getCharacterStream(int column) {
+                throw new UnsupportedOperationException();
+            }
+
+            public boolean wasNull() {
+                return wasNull;
+            }
+
+            public void close() {
+                // nothing to release
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SpellRowDecoderTest extends TestCase
+{
+    private SpellRowDecoder decoder;
+
+    public SpellRowDecoderTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        decoder = new SpellRowDecoder();
+    }
+
+    public void testSameConditionsAsSplit() throws Exception {
+        String[] descs = {"heat 10 min|heat 20 min~heat 30 min", "a|b||c", "a|b||", "|a", "single",
+            "", "x~~y~", "d1, 30C|d2, 37C"};
+        for (String condDescs : descs) {
+            assertTrue(decoder.setConditions(condDescs));
+            assertFalse(decoder.setConditions(new String(condDescs)));
+            // how the converters split them before
+            String[] expected = condDescs.replaceAll("~", "|").split("\\|");
+            if (condDescs.isEmpty()) {
+                // split() gives one empty name for an empty string; there are no conditions
+                expected = new String[0];
+            }
+            assertEquals(condDescs, expected.length, decoder.getConditionCount());
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(condDescs, expected[i], decoder.getCondition(i));
+            }
+        }
+    }
+
+    public void testSameScoresAsParseFloat() throws Exception {
+        Random random = new Random(23);
+        for (int row = 0; row < 20000; row++) {
+            int count = 1 + random.nextInt(30);
+            StringBuilder dataTable = new StringBuilder();
+            String[] texts = new String[count];
+            for (int i = 0; i < count; i++) {
+                texts[i] = score(random);
+                if (i > 0) {
+                    dataTable.append(',');
+                }
+                dataTable.append(texts[i]);
+            }
+            assertEquals(count, decoder.setScores(dataTable.toString()));
+            assertEquals(count, decoder.getScoreCount());
+            // how the converters read them before
+            String[] expected = dataTable.toString().split(",");
+            assertEquals(expected.length, count);
+            float[] scores = decoder.getScores();
+            for (int i = 0; i < count; i++) {
+                float value = ExpressionVector.parseScore(expected[i]);
+                assertEquals(expected[i], Float.floatToIntBits(value), Float.floatToIntBits(scores[i]));
+                assertEquals(Float.isNaN(value) ? null : expected[i], decoder.getScoreText(i));
+            }
+        }
+    }
+
+    public void testSpacesAndTrailingCommas() throws Exception {
+        assertEquals(3, decoder.setScores(" 1.5 ,NA, -2,,"));
+        assertEquals(1.5f, decoder.getScores()[0]);
+        assertEquals("1.5", decoder.getScoreText(0));
+        assertTrue(Float.isNaN(decoder.getScores()[1]));
+        assertNull(decoder.getScoreText(1));
+        assertEquals(-2f, decoder.getScores()[2]);
+        try {
+            decoder.getScoreText(3);
+            fail("expected an IndexOutOfBoundsException");
+        } catch (IndexOutOfBoundsException e) {
+            // expected
+        }
+        try {
+            decoder.setScores("1,x");
+            fail("expected a NumberFormatException");
+        } catch (NumberFormatException e) {
+            // expected
+        }
+    }
+
+    public void testNullAndMalformed() throws Exception {
+        assertTrue(decoder.setConditions(null));
+        assertEquals(0, decoder.getConditionCount());
+        // null is the same as no conditions
+        assertFalse(decoder.setConditions(""));
+        for (String condDescs : new String[] {"|||", "~", "|~|"}) {
+            assertTrue(decoder.setConditions(condDescs));
+            assertEquals(condDescs, 0, decoder.getConditionCount());
+        }
+
+        assertEquals(0, decoder.setScores(null));
+        assertEquals(0, decoder.setScores(",,,"));
+        assertEquals(3, decoder.setScores("1,,2"));
+        assertTrue(Float.isNaN(decoder.getScores()[1]));
+        assertNull(decoder.getScoreText(1));
+        // left to parseFloat, as before
+        assertEquals(1000f, decoder.getScores()[decoder.setScores("1e3") - 1]);
+        assertEquals(Float.POSITIVE_INFINITY, decoder.getScores()[decoder.setScores("Infinity") - 1]);
+        for (String dataTable : new String[] {"1.2.3", "-", ".", "--1", "+", "1,2x", "0x10", "na",
+            "1;2"}) {
+            try {
+                decoder.setScores(dataTable);
+                fail("expected a NumberFormatException for " + dataTable);
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * A score as SPELL writes them, and the odd ones that have to go to parseFloat.
+     */
+    private static String score(Random random) {
+        switch (random.nextInt(10)) {
+        case 0:
+            return "NA";
+        case 1:
+            return String.valueOf(random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10));
+        case 2:
+            return String.valueOf(random.nextFloat() * 100000000);
+        case 3:
+            return (random.nextBoolean() ? "+" : "-") + random.nextInt(100) + "." + random.nextInt(100);
+        case 4:
+            // more decimals than are exact
+            return "0." + Math.abs(random.nextLong());
+        default:
+            return String.format(Locale.ROOT, "%." + random.nextInt(6) + "f", random.nextGaussian() * 4);
+        }
+    }
+}
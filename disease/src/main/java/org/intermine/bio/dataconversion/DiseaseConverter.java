@@ -81,6 +81,7 @@ public class DiseaseConverter extends BioDBConverter {
 	private static final Integer HUMAN_TAXON_ID = 9606;
 
 	private String licence;
+	private final ConverterMetrics metrics;
 	//private Item organism;
 
 
@@ -92,7 +93,43 @@ public class DiseaseConverter extends BioDBConverter {
 	 */
 	public DiseaseConverter(Database database, Model model,
 			ItemWriter writer) throws ObjectStoreException {
-		super(database, model, writer);
+		this(database, model, writer, new ConverterMetrics("disease"));
+	}
+
+	private DiseaseConverter(Database database, Model model, ItemWriter writer,
+			ConverterMetrics metrics) throws ObjectStoreException {
+		super(database, model, metrics.track(writer));
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Set the file the metrics of each phase are written to, e.g. disease-metrics.tsv.
+	 * By default, or if it is "none", no file is written.
+	 *
+	 * @param metricsFile name of the file
+	 */
+	public void setMetricsFile(String metricsFile) {
+		metrics.setFile(metricsFile.trim());
+	}
+
+	/**
+	 * Set how often, in seconds, a running phase logs how far it has got.
+	 *
+	 * @param metricsInterval interval in seconds
+	 */
+	public void setMetricsInterval(String metricsInterval) {
+		metrics.setInterval(Long.parseLong(metricsInterval.trim()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Item createItem(String className) {
+		if (metrics != null) {
+			metrics.itemCreated();
+		}
+		return super.createItem(className);
 	}
 
 	static {
@@ -103,7 +140,11 @@ public class DiseaseConverter extends BioDBConverter {
 	 */
 	public void process() throws Exception {
 		Connection connection = getDatabase().getConnection();
-		processDiseaseAnnotations(connection);
+		try {
+			processDiseaseAnnotations(connection);
+		} finally {
+			metrics.close();
+		}
 	}
 
 
@@ -119,23 +160,26 @@ public class DiseaseConverter extends BioDBConverter {
 
 		Item organism = newOrganism("4932");
 
+		metrics.startPhase("diseaseAnnotations");
 		ResultSet res = PROCESSOR.getDiseaseAnnotations(connection);
 
-		while (res.next()) {
-
-			String taxonId = parseTaxonId(res.getString("taxid"));
-			String productId = res.getString("sgdid");
-			String symbol = res.getString("gene_name");
-			String doId = res.getString("doid");
-			String relation_type = res.getString("relation_type");
-			String withText = res.getString("hgnc_id");
-			String strEvidence = res.getString("evidence_code");
-			String annotType = res.getString("annotation_type");
-			String evidence_type = res.getString("evidence_type");
-			String pub = res.getString("pmid");
-			String date_assigned = res.getString("date_assigned");
-			String created_by = res.getString("created_by");
-			String dataSourceCode = res.getString("source");
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+
+			String taxonId = parseTaxonId(row.getString("taxid"));
+			String productId = row.getString("sgdid");
+			String symbol = row.getString("gene_name");
+			String doId = row.getString("doid");
+			String relation_type = row.getString("relation_type");
+			String withText = row.getString("hgnc_id");
+			String strEvidence = row.getString("evidence_code");
+			String annotType = row.getString("annotation_type");
+			String evidence_type = row.getString("evidence_type");
+			String pub = row.getString("pmid");
+			String date_assigned = row.getString("date_assigned");
+			String created_by = row.getString("created_by");
+			String dataSourceCode = row.getString("source");
 
 			String qualifier = "";
 			String annotationExtension = "";
@@ -200,7 +244,9 @@ public class DiseaseConverter extends BioDBConverter {
 				}
 			}
 		}
+		metrics.startPhase("storeProductCollections");
 		storeProductCollections();
+		metrics.startPhase("storeEvidence");
 		storeEvidence();
 
 	}
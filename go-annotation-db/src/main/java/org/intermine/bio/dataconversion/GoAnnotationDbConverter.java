@@ -89,6 +89,7 @@ public class GoAnnotationDbConverter extends BioDBConverter
 	private static final Integer TAXON_ID = 4932;
 	private static final Integer HUMAN_TAXON_ID = 9606;
 	private String licence;
+	private final ConverterMetrics metrics;
 	//private Item organism;
 
 	/**
@@ -99,7 +100,43 @@ public class GoAnnotationDbConverter extends BioDBConverter
 	 * @throws Exception if an error occurs in storing or finding Model
 	 */
 	public GoAnnotationDbConverter(Database database, Model model, ItemWriter writer) throws ObjectStoreException {
-		super(database, model, writer);
+		this(database, model, writer, new ConverterMetrics("go-annotation-db"));
+	}
+
+	private GoAnnotationDbConverter(Database database, Model model, ItemWriter writer,
+			ConverterMetrics metrics) throws ObjectStoreException {
+		super(database, model, metrics.track(writer));
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Set the file the metrics of each phase are written to, e.g. go-annotation-db-metrics.tsv.
+	 * By default, or if it is "none", no file is written.
+	 *
+	 * @param metricsFile name of the file
+	 */
+	public void setMetricsFile(String metricsFile) {
+		metrics.setFile(metricsFile.trim());
+	}
+
+	/**
+	 * Set how often, in seconds, a running phase logs how far it has got.
+	 *
+	 * @param metricsInterval interval in seconds
+	 */
+	public void setMetricsInterval(String metricsInterval) {
+		metrics.setInterval(Long.parseLong(metricsInterval.trim()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Item createItem(String className) {
+		if (metrics != null) {
+			metrics.itemCreated();
+		}
+		return super.createItem(className);
 	}
 
 	/**
@@ -122,7 +159,11 @@ public class GoAnnotationDbConverter extends BioDBConverter
 	 */
 	public void process() throws Exception {
 		Connection connection = getDatabase().getConnection();
-		processGOAnnotations(connection);
+		try {
+			processGOAnnotations(connection);
+		} finally {
+			metrics.close();
+		}
 	}
 
 
@@ -134,23 +175,26 @@ public class GoAnnotationDbConverter extends BioDBConverter
 
 		Item organism = newOrganism("4932");
 
+		metrics.startPhase("goAnnotations");
 		ResultSet res = PROCESSOR.getGOAnnotations(connection);
 
-		while (res.next()) {	
-
-			String productId = res.getString("sgdid");
-			String symbol = res.getString("gene_name");
-			String qualifier = res.getString("go_qualifier");
-			String goId = res.getString("goid");
-			String pub = res.getString("pmid");
-			String pubxref = res.getString("sgdrefid");
-			String strEvidence = res.getString("evidence_code");
-			Array withTextDb = res.getArray("withText");
-			String annotType = res.getString("annotation_type");
-			String taxonId = parseTaxonId(res.getString("taxid"));
-			String dataSourceCode = res.getString("source");
-			Array annotExt = res.getArray("annotext");
-			Array annotExtPre = res.getArray("annotextension");
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+
+			String productId = row.getString("sgdid");
+			String symbol = row.getString("gene_name");
+			String qualifier = row.getString("go_qualifier");
+			String goId = row.getString("goid");
+			String pub = row.getString("pmid");
+			String pubxref = row.getString("sgdrefid");
+			String strEvidence = row.getString("evidence_code");
+			Array withTextDb = row.getArray("withText");
+			String annotType = row.getString("annotation_type");
+			String taxonId = parseTaxonId(row.getString("taxid"));
+			String dataSourceCode = row.getString("source");
+			Array annotExt = row.getArray("annotext");
+			Array annotExtPre = row.getArray("annotextension");
 			
 			String annotationExtension = "";
 			String[] pre = (String[])annotExtPre.getArray();
@@ -235,7 +279,9 @@ public class GoAnnotationDbConverter extends BioDBConverter
 				}
 			}
 		}
+		metrics.startPhase("storeProductCollections");
 		storeProductCollections();
+		metrics.startPhase("storeEvidence");
 		storeEvidence();
 	}
 
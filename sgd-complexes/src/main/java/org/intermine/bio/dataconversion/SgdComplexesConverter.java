@@ -56,6 +56,7 @@ public class SgdComplexesConverter extends BioDBConverter
 
     private static final String TAXON_ID = "4932";
     private Item yorganism;
+    private final ConverterMetrics metrics;
 
     /**
      * Construct a new SgdComplexesConverter.
@@ -64,23 +65,68 @@ public class SgdComplexesConverter extends BioDBConverter
      * @param writer an ItemWriter used to handle Items created
      */
     public SgdComplexesConverter(Database database, Model model, ItemWriter writer) throws ObjectStoreException{
-        super(database, model, writer, DATA_SOURCE_NAME, DATASET_TITLE);
+        this(database, model, writer, new ConverterMetrics("sgd-complexes"));
+    }
+
+    private SgdComplexesConverter(Database database, Model model, ItemWriter writer,
+            ConverterMetrics metrics) throws ObjectStoreException {
+        super(database, model, metrics.track(writer), DATA_SOURCE_NAME, DATASET_TITLE);
+        this.metrics = metrics;
         yorganism = createItem("Organism");
         yorganism.setAttribute("taxonId", TAXON_ID);
         store(yorganism);
     }
 
+    /**
+     * Set the file the metrics of each phase are written to, e.g. sgd-complexes-metrics.tsv.
+     * By default, or if it is "none", no file is written.
+     *
+     * @param metricsFile name of the file
+     */
+    public void setMetricsFile(String metricsFile) {
+        metrics.setFile(metricsFile.trim());
+    }
+
+    /**
+     * Set how often, in seconds, a running phase logs how far it has got.
+     *
+     * @param metricsInterval interval in seconds
+     */
+    public void setMetricsInterval(String metricsInterval) {
+        metrics.setInterval(Long.parseLong(metricsInterval.trim()));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Item createItem(String className) {
+        if (metrics != null) {
+            metrics.itemCreated();
+        }
+        return super.createItem(className);
+    }
+
 
     /**
      * {@inheritDoc}
      */
     public void process() throws Exception {
         Connection connection = getDatabase().getConnection();
-        processComplexes(connection);
-        processComplexInteractions(connection);
-        storeProteins();
-        storeOtherBioentities();
-        storeComplexes();
+        try {
+            metrics.startPhase("complexes");
+            processComplexes(connection);
+            metrics.startPhase("complexInteractions");
+            processComplexInteractions(connection);
+            metrics.startPhase("storeProteins");
+            storeProteins();
+            metrics.startPhase("storeOtherBioentities");
+            storeOtherBioentities();
+            metrics.startPhase("storeComplexes");
+            storeComplexes();
+        } finally {
+            metrics.close();
+        }
     }
 
 
@@ -91,20 +137,22 @@ public class SgdComplexesConverter extends BioDBConverter
 
         ResultSet res = PROCESSOR.getComplexes(connection);
 
-        while (res.next()) {
-            String productId = res.getString("dbentity_id");
-            String complex_accession = res.getString("complex_accession");
-            String intact_id = res.getString("intact_id");
-            String systematic_name = res.getString("systematic_name");
-            String description = res.getString("description");
-            String properties = res.getString("properties");
-            String display_name = res.getString("db_display_name");
-            String eco_id = res.getString("eco_id");
-            Array aliases = res.getArray("ca_display_name");
+        RowDecoder row = new RowDecoder(res);
+        while (row.next()) {
+            metrics.row();
+            String productId = row.getString("dbentity_id");
+            String complex_accession = row.getString("complex_accession");
+            String intact_id = row.getString("intact_id");
+            String systematic_name = row.getString("systematic_name");
+            String description = row.getString("description");
+            String properties = row.getString("properties");
+            String display_name = row.getString("db_display_name");
+            String eco_id = row.getString("eco_id");
+            Array aliases = row.getArray("ca_display_name");
             String[] synonyms = (String[])aliases.getArray();
-            Array pubs = res.getArray("pmid");
+            Array pubs = row.getArray("pmid");
             Long[] pmids = (Long[])pubs.getArray();
-            Array gos = res.getArray("goids");
+            Array gos = row.getArray("goids");
             String[] goids = (String[])gos.getArray();
             System.out.println("productId is "+ productId);
             processComplex(complex_accession, intact_id, systematic_name, description, properties, display_name, eco_id, synonyms, pmids, goids);
@@ -297,22 +345,24 @@ public class SgdComplexesConverter extends BioDBConverter
 
         ResultSet res = PROCESSOR.getComplexInteractions(connection);
 
-        while (res.next()) {
+        RowDecoder row = new RowDecoder(res);
+        while (row.next()) {
+            metrics.row();
 
-            String dbentityId = res.getString("dbentity_id");
-            String complex_accession = res.getString("complex_accession");
-            String dbentity1 = res.getString("sgdid_1");
+            String dbentityId = row.getString("dbentity_id");
+            String complex_accession = row.getString("complex_accession");
+            String dbentity1 = row.getString("sgdid_1");
 
-            Array interactions = res.getArray("sgdid_2");
+            Array interactions = row.getArray("sgdid_2");
             String[] str_interactions = (String[])interactions.getArray();
 
-            String range_start = res.getString("range_start");
-            String range_end = res.getString("range_end");
-            String stochiometry = res.getString("stoichiometry");
-            String role = res.getString("role");
-            String type = res.getString("type");
-            String int_display_name = res.getString("interactordisplay");
-            String int_format_name = res.getString("interactorid");
+            String range_start = row.getString("range_start");
+            String range_end = row.getString("range_end");
+            String stochiometry = row.getString("stoichiometry");
+            String role = row.getString("role");
+            String type = row.getString("type");
+            String int_display_name = row.getString("interactordisplay");
+            String int_format_name = row.getString("interactorid");
 
             Item gene1 = null;
 
@@ -0,0 +1,161 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.TimeUnit;
+
+import org.intermine.dataconversion.ItemWriter;
+import org.intermine.metadata.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times single phases of SgdConverter on synthetic rows from SyntheticSgdProcessor.
+ *
+ * Each invocation gets a new converter, with the phases the measured one requires already
+ * processed, and processes every row of the measured phase once.  Items go to an ItemWriter
+ * that discards them, so what is measured is decoding rows, building items and handing them
+ * to the writer thread.  Run with
+ * -prof gc (the jmh task does) for allocation rates; rows per second and the peak heap of
+ * each invocation are printed after each iteration.
+ *
+ * @author
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+public class SgdConverterBenchmark {
+
+	@Param({"genes", "geneLocations", "allPubs", "pubsWithFeatures", "physicalInteractions"})
+	public String phase;
+
+	@Param({"10000"})
+	public int genes;
+
+	@Param({"200000"})
+	public int chromosomeLength;
+
+	private SgdConverter converter;
+	private SgdPhaseScheduler.Handler handler;
+	private QueryRows rows;
+	private long rowCount;
+	private long totalRows;
+	private long totalNanos;
+	private long peakHeap;
+	private long start;
+
+	/**
+	 * Build a converter and process the phases the measured one needs.
+	 *
+	 * @throws Exception if a phase fails
+	 */
+	@Setup(Level.Invocation)
+	public void setUp() throws Exception {
+		converter = new SgdConverter(null, Model.getInstanceByName("genomic"),
+				discardingWriter());
+		converter.setProcessor(new SyntheticSgdProcessor(genes, chromosomeLength));
+		SgdPhaseScheduler phases = new SgdPhaseScheduler((SgdPhaseScheduler.Connections) null, 0);
+		converter.addPhases(phases);
+		for (String required : phases.getRequiredPhases(phase)) {
+			phases.getHandler(required).process(phases.getQuery(required).execute(null));
+		}
+		handler = phases.getHandler(phase);
+		rows = phases.getQuery(phase).execute(null);
+		rowCount = SyntheticResultSet.rowCount(((ResultSetRows) rows).getResultSet());
+
+		System.gc();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+		start = System.nanoTime();
+	}
+
+	/**
+	 * Process every row of the phase and wait for its items to be written.
+	 *
+	 * @throws Exception if the phase fails
+	 */
+	@Benchmark
+	public void processPhase() throws Exception {
+		handler.process(rows);
+		converter.closeItemStore();
+	}
+
+	/**
+	 * Record rows and peak heap of the invocation.
+	 */
+	@TearDown(Level.Invocation)
+	public void recordInvocation() {
+		totalNanos += System.nanoTime() - start;
+		totalRows += rowCount;
+		long heap = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				heap += pool.getPeakUsage().getUsed();
+			}
+		}
+		peakHeap = Math.max(peakHeap, heap);
+		converter = null;
+		handler = null;
+		rows = null;
+	}
+
+	/**
+	 * Print rows per second and peak heap for the iteration.
+	 */
+	@TearDown(Level.Iteration)
+	public void report() {
+		if (totalNanos > 0) {
+			System.out.println(String.format("%n%s: %d rows, %.0f rows/s, peak heap %d MB", phase,
+					totalRows, totalRows / (totalNanos / 1e9), peakHeap / (1024 * 1024)));
+		}
+		totalRows = 0;
+		totalNanos = 0;
+		peakHeap = 0;
+	}
+
+	private static ItemWriter discardingWriter() {
+		final int[] stored = new int[1];
+		return (ItemWriter) Proxy.newProxyInstance(SgdConverterBenchmark.class.getClassLoader(),
+				new Class<?>[] {ItemWriter.class}, (proxy, method, args) -> {
+					if ("store".equals(method.getName())) {
+						return ++stored[0];
+					}
+					if ("hashCode".equals(method.getName())) {
+						return System.identityHashCode(proxy);
+					}
+					if ("equals".equals(method.getName())) {
+						return proxy == args[0];
+					}
+					return null;
+				});
+	}
+}
@@ -0,0 +1,157 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.StringReader;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A forward-only result set whose values are generated row by row, like MockMultiRowResultSet
+ * but without holding the rows, so phases can be driven with millions of them.
+ *
+ * @author
+ */
+public final class SyntheticResultSet implements InvocationHandler {
+
+	/**
+	 * Generates the values of the rows.
+	 */
+	public interface Rows {
+		/**
+		 * @param row 0-based row number
+		 * @param column 0-based column number
+		 * @return the value, as getString() would return it
+		 */
+		String value(long row, int column);
+	}
+
+	private final String[] columns;
+	private final Map<String, Integer> index = new HashMap<String, Integer>();
+	private final long rowCount;
+	private final Rows rows;
+	private long row = -1;
+	private boolean wasNull;
+
+	private SyntheticResultSet(String[] columns, long rowCount, Rows rows) {
+		this.columns = columns;
+		this.rowCount = rowCount;
+		this.rows = rows;
+		for (int i = 0; i < columns.length; i++) {
+			String key = columns[i].toLowerCase();
+			if (!index.containsKey(key)) {
+				index.put(key, i);
+			}
+		}
+	}
+
+	/**
+	 * @param columns column labels, in query order
+	 * @param rowCount number of rows
+	 * @param rows generates the values
+	 * @return the result set
+	 */
+	public static ResultSet create(String[] columns, long rowCount, Rows rows) {
+		return (ResultSet) Proxy.newProxyInstance(SyntheticResultSet.class.getClassLoader(),
+				new Class<?>[] {ResultSet.class}, new SyntheticResultSet(columns, rowCount, rows));
+	}
+
+	/**
+	 * @param res a result set created by create()
+	 * @return the number of rows it returns in all, or -1 if res wasn't created by create()
+	 */
+	public static long rowCount(ResultSet res) {
+		if (Proxy.isProxyClass(res.getClass())
+				&& Proxy.getInvocationHandler(res) instanceof SyntheticResultSet) {
+			return ((SyntheticResultSet) Proxy.getInvocationHandler(res)).rowCount;
+		}
+		return -1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if ("next".equals(name)) {
+			if (row < rowCount) {
+				row++;
+			}
+			return row < rowCount;
+		} else if ("getString".equals(name)) {
+			return value(args[0]);
+		} else if ("getCharacterStream".equals(name)) {
+			String value = value(args[0]);
+			return value == null ? null : new StringReader(value);
+		} else if ("getInt".equals(name)) {
+			String value = value(args[0]);
+			return value == null ? 0 : Integer.parseInt(value);
+		} else if ("wasNull".equals(name)) {
+			return wasNull;
+		} else if ("getMetaData".equals(name)) {
+			return Proxy.newProxyInstance(SyntheticResultSet.class.getClassLoader(),
+					new Class<?>[] {ResultSetMetaData.class}, this::metaData);
+		} else if ("close".equals(name)) {
+			row = rowCount;
+			return null;
+		} else if ("hashCode".equals(name)) {
+			return System.identityHashCode(proxy);
+		} else if ("equals".equals(name)) {
+			return proxy == args[0];
+		} else if ("toString".equals(name)) {
+			return "SyntheticResultSet[" + rowCount + " rows]";
+		}
+		throw new SQLFeatureNotSupportedException(name);
+	}
+
+	private Object metaData(Object proxy, Method method, Object[] args) throws SQLException {
+		String name = method.getName();
+		if ("getColumnCount".equals(name)) {
+			return columns.length;
+		} else if ("getColumnLabel".equals(name) || "getColumnName".equals(name)) {
+			return columns[((Integer) args[0]).intValue() - 1];
+		} else if ("getColumnType".equals(name)) {
+			return Types.VARCHAR;
+		} else if ("hashCode".equals(name)) {
+			return System.identityHashCode(proxy);
+		} else if ("equals".equals(name)) {
+			return proxy == args[0];
+		}
+		throw new SQLFeatureNotSupportedException(name);
+	}
+
+	private String value(Object column) throws SQLException {
+		int i;
+		if (column instanceof Integer) {
+			i = ((Integer) column).intValue() - 1;
+		} else {
+			Integer found = index.get(((String) column).toLowerCase());
+			if (found == null) {
+				throw new SQLException("no column named " + column);
+			}
+			i = found.intValue();
+		}
+		if (row < 0 || row >= rowCount) {
+			throw new SQLException("not on a row");
+		}
+		String value = rows.value(row, i);
+		wasNull = value == null;
+		return value;
+	}
+}
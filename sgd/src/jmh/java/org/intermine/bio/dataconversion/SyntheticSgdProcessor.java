@@ -0,0 +1,227 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+
+/**
+ * An SgdProcessor returning generated rows, shaped like the SGD queries' results, for the
+ * chromosome, gene, location, publication and physical interaction phases.
+ *
+ * Everything is derived from the number of genes, at roughly the proportions of the real
+ * database: ten publications, a hundred publication links and a hundred physical
+ * interactions per gene.
+ *
+ * @author
+ */
+public class SyntheticSgdProcessor extends SgdProcessor {
+
+	static final int PUBS_PER_GENE = 10;
+	static final int TOPICS_PER_PUB = 3;
+	static final int PUB_LINKS_PER_GENE = 100;
+	static final int INTERACTIONS_PER_GENE = 100;
+
+	private static final long GENE_BASE = 1000000L;
+	private static final long NISS_BASE = 3000000L;
+	private static final long PUB_BASE = 5000000L;
+	private static final String[] CHROMOSOMES = {
+		"Chromosome_I", "Chromosome_II", "Chromosome_III", "Chromosome_IV", "Chromosome_V",
+		"Chromosome_VI", "Chromosome_VII", "Chromosome_VIII", "Chromosome_IX", "Chromosome_X",
+		"Chromosome_XI", "Chromosome_XII", "Chromosome_XIII", "Chromosome_XIV", "Chromosome_XV",
+		"Chromosome_XVI", "Chromosome_Mito"
+	};
+	private static final String[] FEATURE_TYPES = {
+		"ORF", "ORF", "ORF", "ORF", "tRNA gene", "ncRNA gene", "pseudogene", "ARS", "snoRNA gene"
+	};
+	private static final String[] TOPICS = {
+		"Primary Literature", "Additional Literature", "Omics"
+	};
+	private static final String[] SYSTEMS = {
+		"Affinity Capture-MS", "Two-hybrid", "Reconstituted Complex", "Co-crystal Structure"
+	};
+
+	private final int genes;
+	private final int pubs;
+	private final int chromosomeLength;
+	private final String geneResidues;
+
+	/**
+	 * @param genes number of genes to generate
+	 * @param chromosomeLength residues per chromosome
+	 */
+	public SyntheticSgdProcessor(int genes, int chromosomeLength) {
+		this.genes = genes;
+		this.pubs = genes * PUBS_PER_GENE;
+		this.chromosomeLength = chromosomeLength;
+		this.geneResidues = residues(1500, 7);
+	}
+
+	@Override
+	protected ResultSet getChromosomeSequenceResults(Connection connection) {
+		String[] columns = {"contig_id", "format_name", "display_name", "residues", "length"};
+		return SyntheticResultSet.create(columns, CHROMOSOMES.length, (row, column) -> {
+			switch (column) {
+			case 0: return String.valueOf(row + 1);
+			case 1: return CHROMOSOMES[(int) row];
+			case 2: return "chromosome";
+			case 3: return residues(chromosomeLength, (int) row);
+			default: return String.valueOf(chromosomeLength);
+			}
+		});
+	}
+
+	@Override
+	protected ResultSet getChromosomalFeatureResults(Connection connection) {
+		String[] columns = {"dbentity_id", "systematic_name", "sgdid", "gene_name", "name_description",
+			"feature_type", "headline", "description", "qualifier", "dbentity_status"};
+		return SyntheticResultSet.create(columns, genes, (row, column) -> gene(GENE_BASE, row, column));
+	}
+
+	@Override
+	protected ResultSet getNISS(Connection connection) {
+		String[] columns = {"dbentity_id", "systematic_name", "sgdid", "gene_name", "name_description",
+			"headline", "description", "qualifier", "dbentity_status"};
+		return SyntheticResultSet.create(columns, Math.max(1, genes / 100),
+				(row, column) -> gene(NISS_BASE, row, column < 5 ? column : column + 1));
+	}
+
+	@Override
+	protected ResultSet getChromosomalFeatureLocationResults(Connection connection) {
+		String[] columns = {"contig_id", "format_name", "feature_type", "dbentity_id", "gene_name",
+			"systematic_name", "strand", "end_index", "start_index", "residues", "length"};
+		return SyntheticResultSet.create(columns, genes, (row, column) -> {
+			int chromosome = (int) (row % CHROMOSOMES.length);
+			long start = row / CHROMOSOMES.length * 2000 + 1;
+			switch (column) {
+			case 0: return String.valueOf(chromosome + 1);
+			case 1: return CHROMOSOMES[chromosome];
+			case 2: return "chromosome";
+			case 3: return String.valueOf(GENE_BASE + row);
+			case 4: return "GEN" + row;
+			case 5: return "Y" + row;
+			case 6: return row % 2 == 0 ? "+" : "-";
+			case 7: return String.valueOf(start + geneResidues.length() + 11);
+			case 8: return String.valueOf(start);
+			case 9: return geneResidues + tag(row);
+			default: return String.valueOf(geneResidues.length() + 12);
+			}
+		});
+	}
+
+	@Override
+	protected ResultSet getPubAllResults(Connection connection) {
+		String[] columns = {"dbentity_id", "pmid", "title", "volume", "page", "year", "issue",
+			"citation", "topic", "med_abbr", "text", "sgdid", "date_created"};
+		return SyntheticResultSet.create(columns, (long) pubs * TOPICS_PER_PUB, (row, column) -> {
+			long pub = row / TOPICS_PER_PUB;
+			switch (column) {
+			case 0: return String.valueOf(PUB_BASE + pub);
+			case 8: return TOPICS[(int) (row % TOPICS_PER_PUB)];
+			case 10: return "Abstract of publication " + pub + ", long enough to look like one. "
+					+ "It goes on for a while about the gene it describes and what was found.";
+			default: return pub(pub, columns[column]);
+			}
+		});
+	}
+
+	@Override
+	protected ResultSet getPubWithFeaturesResults(Connection connection) {
+		String[] columns = {"featureNo", "referenceFeatureNo", "pmid", "fulltext_status", "title",
+			"volume", "page", "year", "issue", "citation", "topic", "med_abbr", "sgdid", "date_created"};
+		return SyntheticResultSet.create(columns, (long) genes * PUB_LINKS_PER_GENE, (row, column) -> {
+			long gene = row / PUB_LINKS_PER_GENE;
+			long pub = (gene * 37 + row % PUB_LINKS_PER_GENE) % pubs;
+			switch (column) {
+			case 0: return String.valueOf(GENE_BASE + gene);
+			case 1: return String.valueOf(PUB_BASE + pub);
+			case 3: return "Y";
+			case 10: return TOPICS[(int) (row % TOPICS_PER_PUB)];
+			default: return pub(pub, columns[column]);
+			}
+		});
+	}
+
+	@Override
+	protected ResultSet getPhysicalInteractionResults(Connection connection) {
+		String[] columns = {"annotation_id", "dbentity1_id", "dbentity2_id",
+			"biogrid_experimental_system", "bait_hit", "display_name", "annotation_type", "modification",
+			"citation", "pmid", "title", "volume", "page", "year", "issue", "med_abbr", "reference_id",
+			"first_author", "sgdid", "note"};
+		return SyntheticResultSet.create(columns, (long) genes * INTERACTIONS_PER_GENE, (row, column) -> {
+			long pub = row % pubs;
+			switch (column) {
+			case 0: return String.valueOf(row + 1);
+			case 1: return String.valueOf(GENE_BASE + row % genes);
+			case 2: return String.valueOf(GENE_BASE + (row * 31 + 7) % genes);
+			case 3: return SYSTEMS[(int) (row % SYSTEMS.length)];
+			case 4: return row % 2 == 0 ? "Bait-Hit" : "Hit-Bait";
+			case 5: return "BioGRID";
+			case 6: return row % 3 == 0 ? "manually curated" : "high-throughput";
+			case 7: return null;
+			case 16: return String.valueOf(PUB_BASE + pub);
+			case 17: return "Author" + pub + " (2010)";
+			case 19: return row % 5 == 0 ? "a note" : null;
+			default: return pub(pub, columns[column]);
+			}
+		});
+	}
+
+	private static String gene(long base, long row, int column) {
+		switch (column) {
+		case 0: return String.valueOf(base + row);
+		case 1: return "Y" + (base == GENE_BASE ? "" : "N") + row;
+		case 2: return String.format("S%09d", base + row);
+		case 3: return row % 4 == 0 ? null : "GEN" + row;
+		case 4: return "Name description " + row;
+		case 5: return FEATURE_TYPES[(int) (row % FEATURE_TYPES.length)];
+		case 6: return "Protein of unknown function";
+		case 7: return "Protein of unknown function; localizes to the cytoplasm " + row;
+		case 8: return row % 3 == 0 ? "Verified" : "Uncharacterized";
+		default: return "Active";
+		}
+	}
+
+	private static String pub(long pub, String column) {
+		switch (column) {
+		case "pmid": return String.valueOf(10000000 + pub);
+		case "title": return "Title of publication " + pub;
+		case "volume": return String.valueOf(pub % 300);
+		case "page": return (pub % 900) + "-" + (pub % 900 + 12);
+		case "year": return String.valueOf(1990 + pub % 30);
+		case "issue": return String.valueOf(pub % 12 + 1);
+		case "citation": return "Author" + pub + " et al. (2010) Title of publication " + pub;
+		case "med_abbr": return "J Biol Chem";
+		case "sgdid": return String.format("S%09d", PUB_BASE + pub);
+		case "date_created": return "2010-01-01";
+		default: return null;
+		}
+	}
+
+	private static String residues(int length, int seed) {
+		StringBuilder sb = new StringBuilder(length);
+		long x = seed * 2654435761L + 1;
+		for (int i = 0; i < length; i++) {
+			x = x * 6364136223846793005L + 1442695040888963407L;
+			sb.append("ACGT".charAt((int) (x >>> 62)));
+		}
+		return sb.toString();
+	}
+
+	/** 12 residues telling genes apart, so their sequences aren't all shared */
+	private static String tag(long row) {
+		char[] tag = new char[12];
+		for (int i = 0; i < tag.length; i++) {
+			tag[i] = "ACGT".charAt((int) (row >>> (2 * i)) & 3);
+		}
+		return new String(tag);
+	}
+}
@@ -0,0 +1,542 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A forward-only copy of the rows of a query, so that it can be run and its rows fetched on
+ * another connection before the converter is ready to use them.
+ *
+ * Every value is kept as the string the driver returned for it, so getString() gives
+ * exactly what it would have given on the original result set.  Array columns also keep
+ * their elements for getArray().
+ *
+ * The rows read ahead are held in memory up to a Budget shared by every prefetched query;
+ * once it is spent the rest of the rows are read from the original result set as they are
+ * asked for.  Each row's share of the budget is given back as soon as the converter moves
+ * past it.  The same rows can also be streamed from a RowSource rather than held in memory,
+ * which is how SgdCheckpoint records and replays the rows of a phase.
+ *
+ * @author
+ */
+public final class BufferedRows implements QueryRows {
+
+	private final String[] labels;
+	private final int[] types;
+	private final Map<String, Integer> columns = new HashMap<String, Integer>();
+	private final List<Object[]> rows = new ArrayList<Object[]>();
+	private int next;
+	private Budget budget;
+	private long bytes;
+	private RowSource source;
+	private AutoCloseable onClose;
+	private boolean complete;
+	private boolean closed;
+	private boolean done;
+	private int count;
+	private Object[] row;
+	private boolean wasNull;
+
+	/**
+	 * Hands out the rows of streamed BufferedRows one at a time.
+	 */
+	interface RowSource {
+		/**
+		 * @return the values of the next row, as made by copyRow(), or null after the last
+		 * @throws SQLException if the row can't be read
+		 */
+		Object[] next() throws SQLException;
+
+		/**
+		 * @throws SQLException if the source can't be closed
+		 */
+		void close() throws SQLException;
+	}
+
+	/**
+	 * How many bytes of rows may be held in memory by the BufferedRows sharing it.
+	 */
+	public static final class Budget {
+		private final long max;
+		private final AtomicLong used = new AtomicLong();
+
+		/**
+		 * @param max the number of bytes
+		 */
+		public Budget(long max) {
+			this.max = max;
+		}
+
+		/**
+		 * @return the number of bytes held now
+		 */
+		public long getUsed() {
+			return used.get();
+		}
+
+		boolean hasRoom() {
+			return used.get() < max;
+		}
+
+		void take(long bytes) {
+			used.addAndGet(bytes);
+		}
+
+		void give(long bytes) {
+			used.addAndGet(-bytes);
+		}
+	}
+
+	private BufferedRows(String[] labels, int[] types) {
+		this.labels = labels;
+		this.types = types;
+		for (int i = 0; i < labels.length; i++) {
+			String key = labels[i].toLowerCase();
+			// like the drivers, a label that appears twice finds the first column
+			if (!columns.containsKey(key)) {
+				columns.put(key, i + 1);
+			}
+		}
+	}
+
+	/**
+	 * Read rows into memory while the budget has room.  If every row was read the rows are
+	 * closed, otherwise the rest are read from them after the buffered ones and they are closed
+	 * with the copy.
+	 *
+	 * @param res the rows to copy, with their labels and types
+	 * @param budget the memory the rows may take, shared with other BufferedRows
+	 * @return the copied rows
+	 * @throws SQLException if the rows can't be read
+	 */
+	public static BufferedRows buffer(final QueryRows res, Budget budget) throws SQLException {
+		boolean streaming = false;
+		try {
+			final BufferedRows copy = new BufferedRows(labels(res), types(res));
+			copy.budget = budget;
+			while (budget.hasRoom()) {
+				if (!res.next()) {
+					copy.complete = true;
+					break;
+				}
+				Object[] values = copyRow(res, copy.types);
+				long size = estimateBytes(values);
+				budget.take(size);
+				copy.bytes += size;
+				copy.rows.add(values);
+			}
+			if (!copy.complete) {
+				copy.source = new RowSource() {
+					public Object[] next() throws SQLException {
+						return res.next() ? copyRow(res, copy.types) : null;
+					}
+
+					public void close() throws SQLException {
+						res.close();
+					}
+				};
+				streaming = true;
+			}
+			return copy;
+		} finally {
+			if (!streaming) {
+				res.close();
+			}
+		}
+	}
+
+	/**
+	 * Make rows that are read from a source as they are asked for.
+	 *
+	 * @param labels the column labels
+	 * @param types the column types, from java.sql.Types
+	 * @param source the rows; closed when the BufferedRows are
+	 * @return the rows
+	 */
+	static BufferedRows stream(String[] labels, int[] types, RowSource source) {
+		BufferedRows copy = new BufferedRows(labels, types);
+		copy.source = source;
+		return copy;
+	}
+
+	/**
+	 * Read the values of the current row the way buffer() keeps them: each one as the string
+	 * the driver returns for it, array columns as an ArrayValue.
+	 *
+	 * @param res the rows, on a row
+	 * @param types the column types, from java.sql.Types
+	 * @return the values
+	 * @throws SQLException if the row can't be read
+	 */
+	static Object[] copyRow(QueryRows res, int[] types) throws SQLException {
+		Object[] values = new Object[types.length];
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] == Types.ARRAY) {
+				Array array = res.getArray(i + 1);
+				if (array != null) {
+					values[i] = new ArrayValue(res.getString(i + 1), array.getBaseType(),
+							(Object[]) array.getArray());
+					array.free();
+				}
+			} else {
+				values[i] = res.getString(i + 1);
+			}
+		}
+		return values;
+	}
+
+	static String[] labels(QueryRows res) throws SQLException {
+		String[] labels = res.getLabels();
+		if (labels == null) {
+			throw new SQLException("can't copy rows without column labels");
+		}
+		return labels;
+	}
+
+	static int[] types(QueryRows res) throws SQLException {
+		int[] types = res.getTypes();
+		if (types == null) {
+			throw new SQLException("can't copy rows without column types");
+		}
+		return types;
+	}
+
+	/**
+	 * Rough number of bytes the values of a row take.
+	 *
+	 * @param values the values, as made by copyRow()
+	 * @return estimated size in bytes
+	 */
+	static long estimateBytes(Object[] values) {
+		long size = 16 + 8L * values.length;
+		for (Object value : values) {
+			if (value instanceof ArrayValue) {
+				ArrayValue array = (ArrayValue) value;
+				size += 32 + SgdEntityRegistry.stringBytes(array.text);
+				for (Object element : array.elements) {
+					size += 8 + (element == null ? 0 : SgdEntityRegistry.stringBytes(element.toString()));
+				}
+			} else if (value != null) {
+				size += SgdEntityRegistry.stringBytes((String) value);
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @param onClose closed with these rows, e.g. the connection the rest of the rows
+	 *            are read from
+	 */
+	void setOnClose(AutoCloseable onClose) {
+		this.onClose = onClose;
+	}
+
+	/**
+	 * @return true if every row was read into memory by buffer()
+	 */
+	public boolean isComplete() {
+		return complete;
+	}
+
+	/**
+	 * @return the number of rows moved to so far
+	 */
+	public int getRowCount() {
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String[] getLabels() {
+		return labels.clone();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int[] getTypes() {
+		return types.clone();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int findColumn(String label) throws SQLException {
+		Integer index = columns.get(label.toLowerCase());
+		if (index == null) {
+			throw new SQLException("no column named " + label);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean next() throws SQLException {
+		checkOpen();
+		if (done) {
+			return false;
+		}
+		if (next < rows.size()) {
+			row = rows.set(next++, null);
+			long size = estimateBytes(row);
+			budget.give(size);
+			bytes -= size;
+			if (next == rows.size()) {
+				rows.clear();
+				next = 0;
+			}
+		} else {
+			row = source == null ? null : source.next();
+		}
+		if (row == null) {
+			done = true;
+			return false;
+		}
+		count++;
+		return true;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getString(int column) throws SQLException {
+		Object value = value(column);
+		return value instanceof ArrayValue ? ((ArrayValue) value).text : (String) value;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public int getInt(int column) throws SQLException {
+		return (int) getLong(column);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public long getLong(int column) throws SQLException {
+		String value = getString(column);
+		try {
+			return value == null ? 0L : Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			throw new SQLException("not a whole number: " + value, e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public double getDouble(int column) throws SQLException {
+		String value = getString(column);
+		try {
+			return value == null ? 0d : Double.parseDouble(value.trim());
+		} catch (NumberFormatException e) {
+			throw new SQLException("not a number: " + value, e);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Array getArray(int column) throws SQLException {
+		return (Array) value(column);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Reader getCharacterStream(int column) throws SQLException {
+		String value = getString(column);
+		return value == null ? null : new StringReader(value);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean wasNull() {
+		return wasNull;
+	}
+
+	/**
+	 * @return true if no row has been moved to yet and there may be one
+	 */
+	public boolean isBeforeFirst() {
+		return count == 0 && !done && (source != null || !rows.isEmpty());
+	}
+
+	/**
+	 * @return true if the rows were read to the end, and there was at least one
+	 */
+	public boolean isAfterLast() {
+		return done && count > 0;
+	}
+
+	/**
+	 * Close the rows, giving back the memory they took and closing what the rest of them were
+	 * to be read from.
+	 *
+	 * @throws SQLException if the source can't be closed
+	 */
+	public void close() throws SQLException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		row = null;
+		rows.clear();
+		if (budget != null) {
+			budget.give(bytes);
+		}
+		bytes = 0;
+		try {
+			if (source != null) {
+				source.close();
+			}
+		} finally {
+			if (onClose != null) {
+				try {
+					onClose.close();
+				} catch (SQLException e) {
+					throw e;
+				} catch (Exception e) {
+					throw new SQLException(e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return true once the rows have been closed
+	 */
+	public boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return "BufferedRows[" + (closed ? "closed" : count + " rows read, " + rows.size()
+				+ " buffered" + (source != null ? ", streamed" : "")) + "]";
+	}
+
+	private Object value(int column) throws SQLException {
+		checkOpen();
+		if (row == null) {
+			throw new SQLException("not on a row");
+		}
+		if (column < 1 || column > labels.length) {
+			throw new SQLException("column index out of range: " + column);
+		}
+		Object value = row[column - 1];
+		wasNull = value == null;
+		return value;
+	}
+
+	private void checkOpen() throws SQLException {
+		if (closed) {
+			throw new SQLException("rows are closed");
+		}
+	}
+
+	/**
+	 * An array column: the text the driver printed for it plus its elements.
+	 */
+	static final class ArrayValue implements Array {
+		private final String text;
+		private final int baseType;
+		private final Object[] elements;
+
+		ArrayValue(String text, int baseType, Object[] elements) {
+			this.text = text;
+			this.baseType = baseType;
+			this.elements = elements;
+		}
+
+		String getText() {
+			return text;
+		}
+
+		Object[] getElements() {
+			return elements;
+		}
+
+		public int getBaseType() {
+			return baseType;
+		}
+
+		public Object getArray() {
+			return elements;
+		}
+
+		public void free() {
+			// nothing is held outside the array
+		}
+
+		public String getBaseTypeName() throws SQLException {
+			throw unsupported("getBaseTypeName");
+		}
+
+		public Object getArray(Map<String, Class<?>> map) throws SQLException {
+			throw unsupported("getArray");
+		}
+
+		public Object getArray(long index, int count) throws SQLException {
+			throw unsupported("getArray");
+		}
+
+		public Object getArray(long index, int count, Map<String, Class<?>> map)
+				throws SQLException {
+			throw unsupported("getArray");
+		}
+
+		public ResultSet getResultSet() throws SQLException {
+			throw unsupported("getResultSet");
+		}
+
+		public ResultSet getResultSet(Map<String, Class<?>> map) throws SQLException {
+			throw unsupported("getResultSet");
+		}
+
+		public ResultSet getResultSet(long index, int count) throws SQLException {
+			throw unsupported("getResultSet");
+		}
+
+		public ResultSet getResultSet(long index, int count, Map<String, Class<?>> map)
+				throws SQLException {
+			throw unsupported("getResultSet");
+		}
+
+		@Override
+		public String toString() {
+			return text;
+		}
+
+		private static SQLException unsupported(String name) {
+			return new SQLFeatureNotSupportedException(name + " is not supported on a buffered array");
+		}
+	}
+}
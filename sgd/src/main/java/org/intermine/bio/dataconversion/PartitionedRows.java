@@ -0,0 +1,283 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The rows of a query split into partitions, e.g. annotation_id ranges, handed out as one
+ * result partition after partition.
+ *
+ * The partitions are read by reader threads, each on a connection of its own.  A reader
+ * runs the query of the next partition nobody has taken yet, decodes its rows the way
+ * BufferedRows.copyRow() does and queues them in blocks; the converter's thread takes the
+ * blocks of partition 0 to the end, then those of partition 1, and so on.  So the rows come
+ * out in the same order however the readers are scheduled, and everything made from them,
+ * items and their identifiers included, is made on the converter's thread as with any other
+ * phase.  A reader that has queued QUEUED_BLOCKS blocks of a partition the converter hasn't
+ * got to yet waits for it, so about readers * (QUEUED_BLOCKS + 1) blocks of rows are held in
+ * memory however big the partitions are.
+ *
+ * With no readers the partitions are queried one after another on the converter's own
+ * connection and streamed.
+ *
+ * @author
+ */
+final class PartitionedRows implements BufferedRows.RowSource {
+
+	private static final Logger LOG = Logger.getLogger(PartitionedRows.class);
+	static final int BLOCK_ROWS = 1000;
+	static final int QUEUED_BLOCKS = 4;
+	private static final Object[][] END = new Object[0][];
+
+	private final String name;
+	private final SgdPhaseScheduler.PartitionQuery query;
+	private final int partitions;
+	private final Connection connection;
+	private final List<BlockingQueue<Object[][]>> queues;
+	private final CountDownLatch described = new CountDownLatch(1);
+	private final AtomicInteger next = new AtomicInteger();
+	private ExecutorService pool;
+	private volatile String[] labels;
+	private volatile int[] types;
+	private volatile Exception failure;
+	private int current;
+	private Object[][] block;
+	private int position;
+	private QueryRows res;
+
+	private PartitionedRows(String name, SgdPhaseScheduler.PartitionQuery query, int partitions,
+			Connection connection, int readers) {
+		this.name = name;
+		this.query = query;
+		this.partitions = partitions;
+		this.connection = connection;
+		this.queues = new ArrayList<BlockingQueue<Object[][]>>();
+		if (readers > 0) {
+			for (int i = 0; i < partitions; i++) {
+				queues.add(new ArrayBlockingQueue<Object[][]>(QUEUED_BLOCKS));
+			}
+		}
+	}
+
+	/**
+	 * Start reading the partitions of a query.
+	 *
+	 * @param name the name of the phase, for messages
+	 * @param query runs the query of a partition
+	 * @param partitions how many partitions there are, at least 1
+	 * @param connections where the readers get their connections
+	 * @param readers how many partitions may be read at once; 0 reads them one after another
+	 *            on the connection given
+	 * @param connection the converter's connection, used if there are no readers
+	 * @return the rows of every partition, partition 0's first
+	 * @throws SQLException if the query of the first partition fails
+	 */
+	static BufferedRows open(String name, SgdPhaseScheduler.PartitionQuery query, int partitions,
+			SgdPhaseScheduler.Connections connections, int readers, Connection connection)
+			throws SQLException {
+		readers = Math.min(readers, partitions);
+		PartitionedRows source = new PartitionedRows(name, query, partitions, connection, readers);
+		try {
+			if (readers > 0) {
+				source.startReaders(connections, readers);
+				source.awaitLabels();
+			} else {
+				source.res = query.execute(connection, 0, partitions);
+				source.labels = BufferedRows.labels(source.res);
+				source.types = BufferedRows.types(source.res);
+			}
+		} catch (SQLException e) {
+			source.close();
+			throw e;
+		}
+		return BufferedRows.stream(source.labels, source.types, source);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object[] next() throws SQLException {
+		if (pool == null) {
+			return nextOnConnection();
+		}
+		while (block == null || position == block.length) {
+			if (current == partitions) {
+				return null;
+			}
+			block = take(queues.get(current));
+			position = 0;
+			if (block == END) {
+				block = null;
+				current++;
+			}
+		}
+		Object[] row = block[position];
+		block[position++] = null;
+		return row;
+	}
+
+	/**
+	 * Stop the readers, closing their queries and connections.
+	 */
+	public void close() throws SQLException {
+		if (pool != null) {
+			pool.shutdownNow();
+			try {
+				if (!pool.awaitTermination(1, TimeUnit.MINUTES)) {
+					LOG.warn("the readers of " + name + " didn't stop");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			for (BlockingQueue<Object[][]> queue : queues) {
+				queue.clear();
+			}
+		} else if (res != null) {
+			res.close();
+			res = null;
+		}
+	}
+
+	private Object[] nextOnConnection() throws SQLException {
+		while (res != null) {
+			if (res.next()) {
+				return BufferedRows.copyRow(res, types);
+			}
+			res.close();
+			res = null;
+			if (++current < partitions) {
+				res = query.execute(connection, current, partitions);
+			}
+		}
+		return null;
+	}
+
+	private void startReaders(final SgdPhaseScheduler.Connections connections, int count) {
+		pool = Executors.newFixedThreadPool(count, new ReaderThreadFactory(name));
+		for (int i = 0; i < count; i++) {
+			pool.execute(() -> read(connections));
+		}
+	}
+
+	/**
+	 * Read partitions until there are none left.  Runs on a reader thread, with a connection
+	 * of its own.
+	 */
+	private void read(SgdPhaseScheduler.Connections connections) {
+		try {
+			Connection own = connections.getConnection();
+			try {
+				int partition;
+				while ((partition = next.getAndIncrement()) < partitions) {
+					readPartition(own, partition);
+				}
+			} finally {
+				SgdPhaseScheduler.release(own);
+			}
+		} catch (InterruptedException e) {
+			// closed before every row was taken
+		} catch (Exception e) {
+			// the converter stops at the first block it can't have
+			failure = e;
+			described.countDown();
+		}
+	}
+
+	private void readPartition(Connection own, int partition) throws Exception {
+		BlockingQueue<Object[][]> queue = queues.get(partition);
+		QueryRows rows = query.execute(own, partition, partitions);
+		try {
+			int[] columns = BufferedRows.types(rows);
+			if (partition == 0) {
+				labels = BufferedRows.labels(rows);
+				types = columns;
+				described.countDown();
+			}
+			List<Object[]> values = new ArrayList<Object[]>(BLOCK_ROWS);
+			while (rows.next()) {
+				values.add(BufferedRows.copyRow(rows, columns));
+				if (values.size() == BLOCK_ROWS) {
+					queue.put(values.toArray(new Object[values.size()][]));
+					values.clear();
+				}
+			}
+			if (!values.isEmpty()) {
+				queue.put(values.toArray(new Object[values.size()][]));
+			}
+			queue.put(END);
+		} finally {
+			rows.close();
+		}
+	}
+
+	private void awaitLabels() throws SQLException {
+		try {
+			described.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted waiting for " + name, e);
+		}
+		checkFailure();
+	}
+
+	private Object[][] take(BlockingQueue<Object[][]> queue) throws SQLException {
+		try {
+			while (true) {
+				Object[][] taken = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (taken != null) {
+					return taken;
+				}
+				checkFailure();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("interrupted reading " + name, e);
+		}
+	}
+
+	private void checkFailure() throws SQLException {
+		Exception e = failure;
+		if (e instanceof SQLException) {
+			throw new SQLException("can't read " + name + ": " + e.getMessage(), e);
+		} else if (e != null) {
+			throw new SQLException("can't read " + name, e);
+		}
+	}
+
+	private static final class ReaderThreadFactory implements ThreadFactory {
+		private final String name;
+		private final AtomicInteger count = new AtomicInteger();
+
+		ReaderThreadFactory(String name) {
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "sgd-" + name + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
@@ -0,0 +1,474 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Lets a failed SGD conversion be restarted without running the queries of the phases that
+ * had already finished.
+ *
+ * As each phase's rows are processed they are also written to a file in the checkpoint
+ * directory, and once the phase has finished its name is added to the directory's manifest.
+ * A restarted run with resume set reads the rows of those phases back from disk instead of
+ * querying the database, and queries the rest as usual.
+ *
+ * The converter's maps and item identifiers are not saved as such: the phases are processed
+ * in the same order with the same rows, so replaying them builds exactly the same state and
+ * the same items, and those items have to be stored again anyway, as a new run starts from
+ * an empty items database.  What a resumed run saves is the time spent in the database.
+ *
+ * The manifest records a signature of the phases and the converter settings it was written
+ * for.  If these don't match the run being resumed the checkpoint is ignored and started
+ * afresh.  When every phase has finished the checkpoint is deleted.
+ *
+ * @author
+ */
+public class SgdCheckpoint {
+
+	private static final Logger LOG = Logger.getLogger(SgdCheckpoint.class);
+	private static final String MANIFEST = "manifest";
+	private static final String ROWS = ".rows.gz";
+	private static final String HEADER = "# SGD conversion checkpoint";
+	private static final int MAGIC = 0x53474452;
+	private static final int VERSION = 1;
+	private static final int END = 0;
+	private static final int ROW = 1;
+	private static final int NULL = 0;
+	private static final int TEXT = 1;
+	private static final int ARRAY = 2;
+	private static final Class<?>[] ELEMENT_TYPES = {String.class, Integer.class, Long.class,
+		Short.class, Double.class, Float.class, Boolean.class, BigDecimal.class};
+
+	private final File dir;
+	private final boolean resume;
+	private final Map<String, Long> completed = new LinkedHashMap<String, Long>();
+	private final Map<String, Long> recorded = new HashMap<String, Long>();
+	private String signature;
+	private int replayed;
+	private long replayedRows;
+
+	/**
+	 * Construct a new SgdCheckpoint.
+	 *
+	 * @param dir the directory to keep the checkpoint in, created if need be
+	 * @param resume true to replay the phases a previous run finished
+	 */
+	public SgdCheckpoint(File dir, boolean resume) {
+		this.dir = dir;
+		this.resume = resume;
+	}
+
+	/**
+	 * Read the manifest of a previous run if resuming, otherwise start a new checkpoint.
+	 *
+	 * @param phases the names of the phases of this run, in order
+	 * @param settings anything else that changes the rows or how they are processed
+	 * @throws IOException if the directory can't be read or written
+	 */
+	public void open(List<String> phases, String settings) throws IOException {
+		signature = digest(phases + "\n" + settings);
+		completed.clear();
+		if (resume && readManifest()) {
+			String message = "Resuming from checkpoint in " + dir + ": " + completed.size()
+					+ " phases finished before " + completed.keySet();
+			System.out.println(message);
+			LOG.info(message);
+			return;
+		}
+		clear();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("can't create checkpoint directory " + dir);
+		}
+		writeLines(HEADER + "\nsignature " + signature + "\n", false);
+	}
+
+	/**
+	 * @param phase name of a phase
+	 * @return true if a previous run finished the phase and its rows can be replayed
+	 */
+	public boolean isComplete(String phase) {
+		return completed.containsKey(phase) && rowsFile(phase).isFile();
+	}
+
+	/**
+	 * @param phase name of a finished phase
+	 * @return the number of rows it had
+	 */
+	public long getRows(String phase) {
+		Long rows = completed.get(phase);
+		return rows == null ? -1 : rows.longValue();
+	}
+
+	/**
+	 * Read the rows of a finished phase back from disk.
+	 *
+	 * @param phase name of the phase
+	 * @return the rows, as they were read from the database
+	 * @throws IOException if the file can't be read
+	 */
+	public QueryRows replay(String phase) throws IOException {
+		final DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(rowsFile(phase)), 1 << 16), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				throw new IOException("not a checkpoint file: " + rowsFile(phase));
+			}
+			int count = in.readInt();
+			String[] labels = new String[count];
+			final int[] types = new int[count];
+			for (int i = 0; i < count; i++) {
+				labels[i] = readString(in);
+				types[i] = in.readInt();
+			}
+			replayed++;
+			return BufferedRows.stream(labels, types, new BufferedRows.RowSource() {
+				public Object[] next() throws SQLException {
+					try {
+						if (in.readByte() != ROW) {
+							return null;
+						}
+						replayedRows++;
+						return readRow(in, types.length);
+					} catch (IOException e) {
+						throw new SQLException("can't read checkpoint of " + phase, e);
+					}
+				}
+
+				public void close() throws SQLException {
+					try {
+						in.close();
+					} catch (IOException e) {
+						throw new SQLException(e);
+					}
+				}
+			});
+		} catch (IOException e) {
+			in.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Write the rows of a phase to disk as they are read.
+	 *
+	 * @param phase name of the phase
+	 * @param res the rows, positioned before the first
+	 * @return rows over those of res, which write each row they move to
+	 * @throws IOException if the file can't be written
+	 * @throws SQLException if the labels and types can't be read
+	 */
+	public QueryRows record(String phase, QueryRows res) throws IOException, SQLException {
+		String[] labels = BufferedRows.labels(res);
+		int[] types = BufferedRows.types(res);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(partFile(phase)), 1 << 16) {
+					{
+						def.setLevel(Deflater.BEST_SPEED);
+					}
+				}, 1 << 16));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(labels.length);
+			for (int i = 0; i < labels.length; i++) {
+				writeString(out, labels[i]);
+				out.writeInt(types[i]);
+			}
+		} catch (IOException e) {
+			out.close();
+			throw e;
+		}
+		return BufferedRows.stream(labels, types, new Recorder(phase, res, types, out));
+	}
+
+	/**
+	 * Record that a phase has finished.  Its rows must have been recorded and the rows
+	 * closed.
+	 *
+	 * @param phase name of the phase
+	 * @throws IOException if the manifest can't be written
+	 */
+	public void complete(String phase) throws IOException {
+		Long rows = recorded.remove(phase);
+		if (rows == null) {
+			throw new IOException("no rows were recorded for " + phase);
+		}
+		Files.move(partFile(phase).toPath(), rowsFile(phase).toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		writeLines("done " + phase + " " + rows + "\n", true);
+		completed.put(phase, rows);
+	}
+
+	/**
+	 * Delete the checkpoint, once every phase has finished.
+	 *
+	 * @throws IOException if a file can't be deleted
+	 */
+	public void finish() throws IOException {
+		String message = "Conversion finished, deleting checkpoint in " + dir;
+		if (replayed > 0) {
+			message += " (" + replayed + " phases, " + replayedRows + " rows replayed from it)";
+		}
+		System.out.println(message);
+		LOG.info(message);
+		clear();
+	}
+
+	private boolean readManifest() throws IOException {
+		File manifest = new File(dir, MANIFEST);
+		if (!manifest.isFile()) {
+			System.out.println("No checkpoint in " + dir + ", starting from the beginning");
+			return false;
+		}
+		List<String> lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+		if (lines.size() < 2 || !HEADER.equals(lines.get(0))
+				|| !("signature " + signature).equals(lines.get(1))) {
+			String message = "Checkpoint in " + dir + " was written for different phases or"
+					+ " settings, starting from the beginning";
+			System.out.println(message);
+			LOG.warn(message);
+			return false;
+		}
+		for (String line : lines.subList(2, lines.size())) {
+			String[] fields = line.split(" ");
+			// a line cut short by the failure is simply not a finished phase
+			if (fields.length == 3 && "done".equals(fields[0])) {
+				try {
+					completed.put(fields[1], Long.valueOf(fields[2]));
+				} catch (NumberFormatException e) {
+					LOG.warn("ignoring checkpoint manifest line: " + line);
+				}
+			}
+		}
+		return true;
+	}
+
+	private void writeLines(String lines, boolean append) throws IOException {
+		FileOutputStream out = new FileOutputStream(new File(dir, MANIFEST), append);
+		try {
+			out.write(lines.getBytes(StandardCharsets.UTF_8));
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void clear() throws IOException {
+		File[] files = dir.listFiles();
+		if (files == null) {
+			return;
+		}
+		for (File file : files) {
+			String name = file.getName();
+			if ((MANIFEST.equals(name) || name.endsWith(ROWS) || name.endsWith(ROWS + ".part"))
+					&& !file.delete()) {
+				throw new IOException("can't delete " + file);
+			}
+		}
+	}
+
+	private File rowsFile(String phase) {
+		return new File(dir, phase + ROWS);
+	}
+
+	private File partFile(String phase) {
+		return new File(dir, phase + ROWS + ".part");
+	}
+
+	private static void writeRow(DataOutputStream out, Object[] values) throws IOException {
+		out.writeByte(ROW);
+		for (Object value : values) {
+			if (value == null) {
+				out.writeByte(NULL);
+			} else if (value instanceof BufferedRows.ArrayValue) {
+				BufferedRows.ArrayValue array = (BufferedRows.ArrayValue) value;
+				out.writeByte(ARRAY);
+				writeString(out, array.getText());
+				out.writeInt(array.getBaseType());
+				Object[] elements = array.getElements();
+				out.writeByte(elementType(elements.getClass().getComponentType()));
+				out.writeInt(elements.length);
+				for (Object element : elements) {
+					writeString(out, element == null ? null : element.toString());
+				}
+			} else {
+				out.writeByte(TEXT);
+				writeString(out, (String) value);
+			}
+		}
+	}
+
+	private static Object[] readRow(DataInputStream in, int count) throws IOException {
+		Object[] values = new Object[count];
+		for (int i = 0; i < count; i++) {
+			int kind = in.readByte();
+			if (kind == TEXT) {
+				values[i] = readString(in);
+			} else if (kind == ARRAY) {
+				String text = readString(in);
+				int baseType = in.readInt();
+				Class<?> type = ELEMENT_TYPES[in.readByte()];
+				Object[] elements = (Object[]) java.lang.reflect.Array.newInstance(type,
+						in.readInt());
+				for (int j = 0; j < elements.length; j++) {
+					elements[j] = element(type, readString(in));
+				}
+				values[i] = new BufferedRows.ArrayValue(text, baseType, elements);
+			} else if (kind != NULL) {
+				throw new IOException("corrupt checkpoint file, value type " + kind);
+			}
+		}
+		return values;
+	}
+
+	private static int elementType(Class<?> type) throws IOException {
+		for (int i = 0; i < ELEMENT_TYPES.length; i++) {
+			if (ELEMENT_TYPES[i] == type) {
+				return i;
+			}
+		}
+		throw new IOException("can't checkpoint an array of " + type.getName());
+	}
+
+	private static Object element(Class<?> type, String value) {
+		if (value == null || type == String.class) {
+			return value;
+		} else if (type == Integer.class) {
+			return Integer.valueOf(value);
+		} else if (type == Long.class) {
+			return Long.valueOf(value);
+		} else if (type == Short.class) {
+			return Short.valueOf(value);
+		} else if (type == Double.class) {
+			return Double.valueOf(value);
+		} else if (type == Float.class) {
+			return Float.valueOf(value);
+		} else if (type == Boolean.class) {
+			return Boolean.valueOf(value);
+		}
+		return new BigDecimal(value);
+	}
+
+	// writeUTF() is limited to 64k, too short for a chromosome sequence
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		try {
+			in.readFully(bytes);
+		} catch (EOFException e) {
+			throw new IOException("checkpoint file is cut short", e);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static String digest(String text) {
+		try {
+			StringBuilder sb = new StringBuilder();
+			for (byte b : MessageDigest.getInstance("SHA-1").digest(
+					text.getBytes(StandardCharsets.UTF_8))) {
+				sb.append(String.format("%02x", b));
+			}
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Reads the rows of the real result set, writing each one it hands out.
+	 */
+	private final class Recorder implements BufferedRows.RowSource {
+		private final String phase;
+		private final QueryRows res;
+		private final int[] types;
+		private final DataOutputStream out;
+		private long rows;
+		private boolean closed;
+
+		Recorder(String phase, QueryRows res, int[] types, DataOutputStream out) {
+			this.phase = phase;
+			this.res = res;
+			this.types = types;
+			this.out = out;
+		}
+
+		public Object[] next() throws SQLException {
+			if (!res.next()) {
+				return null;
+			}
+			Object[] values = BufferedRows.copyRow(res, types);
+			try {
+				writeRow(out, values);
+			} catch (IOException e) {
+				throw new SQLException("can't write checkpoint of " + phase, e);
+			}
+			rows++;
+			return values;
+		}
+
+		public void close() throws SQLException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				try {
+					out.writeByte(END);
+				} finally {
+					out.close();
+				}
+				recorded.put(phase, rows);
+			} catch (IOException e) {
+				throw new SQLException("can't write checkpoint of " + phase, e);
+			} finally {
+				res.close();
+			}
+		}
+	}
+}
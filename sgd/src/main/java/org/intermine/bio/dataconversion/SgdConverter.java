@@ -10,24 +10,29 @@ package org.intermine.bio.dataconversion;
  *
  */
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.Connection;
 import java.util.ArrayList;
-import java.sql.Array;
-import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 
-import org.apache.commons.collections.keyvalue.MultiKey;
 import org.apache.commons.lang.StringUtils; 
 //import org.biojava.bio.program.homologene.OrthoPairSet.Iterator;
 import org.intermine.dataconversion.ItemWriter;
+import org.intermine.metadata.ClassDescriptor;
 import org.intermine.metadata.Model;
 import org.intermine.objectstore.ObjectStoreException;
 import org.intermine.sql.Database;
+import org.intermine.xml.full.Attribute;
 import org.intermine.xml.full.Item;
+import org.intermine.xml.full.Reference;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.Iterator;
@@ -44,28 +49,38 @@ public class SgdConverter extends BioDBConverter {
 	private static final String DATA_SOURCE_NAME = "SGD";
 	private Map<String, String> chromosomes = new HashMap();
 	private Map<String, String> plasmids = new HashMap();
+	private final Map<String, String> sequenceNames = new HashMap<String, String>();
 	private Map<String, String> sequences = new HashMap();
-	private Map<String, Item> interactions = new HashMap();
-	private Map<String, String> interactionitems = new HashMap();
-	private Map<String, String> interactionterms = new HashMap<String, String>();
-	private Map<MultiKey, Item> interactionsnew = new HashMap<MultiKey, Item>();
+	private Map<String, String> sequenceDigests = new HashMap<String, String>();
+	private final SgdResidueBuffer residueBuffer = new SgdResidueBuffer();
+	private Map<String, Item[]> interactionitems = new HashMap<String, Item[]>();
 	private final Map<String, Item> ecoMap = new HashMap<String, Item>(); //regulation data
 	private Map<String, String> literatureTopics = new HashMap();
-	private Map<String, Item> genes = new HashMap();
+	private final SgdEntityRegistry registry = new SgdEntityRegistry();
+	private SgdEntityRegistry.EntityMap<Item> genes = registry.register("genes");
 	private Map<String, Item> hgncgenes = new HashMap();
-	private Map<String, Item> alleles = new HashMap();
-	private Map<String, Item> transcripts = new HashMap();
-	private Map<String, Item> proteins = new HashMap();
+	private SgdEntityRegistry.EntityMap<Item> alleles = registry.register("alleles");
+	private SgdEntityRegistry.EntityMap<Item> transcripts = registry.register("transcripts");
+	private SgdEntityRegistry.EntityMap<Item> proteins = registry.register("proteins");
 	private Map<String, Item> genesName = new HashMap();
 	private Map<String, String> genesChromosomes = new HashMap();
 	private Map<String, Item> allelesName = new HashMap();
 	private Map<String, String> genesAliases = new HashMap();
 	private Map<String, String> alleleAliases = new HashMap();
-	private Map<String, String> synonyms = new HashMap();
-	private Map<String, Item> publications = new HashMap();
+	private final AsyncItemStore itemStore = new AsyncItemStore("sgd", this::storeNow);
+	private final SgdSynonymWriter synonymWriter = new SgdSynonymWriter(this, itemStore);
+	private final SgdPublicationIndex publications = new SgdPublicationIndex(registry,
+			() -> createItem("Publication").getIdentifier());
+	private final SgdInteractionBuilder interactionBuilder = new SgdInteractionBuilder(this, itemStore, publications);
+	private final SgdPhenotypeDecoder phenotypeDecoder = new SgdPhenotypeDecoder();
+	private final SgdDeferredStore deferred = new SgdDeferredStore();
+	private final SgdDeferredStore.Log geneUpdates = deferred.open("genes");
+	private final SgdDeferredStore.Log alleleUpdates = deferred.open("alleles");
+	private final SgdDeferredStore.Log transcriptUpdates = deferred.open("transcripts");
+	private final SgdDeferredStore.Log proteinUpdates = deferred.open("proteins");
+	private final SgdDeferredStore.Log publicationUpdates = deferred.open("publications");
+	private final SgdDeferredStore.Log pathwayUpdates = deferred.open("pathways");
 	private Map<String, Item> interactiontype = new HashMap();
-	private Map<String, Item> interactiondetail = new HashMap();
-	private Map<String, Item> experimenttype = new HashMap();
 	private Map<String, Item> interactiondetectionmethods = new HashMap();
 	private Map<String, Item> pathways = new HashMap();
 	private Map<String, Item> pathwaysummarys = new HashMap();
@@ -80,12 +95,29 @@ public class SgdConverter extends BioDBConverter {
 	private static final String TAXON_ID = "4932";
 	private static final String H_TAXON_ID = "9606";
 	private Item organism;
+	private final SgdFeatureTypes featureTypes;
 	private Map<String, String> featureMap = new HashMap();
 	private static final boolean LOCAL = false;
+	private static final String KEYS_FILE = "sgd_keys.properties";
 	private String licence;
-
-
-	private static final SgdProcessor PROCESSOR = new SgdProcessor();
+	private String snapshotFile;
+	private String locationIndexFile;
+	private FeatureIntervalIndex.Builder locationIndex;
+	private boolean incremental;
+	private String targetMine;
+	private String integratedSnapshot;
+	private String checkpointDir;
+	private boolean resume;
+	private SgdEntitySnapshot snapshot;
+	private Map<String, String> entityTokens;
+	private int tokenedEntities;
+	private Map<String, Set<String>> keyFields;
+	private final Map<String, Set<String>> classKeyFields = new HashMap<String, Set<String>>();
+	private int phasePoolSize = 4;
+	private long phaseBufferBudget = -1;
+	private final ConverterMetrics metrics;
+
+	private SgdProcessor processor = new SgdProcessor();
 
 	/**
 	 * Construct a new SgdConverter.
@@ -102,7 +134,14 @@ public class SgdConverter extends BioDBConverter {
 	 */
 	public SgdConverter(Database database, Model model, ItemWriter writer)
 			throws ObjectStoreException {
-		super(database, model, writer, DATA_SOURCE_NAME, DATASET_TITLE);
+		this(database, model, writer, new ConverterMetrics("sgd"));
+	}
+
+	private SgdConverter(Database database, Model model, ItemWriter writer,
+			ConverterMetrics metrics) throws ObjectStoreException {
+		super(database, model, metrics.track(writer), DATA_SOURCE_NAME, DATASET_TITLE);
+		this.metrics = metrics;
+		featureTypes = new SgdFeatureTypes(model);
 		organism = createItem("Organism");
 		organism.setAttribute("taxonId", TAXON_ID);
 		organism.setAttribute("genus", "Saccharomyces");
@@ -120,151 +159,459 @@ public class SgdConverter extends BioDBConverter {
 		// a database has been initialized from properties starting with db.sgd
 		Connection connection = getDatabase().getConnection();
 
-		processChromosomeSequences(connection);
-		processGenes(connection);
-		processNISS(connection);
-		processAliases(connection);
-		processCrossReferences(connection);
-		processGeneLocations(connection);
-		processGeneChildrenLocations(connection);
-		processProteins(connection);
-		processAlleles(connection);
-		processAlleleAliases(connection);
-		processTranscripts(connection);
-		processAllPubs(connection);
-		processPubsWithFeatures(connection);
-		
-		processProteinAbundance(connection);
-		processProteinHalfLife(connection);
-		processProteinDomains(connection);
-		processProteinModifications(connection);
-		processProteinInfo(connection);
-		
-		processParalogs(connection);
-		processFunctionSummary(connection);
-		processRegulation(connection);
-		processRegulationSummary(connection);
+		SgdPhaseScheduler phases = new SgdPhaseScheduler(getDatabase(), phasePoolSize);
+		phases.setMetrics(metrics);
+		if (phaseBufferBudget >= 0) {
+			phases.setBufferBudget(phaseBufferBudget);
+		}
+		addPhases(phases);
+		if (checkpointDir != null) {
+			phases.setCheckpoint(new SgdCheckpoint(new File(checkpointDir), resume),
+					"aggregating=" + processor.isAggregating());
+		} else if (resume) {
+			throw new IllegalArgumentException("resume is set but there is no checkpointDir");
+		}
+
+		if (locationIndexFile != null) {
+			locationIndex = new FeatureIntervalIndex.Builder();
+		}
+
+		if (incremental && (snapshotFile == null || targetMine == null)) {
+			throw new IllegalArgumentException("incremental is set but snapshotFile and targetMine"
+					+ " don't say which snapshot and which mine it is for");
+		}
+		if (snapshotFile != null) {
+			SgdEntitySnapshot.resolvePending(new File(snapshotFile), integratedSnapshot, incremental);
+			snapshot = new SgdEntitySnapshot(new File(snapshotFile));
+			if (incremental && !snapshot.hasPrevious()) {
+				System.out.println("No snapshot in " + snapshotFile + ", loading everything");
+			} else if (incremental && !targetMine.equals(snapshot.getTarget())) {
+				throw new IllegalArgumentException(snapshotFile + " is the snapshot of a load into "
+						+ (snapshot.getTarget().isEmpty() ? "an unnamed mine" : snapshot.getTarget())
+						+ ", not " + targetMine + ": run a full load into " + targetMine + " first");
+			}
+			keyFields = readKeyFields();
+		}
+
+		try {
+			phases.run(connection);
+			registry.report();
+			featureTypes.report();
+			if (snapshot != null) {
+				writeSnapshot();
+			}
+			if (locationIndex != null) {
+				locationIndex.write(new File(locationIndexFile));
+				System.out.println("Wrote " + locationIndex.size() + " locations to " + locationIndexFile);
+			}
+		} finally {
+			processor.getCatalog().report();
+			itemStore.stop();
+			deferred.close();
+			metrics.close();
+			processor.release(connection);
+		}
+
+	}
+
+	/**
+	 * Write the pending snapshot of this conversion, after listing the entities that have gone
+	 * since the last one.  An incremental load fails if there are any, as integrating it would
+	 * leave them in the mine.
+	 */
+	private void writeSnapshot() throws IOException {
+		snapshot.report();
+		if (snapshot.getDeletedCount() > 0) {
+			File deletedFile = new File(snapshotFile + ".deleted");
+			snapshot.writeDeleted(deletedFile);
+			System.out.println("Listed " + snapshot.getDeletedCount() + " deleted entities in "
+					+ deletedFile);
+			if (incremental) {
+				throw new IllegalStateException(snapshot.getDeletedCount() + " entities listed in "
+						+ deletedFile + " have been deleted since the last snapshot and an"
+						+ " incremental load can't remove them from " + targetMine
+						+ ": run a full load instead");
+			}
+		}
+		String id = snapshot.writePending(targetMine);
+		System.out.println("Wrote the snapshot of conversion " + id + " to "
+				+ SgdEntitySnapshot.pendingFile(new File(snapshotFile))
+				+ "; once it has been integrated, set integratedSnapshot to " + id
+				+ " for the next conversion to use it");
+	}
 
-		processAllPathways(connection);
-		processGenePathways(connection);
-		storePathways();
-		storeAlleles();
-		storeTranscripts();
+	/**
+	 * Add the phases of the conversion, in the order they are processed.
+	 *
+	 * @param phases the scheduler to add them to
+	 */
+	void addPhases(SgdPhaseScheduler phases) {
+		phases.addStreamingPhase("chromosomeSequences", SgdPhaseScheduler.jdbc(processor::getChromosomeSequenceResults), this::processChromosomeSequences);
+		phases.addPhase("genes", SgdPhaseScheduler.jdbc(processor::getChromosomalFeatureResults), this::processGenes);
+		phases.addPhase("niss", SgdPhaseScheduler.jdbc(processor::getNISS), this::processNISS, "genes");
+		phases.addPhase("aliases", SgdPhaseScheduler.jdbc(processor::getAliases), this::processAliases, "genes");
+		phases.addPhase("crossReferences", SgdPhaseScheduler.jdbc(processor::getCrossReferences), this::processCrossReferences, "genes");
+		phases.addStreamingPhase("geneLocations", SgdPhaseScheduler.jdbc(processor::getChromosomalFeatureLocationResults), this::processGeneLocations,
+				"chromosomeSequences", "genes", "niss");
+		phases.addStreamingPhase("geneChildrenLocations", SgdPhaseScheduler.jdbc(processor::getChildrenFeatureLocationResults), this::processGeneChildrenLocations,
+				"chromosomeSequences", "genes", "niss");
+		phases.addStreamingPhase("proteins", SgdPhaseScheduler.jdbc(processor::getProteinResults), this::processProteins, "genes");
+		phases.addPhase("alleles", SgdPhaseScheduler.jdbc(processor::getAlleleResults), this::processAlleles, "genes");
+		phases.addPhase("alleleAliases", SgdPhaseScheduler.jdbc(processor::getAlleleAliasesResults), this::processAlleleAliases, "alleles");
+		phases.addPhase("transcripts", SgdPhaseScheduler.jdbc(processor::getTranscriptResults), this::processTranscripts, "genes", "geneLocations");
+		phases.addPhase("allPubs", SgdPhaseScheduler.jdbc(processor::getPubAllResults), this::processAllPubs);
+		phases.addPhase("pubsWithFeatures", SgdPhaseScheduler.jdbc(processor::getPubWithFeaturesResults), this::processPubsWithFeatures, "genes", "allPubs");
+
+		phases.addPhase("proteinAbundance", SgdPhaseScheduler.jdbc(processor::getProteinAbundanceResults), this::processProteinAbundance, "proteins");
+		phases.addPhase("proteinHalfLife", SgdPhaseScheduler.jdbc(processor::getProteinHalfLifeResults), this::processProteinHalfLife, "proteins");
+		phases.addPhase("proteinDomains", SgdPhaseScheduler.jdbc(processor::getProteinDomainsResults), this::processProteinDomains, "proteins");
+		phases.addPhase("proteinModifications", SgdPhaseScheduler.jdbc(processor::getProteinModificationResults), this::processProteinModifications, "proteins");
+		phases.addPhase("proteinInfo", SgdPhaseScheduler.jdbc(processor::getProteinInfoResults), this::processProteinInfo, "proteins");
+
+		phases.addPhase("paralogs", SgdPhaseScheduler.jdbc(processor::getParalogs), this::processParalogs, "genes", "allPubs");
+		phases.addPhase("functionSummary", SgdPhaseScheduler.jdbc(processor::getFunctionSummary), this::processFunctionSummary, "genes");
+		phases.addPhase("regulation", SgdPhaseScheduler.jdbc(processor::getRegulationData), this::processRegulation, "genes");
+		phases.addPhase("regulationSummary", SgdPhaseScheduler.jdbc(processor::getRegulationSummary), this::processRegulationSummary, "genes");
+
+		phases.addPhase("allPathways", SgdPhaseScheduler.jdbc(processor::getAllPathways), this::processAllPathways);
+		phases.addPhase("genePathways", SgdPhaseScheduler.jdbc(processor::getGenePathways), this::processGenePathways, "genes", "allPathways");
+		phases.addTask("storePathways", this::storePathways, "allPathways", "genePathways");
+		phases.addTask("storeAlleles", this::storeAlleles, "alleles", "alleleAliases");
+		phases.addTask("storeTranscripts", this::storeTranscripts, "transcripts");
 
 		if(!LOCAL) {
 
-			 processPhysicalInteractions(connection);
-			 processGeneticInteractions(connection);
-			 processGeneticInteractionsWithAlleles(connection);
-			 storeInteractionTypes();
-			 storeInteractionExperiments();
-			 //storeInteractionDetails(); <--keep commented
-			 storeInteractions();
+			 int partitions = processor.getInteractionPartitions();
+			 if (partitions > 1) {
+				 phases.addPartitionedPhase("physicalInteractions", partitions, (connection, partition, count) ->
+						 new ResultSetRows(processor.getPhysicalInteractionResults(connection, partition, count)), this::processPhysicalInteractions, "genes");
+				 phases.addPartitionedPhase("geneticInteractions", partitions, (connection, partition, count) ->
+						 new ResultSetRows(processor.getGeneticInteractionResults(connection, partition, count)), this::processGeneticInteractions, "genes");
+			 } else {
+				 phases.addStreamingPhase("physicalInteractions", SgdPhaseScheduler.jdbc(processor::getPhysicalInteractionResults), this::processPhysicalInteractions, "genes");
+				 phases.addStreamingPhase("geneticInteractions", SgdPhaseScheduler.jdbc(processor::getGeneticInteractionResults), this::processGeneticInteractions, "genes");
+			 }
+			 phases.addStreamingPhase("geneticInteractionsWithAlleles", SgdPhaseScheduler.jdbc(processor::getGeneticInteractionWithAllelesResults),
+					 this::processGeneticInteractionsWithAlleles, "geneticInteractions", "alleles");
+			 phases.addTask("storeInteractionTypes", this::storeInteractionTypes, "physicalInteractions", "geneticInteractions");
+			 phases.addTask("storeInteractionExperiments", this::storeInteractionExperiments, "physicalInteractions", "geneticInteractions");
+			 phases.addTask("storeInteractions", this::storeInteractions, "geneticInteractionsWithAlleles");
+
+			 phases.addPhase("phenotypes", SgdPhaseScheduler.jdbc(processor::getPhenotypeResults), this::processPhenotypes, "genes", "alleles");
+			 phases.addPhase("phenotypeSummary", SgdPhaseScheduler.jdbc(processor::getPhenotypeSummary), this::processPhenotypeSummary, "genes");
+			 phases.addTask("storePhenotypes", this::storePhenotypes, "phenotypes");
+
+		}
+		// everything above may add publications or fill in genes and proteins, so these go last
+		phases.addTask("storePublications", this::storePublications, "allPubs", "pubsWithFeatures");
+		phases.addTask("storeRegulationSummaries", this::storeRegulationSummaries, "regulationSummary");
+		phases.addTask("storeGenes", this::storeGenes, "genes");
+		phases.addTask("storeProteins", this::storeProteins, "proteins");
+		phases.addTask("storeSynonyms", synonymWriter::close, "genes", "niss", "aliases", "geneChildrenLocations");
+		phases.addTask("storeQueuedItems", this::closeItemStore, "storeSynonyms");
+	}
+
+	/**
+	 * Wait for every item passed to storeAsync() to be written and stop the writer thread.
+	 *
+	 * @throws ObjectStoreException if an item couldn't be stored
+	 */
+	void closeItemStore() throws ObjectStoreException {
+		itemStore.close();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Item createItem(String className) {
+		if (metrics != null) {
+			metrics.itemCreated();
+		}
+		return super.createItem(className);
+	}
+
+	/**
+	 * Store an item straight away, once the items queued before it have been written.
+	 *
+	 * @param item the item
+	 * @return the id of the stored item
+	 * @throws ObjectStoreException if the item, or one queued before it, can't be stored
+	 */
+	@Override
+	public Integer store(Item item) throws ObjectStoreException {
+		if (itemStore != null) {
+			// itemStore is null while the super constructor stores the data source and data set
+			itemStore.flush();
+		}
+		return super.store(item);
+	}
 
-			 processPhenotypes(connection);
-			 processPhenotypeSummary(connection);
-			 storePhenotypes();
+	/**
+	 * Queue an item to be stored on the writer thread, for the many items whose stored id
+	 * isn't needed.  A change made to the item afterwards isn't written.
+	 *
+	 * @param item a finished item
+	 * @throws ObjectStoreException if storing an earlier item failed
+	 */
+	void storeAsync(Item item) throws ObjectStoreException {
+		itemStore.store(item);
+	}
 
+	private void storeNow(List<Item> items) throws ObjectStoreException {
+		for (Item item : items) {
+			super.store(item);
 		}
-		storePublications();
-		storeRegulationSummaries();
-		storeGenes();
-		storeProteins();
+	}
+
+	/**
+	 * Set how many items may wait for the writer thread before the converter has to wait for
+	 * it.  0 stores every item straight away, on the converter's thread.
+	 *
+	 * @param storeQueueSize number of items
+	 */
+	public void setStoreQueueSize(String storeQueueSize) {
+		itemStore.setQueueSize(Integer.parseInt(storeQueueSize.trim()));
+	}
+
+	/**
+	 * Set how many items the writer thread takes off the queue at a time.
+	 *
+	 * @param storeBatchSize number of items
+	 */
+	public void setStoreBatchSize(String storeBatchSize) {
+		itemStore.setBatchSize(Integer.parseInt(storeBatchSize.trim()));
+	}
+
+	/**
+	 * If true, fail the conversion if an item is changed after it was queued to be stored,
+	 * which would otherwise be silently lost.  For debugging: every stored item is kept.
+	 *
+	 * @param checkStoredItems "true" to check
+	 */
+	public void setCheckStoredItems(String checkStoredItems) {
+		itemStore.setCheckStored(Boolean.parseBoolean(checkStoredItems.trim()));
+	}
+
+	/**
+	 * Use a different processor to run the queries, e.g. one returning test data.
+	 *
+	 * @param processor the processor
+	 */
+	void setProcessor(SgdProcessor processor) {
+		this.processor = processor;
+	}
+
+	/**
+	 * Set how many queries may run ahead, each on its own connection, while earlier phases
+	 * are being processed.  0 runs every query on the one connection, one after another.
+	 *
+	 * @param phasePoolSize number of connections to prefetch on
+	 */
+	public void setPhasePoolSize(String phasePoolSize) {
+		this.phasePoolSize = Integer.parseInt(phasePoolSize.trim());
+	}
+
+	/**
+	 * Set how much memory, in megabytes, the rows of the queries run ahead may take in all.
+	 * A query whose rows don't fit keeps its connection and has the rest of them read when
+	 * its phase is processed.
+	 *
+	 * @param phaseBufferBudget budget in megabytes
+	 */
+	public void setPhaseBufferBudget(String phaseBufferBudget) {
+		this.phaseBufferBudget = Long.parseLong(phaseBufferBudget.trim()) * 1024 * 1024;
+	}
+
+	/**
+	 * Set how many rows are fetched at a time when streaming query results through a
+	 * server-side cursor.  0 reads every result set into memory in one go.
+	 *
+	 * @param fetchSize rows per round trip to the database
+	 */
+	public void setFetchSize(String fetchSize) {
+		processor.setFetchSize(Integer.parseInt(fetchSize.trim()));
+	}
+
+	/**
+	 * If true, the allele and transcript queries aggregate the references of each entity on
+	 * the database server with array_agg, so they return a row per entity instead of a row
+	 * per reference (and, for alleles, per alias).
+	 *
+	 * @param aggregateQueries "true" to aggregate
+	 */
+	public void setAggregateQueries(String aggregateQueries) {
+		processor.setAggregating(Boolean.parseBoolean(aggregateQueries.trim()));
+	}
+
+	/**
+	 * Split the physical and genetic interaction queries into this many annotation_id ranges.
+	 * Up to phasePoolSize ranges are read at once, each on a connection of its own, and their
+	 * rows are processed range by range, in annotation_id order, on the converter's thread, so
+	 * the items and their identifiers are the same from run to run.  1 (the default) streams
+	 * each query whole on the converter's own connection.
+	 *
+	 * @param interactionPartitions number of ranges
+	 */
+	public void setInteractionPartitions(String interactionPartitions) {
+		processor.setInteractionPartitions(Integer.parseInt(interactionPartitions.trim()));
+	}
+
+	/**
+	 * Set the queries to run EXPLAIN ANALYZE for before they are run, e.g. "allele, pubAll".
+	 * The query names are the ones in the query timings printed at the end of the conversion.
+	 *
+	 * @param explainQueries comma separated query names, or "all"
+	 */
+	public void setExplainQueries(String explainQueries) {
+		processor.getCatalog().setExplain(explainQueries);
+	}
+
+	/**
+	 * Set how much memory, in megabytes, the collection and reference updates waiting for
+	 * genes, proteins, publications etc. to be stored may take before they are spilled to disk.
+	 *
+	 * @param deferredBudget budget in megabytes
+	 */
+	public void setDeferredBudget(String deferredBudget) {
+		deferred.setBudget(Long.parseLong(deferredBudget.trim()) * 1024 * 1024);
+	}
+
+	/**
+	 * Set the file in which the content hashes of the genes, alleles, transcripts, proteins
+	 * and publications are kept from one conversion to the next.  A successful conversion
+	 * writes its hashes to the file with .pending added, and the next conversion only uses
+	 * them if integratedSnapshot says it was integrated.
+	 *
+	 * @param snapshotFile name of the file
+	 */
+	public void setSnapshotFile(String snapshotFile) {
+		this.snapshotFile = snapshotFile.trim();
+	}
+
+	/**
+	 * Set the name of the mine the conversion is integrated into, recorded in the snapshot.
+	 * An incremental load needs a snapshot of a load into the same mine.
+	 *
+	 * @param targetMine name of the mine, e.g. yeastmine
+	 */
+	public void setTargetMine(String targetMine) {
+		this.targetMine = targetMine.trim();
+	}
+
+	/**
+	 * Set the id of the last conversion that was integrated into the target mine, as printed
+	 * when it wrote its pending snapshot, so that this conversion compares with that snapshot.
+	 * If the pending snapshot is of another conversion, a full load throws it away and an
+	 * incremental one fails.
+	 *
+	 * @param integratedSnapshot id of the conversion
+	 */
+	public void setIntegratedSnapshot(String integratedSnapshot) {
+		this.integratedSnapshot = integratedSnapshot.trim();
+	}
+
+	/**
+	 * Set the file the locations of the features are indexed in, by chromosome and coordinates,
+	 * e.g. sgd-locations.index, for other sources to find the features at a position with
+	 * FeatureIntervalIndex.  By default, or if it is "none", no index is written.
+	 *
+	 * @param locationIndexFile name of the file
+	 */
+	public void setLocationIndexFile(String locationIndexFile) {
+		String file = locationIndexFile.trim();
+		this.locationIndexFile = file.isEmpty() || "none".equalsIgnoreCase(file) ? null : file;
+	}
 
+	/**
+	 * If true, the genes, alleles, transcripts, proteins and publications that haven't changed
+	 * since the conversion that wrote the snapshot file are stored with their key fields only,
+	 * for integration into a mine already holding them.  Everything else is still stored in
+	 * full.  snapshotFile and targetMine must be set, and the conversion fails if entities have
+	 * been deleted since the snapshot, as integrating it couldn't remove them.
+	 *
+	 * @param incremental "true" for an incremental load
+	 */
+	public void setIncremental(String incremental) {
+		this.incremental = Boolean.parseBoolean(incremental.trim());
+	}
+
+	/**
+	 * Set a directory to save the rows of each phase in as the conversion goes, so that if it
+	 * fails it can be resumed without querying the phases that had finished.  The directory
+	 * is emptied when the conversion finishes.
+	 *
+	 * @param checkpointDir name of the directory
+	 */
+	public void setCheckpointDir(String checkpointDir) {
+		this.checkpointDir = checkpointDir.trim();
+	}
+
+	/**
+	 * If true, the phases a previous, failed conversion finished are replayed from the
+	 * checkpoint directory rather than queried again.  If the checkpoint is missing or was
+	 * written by a conversion with different phases or settings, everything is queried.
+	 *
+	 * @param resume "true" to resume
+	 */
+	public void setResume(String resume) {
+		this.resume = Boolean.parseBoolean(resume.trim());
+	}
+
+	/**
+	 * Set the file the metrics of each phase are written to, e.g. sgd-metrics.tsv.
+	 * By default, or if it is "none", no file is written.
+	 *
+	 * @param metricsFile name of the file
+	 */
+	public void setMetricsFile(String metricsFile) {
+		metrics.setFile(metricsFile.trim());
+	}
+
+	/**
+	 * Set how often, in seconds, a running phase logs how far it has got.
+	 *
+	 * @param metricsInterval interval in seconds
+	 */
+	public void setMetricsInterval(String metricsInterval) {
+		metrics.setInterval(Long.parseLong(metricsInterval.trim()));
 	}
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processGenes(Connection connection) throws SQLException,
+	private void processGenes(QueryRows res) throws SQLException,
 	ObjectStoreException {
 
 		System.out.println("Processing Genes...");
-		ResultSet res = PROCESSOR.getChromosomalFeatureResults(connection);
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String featureNo = res.getString("dbentity_id");
+			String featureNo = row.getString("dbentity_id");
 			if (genes.get(featureNo) == null) {
 				//~~~ gene ~~~
-				String primaryIdentifier = res.getString("sgdid");
-				String secondaryIdentifier = res.getString("systematic_name");
-				String symbol = res.getString("gene_name");
-				String name = res.getString("name_description");
-				String feature_type = res.getString("feature_type");
-				String headline = res.getString("headline");
-				String description = res.getString("description");
-				String qualifier = res.getString("qualifier");
-				//String feat_attribute = res.getString("feat_attribute");
-				String status = res.getString("dbentity_status");
-
-				Item item = null;
-				if (feature_type.equalsIgnoreCase("ORF")) {
-					item = createItem("ORF");
-				} else if (feature_type.equalsIgnoreCase("pseudogene")) {
-					item = createItem("Pseudogene");
-				} else if (feature_type
-						.equalsIgnoreCase("transposable element gene")) {
-					item = createItem("TransposableElementGene");
-				} else if (feature_type
-						.equalsIgnoreCase("not physically mapped")) {
-					item = createItem("NotPhysicallyMapped");
-				} else if (feature_type
-						.equalsIgnoreCase("long terminal repeat")) {
-					item = createItem("LongTerminalRepeat");
-				} else if (feature_type.equalsIgnoreCase("ARS")) {
-					item = createItem("ARS");
-				} else if (feature_type.equalsIgnoreCase("tRNA gene")) {
-					item = createItem("TRNAGene");
-				} else if (feature_type.equalsIgnoreCase("snoRNA gene")) {
-					item = createItem("SnoRNAGene");
-				} else if (feature_type.equalsIgnoreCase("not in systematic sequence of S288C")) {
-					item = createItem("NotInSystematicSequenceOfS288C");
-				} else if (feature_type.equalsIgnoreCase("LTR retrotransposon")) {
-					item = createItem("Retrotransposon");
-				} else if (feature_type.equalsIgnoreCase("X element combinatorial repeats")) {
-					item = createItem("XElementCombinatorialRepeat");
-				} else if (feature_type.equalsIgnoreCase("X element")) {
-					item = createItem("XElement");
-				} else if (feature_type.equalsIgnoreCase("telomere")) {
-					item = createItem("Telomere");
-				} else if (feature_type.equalsIgnoreCase("telomeric repeat")) {
-					item = createItem("TelomericRepeat");
-				} else if (feature_type.equalsIgnoreCase("rRNA gene")) {
-					item = createItem("RRNAGene");
-				} else if (feature_type.equalsIgnoreCase("Y prime element")) {
-					item = createItem("YPrimeElement");
-				} else if (feature_type.equalsIgnoreCase("centromere")) {
-					item = createItem("Centromere");
-				} else if (feature_type.equalsIgnoreCase("ncRNA gene")) {
-					item = createItem("NcRNAGene");
-				} else if (feature_type.equalsIgnoreCase("snRNA gene")) {
-					item = createItem("SnRNAGene");
-				}else if (feature_type.equalsIgnoreCase("blocked reading frame")) {
-					item = createItem("BlockedReadingFrame");
-				}else if (feature_type.equalsIgnoreCase("origin of replication")) {
-					item = createItem("OriginOfReplication");
-				}else if (feature_type.equalsIgnoreCase("matrix attachment site")) {
-					item = createItem("MatrixAttachmentSite");
-				}else if (feature_type.equalsIgnoreCase("telomerase RNA gene")) {
-					item = createItem("TelomeraseRNAGene");
-				}else if (feature_type.equalsIgnoreCase("gene group")) {
-					item = createItem("GeneGroup");
-				}else if (feature_type.equalsIgnoreCase("silent mating type cassette array")) {
-					item = createItem("SilentMatingTypeCassetteArray");
-				}else if (feature_type.equalsIgnoreCase("mating type region")) {
-					item = createItem("MatingTypeRegion");
-				}else if (feature_type.equalsIgnoreCase("intein encoding region")) {
-					item = createItem("InteinEncodingRegion");
-				} else if (feature_type.equalsIgnoreCase("recombination enhancer")) {
-					item = createItem("RecombinationEnhancer");
-				}else if (feature_type.equalsIgnoreCase("non transcribed region")) {
-					item = createItem("NonTranscribedRegion");
+				String primaryIdentifier = row.getString("sgdid");
+				String secondaryIdentifier = row.getString("systematic_name");
+				String symbol = row.getString("gene_name");
+				String name = row.getString("name_description");
+				String feature_type = row.getString("feature_type");
+				String headline = row.getString("headline");
+				String description = row.getString("description");
+				String qualifier = row.getString("qualifier");
+				//String feat_attribute = row.getString("feat_attribute");
+				String status = row.getString("dbentity_status");
+
+				String className = featureTypes.getGeneClass(feature_type);
+				if (className == null) {
+					continue;
 				}
+				Item item = createItem(className);
 
 				// set for all types, so you can use LSF to query for these
 				// different type of objects in a template.
@@ -300,30 +647,31 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processNISS(Connection connection) throws SQLException,
+	private void processNISS(QueryRows res) throws SQLException,
 	ObjectStoreException {
 
 		System.out.println("Processing NISS 55 features...");
-		ResultSet res = PROCESSOR.getNISS(connection);
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String featureNo = res.getString("dbentity_id");
+			String featureNo = row.getString("dbentity_id");
 			if (genes.get(featureNo) == null) {
 				//~~~ gene ~~~
-				String primaryIdentifier = res.getString("sgdid");
-				String secondaryIdentifier = res.getString("systematic_name");
-				String symbol = res.getString("gene_name");
-				String name = res.getString("name_description");
-				String headline = res.getString("headline");
-				String description = res.getString("description");
-				String qualifier = res.getString("qualifier");
-				String status = res.getString("dbentity_status");
+				String primaryIdentifier = row.getString("sgdid");
+				String secondaryIdentifier = row.getString("systematic_name");
+				String symbol = row.getString("gene_name");
+				String name = row.getString("name_description");
+				String headline = row.getString("headline");
+				String description = row.getString("description");
+				String qualifier = row.getString("qualifier");
+				String status = row.getString("dbentity_status");
 
 				Item item = createItem("NotInSystematicSequenceOfS288C");
 
@@ -361,36 +709,33 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 *
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processAlleles(Connection connection) throws SQLException,
+	private void processAlleles(QueryRows res) throws SQLException,
 			ObjectStoreException {
 
 		System.out.println("Processing Alleles...");
-		ResultSet res = PROCESSOR.getAlleleResults(connection);
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String alleleNo = res.getString("allele");
-			String featureNo = res.getString("locus");
-
-			System.out.println(alleleNo + "\t"+featureNo);
+			String alleleNo = row.getString("allele");
+			String featureNo = row.getString("locus");
 
 			Item gene = genes.get(featureNo);
 			Item allele = alleles.get(alleleNo);
 
 			if (gene != null) {
 
-				String name = res.getString("allele_name");
-				String description = res.getString("description");
-				String aclass = res.getString("allele_class");
-				String aliasName = res.getString("alias_name");
-				String pmrefNo = res.getString("reference_id");
-				String pmid = res.getString("pmid");
-				String alleleSgdid = res.getString("allelesgdid");
+				String name = row.getString("allele_name");
+				String description = row.getString("description");
+				String aclass = row.getString("allele_class");
+				String aliasName = getAliasName(row);
+				String alleleSgdid = row.getString("allelesgdid");
 
 				if (allele == null) {
 
@@ -401,33 +746,12 @@ public class SgdConverter extends BioDBConverter {
 					if (StringUtils.isNotEmpty(aclass)) allele.setAttribute("alleleClass", aclass);
 					if (StringUtils.isNotEmpty(alleleSgdid)) allele.setAttribute("alleleSgdid", alleleSgdid);
 					if (StringUtils.isNotEmpty(aliasName)) allele.setAttribute("aliasName", aliasName);
-
-					if(pmrefNo != null ) {
-						Item publication = publications.get(pmrefNo);
-						if (publication == null) {
-							publication = createItem("Publication");
-							if (StringUtils.isNotEmpty(pmid)) publication.setAttribute("pubMedId", pmid);
-							publications.put(pmrefNo, publication);
-						}
-						allele.addToCollection("publications", publication);
-					}
 					alleles.put(alleleNo, allele);
-
-				} else{
-
-					if(pmrefNo != null ) {
-						Item publication = publications.get(pmrefNo);
-						if (publication == null) {
-							publication = createItem("Publication");
-							if (StringUtils.isNotEmpty(pmid)) publication.setAttribute("pubMedId", pmid);
-							publications.put(pmrefNo, publication);
-						}
-						allele.addToCollection("publications", publication);
-					}
 				}
+				addRowPublications(row, alleleUpdates, allele);
 				//if (StringUtils.isNotEmpty(concatAliasName)) { allele.setAttribute("aliasName", concatAliasName); }
 				allele.setReference("gene", gene.getIdentifier());
-				gene.addToCollection("alleles", allele);
+				geneUpdates.addToCollection(gene, "alleles", allele.getIdentifier());
 
 		  }//gene
 
@@ -437,21 +761,22 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 *
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processTranscripts(Connection connection) throws SQLException,
+	private void processTranscripts(QueryRows res) throws SQLException,
 			ObjectStoreException {
 
 		System.out.println("Processing Transcripts...");
-		ResultSet res = PROCESSOR.getTranscriptResults(connection);
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String transcriptNo = res.getString("transcript");
-			String name = res.getString("format_name");  //YAL009W_id006
+			String transcriptNo = row.getString("transcript");
+			String name = row.getString("format_name");  //YAL009W_id006
 			String [] n = name.split("_");
 			String geneSecondaryId =  n[0];
 
@@ -459,9 +784,9 @@ public class SgdConverter extends BioDBConverter {
 			Item transcript = transcripts.get(transcriptNo);
 
 			if (gene != null) {
-				String start_index = res.getString("start_index");
-				String end_index = res.getString("end_index");
-				String strand = res.getString("strand");
+				String start_index = row.getString("start_index");
+				String end_index = row.getString("end_index");
+				String strand = row.getString("strand");
 				String newstrand = "";
 				if (strand.equals("+")) {
 					newstrand = "1";
@@ -470,9 +795,9 @@ public class SgdConverter extends BioDBConverter {
 				} else if (strand.equals("0")) {
 					newstrand = "0";
 				}
-				String in_gal = res.getString("in_gal");
-				String in_ypd = res.getString("in_ypd");
-				String in_ncbi = res.getString("in_ncbi");
+				String in_gal = row.getString("in_gal");
+				String in_ypd = row.getString("in_ypd");
+				String in_ncbi = row.getString("in_ncbi");
 				String ingal = "";
 				if (in_gal.equals("t")) {
 					ingal = "true";
@@ -491,8 +816,6 @@ public class SgdConverter extends BioDBConverter {
 				} else if (in_ncbi.equals("f")) {
 					incbi = "false";
 				}
-				String pmrefNo = res.getString("reference_id");
-				String pmid = res.getString("pmid");
 				if (transcript == null) {
 					transcript = createItem("MRNA");
 					transcript.setAttribute("featureType", "mRNA");
@@ -501,15 +824,6 @@ public class SgdConverter extends BioDBConverter {
 					if (StringUtils.isNotEmpty(in_ypd)) transcript.setAttribute("in_ypd", inypd);
 					if (StringUtils.isNotEmpty(in_ncbi)) transcript.setAttribute("in_ncbi", incbi);
 
-					if(pmrefNo != null ) {
-						Item publication = publications.get(pmrefNo);
-						if (publication == null) {
-							publication = createItem("Publication");
-							publication.setAttribute("pubMedId", pmid);
-							publications.put(pmrefNo, publication);
-						}
-						transcript.addToCollection("publications", publication);
-					}
 					transcript.setReference("gene", gene.getIdentifier());
 
 					//location
@@ -520,6 +834,7 @@ public class SgdConverter extends BioDBConverter {
 
 					transcripts.put(transcriptNo, transcript);
 				}
+				addRowPublications(row, transcriptUpdates, transcript);
 			} //gene
 		}//while
 		System.out.println("size of transcripts:  " + transcripts.size());
@@ -528,29 +843,30 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processParalogs(Connection connection) throws SQLException,
+	private void processParalogs(QueryRows res) throws SQLException,
 	ObjectStoreException {
 
 		System.out.println("Processing Paralog pairs...");
-		ResultSet res = PROCESSOR.getParalogs(connection); // ordered by featureNo
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String parentFeatureNo = res.getString("parent_id");
-			String childFeatureNo = res.getString("child_id");
-			String refNo = res.getString("reference_id");		
+			String parentFeatureNo = row.getString("parent_id");
+			String childFeatureNo = row.getString("child_id");
+			String refNo = row.getString("reference_id");		
 			String source="";
 			if(refNo.equalsIgnoreCase("526423")){ //hack for PMID 16169922
 				source= "YGOB";
 			}else{
 				source = "SGD";
 			}
-			Item pmid = getExistingPub(refNo);
+			SgdPublicationIndex.Publication pmid = getExistingPub(refNo);
 			Item parentGene = genes.get(parentFeatureNo);
 			Item childGene = genes.get(childFeatureNo);
 
@@ -565,31 +881,32 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processRegulation(Connection connection) throws SQLException,
+	private void processRegulation(QueryRows res) throws SQLException,
 	ObjectStoreException {
 
 		System.out.println("Processing Regulation data...");
-		ResultSet res = PROCESSOR.getRegulationData(connection); // ordered by featureNo
-
-		while (res.next()) {
-
-			String factorGene = res.getString("regulator_id");
-			String targetGene = res.getString("target_id");
-			String evidenceCode = res.getString("format_name");	
-			String condition = res.getString("happens_during");	
-			String regulationDirection = res.getString("direction");
-			String regulationType = res.getString("regulation_type");	
-			String regulatorType = res.getString("regulator_type");	
-			String annotationType = res.getString("annotation_type");	
-			String pmid = res.getString("pmid");	
-			String refNo = res.getString("refNo");
-			String strainBackground = res.getString("strain_background");	
-			String source = res.getString("source");
+
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+
+			String factorGene = row.getString("regulator_id");
+			String targetGene = row.getString("target_id");
+			String evidenceCode = row.getString("format_name");	
+			String condition = row.getString("happens_during");	
+			String regulationDirection = row.getString("direction");
+			String regulationType = row.getString("regulation_type");	
+			String regulatorType = row.getString("regulator_type");	
+			String annotationType = row.getString("annotation_type");	
+			String pmid = row.getString("pmid");	
+			String refNo = row.getString("refNo");
+			String strainBackground = row.getString("strain_background");	
+			String source = row.getString("source");
 
 			getRegulation(factorGene, targetGene, evidenceCode, condition,  regulationDirection,  pmid,
 					refNo, source, strainBackground,regulationType,regulatorType, annotationType);
@@ -639,7 +956,7 @@ public class SgdConverter extends BioDBConverter {
 					ecoMap.put(evidenceCode, eco);
 					eco.setAttribute("identifier", evidenceCode); 
 					try {
-						store(eco);
+						storeAsync(eco);
 					} catch (ObjectStoreException e) {
 						throw new ObjectStoreException(e);
 					}	
@@ -649,7 +966,7 @@ public class SgdConverter extends BioDBConverter {
 
 
 			try {
-				store(evidence);
+				storeAsync(evidence);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}			
@@ -686,18 +1003,10 @@ public class SgdConverter extends BioDBConverter {
 				bindingSite.setAttribute("annotationType", annotationType);
 			}
 
-			Item publication = publications.get(refNo);
-
-			if(publication == null) {
-				publication = createItem("Publication");
-				publication.setAttribute("pubMedId", pmid); 
-				publications.put(refNo, publication);	
-			}
-
-			bindingSite.addToCollection("publications", publication);      
+			bindingSite.addToCollection("publications", getPublication(refNo, pmid));
 
 			try {
-				store(bindingSite);
+				storeAsync(bindingSite);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}	
@@ -724,26 +1033,27 @@ public class SgdConverter extends BioDBConverter {
 		homologue.setAttribute("type", "paralogue"); 
 		homologue.setAttribute("source", source);
 		homologue.setReference("publication", pmid);
-		store(homologue);
+		storeAsync(homologue);
 	}
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processAliases(Connection connection) throws SQLException, ObjectStoreException {
+	private void processAliases(QueryRows res) throws SQLException, ObjectStoreException {
 
-		ResultSet res = PROCESSOR.getAliases(connection); // ordered by featureNo
 
 		System.out.println("Processing ALiases...");
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String geneFeatureNo = res.getString("dbentity_id");
-			String alias_type = res.getString("alias_type");
-			String alias_name = res.getString("display_name");
+			String geneFeatureNo = row.getString("dbentity_id");
+			String alias_type = row.getString("alias_type");
+			String alias_name = row.getString("display_name");
 
 			Item item = genes.get(geneFeatureNo);
 			if (item != null) {
@@ -776,20 +1086,21 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 *
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processAlleleAliases(Connection connection) throws SQLException, ObjectStoreException {
+	private void processAlleleAliases(QueryRows res) throws SQLException, ObjectStoreException {
 
-		ResultSet res = PROCESSOR.getAlleleAliasesResults(connection);
 
 		System.out.println("Processing Alleles ALiases...");
-		while (res.next()) {
-			String alleleFeatureNo = res.getString("allele");
-			String allele_name = res.getString("allele_name");
-			String alias_name = res.getString("alias_name");
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String alleleFeatureNo = row.getString("allele");
+			String allele_name = row.getString("allele_name");
+			String alias_name = row.getString("alias_name");
 			String s1 = alias_name.replace("\"", "");
 			String s2 = s1.replace("{", "");
 			String s3 = s2.replace("}", "");
@@ -808,23 +1119,24 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 *
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
-	private void processAllPathways(Connection connection)
+	private void processAllPathways(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
 		System.out.println("Processing ALL Pathways...");
-		ResultSet res = PROCESSOR.getAllPathways(connection); // ordered by featureNo
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String dbxref_id = res.getString("biocyc_id"); //pathway name
-			String dbxref_name = res.getString("display_name"); //pathway identifier i.e. short name
-			String summary_type = res.getString("summary_type");
-			String text = res.getString("text");
-			String refNo = res.getString("reference_id"); // refs for pathways
+			String dbxref_id = row.getString("biocyc_id"); //pathway name
+			String dbxref_name = row.getString("display_name"); //pathway identifier i.e. short name
+			String summary_type = row.getString("summary_type");
+			String text = row.getString("text");
+			String refNo = row.getString("reference_id"); // refs for pathways
 
 			//Item pathway = pathways.get(dbxref_id);
 			//if (pathway != null) {
@@ -855,12 +1167,7 @@ public class SgdConverter extends BioDBConverter {
 				if (!StringUtils.isEmpty(text)) { ps.setAttribute("text", text);}
 			}
 
-			Item publication = publications.get(refNo);
-			if(publication == null) {
-				publication = createItem("Publication");
-				publications.put(refNo, publication);
-			}
-			ps.addToCollection("publications", publication);
+			ps.addToCollection("publications", getPublication(refNo, null));
 			pathwaysummarys.put(id,ps);
 			pathways.put(id, crf);
 		}else{
@@ -874,12 +1181,7 @@ public class SgdConverter extends BioDBConverter {
 				if (!StringUtils.isEmpty(text)) { ps.setAttribute("text", text);}
 			}
 
-			Item publication = publications.get(refNo);
-			if(publication == null) {
-				publication = createItem("Publication");
-				publications.put(refNo, publication);
-			}
-			ps.addToCollection("publications", publication);
+			ps.addToCollection("publications", getPublication(refNo, null));
 			pathwaysummarys.put(id,ps);
 			pathways.put(id, crf);
 		}
@@ -893,23 +1195,24 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 *
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
-	private void processGenePathways(Connection connection)
+	private void processGenePathways(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
 		System.out.println("Processing Pathways...");
-		ResultSet res = PROCESSOR.getGenePathways(connection); // ordered by featureNo
 
-		while (res.next()) {
-			String geneFeatureNo = res.getString("dbentity_id");
-			String dbxref_id = res.getString("biocyc_id"); //pathway name
-			String dbxref_name = res.getString("display_name"); //pathway identifier i.e. short name
-			//String summary_type = res.getString("summary_type");
-			//String text = res.getString("text");
-			String refNo = res.getString("reference_id"); // refs for pathways
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String geneFeatureNo = row.getString("dbentity_id");
+			String dbxref_id = row.getString("biocyc_id"); //pathway name
+			String dbxref_name = row.getString("display_name"); //pathway identifier i.e. short name
+			//String summary_type = row.getString("summary_type");
+			//String text = row.getString("text");
+			String refNo = row.getString("reference_id"); // refs for pathways
 
 			Item item = genes.get(geneFeatureNo);
 			if (item != null) {
@@ -930,25 +1233,15 @@ public class SgdConverter extends BioDBConverter {
 			//crf.setAttribute("summaryType", summaryType);
 			//if (!StringUtils.isEmpty(text)) { crf.setAttribute("text", text);}
 
-			Item publication = publications.get(refNo);
-			if(publication == null) {
-				publication = createItem("Publication");
-				publications.put(refNo, publication);
-			}
-			crf.addToCollection("publications", publication);
+			pathwayUpdates.addToCollection(crf, "publications", getPublication(refNo, null));
 
 			pathways.put(id, crf);
 
-			crf.addToCollection("genes", geneIdentifier);
+			pathwayUpdates.addToCollection(crf, "genes", geneIdentifier);
 
 		}else{
-			Item publication = publications.get(refNo);
-			if(publication == null) {
-				publication = createItem("Publication");
-				publications.put(refNo, publication);
-			}
-			crf.addToCollection("publications", publication);
-			crf.addToCollection("genes", geneIdentifier);
+			pathwayUpdates.addToCollection(crf, "publications", getPublication(refNo, null));
+			pathwayUpdates.addToCollection(crf, "genes", geneIdentifier);
 		}
 
 		String refId = crf.getIdentifier();
@@ -959,20 +1252,21 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
-	private void processCrossReferences(Connection connection) throws SQLException, ObjectStoreException {
+	private void processCrossReferences(QueryRows res) throws SQLException, ObjectStoreException {
 
 		System.out.println("Processing DbXRefs...");
-		ResultSet res = PROCESSOR.getCrossReferences(connection); // ordered by featureNo
 
-		while (res.next()) {
-			String geneFeatureNo = res.getString(1);
-			String dbxref_id = res.getString(2);
-			String dbx_source = res.getString(3);
-			String dbxref_type = res.getString(4);
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String geneFeatureNo = row.getString(1);
+			String dbxref_id = row.getString(2);
+			String dbx_source = row.getString(3);
+			String dbxref_type = row.getString(4);
 
 			Item item = genes.get(geneFeatureNo);
 
@@ -1064,7 +1358,7 @@ public class SgdConverter extends BioDBConverter {
 				ds.setAttribute("url", sourceUrl);
 			}
 			try {
-				store(ds);
+				storeAsync(ds);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -1076,7 +1370,7 @@ public class SgdConverter extends BioDBConverter {
 		}
 
 		try {
-			store(crf);
+			storeAsync(crf);
 		} catch (ObjectStoreException e) {
 			throw new ObjectStoreException(e);
 		}
@@ -1130,27 +1424,28 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 * @throws Exception
 	 */
 
-	private void processGeneLocations(Connection connection)
+	private void processGeneLocations(QueryRows res)
 			throws SQLException, ObjectStoreException, Exception {
 
 		System.out.println("Processing GeneLocations...");
-		ResultSet res = PROCESSOR.getChromosomalFeatureLocationResults(connection);
-
-		while (res.next()) {
-			String featureNo = res.getString("contig_id");
-			String featureName = res.getString("format_name");
-			String featureType = res.getString("feature_type");
-			String geneFeatureNo = res.getString("dbentity_id");
-			String geneFeatureName = res.getString("gene_name");
-			String secondaryIdentifier = res.getString("systematic_name");
-			String strand = res.getString("strand");
-			String seq_length = res.getString(11);
+
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String featureNo = row.getString("contig_id");
+			String featureName = row.getString("format_name");
+			String featureType = row.getString("feature_type");
+			String geneFeatureNo = row.getString("dbentity_id");
+			String geneFeatureName = row.getString("gene_name");
+			String secondaryIdentifier = row.getString("systematic_name");
+			String strand = row.getString("strand");
+			String seq_length = row.getString(11);
 
 			String newstrand = "";
 			if (strand.equals("+")) {
@@ -1167,23 +1462,23 @@ public class SgdConverter extends BioDBConverter {
 			String refId = null;
 			if (featureType.equalsIgnoreCase("plasmid")) {
 				refId = getPlasmid(fixed_chromosome_no); 
-				item.setReference("plasmid", refId);
+				geneUpdates.setReference(item, "plasmid", refId);
 			} else if (featureType.equalsIgnoreCase("chromosome")) {
 				refId = getChromosome(fixed_chromosome_no);
-				item.setReference("chromosome", refId);
+				geneUpdates.setReference(item, "chromosome", refId);
 			}
 
 			// ~~~ location ~~~
-			String locationRefId = getLocation(item, refId, res.getString("start_index"), res.getString("end_index"),newstrand); 
+			String locationRefId = getLocation(item, refId, row.getString("start_index"), row.getString("end_index"),newstrand); 
 
 			if (featureType.equalsIgnoreCase("plasmid")) {
-				item.setReference("plasmidLocation", locationRefId);
+				geneUpdates.setReference(item, "plasmidLocation", locationRefId);
 			} else if (featureType.equalsIgnoreCase("chromosome")) {
-				item.setReference("chromosomeLocation", locationRefId);
+				geneUpdates.setReference(item, "chromosomeLocation", locationRefId);
 			}
 			// ~~ add sequence
-			String seqRefId = getSequence(geneFeatureNo, res.getString("residues"), seq_length);
-			item.setReference("sequence", seqRefId);
+			String seqRefId = getSequence(geneFeatureNo, row, seq_length);
+			geneUpdates.setReference(item, "sequence", seqRefId);
 			item.setAttribute("length", seq_length);
 
 			genesChromosomes.put(secondaryIdentifier, refId);
@@ -1204,13 +1499,15 @@ public class SgdConverter extends BioDBConverter {
 	private void processChrLocations(Connection connection)
 			throws SQLException, ObjectStoreException, Exception {
 
-		ResultSet res = PROCESSOR.getChromosomeLocationResults(connection);
+		ResultSet res = processor.getChromosomeLocationResults(connection);
 		System.out.println("Processing ChrLocations...");
-		while (res.next()) {
-			String featureNo = res.getString("feature_no");
-			String geneFeatureNo = res.getString("gene_feature_no");
-			String featureType = res.getString("feature_type");
-			String featureName = res.getString("identifier");
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String featureNo = row.getString("feature_no");
+			String geneFeatureNo = row.getString("gene_feature_no");
+			String featureType = row.getString("feature_type");
+			String featureName = row.getString("identifier");
 
 			String fixed_chromosome_no = getFixedChrName(featureName);
 
@@ -1239,30 +1536,30 @@ public class SgdConverter extends BioDBConverter {
 		res.close();
 	}*/
 
-	private void processGeneChildrenLocations(Connection connection) throws SQLException, ObjectStoreException, Exception {
+	private void processGeneChildrenLocations(QueryRows res) throws SQLException, ObjectStoreException, Exception {
 
 		System.out.println("Processing GeneChildrenLocations...");
-		ResultSet res = PROCESSOR.getChildrenFeatureLocationResults(connection);
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String geneFeatureNo = res.getString("parent_id");
-			String parentFeatureType = res.getString("parent_type").trim();
+			String geneFeatureNo = row.getString("parent_id");
+			String parentFeatureType = row.getString("parent_type").trim();
 
-			String geneChildFeatureNo = res.getString("child_id");
-			String childFeatureType = res.getString("child_type").trim();
+			String geneChildFeatureNo = row.getString("child_id");
+			String childFeatureType = row.getString("child_type").trim();
 
-			String chromosome_no = res.getString("format_name"); //root chr.number
-			//String secondaryIdentifier = res.getString("child_identifier"); //child identifier is wrong -- fix it 11/13
-			String primaryIdentifier = res.getString("child_sgdid")+"_C"; // SXX
+			String chromosome_no = row.getString("format_name"); //root chr.number
+			//String secondaryIdentifier = row.getString("child_identifier"); //child identifier is wrong -- fix it 11/13
+			String primaryIdentifier = row.getString("child_sgdid")+"_C"; // SXX
 
-			String maxcoord = res.getString("child_end_coord");
-			String mincoord = res.getString("child_start_coord");
-			String strand = res.getString("strand");
+			String maxcoord = row.getString("child_end_coord");
+			String mincoord = row.getString("child_start_coord");
+			String strand = row.getString("strand");
 
-			String seq = res.getString("residues");
-			String seqLen = res.getString("seq_length");
-			String child_status = res.getString("child_status");
+			String seqLen = row.getString("seq_length");
+			String child_status = row.getString("child_status");
 
 			String newstrand = "";
 			if (strand.equals("+")) {
@@ -1285,6 +1582,9 @@ public class SgdConverter extends BioDBConverter {
 			Item parent = genes.get(geneFeatureNo);
 			// create the child Item
 			Item childItem = getChildItem(childFeatureType);
+			if (childItem == null) {
+				continue;
+			}
 
 			childItem.setAttribute("primaryIdentifier", primaryIdentifier);
 			childItem.setReference("organism", organism);
@@ -1295,10 +1595,12 @@ public class SgdConverter extends BioDBConverter {
 				childItem.addToCollection("genes", parent.getIdentifier());
 			} else {
 				String refname = getReferenceName(childFeatureType,parentFeatureType);
-				childItem.setReference(refname, parent.getIdentifier());
+				if (refname != null) {
+					childItem.setReference(refname, parent.getIdentifier());
+				}
 			}
 			// ~~ add sequence
-			String seqRefId = getSequence(geneChildFeatureNo, seq, seqLen);
+			String seqRefId = getSequence(geneChildFeatureNo, row, seqLen);
 			childItem.setReference("sequence", seqRefId);
 
 			// ~~~ chromosome and location ~~~
@@ -1316,7 +1618,7 @@ public class SgdConverter extends BioDBConverter {
 			}
 
 			try {
-				store(childItem);
+				storeAsync(childItem);
 			} catch (ObjectStoreException e) {
 				e.printStackTrace();
 				throw new ObjectStoreException(e);
@@ -1333,97 +1635,7 @@ public class SgdConverter extends BioDBConverter {
 
 	private String getReferenceName(String type, String ptype)
 			throws ObjectStoreException {
-
-		String name = "";
-
-		if (type.equalsIgnoreCase("ARS_consensus_sequence") && ptype.equalsIgnoreCase("ARS")) {
-			name = "ars";
-		}else if (type.equalsIgnoreCase("CDS") && ptype.equalsIgnoreCase("blocked reading frame")) {
-			name = "blockedreadingframe";
-		}else if (type.equalsIgnoreCase("CDS") && ptype.equalsIgnoreCase("ORF")) {
-			name = "orf";
-		} else if (type.equalsIgnoreCase("uORF") && ptype.equalsIgnoreCase("ORF")) {
-			name = "orf";
-		}else if (type.equalsIgnoreCase("CDS") && ptype.equalsIgnoreCase("pseudogene")) {
-			name = "pseudogene";
-		} else if (type.equalsIgnoreCase("CDS") && ptype.equalsIgnoreCase("transposable element gene")) {
-			name = "transposableelementgene";
-		}else if (type.equalsIgnoreCase("centromere_DNA_Element_I")) {
-			name = "centromere";
-		} else if (type.equalsIgnoreCase("centromere_DNA_Element_II")) {
-			name = "centromere";
-		} else if (type.equalsIgnoreCase("centromere_DNA_Element_III")) {
-			name = "centromere";
-		} else if (type.equalsIgnoreCase("external_transcribed_spacer_region")) {
-			name = "ncrna_gene";
-		} else if (type.equalsIgnoreCase("five_prime_UTR_intron")) {
-			name = "orf";
-		}else if (type.equalsIgnoreCase("intein_encoding_region")) {
-			name = "orf";
-		}else if (type.equalsIgnoreCase("internal_transcribed_spacer_region")) {
-			name = "ncrna_gene";
-		} else if (type.equalsIgnoreCase("intron") && ptype.equalsIgnoreCase("ORF")) {
-			name = "orf";
-		}else if (type.equalsIgnoreCase("intron") && ptype.equalsIgnoreCase("rRNA gene")) {
-			name = "rrna_gene";
-		}else if (type.equalsIgnoreCase("intron") && ptype.equalsIgnoreCase("snoRNA gene")) {
-			name = "snorna_gene";
-		}else if (type.equalsIgnoreCase("intron") && ptype.equalsIgnoreCase("tRNA gene")) {
-			name = "trna_gene";
-		} else if (type.equalsIgnoreCase("non_transcribed_region")) {
-			name = "ncrna_gene";
-		}else if (type.equalsIgnoreCase("noncoding_exon") && ptype.equalsIgnoreCase("ncRNA gene")) {
-			name = "ncrna_gene";
-		} else if (type.equalsIgnoreCase("noncoding_exon") && ptype.equalsIgnoreCase("rRNA gene")) {
-			name = "ncrna_gene";
-		} else if (type.equalsIgnoreCase("noncoding_exon") && ptype.equalsIgnoreCase("snoRNA gene")) {
-			name = "ncrna_gene";
-		} else if (type.equalsIgnoreCase("noncoding_exon") && ptype.equalsIgnoreCase("snRNA gene")) {
-			name = "ncrna_gene";
-		} else if (type.equalsIgnoreCase("noncoding_exon") && ptype.equalsIgnoreCase("tRNA gene")) {
-			name = "ncrna_gene";
-		} else if (type.equalsIgnoreCase("plus_1_translational_frameshift") && ptype.equalsIgnoreCase("ORF")) {
-			name = "orf";
-		} else if (type.equalsIgnoreCase("plus_1_translational_frameshift") && ptype.equalsIgnoreCase("pseudogene")) {
-			name = "pseudogene";
-		} else if (type.equalsIgnoreCase("plus_1_translational_frameshift") && ptype.equalsIgnoreCase("transposable element gene")) {
-			name = "transposableelementgene";
-		} else if (type.equalsIgnoreCase("telomeric_repeat") && ptype.equalsIgnoreCase("telomere")) {
-			name = "telomere";
-		}  else if (type.equalsIgnoreCase("telomeric_repeat") && ptype.equalsIgnoreCase("ORF")) {
-			name = "orf";
-		} else if (type.equalsIgnoreCase("X_element") && ptype.equalsIgnoreCase("telomere")) {
-			name = "telomere";
-		} else if (type.equalsIgnoreCase("X_element_combinatorial_repeat") && ptype.equalsIgnoreCase("telomere")) {
-			name = "telomere";
-		}   else if (type.equalsIgnoreCase("Y_prime_element") && ptype.equalsIgnoreCase("telomere")) {
-			name = "telomere";
-		}  else if (type.equalsIgnoreCase("noncoding_exon") && ptype.equalsIgnoreCase("telomerase RNA gene")) {
-			name = "ncrna_gene";
-		}else if (type.equalsIgnoreCase("W_region") && ptype.equalsIgnoreCase("silent mating type cassette array")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("W_region") && ptype.equalsIgnoreCase("mating type region")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("Y_region") && ptype.equalsIgnoreCase("mating type region")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("X_region") && ptype.equalsIgnoreCase("silent mating type cassette array")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("Y_region") && ptype.equalsIgnoreCase("silent mating type cassette array")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("X_region") && ptype.equalsIgnoreCase("mating type region")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("Z1_region") && ptype.equalsIgnoreCase("silent mating type cassette array")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("Z1_region") && ptype.equalsIgnoreCase("mating type region")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("Z2_region") && ptype.equalsIgnoreCase("silent mating type cassette array")) {
-			name = "matingtyperegion";
-		}else if (type.equalsIgnoreCase("Z2_region") && ptype.equalsIgnoreCase("mating type region")) {
-			name = "matingtyperegion";
-		}
-
-		return name;
-
+		return featureTypes.getReferenceName(type, ptype);
 	}
 
 	private String getCasedName(String name) throws Exception {
@@ -1444,19 +1656,20 @@ public class SgdConverter extends BioDBConverter {
 
 	}
 
-	private void processProteins(Connection connection) throws SQLException,
+	private void processProteins(QueryRows res) throws SQLException,
 	ObjectStoreException, Exception {
 
 		System.out.println("Processing Proteins...");
-		ResultSet res = PROCESSOR.getProteinResults(connection);
 		
-		while (res.next()) {
-			String featureNo = res.getString("dbentity_id");
-			String primaryIdentifier = res.getString("sgdid");
-			String secondaryIdentifier = res.getString("format_name");
-			String symbol = res.getString("display_name");
-			String residues = res.getString("residues");
-			String length = res.getString(6);
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String featureNo = row.getString("dbentity_id");
+			String primaryIdentifier = row.getString("sgdid");
+			String secondaryIdentifier = row.getString("format_name");
+			String symbol = row.getString("display_name");
+			String residues = row.getString("residues");
+			String length = row.getString(6);
 
 			Item item = genes.get(featureNo);
 
@@ -1477,37 +1690,38 @@ public class SgdConverter extends BioDBConverter {
 			seq.setAttribute("length", length);
 
 			try {
-				store(seq);
+				storeAsync(seq);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
 
 			protein.setReference("sequence", seq.getIdentifier());
-			if(item != null) protein.addToCollection("genes", item.getIdentifier());
+			if(item != null) proteinUpdates.addToCollection(protein, "genes", item.getIdentifier());
 			proteins.put(featureNo, protein);
 
 		}
 
 	}
 
-	private void processProteinHalfLife(Connection connection) throws SQLException,
+	private void processProteinHalfLife(QueryRows res) throws SQLException,
 	ObjectStoreException, Exception {
 
 		System.out.println("Processing Proteins Half-life data...");
-		ResultSet res = PROCESSOR.getProteinHalfLifeResults(connection);
 
-		while (res.next()) {
-			String featureNo = res.getString("dbentity_id");
-			String units = res.getString("data_unit");
-			String value = res.getString("data_value");
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String featureNo = row.getString("dbentity_id");
+			String units = row.getString("data_unit");
+			String value = row.getString("data_value");
 			if(value.equalsIgnoreCase(">= 100")) value = "10000";
-			String refNo = res.getString("referencedbentity");
-			String pmid = res.getString("pmid");
+			String refNo = row.getString("referencedbentity");
+			String pmid = row.getString("pmid");
 			String experiment = "protein half-life";	
 
 			Item protein = proteins.get(featureNo);
 			Item pmods = getProteinHalfLife(experiment, value, units, pmid, refNo);
-			protein.addToCollection("proteinHalfLife", pmods.getIdentifier());
+			proteinUpdates.addToCollection(protein, "proteinHalfLife", pmods.getIdentifier());
 
 		}
 
@@ -1523,17 +1737,11 @@ public class SgdConverter extends BioDBConverter {
 		if(StringUtils.isNotEmpty(units)){  item.setAttribute("units", units);}
 		item.setAttribute("source", "SGD");
 
-		Item publication = publications.get(refNo);
-
-		if (publication == null) {	
-			publication = createItem("Publication");			
-			publication.setAttribute("pubMedId", pmid);			 
-			publications.put(refNo, publication);
-		}
+		String publication = getPublication(refNo, pmid);
 		item.setReference("publication", publication);   
 
 		try {
-			store(item);
+			storeAsync(item);
 		} catch (ObjectStoreException e) {
 			throw new ObjectStoreException(e);
 		}	
@@ -1541,24 +1749,25 @@ public class SgdConverter extends BioDBConverter {
 	}
 
 
-	private void processProteinDomains(Connection connection) throws SQLException, ObjectStoreException, Exception {
+	private void processProteinDomains(QueryRows res) throws SQLException, ObjectStoreException, Exception {
 
 		System.out.println("Processing Proteins Domains data...");
-		ResultSet res = PROCESSOR.getProteinDomainsResults(connection);
-
-		while (res.next()) {
-			String featureNo = res.getString("dbentity_id");
-			String domainDesc = res.getString("description");
-			String domainMatch = res.getString("display_name");
-			String sstart = res.getString("start_index");
-			String send = res.getString("end_index");
-			String runDate = res.getString("date_of_run");
-			String method = res.getString("url_type");
-			String interpro = res.getString("interpro_id");
+
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String featureNo = row.getString("dbentity_id");
+			String domainDesc = row.getString("description");
+			String domainMatch = row.getString("display_name");
+			String sstart = row.getString("start_index");
+			String send = row.getString("end_index");
+			String runDate = row.getString("date_of_run");
+			String method = row.getString("url_type");
+			String interpro = row.getString("interpro_id");
 
 			Item protein = proteins.get(featureNo);
 			Item pdomain = getDomain(domainMatch, domainDesc, sstart, send, runDate, method);
-			protein.addToCollection("proteinDomains", pdomain.getIdentifier());
+			proteinUpdates.addToCollection(protein, "proteinDomains", pdomain.getIdentifier());
 
 		}
 
@@ -1576,31 +1785,32 @@ public class SgdConverter extends BioDBConverter {
 		item.setAttribute("method", method);
 
 		try {
-			store(item);
+			storeAsync(item);
 		} catch (ObjectStoreException e) {
 			throw new ObjectStoreException(e);
 		}	
 		return item;
 	}
 
-	private void processProteinModifications(Connection connection) throws SQLException, ObjectStoreException, Exception {
+	private void processProteinModifications(QueryRows res) throws SQLException, ObjectStoreException, Exception {
 		
 		System.out.println("Processing Proteins Modification data...");
-		ResultSet res = PROCESSOR.getProteinModificationResults(connection);
-		while (res.next()) {
-			String featureNo = res.getString("dbentity_id");
-			String siteindex = res.getString("site_index");
-			String siteresidue = res.getString("site_residue");
-			String modType = res.getString("display_name");
-			String modifier = res.getString("modifier_name");
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String featureNo = row.getString("dbentity_id");
+			String siteindex = row.getString("site_index");
+			String siteresidue = row.getString("site_residue");
+			String modType = row.getString("display_name");
+			String modifier = row.getString("modifier_name");
 			String modSite = siteresidue+siteindex;
 			String source =  "SGD";
-			String pmid = res.getString("pmid");
-			String refNo = res.getString("referencedbentity");
+			String pmid = row.getString("pmid");
+			String refNo = row.getString("referencedbentity");
 
 			Item protein = proteins.get(featureNo);						
 			Item pmods = getProteinMod(modSite, modType, modifier, source, refNo, pmid);
-			protein.addToCollection("proteinModificationSites", pmods.getIdentifier());				
+			proteinUpdates.addToCollection(protein, "proteinModificationSites", pmods.getIdentifier());				
 		}
 
 	}
@@ -1627,17 +1837,11 @@ public class SgdConverter extends BioDBConverter {
 			item.setAttribute("modifier", modifier);
 		}
 
-		Item publication = publications.get(refNo);
-
-		if(publication == null) {
-			publication = createItem("Publication");
-			publication.setAttribute("pubMedId", pmid);
-			publications.put(refNo, publication);		
-		}
+		String publication = getPublication(refNo, pmid);
 		item.setReference("publication", publication);      
 
 		try {
-			store(item);
+			storeAsync(item);
 		} catch (ObjectStoreException e) {
 			throw new ObjectStoreException(e);
 		}	
@@ -1664,17 +1868,11 @@ public class SgdConverter extends BioDBConverter {
 		if(!StringUtils.isEmpty(category)) { item.setAttribute("experimentalNterminalSequence", seq); }
 
 
-		Item publication = publications.get(refNo);
-
-		if(publication == null) {
-			publication = createItem("Publication");
-			publication.setAttribute("pubMedId", pmid);       
-			publications.put(refNo, publication);		
-		}
+		String publication = getPublication(refNo, pmid);
 		item.setReference("publication", publication);      
 
 		try {
-			store(item);
+			storeAsync(item);
 		} catch (ObjectStoreException e) {
 			throw new ObjectStoreException(e);
 		}	
@@ -1683,57 +1881,58 @@ public class SgdConverter extends BioDBConverter {
 	}
 
 
-	private void processProteinInfo(Connection connection) throws SQLException, ObjectStoreException, Exception {
+	private void processProteinInfo(QueryRows res) throws SQLException, ObjectStoreException, Exception {
 
 		System.out.println("Processing Proteins Info data...");
-		ResultSet res = PROCESSOR.getProteinInfoResults(connection);
-
-		while (res.next()) {
-
-			String featureNo = res.getString("dbentity_id");
-
-			String molwt = res.getString("molecular_weight");
-			String pi = res.getString("pi");
-
-			String ntermseq = res.getString("n_term_seq");
-			String ctermseq = res.getString("c_term_seq");
-			String gravyScore = res.getString("gravy_score");
-			String aromaticityScore = res.getString("aromaticity_score");
-			String cai = res.getString("cai");
-			String codonBias = res.getString("codon_bias");
-			String fopScore = res.getString("fop_score");
-
-			String ala = res.getString("ala");
-			String cys = res.getString("cys");
-			String asp = res.getString("asp");
-			String glu = res.getString("glu");
-			String phe = res.getString("phe");
-			String gly = res.getString("gly");
-			String his = res.getString("his");
-
-			String ile = res.getString("ile");
-			String lys = res.getString("lys");
-			String leu = res.getString("leu");
-			String met = res.getString("met");
-			String asn = res.getString("asn");
-			String pro = res.getString("pro");		
-			String gln = res.getString("gln");
-			String arg = res.getString("arg");
-			String ser = res.getString("ser");		
-			String thr = res.getString("thr");
-			String val = res.getString("val");			
-			String trp = res.getString("trp");
-			String tyr = res.getString("tyr");
-
-			String carbon = res.getString("carbon");
-			String hydrogen = res.getString("hydrogen");
-			String nitrogen = res.getString("nitrogen");
-			String oxygen = res.getString("oxygen");
-			String sulphur = res.getString("sulfur");
-			String instabilityIndex = res.getString("instability_index");
-			String allCysHalf = res.getString("all_cys_ext_coeff");
-			String noCysHalf = res.getString("no_cys_ext_coeff");
-			String aliphaticIndex = res.getString("aliphatic_index");
+
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+
+			String featureNo = row.getString("dbentity_id");
+
+			String molwt = row.getString("molecular_weight");
+			String pi = row.getString("pi");
+
+			String ntermseq = row.getString("n_term_seq");
+			String ctermseq = row.getString("c_term_seq");
+			String gravyScore = row.getString("gravy_score");
+			String aromaticityScore = row.getString("aromaticity_score");
+			String cai = row.getString("cai");
+			String codonBias = row.getString("codon_bias");
+			String fopScore = row.getString("fop_score");
+
+			String ala = row.getString("ala");
+			String cys = row.getString("cys");
+			String asp = row.getString("asp");
+			String glu = row.getString("glu");
+			String phe = row.getString("phe");
+			String gly = row.getString("gly");
+			String his = row.getString("his");
+
+			String ile = row.getString("ile");
+			String lys = row.getString("lys");
+			String leu = row.getString("leu");
+			String met = row.getString("met");
+			String asn = row.getString("asn");
+			String pro = row.getString("pro");		
+			String gln = row.getString("gln");
+			String arg = row.getString("arg");
+			String ser = row.getString("ser");		
+			String thr = row.getString("thr");
+			String val = row.getString("val");			
+			String trp = row.getString("trp");
+			String tyr = row.getString("tyr");
+
+			String carbon = row.getString("carbon");
+			String hydrogen = row.getString("hydrogen");
+			String nitrogen = row.getString("nitrogen");
+			String oxygen = row.getString("oxygen");
+			String sulphur = row.getString("sulfur");
+			String instabilityIndex = row.getString("instability_index");
+			String allCysHalf = row.getString("all_cys_ext_coeff");
+			String noCysHalf = row.getString("no_cys_ext_coeff");
+			String aliphaticIndex = row.getString("aliphatic_index");
 
 			Item protein = proteins.get(featureNo);		
 
@@ -1781,24 +1980,25 @@ public class SgdConverter extends BioDBConverter {
 	}
 
 
-	private void processProteinAbundance(Connection connection) throws SQLException,
+	private void processProteinAbundance(QueryRows res) throws SQLException,
 	ObjectStoreException, Exception {
 
 									
 		System.out.println("Processing Proteins Abundance data...");
-		ResultSet res = PROCESSOR.getProteinAbundanceResults(connection);
-		while (res.next()) {
-
-			String featureNo = res.getString("dbentity_id");
-			String annotationId = res.getString("annotation_id");
-			String units = res.getString("data_unit");
-			String abundance = res.getString("data_value");
-			String pmid = res.getString("pmid");
-			String parentpmid = res.getString("parent_pmid");
-			String refNo = res.getString("referencedbentity");
-			String parentrefNo = res.getString("original_referencedbentity");
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+
+			String featureNo = row.getString("dbentity_id");
+			String annotationId = row.getString("annotation_id");
+			String units = row.getString("data_unit");
+			String abundance = row.getString("data_value");
+			String pmid = row.getString("pmid");
+			String parentpmid = row.getString("parent_pmid");
+			String refNo = row.getString("referencedbentity");
+			String parentrefNo = row.getString("original_referencedbentity");
 			String experiment = "abundance";
-			String strainBackground = res.getString("strain_background");
+			String strainBackground = row.getString("strain_background");
 			
 			String strain = "";
 			if (StringUtils.isNotEmpty(strainBackground)) {
@@ -1811,14 +2011,14 @@ public class SgdConverter extends BioDBConverter {
 				}
 			}
 
-			String assay = res.getString("assay");
-			String media = res.getString("media");
-			String process = res.getString("process");
-			String foldchange = res.getString("fold_change");
+			String assay = row.getString("assay");
+			String media = row.getString("media");
+			String process = row.getString("process");
+			String foldchange = row.getString("fold_change");
 			
-			String chemical = res.getString("chemical");
-			String conc_unit = res.getString("concentration_unit");
-			String conc_value = res.getString("concentration_value");
+			String chemical = row.getString("chemical");
+			String conc_unit = row.getString("concentration_unit");
+			String conc_value = row.getString("concentration_value");
 
 			String treatment = "";
 			if(conc_value != null && conc_unit != null && chemical !=null) {
@@ -1831,15 +2031,15 @@ public class SgdConverter extends BioDBConverter {
 				treatment = "untreated";
 			}
 			
-			String time_unit = res.getString("time_unit");
-			String time_value = res.getString("time_value");
+			String time_unit = row.getString("time_unit");
+			String time_value = row.getString("time_value");
 			String treatment_time = "";
 			if(time_unit != null & time_value != null) {
 				treatment_time = time_value+" "+time_unit;
 			}
 			
-			String median_value = res.getString("median_value");
-			String median_abs_dev_value = res.getString("median_abs_dev_value");
+			String median_value = row.getString("median_value");
+			String median_abs_dev_value = row.getString("median_abs_dev_value");
 
 			Item protein = proteins.get(featureNo);
 			Item pmods = getProteinAbundance(abundance, pmid, refNo, units, annotationId, treatment, treatment_time,
@@ -1848,7 +2048,7 @@ public class SgdConverter extends BioDBConverter {
 			if(StringUtils.isNotEmpty(median_value)){ protein.setAttribute("median", median_value);}
 			if(StringUtils.isNotEmpty(median_abs_dev_value)){ protein.setAttribute("MAD", median_abs_dev_value);}
 			if(StringUtils.isNotEmpty(units)){ protein.setAttribute("units", units);}
-			protein.addToCollection("proteinAbundance", pmods.getIdentifier());
+			proteinUpdates.addToCollection(protein, "proteinAbundance", pmods.getIdentifier());
 
 		}
 
@@ -1874,25 +2074,15 @@ public class SgdConverter extends BioDBConverter {
 		
 		item.setAttribute("source", "SGD");
 
-		Item publication = publications.get(parentrefNo);
-		if (publication == null) {
-			publication = createItem("Publication");			
-			publication.setAttribute("pubMedId", pmid);			 
-			publications.put(parentrefNo, publication);			
-		}
+		String publication = getPublication(parentrefNo, pmid);
 		item.setReference("publication", publication);   
 		
 		
-		Item parentpublication = publications.get(refNo);
-		if (parentpublication == null) {
-			parentpublication = createItem("Publication");			
-			parentpublication.setAttribute("pubMedId", pmid);			 
-			publications.put(refNo, parentpublication);			
-		}
+		String parentpublication = getPublication(refNo, pmid);
 		item.setReference("origPublication", parentpublication);   
 
 		try {
-			store(item);
+			storeAsync(item);
 		} catch (ObjectStoreException e) {
 			throw new ObjectStoreException(e);
 		}
@@ -1948,81 +2138,22 @@ public class SgdConverter extends BioDBConverter {
 	}
 
 	private Item getChildItem(String childType) throws ObjectStoreException {
-
-		Item item = null;
-
-		if (childType.equalsIgnoreCase("CDS")) {
-			item = createItem("CDS");
-		} else if (childType.equalsIgnoreCase("intron")) {
-			item = createItem("Intron");
-		} else if (childType.equalsIgnoreCase("five_prime_UTR_intron")) {
-			item = createItem("FivePrimeUTRIntron");
-		} else if (childType.equalsIgnoreCase("plus_1_translational_frameshift")) {
-			item = createItem("Plus1TranslationalFrameshift");
-		} else if (childType.equalsIgnoreCase("ARS consensus sequence")) {
-			item = createItem("ARSConsensusSequence");
-		} else if (childType.equalsIgnoreCase("binding_site")) {
-			item = createItem("BindingSite");
-		} else if (childType.equalsIgnoreCase("insertion")) {
-			item = createItem("Insertion");
-		} else if (childType.equalsIgnoreCase("repeat_region")) {
-			item = createItem("RepeatRegion");
-		} else if (childType.equalsIgnoreCase("noncoding_exon")) {
-			item = createItem("NoncodingExon");
-		} else if (childType.equalsIgnoreCase("external_transcribed_spacer_region")) {
-			item = createItem("ExternalTranscribedSpacerRegion");
-		} else if (childType.equalsIgnoreCase("internal_transcribed_spacer_region")) {
-			item = createItem("InternalTranscribedSpacerRegion");
-		} else if (childType.equalsIgnoreCase("non_transcribed_region")) {
-			item = createItem("NonTranscribedRegion");
-		} else if (childType.equalsIgnoreCase("centromere_DNA_Element_I")) {
-			item = createItem("CentromereDNAElementI");
-		} else if (childType.equalsIgnoreCase("centromere_DNA_Element_II")) {
-			item = createItem("CentromereDNAElementII");
-		} else if (childType.equalsIgnoreCase("centromere_DNA_Element_III")) {
-			item = createItem("CentromereDNAElementIII");
-		} else if (childType.equalsIgnoreCase("intein_encoding_region")) {
-			item = createItem("InteinEncodingRegion");
-		} else if (childType.equalsIgnoreCase("ARS_consensus_sequence")) {
-			item = createItem("ARSConsensusSequence");
-		}else if (childType.equalsIgnoreCase("Y_prime_element")) {
-			item = createItem("YPrimeElement");
-		}else if (childType.equalsIgnoreCase("X_element_combinatorial_repeat")) {
-			item = createItem("XElementCombinatorialRepeat");
-		}else if (childType.equalsIgnoreCase("X_element")) {
-			item = createItem("XElement");
-		}else if (childType.equalsIgnoreCase("telomeric_repeat")) {
-			item = createItem("TelomericRepeat");
-		}else if (childType.equalsIgnoreCase("uORF")) {
-			item = createItem("uORF");
-		}else if (childType.equalsIgnoreCase("W_region")) {
-			item = createItem("W_region");
-		}else if (childType.equalsIgnoreCase("X_region")) {
-			item = createItem("X_region");
-		}else if (childType.equalsIgnoreCase("Y_region")) {
-			item = createItem("Y_region");
-		}else if (childType.equalsIgnoreCase("Z1_region")) {
-			item = createItem("Z1_region");
-		}else if (childType.equalsIgnoreCase("Z2_region")) {
-			item = createItem("Z2_region");
-		}
-
-		return item;
-
+		String className = featureTypes.getChildClass(childType);
+		return className == null ? null : createItem(className);
 	}
 
-	private void processChromosomeSequences(Connection connection)
+	private void processChromosomeSequences(QueryRows res)
 			throws SQLException, ObjectStoreException, Exception {
 
 		System.out.println("Processing ChromosomeSequence...");
-		ResultSet res = PROCESSOR.getChromosomeSequenceResults(connection);
 
-		while (res.next()) {
-			String featureNo = res.getString("contig_id");
-			String chromosomeNo = res.getString("format_name");
-			String feature_type = res.getString("display_name");
-			String residues = res.getString("residues");
-			String length = res.getString(5);
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String featureNo = row.getString("contig_id");
+			String chromosomeNo = row.getString("format_name");
+			String feature_type = row.getString("display_name");
+			String length = row.getString(5);
 
 			String fixed_chromosome_no = getFixedChrName(chromosomeNo);
 
@@ -2033,21 +2164,23 @@ public class SgdConverter extends BioDBConverter {
 				chr.setAttribute("length", length);
 				chr.setAttribute("featureType", feature_type);
 
+				residueBuffer.read(row, "residues");
 				Item seq = createItem("Sequence");
-				seq.setAttribute("residues", residues);
+				seq.setAttribute("residues", residueBuffer.residues());
 				seq.setAttribute("length", length);
 
 				try {
-					store(seq);
+					storeAsync(seq);
 				} catch (ObjectStoreException e) {
 					throw new ObjectStoreException(e);
 				}
 
 				chr.setReference("sequence", seq.getIdentifier());
 				chromosomes.put(fixed_chromosome_no, chr.getIdentifier());
+				sequenceNames.put(chr.getIdentifier(), fixed_chromosome_no);
 
 				try {
-					store(chr);
+					storeAsync(chr);
 				} catch (ObjectStoreException e) {
 					throw new ObjectStoreException(e);
 				}
@@ -2058,8 +2191,9 @@ public class SgdConverter extends BioDBConverter {
 				item.setAttribute("primaryIdentifier", fixed_chromosome_no); 
 				item.setReference("organism", organism);
 				plasmids.put(fixed_chromosome_no, item.getIdentifier());
+				sequenceNames.put(item.getIdentifier(), fixed_chromosome_no);
 				try {
-					store(item);
+					storeAsync(item);
 				} catch (ObjectStoreException e) {
 					throw new ObjectStoreException(e);
 				}
@@ -2069,19 +2203,151 @@ public class SgdConverter extends BioDBConverter {
 
 	}
 
+	/**
+	 * Store a gene, allele, transcript, protein or publication, recording its hash in the
+	 * snapshot and storing just its keys if it hasn't changed and the load is incremental.
+	 */
+	private void storeEntity(String type, Item item) throws ObjectStoreException {
+		if (snapshot == null) {
+			storeAsync(item);
+			return;
+		}
+		Map<String, String> tokens = entityTokens();
+		String token = tokens.get(item.getIdentifier());
+		if (token == null) {
+			// an entity without a dbentity_id, can't be tracked
+			storeAsync(item);
+			return;
+		}
+		long id = Long.parseLong(token.substring(type.length() + 1));
+		boolean unchanged = snapshot.record(type, id, SgdEntitySnapshot.hash(item, tokens::get));
+		storeAsync(unchanged && incremental ? keysOnly(item) : item);
+	}
+
+	/**
+	 * Tokens for the identifiers of items that are the same from run to run: the entities by
+	 * type and dbentity_id, chromosomes by name and sequences by digest.
+	 */
+	private Map<String, String> entityTokens() {
+		int entities = genes.size() + alleles.size() + transcripts.size() + proteins.size()
+				+ publications.size();
+		if (entityTokens != null && entities == tokenedEntities) {
+			return entityTokens;
+		}
+		Map<String, String> tokens = new HashMap<String, String>(entities * 2);
+		addTokens(tokens, "genes", genes);
+		addTokens(tokens, "alleles", alleles);
+		addTokens(tokens, "transcripts", transcripts);
+		addTokens(tokens, "proteins", proteins);
+		publications.forEach((pub, id) -> tokens.put(pub.getIdentifier(), "publications:" + id));
+		for (Map.Entry<String, String> entry : chromosomes.entrySet()) {
+			tokens.put(entry.getValue(), "chromosome:" + entry.getKey());
+		}
+		for (Map.Entry<String, String> entry : plasmids.entrySet()) {
+			tokens.put(entry.getValue(), "plasmid:" + entry.getKey());
+		}
+		for (Map.Entry<String, String> entry : sequenceDigests.entrySet()) {
+			tokens.put(entry.getValue(), "sequence:" + entry.getKey());
+		}
+		tokens.put(organism.getIdentifier(), "organism");
+		entityTokens = tokens;
+		tokenedEntities = entities;
+		return tokens;
+	}
+
+	private static void addTokens(Map<String, String> tokens, String type,
+			SgdEntityRegistry.EntityMap<Item> entities) {
+		entities.forEach((item, id) -> tokens.put(item.getIdentifier(), type + ":" + id));
+	}
+
+	/**
+	 * @return a copy of the item with only the attributes and references that are keys of its
+	 * class or its superclasses in sgd_keys.properties, or the item itself if it has none
+	 */
+	private Item keysOnly(Item item) {
+		Set<String> fields = classKeyFields.get(item.getClassName());
+		if (fields == null) {
+			fields = classKeyFields(item.getClassName());
+			classKeyFields.put(item.getClassName(), fields);
+		}
+		if (fields.isEmpty()) {
+			return item;
+		}
+		Item keys = new Item(item.getIdentifier(), item.getClassName(), "");
+		for (Attribute attribute : item.getAttributes()) {
+			if (fields.contains(attribute.getName())) {
+				keys.addAttribute(attribute);
+			}
+		}
+		if (keys.getAttributes().isEmpty()) {
+			return item;
+		}
+		for (Reference reference : item.getReferences()) {
+			if (fields.contains(reference.getName())) {
+				keys.addReference(reference);
+			}
+		}
+		return keys;
+	}
+
+	/**
+	 * Keys are declared for Gene, but genes are stored as ORF, ncRNAGene etc.
+	 */
+	private Set<String> classKeyFields(String className) {
+		Set<String> fields = new HashSet<String>();
+		if (keyFields.containsKey(className)) {
+			fields.addAll(keyFields.get(className));
+		}
+		ClassDescriptor cd = getModel() == null ? null : getModel().getClassDescriptorByName(className);
+		if (cd != null) {
+			for (ClassDescriptor sup : cd.getAllSuperDescriptors()) {
+				if (keyFields.containsKey(sup.getUnqualifiedName())) {
+					fields.addAll(keyFields.get(sup.getUnqualifiedName()));
+				}
+			}
+		}
+		return fields;
+	}
+
+	private Map<String, Set<String>> readKeyFields() throws IOException {
+		Properties props = new Properties();
+		InputStream in = getClass().getClassLoader().getResourceAsStream(KEYS_FILE);
+		if (in == null) {
+			throw new IOException("Couldn't find " + KEYS_FILE);
+		}
+		try {
+			props.load(in);
+		} finally {
+			in.close();
+		}
+		Map<String, Set<String>> fields = new HashMap<String, Set<String>>();
+		for (String key : props.stringPropertyNames()) {
+			String cls = key.substring(0, key.indexOf('.'));
+			if (!fields.containsKey(cls)) {
+				fields.put(cls, new HashSet<String>());
+			}
+			for (String field : props.getProperty(key).split(",")) {
+				fields.get(cls).add(field.trim());
+			}
+		}
+		return fields;
+	}
+
 	/**
 	 * 
 	 * @throws ObjectStoreException
 	 */
 
 	private void storeGenes() throws ObjectStoreException {
-		for (Item gene : genes.values()) {
+		geneUpdates.replay(genes.values(), gene -> {
 			try {
-				store(gene);
+				storeEntity("genes", gene);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
-		}
+		});
+		// nothing reads the genes' fields after this, let the writer free them once written
+		genes.replaceAll(gene -> SgdEntityRegistry.handle(gene));
 	}
 
 	/**
@@ -2090,13 +2356,15 @@ public class SgdConverter extends BioDBConverter {
 	 */
 
 	private void storeAlleles() throws ObjectStoreException {
-		for (Item allele : alleles.values()) {
+		alleleUpdates.replay(alleles.values(), allele -> {
 			try {
-				store(allele);
+				storeEntity("alleles", allele);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
-		}
+		});
+		// the interactions only refer to the alleles, the phenotypes read these
+		alleles.replaceAll(allele -> SgdEntityRegistry.handle(allele, "name", "description"));
 	}
 
 	/**
@@ -2105,13 +2373,14 @@ public class SgdConverter extends BioDBConverter {
 	 */
 
 	private void storeTranscripts() throws ObjectStoreException {
-		for (Item transcript : transcripts.values()) {
+		transcriptUpdates.replay(transcripts.values(), transcript -> {
 			try {
-				store(transcript);
+				storeEntity("transcripts", transcript);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
-		}
+		});
+		transcripts.replaceAll(transcript -> SgdEntityRegistry.handle(transcript));
 	}
 
 	/**
@@ -2120,13 +2389,14 @@ public class SgdConverter extends BioDBConverter {
 	 */
 
 	private void storeProteins() throws ObjectStoreException {
-		for (Item protein : proteins.values()) {
+		proteinUpdates.replay(proteins.values(), protein -> {
 			try {
-				store(protein);
+				storeEntity("proteins", protein);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
-		}
+		});
+		proteins.replaceAll(protein -> SgdEntityRegistry.handle(protein));
 	}
 	/**
 	 * 
@@ -2136,7 +2406,7 @@ public class SgdConverter extends BioDBConverter {
 	private void storeInteractionTypes() throws ObjectStoreException {
 		for (Item type : interactiontype.values()) {
 			try {
-				store(type);
+				storeAsync(type);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -2150,29 +2420,7 @@ public class SgdConverter extends BioDBConverter {
 	 */
 
 	private void storeInteractionExperiments() throws ObjectStoreException {
-		for (Item exp : experimenttype.values()) {
-			try {
-				store(exp);
-			} catch (ObjectStoreException e) {
-				throw new ObjectStoreException(e);
-			}
-		}
-	}
-
-
-	/**
-	 * 
-	 * @throws ObjectStoreException
-	 */
-
-	private void storeInteractionDetails() throws ObjectStoreException {
-		for (Item det : interactiondetail.values()) {
-			try {
-				store(det);
-			} catch (ObjectStoreException e) {
-				throw new ObjectStoreException(e);
-			}
-		}
+		interactionBuilder.storeExperiments();
 	}
 
 
@@ -2182,13 +2430,14 @@ public class SgdConverter extends BioDBConverter {
 	 */
 
 	private void storePublications() throws ObjectStoreException {
-		for (Item pub : publications.values()) {
+		publications.report();
+		publicationUpdates.replay(publications.items(), pub -> {
 			try {
-				store(pub);
+				storeEntity("publications", pub);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
-		}
+		});
 	}
 
 	/**
@@ -2197,16 +2446,16 @@ public class SgdConverter extends BioDBConverter {
 	 */
 
 	private void storePathways() throws ObjectStoreException {
-		for (Item path : pathways.values()) {
+		pathwayUpdates.replay(pathways.values(), path -> {
 			try {
-				store(path);
+				storeAsync(path);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
-		}
+		});
 		for (Item ps : pathwaysummarys.values()) {
 			try {
-				store(ps);
+				storeAsync(ps);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -2219,13 +2468,7 @@ public class SgdConverter extends BioDBConverter {
 	 */
 
 	private void storeInteractions() throws ObjectStoreException {
-		for (Item intact : interactions.values()) {
-			try {
-				store(intact);
-			} catch (ObjectStoreException e) {
-				throw new ObjectStoreException(e);
-			}
-		}
+		interactionBuilder.storeInteractions();
 	}
 
 	/**
@@ -2236,7 +2479,7 @@ public class SgdConverter extends BioDBConverter {
 	private void storePhenotypes() throws ObjectStoreException {
 		for (Item pheno : phenotypes.values()) {
 			try {
-				store(pheno);
+				storeAsync(pheno);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -2247,7 +2490,7 @@ public class SgdConverter extends BioDBConverter {
 	/*private void storePhenotypeAnnotations() throws ObjectStoreException {
 		for (Item pheno : phenotypeannots.values()) {
 			try {
-				store(pheno);
+				storeAsync(pheno);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -2257,7 +2500,7 @@ public class SgdConverter extends BioDBConverter {
 	private void storeProteinAbundance() throws ObjectStoreException {
 		for (Item pa : proteinAbundance.values()) {
 			try {
-				store(pa);
+				storeAsync(pa);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -2267,7 +2510,7 @@ public class SgdConverter extends BioDBConverter {
 	private void storeRegulationSummaries() throws ObjectStoreException {
 		for (Item rs : regulationSummary.values()) {
 			try {
-				store(rs);
+				storeAsync(rs);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -2276,12 +2519,12 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processAllPubs(Connection connection) throws SQLException,
+	private void processAllPubs(QueryRows res) throws SQLException,
 	ObjectStoreException {
 
 		String prevReferenceNo = "";
@@ -2303,23 +2546,24 @@ public class SgdConverter extends BioDBConverter {
 		boolean firstrow = true;
 
 		System.out.println("Processing All Publications with Topics...");
-		ResultSet res = PROCESSOR.getPubAllResults(connection);
-
-		while (res.next()) {
-
-			String referenceNo = res.getString("dbentity_id");
-			String pubMedId = res.getString("pmid");
-			String title = res.getString("title");
-            String volume = res.getString("volume");
-            String pages = res.getString("page");
-            String year = res.getString("year");
-            String issue = res.getString("issue");
-			String citation = res.getString("citation");
-			String topic = res.getString("topic");
-			String journal = res.getString("med_abbr");
-			String abstractText = res.getString("text");
-			String dbxrefid = res.getString("sgdid");
-			String date_created = res.getString("date_created");
+
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+
+			String referenceNo = row.getString("dbentity_id");
+			String pubMedId = row.getString("pmid");
+			String title = row.getString("title");
+            String volume = row.getString("volume");
+            String pages = row.getString("page");
+            String year = row.getString("year");
+            String issue = row.getString("issue");
+			String citation = row.getString("citation");
+			String topic = row.getString("topic");
+			String journal = row.getString("med_abbr");
+			String abstractText = row.getString("text");
+			String dbxrefid = row.getString("sgdid");
+			String date_created = row.getString("date_created");
 
 			if (firstrow) {
 				prevReferenceNo = referenceNo;
@@ -2362,12 +2606,12 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processPubsWithFeatures(Connection connection)
+	private void processPubsWithFeatures(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
 		String prevGeneFeatureNo = "";
@@ -2388,23 +2632,24 @@ public class SgdConverter extends BioDBConverter {
 		Item gene = null;
 		boolean firstrow = true;
 		System.out.println("Processing Publications With Chromosomal Features...");
-		ResultSet res = PROCESSOR.getPubWithFeaturesResults(connection);
-
-		while (res.next()) {
-
-			String referenceNo = res.getString("referenceFeatureNo");
-			String geneFeatureNo = res.getString("featureNo");
-			String pubMedId = res.getString("pmid");
-			String title = res.getString("title");
-			String citation = res.getString("citation");
-			String topic = res.getString("topic");
-			String journal = res.getString("med_abbr");
-			String volume = res.getString("volume");
-			String pages = res.getString("page");
-			String year = res.getString("year");
-			String issue = res.getString("issue");
-			String dbxrefid = res.getString("sgdid");
-			String date_created = res.getString("date_created");
+
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+
+			String referenceNo = row.getString("referenceFeatureNo");
+			String geneFeatureNo = row.getString("featureNo");
+			String pubMedId = row.getString("pmid");
+			String title = row.getString("title");
+			String citation = row.getString("citation");
+			String topic = row.getString("topic");
+			String journal = row.getString("med_abbr");
+			String volume = row.getString("volume");
+			String pages = row.getString("page");
+			String year = row.getString("year");
+			String issue = row.getString("issue");
+			String dbxrefid = row.getString("sgdid");
+			String date_created = row.getString("date_created");
 
 			if (!geneFeatureNo.equalsIgnoreCase(prevGeneFeatureNo)) {
 
@@ -2468,20 +2713,21 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
-	private void processPhenotypeSummary(Connection connection)
+	private void processPhenotypeSummary(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
 		System.out.println("Processing Phenotype Summary....");
-		ResultSet res = PROCESSOR.getPhenotypeSummary(connection);	
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String featureNo = res.getString("dbentity_id");
-			String summary = res.getString("text");
+			String featureNo = row.getString("dbentity_id");
+			String summary = row.getString("text");
 
 			Item gene = genes.get(featureNo);		
 			gene.setAttribute("phenotypeSummary", summary);
@@ -2490,20 +2736,21 @@ public class SgdConverter extends BioDBConverter {
 	}
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
-	private void processFunctionSummary(Connection connection)
+	private void processFunctionSummary(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
 		System.out.println("Processing Function Summary....");
-		ResultSet res = PROCESSOR.getFunctionSummary(connection);	
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String featureNo = res.getString("dbentity_id");
-			String summary = res.getString("text");
+			String featureNo = row.getString("dbentity_id");
+			String summary = row.getString("text");
 
 			Item gene = genes.get(featureNo);		
 			gene.setAttribute("functionSummary", summary);
@@ -2512,20 +2759,21 @@ public class SgdConverter extends BioDBConverter {
 	}
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
-	private void processGeneSummary(Connection connection)
+	private void processGeneSummary(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
 		System.out.println("Processing Gene Summary....");
-		ResultSet res = PROCESSOR.getGeneSummary(connection);	
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 
-			String featureNo = res.getString("dbentity_id");
-			String summary = res.getString("text");
+			String featureNo = row.getString("dbentity_id");
+			String summary = row.getString("text");
 
 			Item gene = genes.get(featureNo);		
 			gene.setAttribute("geneSummary", summary);
@@ -2535,20 +2783,21 @@ public class SgdConverter extends BioDBConverter {
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
-	private void processRegulationSummary(Connection connection)
+	private void processRegulationSummary(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
 		System.out.println("Processing Regulation Summary....");
-		ResultSet res = PROCESSOR.getRegulationSummary(connection);	
-		while (res.next()) {
-			String featureNo = res.getString("dbentity_id");
-			String summary = res.getString("text");
-			String refNo = res.getString("reference_id");
-			String pmid = res.getString("pmid");
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
+			String featureNo = row.getString("dbentity_id");
+			String summary = row.getString("text");
+			String refNo = row.getString("reference_id");
+			String pmid = row.getString("pmid");
 			getRegulationSummary(featureNo, summary, refNo, pmid);
 		}
 
@@ -2563,22 +2812,12 @@ public class SgdConverter extends BioDBConverter {
 		if(rs == null){
 			rs = createItem("RegulationSummary");
 			rs.setAttribute("summaryParagraph", text);	
-			Item publication = publications.get(refNo);
-			if(publication == null) {
-				publication = createItem("Publication");
-				publication.setAttribute("pubMedId", pmid);     
-				publications.put(refNo, publication);                		
-			}
+			String publication = getPublication(refNo, pmid);
 			rs.addToCollection("publications", publication);
 			regulationSummary.put(featureNo, rs);
-			gene.setReference("regulationSummary", rs.getIdentifier());
+			geneUpdates.setReference(gene, "regulationSummary", rs.getIdentifier());
 		}else{				
-			Item publication = publications.get(refNo);
-			if(publication == null) {
-				publication = createItem("Publication");
-				publication.setAttribute("pubMedId", pmid);     
-				publications.put(refNo, publication);                		
-			}
+			String publication = getPublication(refNo, pmid);
 			rs.addToCollection("publications", publication);		
 		}
 
@@ -2586,193 +2825,86 @@ public class SgdConverter extends BioDBConverter {
 	
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processPhysicalInteractions(Connection connection)
+	private void processPhysicalInteractions(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
-		String dsId = getBioGridDataSet();
 		int count = 0;
 		
 		System.out.println("Processing Physical Interactions...");
-		ResultSet res = PROCESSOR.getPhysicalInteractionResults(connection);
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 			count++;
-			String geneFeatureName = res.getString("dbentity1_id");
-			Item gene = genes.get(geneFeatureName);
-
-			String interactionNo = res.getString("annotation_id");
-			String referenceNo = res.getString("reference_id");
-			String interactionType = "physical interactions";
-			String experimentType = res.getString("biogrid_experimental_system");
-			String annotationType = res.getString("annotation_type");
-			String modification = res.getString("modification");
-
-			String interactingGeneFeatureName = res.getString("dbentity2_id");
-			Item interactingGene = genes.get(interactingGeneFeatureName);
-
-			String action = res.getString("bait_hit");
-			String[] a = action.split("-");
-			String role1 = a[0];
-			String role2 = a[1];
-			String source = res.getString("display_name");
-			String phenotype = ""; //res.getString("phenotype");
-			String citation = res.getString("citation");
-			String pubmed = res.getString("pmid");
-			String title = res.getString("title");
-			String volume = res.getString("volume");
-			String page = res.getString("page");
-			String year = res.getString("year");
-			String issue = res.getString("issue");
-			String abbreviation = res.getString("med_abbr");
-			String firstAuthor = res.getString("first_author");
-			String dbxrefid = res.getString("sgdid");
-			String note = res.getString("note");
-
-			String interactionRefId = getInteraction(interactionNo,
-					referenceNo, interactionType, experimentType,
-					annotationType, modification, interactingGene, role1, source,
-					phenotype, citation, gene, pubmed, title, volume, page,
-					year, issue, abbreviation, dsId, firstAuthor, dbxrefid, note);
-
-			//store the reverse relationship so that template changes do not have to be made
-			if(!geneFeatureName.equals(interactingGeneFeatureName)) {
-				String interactionRefId2 = getInteraction(interactionNo,
-						referenceNo, interactionType, experimentType,
-						annotationType, modification, gene, role2, source,
-						phenotype, citation, interactingGene, pubmed, title, volume, page,
-						year, issue, abbreviation, dsId, firstAuthor, dbxrefid, note);
-			}
-
-			/*String interactionRefId = getInteractionNew(interactionNo,
-					referenceNo, interactionType, experimentType,
-					annotationType, modification, interactingGene, role1, role2, source,
-					phenotype, citation, gene, pubmed, title, volume, page,
-					year, issue, abbreviation, dsId, firstAuthor, dbxrefid, note);*/
+			Item gene = genes.get(row.getString("dbentity1_id"));
+			Item interactingGene = genes.get(row.getString("dbentity2_id"));
 
+			interactionBuilder.add(row, gene, interactingGene, "physical interactions",
+					"modification", null);
 		}
 		System.out.println("physical interaction count is : " + count);
 	}
 
 	/**
 	 * 
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processGeneticInteractions(Connection connection)
+	private void processGeneticInteractions(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
-		String dsId = getBioGridDataSet();
 		int count = 0;
 
 		System.out.println("Processing Genetic Interactions...");
-		ResultSet res = PROCESSOR.getGeneticInteractionResults(connection);
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 			count++;
-			String geneFeatureName = res.getString("dbentity1_id");
-
-			Item gene = genes.get(geneFeatureName); //can save on look-ups here
-
-			String interactionNo = res.getString("annotation_id");
-			String referenceNo = res.getString("reference_id");
-			String interactionType = "genetic interactions"; //res.getString("interaction_type");
-			String experimentType = res.getString("biogrid_experimental_system");
-			String annotationType = res.getString("annotation_type");
-			String modification = ""; //res.getString("modification");
-
-			String interactingGeneFeatureName = res.getString("dbentity2_id");
-			Item interactingGene = genes.get(interactingGeneFeatureName);
-
-			String action = res.getString("bait_hit");
-			String[] a = action.split("-");
-			String role1 = a[0];
-			String role2 = a[1];
-			String source = res.getString("source");
-			String phenotype = res.getString("phenotype");
-			String citation = res.getString("citation");
-			String pubmed = res.getString("pmid");
-			String title = res.getString("title");
-			String volume = res.getString("volume");
-			String page = res.getString("page");
-			String year = res.getString("year");
-			String issue = res.getString("issue");
-			String abbreviation = res.getString("med_abbr");
-			String firstAuthor = res.getString("first_author");
-			String dbxrefid = res.getString("sgdid");
-			String note = res.getString("note");
-
-			String interactionRefId = getInteraction(interactionNo,
-					referenceNo, interactionType, experimentType,
-					annotationType, modification, interactingGene, role1, source,
-					phenotype, citation, gene, pubmed, title, volume, page,
-					year, issue, abbreviation, dsId, firstAuthor, dbxrefid, note);
-			String interactionRefId2 = "";
-			if(!geneFeatureName.equals(interactingGeneFeatureName)) {//store the reverse relationship so that template changes do not have to be made; act1 in gene.X or participant.X
-
-				 interactionRefId2 = getInteraction(interactionNo,
-						referenceNo, interactionType, experimentType,
-						annotationType, modification, gene, role2, source,
-						phenotype, citation, interactingGene, pubmed, title, volume, page,
-						year, issue, abbreviation, dsId, firstAuthor, dbxrefid, note);
-			}
-			String both = "";
-			if(!interactionRefId2.isEmpty()) {
-				both = interactionRefId+":"+interactionRefId2;
-			}else {
-				both = interactionRefId;
-			}
-			interactionitems.put(interactionNo, both);
-			/*String interactionRefId = getInteractionNew(interactionNo,
-					referenceNo, interactionType, experimentType,
-					annotationType, modification, interactingGene, role1, role2, source,
-					phenotype, citation, gene, pubmed, title, volume, page,
-					year, issue, abbreviation, dsId, firstAuthor, dbxrefid, note);*/
+			Item gene = genes.get(row.getString("dbentity1_id")); //can save on look-ups here
+			Item interactingGene = genes.get(row.getString("dbentity2_id"));
 
+			Item[] both = interactionBuilder.add(row, gene, interactingGene, "genetic interactions",
+					null, "phenotype");
+			interactionitems.put(row.getString("annotation_id"), both);
 		}
 		System.out.println("genetic interaction count is : " + count);
 	}
 
 	/**
 	 *
-	 * @param connection
+	 * @param res the query results
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
 
-	private void processGeneticInteractionsWithAlleles(Connection connection)
+	private void processGeneticInteractionsWithAlleles(QueryRows res)
 			throws SQLException, ObjectStoreException {
 
 		System.out.println("Processing Genetic Interactions with Alleles.....");
-		ResultSet res = PROCESSOR.getGeneticInteractionWithAllelesResults(connection);
 		int count = 0;
 
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 	        count++;
-			String interactionNo = res.getString("interaction_id");
-			String annotationNo = res.getString("annotation_id");
-			String allele1_id =  res.getString("allele1_id");
-			String allele2_id = res.getString("allele2_id");
-			String sga_score = res.getString("sga_score");
-			String pvalue =  res.getString("pvalue");
-
-			Item interaction = null;
-			Item interaction2 = null;
-
-			String b = interactionitems.get(interactionNo);
-			if(b.contains(":")){
-				String[] bo = b.split(":");
-				 interaction = interactions.get(bo[0]);
-				 interaction2 = interactions.get(bo[1]);
-			}else{
-				interaction = interactions.get(b);
-			}
+			String interactionNo = row.getString("interaction_id");
+			String annotationNo = row.getString("annotation_id");
+			String allele1_id =  row.getString("allele1_id");
+			String allele2_id = row.getString("allele2_id");
+			String sga_score = row.getString("sga_score");
+			String pvalue =  row.getString("pvalue");
+
+			Item[] both = interactionitems.get(interactionNo);
+			Item interaction = both[0];
+			Item interaction2 = both.length > 1 ? both[1] : null;
 
 			if(interaction != null){
 
@@ -2790,7 +2922,7 @@ public class SgdConverter extends BioDBConverter {
 				}
 
 				try {
-					store(allint);
+					storeAsync(allint);
 				} catch (ObjectStoreException e) {
 					throw new ObjectStoreException(e);
 				}
@@ -2814,7 +2946,7 @@ public class SgdConverter extends BioDBConverter {
 				}
 
 				try {
-					store(allint2);
+					storeAsync(allint2);
 				} catch (ObjectStoreException e) {
 					throw new ObjectStoreException(e);
 				}
@@ -2826,140 +2958,49 @@ public class SgdConverter extends BioDBConverter {
 		System.out.println("genetic allele interaction count is : " + count);
 	}
 
-	private void processPhenotypes(Connection connection) throws SQLException,
+	private void processPhenotypes(QueryRows res) throws SQLException,
 	ObjectStoreException {
 
-		ResultSet res = PROCESSOR.getPhenotypeResults(connection);
 		System.out.println("Processing Phenotypes...");
-		while (res.next()) {
+		RowDecoder row = new RowDecoder(res);
+		while (row.next()) {
+			metrics.row();
 			
-			String geneFeatureNo = res.getString("dbentity_id");
-			String phenotypeAnnotNo = res.getString("annotation_id");	
-			String groupNo = res.getString("group_id");
-			String experimentType = res.getString("experiment");
-			String experimentComment = res.getString("experiment_comment");
-			String alleleComment = res.getString("allele_comment");
-			String reporterComment = res.getString("reporter_comment");
-			String mutantType = res.getString("mutant");
-			String qualifier_observable = res.getString("phenotype");
-			String strainBackground = res.getString("strain_name");
-			String reporter = res.getString("reporter");
-			String alleledbentity_id = res.getString("allele");
-			String assay = res.getString("assay");
-			String details = res.getString("details");
-			String pmid = res.getString("pmid");
-			String refNo = res.getString("refNo");
+			String geneFeatureNo = row.getString("dbentity_id");
+			String phenotypeAnnotNo = row.getString("annotation_id");	
+			String groupNo = row.getString("group_id");
+			String experimentType = row.getString("experiment");
+			String experimentComment = row.getString("experiment_comment");
+			String alleleComment = row.getString("allele_comment");
+			String reporterComment = row.getString("reporter_comment");
+			String mutantType = row.getString("mutant");
+			String qualifier_observable = row.getString("phenotype");
+			String strainBackground = row.getString("strain_name");
+			String reporter = row.getString("reporter");
+			String alleledbentity_id = row.getString("allele");
+			String assay = row.getString("assay");
+			String details = row.getString("details");
+			String pmid = row.getString("pmid");
+			String refNo = row.getString("refNo");
 			
 				
-			Array cond_class = res.getArray("condclass");
-			String[] str_cond_class = (String[])cond_class.getArray();
-			
-			Array cond_name = res.getArray("condname");
-			String[] str_cond_name = (String[])cond_name.getArray();
-			
-			Array cond_value = res.getArray("condvalue");
-			String[] str_cond_value = (String[])cond_value.getArray();
-			
-			Array cond_unit = res.getArray("condunit");
-			String[] str_cond_unit = (String[])cond_unit.getArray();
-			 
-			String qualifier = "";
-			String observable = "";
-			if(qualifier_observable.contains(":")){
-				String t[] = qualifier_observable.split(":");
-				qualifier = t[1].trim();
-				observable = t[0].trim();
-			}else{
-				observable = qualifier_observable.trim();
-			}
-		
-			String strain = "";
-			if (StringUtils.isNotEmpty(strainBackground)) {
-				String q[] = strainBackground.split("_");
-				int len = q.length;
-				if(len == 3){
-					 strain = q[len-1];
-				}else{
-					 strain = "Other";
-				}
-			}
+			SgdPhenotypeDecoder.Observable observable = phenotypeDecoder.getObservable(qualifier_observable);
+			String strain = phenotypeDecoder.getStrain(strainBackground);
 			Item gene = genes.get(geneFeatureNo);
-			
-			String chemical = "";
-			String condition = "";
-			String chemcond = getPhenotypeCondition(str_cond_class, str_cond_name, str_cond_value, str_cond_unit);
-			//System.out.println("chemcond is...." + chemcond);
-			String cc[] = chemcond.split("_");
-			chemical = cc[0];
-			condition = cc[1];				
-			
-			getPhenotype(phenotypeAnnotNo, groupNo, qualifier, observable, experimentType, experimentComment,
-					alleleComment, reporterComment, strain, mutantType, reporter, alleledbentity_id, assay, chemical, condition, details, pmid, refNo, gene);
-			
-		}
-
 
-	}
-	
-	
-	private String getPhenotypeCondition(String[] condClass, String[] condName, String[] condValue, String[] condUnits) {
+			SgdPhenotypeDecoder.Condition condition = phenotypeDecoder.getCondition(row.getArray("condclass"),
+					row.getArray("condname"), row.getArray("condvalue"), row.getArray("condunit"));
 
-		String chemical = " ";
-		String condition = " ";
-		for (int i=0; i< condClass.length; i++) {
+			getPhenotype(phenotypeAnnotNo, groupNo, observable.getQualifier(), observable.getObservable(), experimentType, experimentComment,
+					alleleComment, reporterComment, strain, mutantType, reporter, alleledbentity_id, assay, condition.getChemical(),
+					condition.getCondition(), details, pmid, refNo, gene);
 			
-			String cc = condClass[i];
-			String cn = condName[i];
-			String cv = condValue[i];
-			String cu = condUnits[i];
-			if(cc != null  && cn != null){	
-				cc = Character.toUpperCase(cc.charAt(0)) + cc.substring(1);
-				if(cc.equals("Chemical")){
-				if(cv !=null) chemical += cv;
-				if(cu !=null) {
-					if(cu.equals("%")){
-						chemical += cu;
-					}else{
-						chemical += " "+cu;
-					}
-				}
-				if(cn !=null) chemical += " "+cn+", ";
-				}else if(cc.equals("Temperature")){
-					if(cc !=null) condition += cc+": ";
-					if(cn !=null) condition += cn;
-					if(cv !=null && cu !=null){
-						condition += " ("+cv+cu+") ";
-					}else{
-					 if(cv !=null && !cv.isEmpty()) condition += " ("+cv+") ";
-					}
-				}else{
-					if(cc !=null) condition += cc+": ";
-					if(cv !=null) condition += cv;
-					if(cu !=null) condition += cu;
-					if(cn !=null) condition += " "+cn+", ";
-				}
-			}		
-		}
-
-		String new_chemical = " ";
-		String new_condition = " ";
-		
-		if(condition.indexOf(",") > 0) {
-			new_condition = condition.trim().replaceAll(",$","");
-		}else{
-			new_condition = condition;
-		}
-		if(chemical.indexOf(",") > 0)  {
-			new_chemical = chemical.trim().replaceAll(",$","");
-		}else{
-			new_chemical = chemical;
 		}
-		
-		return new_chemical+"_"+new_condition;
+		phenotypeDecoder.report();
 
 	}
 	
-
+	
 	private void getPhenotype(String phenotypeAnnotNo, String groupNo, String qualifier, String observable, String experimentType, String experimentComment, 
 			String alleleComment, String reporterComment, String strain_background, String mutantType, String reporter, String alleleId,
 			String assay, String chemical, String condition, String details, String pmid, String refNo, Item gene ) throws ObjectStoreException {
@@ -3018,11 +3059,11 @@ public class SgdConverter extends BioDBConverter {
 			pheno.setAttribute("details", details);
 		}
 		
-		Item pub = getPubPhenotype(refNo, pmid);
+		SgdPublicationIndex.Publication pub = getPubPhenotype(refNo, pmid);
 
 		pheno.addToCollection("genes", gene.getIdentifier());
 		pheno.addToCollection("publications", pub.getIdentifier());
-		pub.addToCollection("phenotypes", pheno.getIdentifier());
+		publicationUpdates.addToCollection(pub.getIdentifier(), "phenotypes", pheno.getIdentifier());
 		
 		String unq = phenotypeAnnotNo+":"+groupNo;
 		phenotypes.put(unq, pheno);
@@ -3068,15 +3109,36 @@ public class SgdConverter extends BioDBConverter {
 
 		location.setReference("feature", subject);
 		location.setReference("locatedOn", chromosomeRefId);
+		indexLocation(subject, chromosomeRefId, start, end, strand);
 
 		try {
-			store(location);
+			storeAsync(location);
 		} catch (ObjectStoreException e) {
 			throw new ObjectStoreException(e);
 		}
 		return location.getIdentifier();
 	}
 
+	private void indexLocation(Item subject, String chromosomeRefId, String start, String end,
+			String strand) {
+		if (locationIndex == null || StringUtils.isEmpty(start) || StringUtils.isEmpty(end)) {
+			return;
+		}
+		String sequence = sequenceNames.get(chromosomeRefId);
+		if (sequence == null) {
+			return;
+		}
+		String feature = subject.getIdentifier();
+		if (subject.getAttribute("primaryIdentifier") != null) {
+			feature = subject.getAttribute("primaryIdentifier").getValue();
+		} else if (subject.getAttribute("secondaryIdentifier") != null) {
+			feature = subject.getAttribute("secondaryIdentifier").getValue();
+		}
+		int direction = "1".equals(strand) ? 1 : "-1".equals(strand) ? -1 : 0;
+		locationIndex.add(sequence, Integer.parseInt(start), Integer.parseInt(end), direction, feature,
+				subject.getClassName());
+	}
+
 	private String getLength(String start, String end)
 			throws NumberFormatException {
 		Integer a = new Integer(start);
@@ -3104,8 +3166,9 @@ public class SgdConverter extends BioDBConverter {
 			item.setReference("organism", organism);
 			refId = item.getIdentifier();
 			chromosomes.put(identifier, refId);
+			sequenceNames.put(refId, identifier);
 			try {
-				store(item);
+				storeAsync(item);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -3113,25 +3176,6 @@ public class SgdConverter extends BioDBConverter {
 		return refId;
 	}
 
-	private String getBioGridDataSet() throws ObjectStoreException {
-
-		Item item = createItem("DataSet");
-		item.setAttribute("name", "BioGRID interaction data set");
-
-
-		Item ds = createItem("DataSource");
-		ds.setAttribute("name", "BioGRID");
-		ds.addToCollection("dataSets", item.getIdentifier());
-		try {
-			store(item);
-			store(ds);
-		} catch (ObjectStoreException e) {
-			throw new ObjectStoreException(e);
-		}
-
-		return item.getIdentifier();
-
-	}
 	private String getPlasmid(String identifier) throws ObjectStoreException { // String
 		// id,
 		if (StringUtils.isEmpty(identifier)) {
@@ -3144,8 +3188,9 @@ public class SgdConverter extends BioDBConverter {
 			item.setReference("organism", organism);
 			refId = item.getIdentifier();
 			plasmids.put(identifier, refId);
+			sequenceNames.put(refId, identifier);
 			try {
-				store(item);
+				storeAsync(item);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -3153,21 +3198,35 @@ public class SgdConverter extends BioDBConverter {
 		return refId;
 	}
 
-	private String getSequence(String id, String residues, String length)
-			throws ObjectStoreException {
+	/**
+	 * Features with identical residues share one Sequence, found by the MD5 of the residues.
+	 * The residues are only turned into a String for a sequence that hasn't been seen before.
+	 */
+	private String getSequence(String id, RowDecoder row, String length)
+			throws ObjectStoreException, SQLException {
 		if (StringUtils.isEmpty(id)) {
 			return null;
 		}
 		String refId = sequences.get(id);
 		if (refId == null) {
+			residueBuffer.read(row, "residues");
+			String digest = residueBuffer.digest();
+			refId = digest == null ? null : sequenceDigests.get(digest + length);
+			if (refId != null) {
+				sequences.put(id, refId);
+				return refId;
+			}
 			Item item = createItem("Sequence");
-			item.setAttribute("residues", residues);
+			item.setAttribute("residues", residueBuffer.residues());
 			item.setAttribute("length", length);
 			// item.setReference("organism", organism);
 			refId = item.getIdentifier();
 			sequences.put(id, refId);
+			if (digest != null) {
+				sequenceDigests.put(digest + length, refId);
+			}
 			try {
-				store(item);
+				storeAsync(item);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -3177,295 +3236,17 @@ public class SgdConverter extends BioDBConverter {
 
 	private String getSynonym(String subjectId, String type, String value)
 			throws ObjectStoreException {
-		String key = subjectId + type + value;
-		if (StringUtils.isEmpty(value)) {
-			return null;
-		}
-		String refId = synonyms.get(key);
-		if (refId == null) {
-			Item syn = createItem("Synonym");
-			syn.setReference("subject", subjectId);
-			//syn.setAttribute("type", type);
-			syn.setAttribute("value", value);
-			refId = syn.getIdentifier();
-			// synonyms.get(key);
-			try {
-				store(syn);
-			} catch (ObjectStoreException e) {
-				throw new ObjectStoreException(e);
-			}
-		}
-		return refId;
+		// the type isn't stored, so a subject gets one synonym per value
+		return synonymWriter.write(subjectId, value);
 	}
 
-	/**
-	 *
-	 * @param interactionNo
-	 * @param referenceNo
-	 * @param interactionType
-	 * @param experimentType
-	 * @param annotationType
-	 * @param modification
-	 * @param interactingGene
-	 * @param action
-	 * @param source
-	 * @param phenotype
-	 * @param citation
-	 * @param gene
-	 * @param pubMedId
-	 * @param title
-	 * @param volume
-	 * @param page
-	 * @param year
-	 * @param issue
-	 * @param journal
-	 * @param dsetIdentifier
-	 * @param firstAuthor
-	 * @param dbxrefid
-	 * @return
-	 * @throws ObjectStoreException
-	 */
-	private String getInteractionNew(String interactionNo, String referenceNo,
-								  String interactionType, String experimentType,
-								  String annotationType, String modification, Item interactingGene, String role1, String role2,
-								  String source, String phenotype, String citation, Item gene,
-								  String pubMedId, String title, String volume, String page,
-								  String year, String issue, String journal, String dsetIdentifier, String firstAuthor, String dbxrefid, String note)
-			throws ObjectStoreException {
-
-		Item item = getInteractionItem(gene.getIdentifier(), interactingGene.getIdentifier());
-		Item detail = createItem("InteractionDetail");
-
-		detail.setAttribute("type", interactionType);
-		detail.setAttribute("annotationType", annotationType);
-		if (StringUtils.isNotEmpty(modification)) detail.setAttribute("modification", modification);
-		if (StringUtils.isNotEmpty(phenotype)) detail.setAttribute("phenotype", phenotype);
-		detail.setAttribute("role1", role1);
-		detail.setAttribute("role2", role2);
-		detail.addToCollection("allInteractors", interactingGene.getIdentifier());
-		detail.addToCollection("dataSets", dsetIdentifier);
-
-		String shortType = interactionType.substring(0, interactionType.indexOf(' '));
-		detail.setAttribute("relationshipType", shortType); //interactionType
-		String unqName = firstAuthor+"-"+pubMedId+"-"+experimentType;
-		if (StringUtils.isNotEmpty(note)) detail.setAttribute("note", note);
-
-		//add publication as experiment type
-		Item storedExperimentType = experimenttype.get(unqName);
-		if(storedExperimentType == null) {
-
-			storedExperimentType = createItem("InteractionExperiment");
-			storedExperimentType.setAttribute("name", unqName);
-			experimenttype.put(unqName, storedExperimentType);
-
-			String storedTermId = interactionterms.get(experimentType);
-			if (storedTermId != null) {
-				storedExperimentType.addToCollection("interactionDetectionMethods", storedTermId );
-			} else {
-				storedTermId = getInteractionTerm(experimentType);
-				storedExperimentType.addToCollection("interactionDetectionMethods", storedTermId );
-			}
-		}
-
-		//add publication as reference on experiment
-		Item storedRef = publications.get(referenceNo);
-
-		if (storedRef != null) {
-			storedExperimentType.setReference("publication", storedRef.getIdentifier());
-		} else {
-
-			Item pub = createItem("Publication");
-
-			if (StringUtils.isNotEmpty(pubMedId)) {
-				pub.setAttribute("pubMedId", pubMedId);
-			}
-			if (StringUtils.isNotEmpty(dbxrefid)) {
-				pub.setAttribute("pubXrefId", dbxrefid);
-			}
-			if (StringUtils.isNotEmpty(title)) {
-				pub.setAttribute("title", title);
-			}
-			if (StringUtils.isNotEmpty(citation)) {
-				pub.setAttribute("citation", citation);
-			}
-			if (StringUtils.isNotEmpty(journal)) {
-				pub.setAttribute("journal", journal);
-			}
-			if (StringUtils.isNotEmpty(volume)) {
-				pub.setAttribute("volume", volume);
-			}
-			if (StringUtils.isNotEmpty(page)) {
-				pub.setAttribute("pages", page);
-			}
-			if (StringUtils.isNotEmpty(year)) {
-				pub.setAttribute("year", year);
-			}
-			if (StringUtils.isNotEmpty(issue)) {
-				pub.setAttribute("issue", issue);
-			}
-			publications.put(referenceNo, pub);
-			storedExperimentType.setReference("publication", pub.getIdentifier());
-		}
-
-		detail.setReference("experiment", storedExperimentType.getIdentifier());
-		detail.setReference("interaction", item);
-		interactiondetail.put(interactionNo, detail);
-		/*try {
-			store(detail);
-		} catch (ObjectStoreException e) {
-			throw new ObjectStoreException(e);
-		}*/
-
-		interactions.put(item.getIdentifier(), item);
-		String refId = item.getIdentifier();
-		return refId;
-	}
-
-	/**
-	 * 
-	 * @param interactionNo
-	 * @param referenceNo
-	 * @param interactionType
-	 * @param experimentType
-	 * @param annotationType
-	 * @param modification
-	 * @param interactingGene
-	 * @param action
-	 * @param source
-	 * @param phenotype
-	 * @param citation
-	 * @param gene
-	 * @param pubMedId
-	 * @param title
-	 * @param volume
-	 * @param page
-	 * @param year
-	 * @param issue
-	 * @param journal
-	 * @param dsetIdentifier
-	 * @param firstAuthor
-	 * @param dbxrefid
-	 * @return
-	 * @throws ObjectStoreException
-	 */
-	private String getInteraction(String interactionNo, String referenceNo,
-			String interactionType, String experimentType,
-			String annotationType, String modification, Item interactingGene, String action,
-			String source, String phenotype, String citation, Item gene,
-			String pubMedId, String title, String volume, String page,
-			String year, String issue, String journal, String dsetIdentifier, String firstAuthor, String dbxrefid, String note)
-					throws ObjectStoreException {
-
-		Item item = getInteractionItem(gene.getIdentifier(), interactingGene.getIdentifier());	
-		Item detail = createItem("InteractionDetail");		   
-
-		detail.setAttribute("type", interactionType);		
-		detail.setAttribute("annotationType", annotationType);
-		if (StringUtils.isNotEmpty(modification)) detail.setAttribute("modification", modification);
-		if (StringUtils.isNotEmpty(phenotype)) detail.setAttribute("phenotype", phenotype);
-		detail.setAttribute("role1", action);
-		detail.addToCollection("allInteractors", interactingGene.getIdentifier());
-		detail.addToCollection("dataSets", dsetIdentifier);		
-
-		String shortType = interactionType.substring(0, interactionType.indexOf(' ')); 
-		detail.setAttribute("relationshipType", shortType); //interactionType
-		String unqName = firstAuthor+"-"+pubMedId+"-"+experimentType;
-		if (StringUtils.isNotEmpty(note)) detail.setAttribute("note", note);
-
-		//add publication as experiment type
-		Item storedExperimentType = experimenttype.get(unqName);		
-		if(storedExperimentType == null) {	
-
-			storedExperimentType = createItem("InteractionExperiment");
-			storedExperimentType.setAttribute("name", unqName);	
-			experimenttype.put(unqName, storedExperimentType);			
-
-			String storedTermId = interactionterms.get(experimentType);
-			if (storedTermId != null) {
-				storedExperimentType.addToCollection("interactionDetectionMethods", storedTermId );
-			} else {
-				storedTermId = getInteractionTerm(experimentType);
-				storedExperimentType.addToCollection("interactionDetectionMethods", storedTermId );
-			}
-		}
-
-		//add publication as reference on experiment
-		Item storedRef = publications.get(referenceNo);
-
-		if (storedRef != null) {
-			storedExperimentType.setReference("publication", storedRef.getIdentifier());
-		} else {
-
-			Item pub = createItem("Publication");
-
-			if (StringUtils.isNotEmpty(pubMedId)) {
-				pub.setAttribute("pubMedId", pubMedId);
-			}
-			if (StringUtils.isNotEmpty(dbxrefid)) {
-				pub.setAttribute("pubXrefId", dbxrefid);
-			}
-			if (StringUtils.isNotEmpty(title)) {
-				pub.setAttribute("title", title);
-			}
-			if (StringUtils.isNotEmpty(citation)) {
-				pub.setAttribute("citation", citation);
-			}
-			if (StringUtils.isNotEmpty(journal)) {
-				pub.setAttribute("journal", journal);
-			}
-			if (StringUtils.isNotEmpty(volume)) {
-				pub.setAttribute("volume", volume);
-			}
-			if (StringUtils.isNotEmpty(page)) {
-				pub.setAttribute("pages", page);
-			}
-			if (StringUtils.isNotEmpty(year)) {
-				pub.setAttribute("year", year);
-			}
-			if (StringUtils.isNotEmpty(issue)) {
-				pub.setAttribute("issue", issue);
-			}
-			publications.put(referenceNo, pub);
-			storedExperimentType.setReference("publication", pub.getIdentifier());
-		}
-
-		detail.setReference("experiment", storedExperimentType.getIdentifier());	
-		detail.setReference("interaction", item);
-
-		try {
-			store(detail);
-		} catch (ObjectStoreException e) {
-			throw new ObjectStoreException(e);
-		}
-
-		interactions.put(item.getIdentifier(), item);
-		//interactionitems.put(interactionNo, item);
-		String refId = item.getIdentifier();
-		return refId;
-
-	}
-
-
-
-	private Item getInteractionItem(String refId, String gene2RefId) throws ObjectStoreException {
-		MultiKey key = new MultiKey(refId, gene2RefId);
-		Item interaction = interactionsnew.get(key);
-		if (interaction == null) {
-			interaction = createItem("Interaction");
-			interaction.setReference("participant1", refId); //gene1
-			interaction.setReference("participant2", gene2RefId); //gene2
-		}
-		return interaction;
-	}
-
-
 	private String getLiteratureTopic(String topic) throws ObjectStoreException {
 		String refId = literatureTopics.get(topic);
 		if (refId == null) {
 			Item item = createItem("LiteratureTopic");
 			item.setAttribute("name", topic);
 			try {
-				store(item);
+				storeAsync(item);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -3480,84 +3261,81 @@ public class SgdConverter extends BioDBConverter {
 			String pages, String year, String issue, String abstractText, String dbxrefid, String datecreated)
 					throws ObjectStoreException {
 
-		Item storedRef = publications.get(referenceNo);
+		// the publication may already be known from an earlier phase, by its PubMed id only
+		SgdPublicationIndex.Publication pub = publications.get(referenceNo, pubMedId)
+				.set("pubXrefId", dbxrefid)
+				.set("title", title)
+				.set("citation", citation)
+				.set("journal", journal)
+				.set("volume", volume)
+				.set("pages", pages)
+				.set("year", year)
+				.set("issue", issue)
+				.set("abstractText", abstractText)
+				.set("dateCreated", datecreated);
 
-		if (storedRef == null) {
+		Iterator iter = hm.iterator();
+		while (iter.hasNext()) {
+			String value = (String) iter.next();
+			publicationUpdates.addToCollection(pub.getIdentifier(), "literatureTopics", getLiteratureTopic(value));
+		}
 
-			Item item = createItem("Publication");
+	}
 
-			if (StringUtils.isNotEmpty(pubMedId)) {
-				item.setAttribute("pubMedId", pubMedId);
-			}
-			if (StringUtils.isNotEmpty(dbxrefid)) {
-				item.setAttribute("pubXrefId", dbxrefid);
-			}
-			if (StringUtils.isNotEmpty(title)) {
-				item.setAttribute("title", title);
-			}
-			if (StringUtils.isNotEmpty(citation)) {
-				item.setAttribute("citation", citation);
-			}
-			if (StringUtils.isNotEmpty(journal)) {
-				item.setAttribute("journal", journal);
-			}
-			if (StringUtils.isNotEmpty(volume)) {
-				item.setAttribute("volume", volume);
-			}
-			if (StringUtils.isNotEmpty(pages)) {
-				item.setAttribute("pages", pages);
-			}
-			if (StringUtils.isNotEmpty(year)) {
-				item.setAttribute("year", year);
-			}
-			if (StringUtils.isNotEmpty(issue)) {
-				item.setAttribute("issue", issue);
-			}
-			if (StringUtils.isNotEmpty(abstractText)) {
-				item.setAttribute("abstractText", abstractText);
-			}
-			if (StringUtils.isNotEmpty(datecreated)) {
-				item.setAttribute("dateCreated", datecreated);
+	/**
+	 * Add the publications of a row of the allele or transcript query to the owner: a
+	 * reference_id and pmid, or arrays of them if the processor aggregates.
+	 */
+	private void addRowPublications(RowDecoder row, SgdDeferredStore.Log updates, Item owner)
+			throws SQLException {
+		if (!processor.isAggregating()) {
+			String refNo = row.getString("reference_id");
+			if (refNo != null) {
+				updates.addToCollection(owner, "publications", getPublication(refNo, row.getString("pmid")));
 			}
+			return;
+		}
+		Object[] refNos = getArray(row, "reference_ids");
+		Object[] pmids = getArray(row, "pmids");
+		for (int i = 0; i < refNos.length; i++) {
+			String pmid = pmids[i] == null ? null : pmids[i].toString();
+			updates.addToCollection(owner, "publications", getPublication(refNos[i].toString(), pmid));
+		}
+	}
 
-			Iterator iter = hm.iterator();
-			while (iter.hasNext()) {
-				String value = (String) iter.next();
-				item.addToCollection("literatureTopics",getLiteratureTopic(value));
-			}
-			publications.put(referenceNo, item);
+	/**
+	 * @return the alias of a row of the allele query, the first of the allele's aliases if the
+	 * processor aggregates
+	 */
+	private String getAliasName(RowDecoder row) throws SQLException {
+		if (!processor.isAggregating()) {
+			return row.getString("alias_name");
 		}
+		Object[] aliasNames = getArray(row, "alias_names");
+		return aliasNames.length == 0 ? null : (String) aliasNames[0];
+	}
 
+	private static Object[] getArray(RowDecoder row, String column) throws SQLException {
+		java.sql.Array array = row.getArray(column);
+		return array == null ? new Object[0] : (Object[]) array.getArray();
 	}
 
-	private Item getExistingPub(String referenceNo)
+	/**
+	 * @return the identifier of the publication, which is created if it's new
+	 */
+	private String getPublication(String referenceNo, String pubMedId) {
+		return publications.get(referenceNo, pubMedId).getIdentifier();
+	}
+
+	private SgdPublicationIndex.Publication getExistingPub(String referenceNo)
 			throws ObjectStoreException {
-		Item storedRef = publications.get(referenceNo);
-		return storedRef;
+		return publications.find(referenceNo);
 	}
 
 
-	private Item getPubPhenotype(String prevReferenceNo, String pubMedId)
+	private SgdPublicationIndex.Publication getPubPhenotype(String prevReferenceNo, String pubMedId)
 					throws ObjectStoreException {
-
-		//Item storedPheno = phenotypepubs.get(phenoAnnotNo);
-		//if (storedPheno != null) {
-
-			Item storedRef = publications.get(prevReferenceNo);
-
-			if (storedRef == null) {
-				 storedRef = createItem("Publication");
-				if (StringUtils.isNotEmpty(pubMedId)) {
-					storedRef.setAttribute("pubMedId", pubMedId);
-				}
-				publications.put(prevReferenceNo, storedRef);
-				//storedPheno.addToCollection("publications", item.getIdentifier());
-				//item.addToCollection("phenotypes", storedPheno.getIdentifier());
-			}
-			return storedRef;
-
-		//}
-
+		return publications.get(prevReferenceNo, pubMedId);
 	}
 
 	/**
@@ -3579,102 +3357,40 @@ public class SgdConverter extends BioDBConverter {
 					throws ObjectStoreException {
 
 		Item pubAnnot = createItem("PublicationAnnotation");
-		Item storedRef = publications.get(referenceNo);
-
-		if (storedRef == null) {
-			Item item = createItem("Publication");
-
-			if (StringUtils.isNotEmpty(pubMedId)) {
-				item.setAttribute("pubMedId", pubMedId);
-			}
-			if (StringUtils.isNotEmpty(dbxrefid)) {
-				item.setAttribute("pubXrefId", dbxrefid);
-			}
-			if (StringUtils.isNotEmpty(title)) {
-				item.setAttribute("title", title);
-			}
-			if (StringUtils.isNotEmpty(citation)) {
-				item.setAttribute("citation", citation);
-			}
-			if (StringUtils.isNotEmpty(journal)) {
-				item.setAttribute("journal", journal);
-			}
-			if (StringUtils.isNotEmpty(volume)) {
-				item.setAttribute("volume", volume);
-			}
-			if (StringUtils.isNotEmpty(pages)) {
-				item.setAttribute("pages", pages);
-			}
-			if (StringUtils.isNotEmpty(year)) {
-				item.setAttribute("year", year);
-			}
-			if (StringUtils.isNotEmpty(issue)) {
-				item.setAttribute("issue", issue);
-			}
-			if (StringUtils.isNotEmpty(datecreated)) {
-				item.setAttribute("dateCreated", datecreated);
-			}
-
-			Iterator iter = hm.iterator();
-			while (iter.hasNext()) {
-				String value = (String) iter.next();
-				pubAnnot.addToCollection("literatureTopics", getLiteratureTopic(value));
-			}
-
-			//item.addToCollection("genes", gene.getIdentifier());
-			item.addToCollection("entities", gene.getIdentifier());
-
-			publications.put(referenceNo, item);
-
-			pubAnnot.setReference("publication", item.getIdentifier());
-			pubAnnot.addToCollection("genes", gene.getIdentifier());
+		SgdPublicationIndex.Publication pub = publications.get(referenceNo, pubMedId)
+				.set("pubXrefId", dbxrefid)
+				.set("title", title)
+				.set("citation", citation)
+				.set("journal", journal)
+				.set("volume", volume)
+				.set("pages", pages)
+				.set("year", year)
+				.set("issue", issue)
+				.set("dateCreated", datecreated);
 
-			// in order for the publication enrichment to work, genes needs to
-			// have publications directly as a collection, I think.
-			gene.addToCollection("publications", item.getIdentifier());
-
-		} else {
-			// this means this publication appears for a different gene, lets
-			// add the literature topics
-			Iterator iter = hm.iterator();
-			while (iter.hasNext()) {
-				String value = (String) iter.next();
-				pubAnnot.addToCollection("literatureTopics", getLiteratureTopic(value));
-			}
+		Iterator iter = hm.iterator();
+		while (iter.hasNext()) {
+			String value = (String) iter.next();
+			pubAnnot.addToCollection("literatureTopics", getLiteratureTopic(value));
+		}
 
-			pubAnnot.setReference("publication", storedRef.getIdentifier());
-			pubAnnot.addToCollection("genes", gene.getIdentifier());
+		pubAnnot.setReference("publication", pub.getIdentifier());
+		pubAnnot.addToCollection("genes", gene.getIdentifier());
 
-			//storedRef.addToCollection("genes", gene.getIdentifier());
-			storedRef.addToCollection("entities", gene.getIdentifier());
+		publicationUpdates.addToCollection(pub.getIdentifier(), "entities", gene.getIdentifier());
 
-			gene.addToCollection("publications", storedRef.getIdentifier());
-		}
+		// in order for the publication enrichment to work, genes needs to
+		// have publications directly as a collection, I think.
+		geneUpdates.addToCollection(gene, "publications", pub.getIdentifier());
 
 		try {
-			store(pubAnnot);
+			storeAsync(pubAnnot);
 		} catch (ObjectStoreException e) {
 			throw new ObjectStoreException(e);
 		}
 
 	}
 
-	private String getInteractionTerm(String identifier)  throws ObjectStoreException {
-		String refId = interactionterms.get(identifier);
-		if (refId != null) {
-			return refId;
-		}
-		Item item = createItem("InteractionTerm");
-		item.setAttribute("identifier", identifier);
-		interactionterms.put(identifier, item.getIdentifier());
-		try {
-			store(item);
-		} catch (ObjectStoreException e) {
-			throw new ObjectStoreException(e);
-		}
-		return item.getIdentifier();
-	}
-
 	/**
 	 * {@inheritDoc}
 	 */
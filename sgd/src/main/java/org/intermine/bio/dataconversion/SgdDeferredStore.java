@@ -0,0 +1,494 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+/**
+ * Collection and reference updates on items that can't be stored until the end of the SGD
+ * conversion (genes, proteins, publications, ...).
+ *
+ * Instead of growing the items' collections, each update is kept as a 20 byte record: owner
+ * identifier, collection or reference name, and referenced identifier.  Records are buffered in
+ * memory; when the buffers of all logs together pass the budget, the biggest buffer is sorted by
+ * owner and appended as a run to a memory-mapped spill file.  When the owners are stored their
+ * log is replayed: the runs and what is left in memory are merged in one pass in owner order,
+ * alongside the owners sorted the same way, and every item gets its updates, in the order they
+ * were made, just before it is stored.
+ *
+ * @author
+ */
+public class SgdDeferredStore {
+
+	private static final Logger LOG = Logger.getLogger(SgdDeferredStore.class);
+
+	/** owner key, name index, referenced key */
+	private static final int RECORD_BYTES = 8 + 4 + 8;
+	/** memory a buffered record takes: the record plus an int while it is being sorted */
+	private static final int BUFFERED_RECORD_BYTES = RECORD_BYTES + 4;
+	private static final long DEFAULT_BUDGET = 64L * 1024 * 1024;
+
+	/**
+	 * Stores an item once its deferred updates have been applied.
+	 */
+	public interface Storer {
+		/**
+		 * @param item the item, complete
+		 * @throws ObjectStoreException if the item can't be stored
+		 */
+		void store(Item item) throws ObjectStoreException;
+	}
+
+	private final Map<String, Log> logs = new LinkedHashMap<String, Log>();
+	private long budget = DEFAULT_BUDGET;
+	private long segmentBytes = RECORD_BYTES * (1L << 22);
+	private long buffered;
+	private File spillFile;
+	private RandomAccessFile spill;
+	private final List<MappedByteBuffer> segments = new ArrayList<MappedByteBuffer>();
+	private long spillEnd;
+	private int runs;
+
+	/**
+	 * @param budget how many bytes of updates may be held in memory before they are spilled
+	 */
+	public void setBudget(long budget) {
+		this.budget = Math.max(budget, BUFFERED_RECORD_BYTES * 1024L);
+	}
+
+	/**
+	 * Set how many records each mapped segment of the spill file holds, before anything has
+	 * been spilled; for tests, so runs cross segments without spilling 80MB.
+	 *
+	 * @param records records per segment
+	 */
+	void setSegmentRecords(long records) {
+		if (spill != null) {
+			throw new IllegalStateException("already spilled");
+		}
+		segmentBytes = RECORD_BYTES * records;
+	}
+
+	/**
+	 * Create the log of updates for a group of items that are stored together.
+	 *
+	 * @param name name of the group, e.g. genes
+	 * @return the log
+	 */
+	public Log open(String name) {
+		if (logs.containsKey(name)) {
+			throw new IllegalArgumentException("deferred log " + name + " opened twice");
+		}
+		Log log = new Log(name);
+		logs.put(name, log);
+		return log;
+	}
+
+	/**
+	 * Print and log what was deferred and spilled, and remove the spill file.
+	 */
+	public void close() {
+		StringBuilder sb = new StringBuilder("SGD deferred updates:\n");
+		for (Log log : logs.values()) {
+			sb.append(String.format("%-20s %12d records %6d runs spilled%n", log.name, log.records,
+					log.runs.size()));
+		}
+		sb.append(String.format("%d runs, %d bytes spilled", runs, spillEnd));
+		System.out.println(sb);
+		LOG.info(sb);
+		segments.clear();
+		if (spill != null) {
+			try {
+				spill.close();
+			} catch (IOException e) {
+				LOG.warn("couldn't close " + spillFile, e);
+			}
+			if (!spillFile.delete()) {
+				LOG.warn("couldn't delete " + spillFile);
+			}
+			spill = null;
+		}
+	}
+
+	/**
+	 * Pack an item identifier of the form created by createItem() ("3_1234") into a long.
+	 *
+	 * @param identifier the item identifier
+	 * @return the packed identifier, or -1 if it isn't of that form
+	 */
+	static long key(String identifier) {
+		if (identifier == null) {
+			return -1;
+		}
+		int sep = identifier.indexOf('_');
+		if (sep <= 0 || sep == identifier.length() - 1) {
+			return -1;
+		}
+		try {
+			long cls = Long.parseLong(identifier.substring(0, sep));
+			long id = Long.parseLong(identifier.substring(sep + 1));
+			if (cls < 0 || cls > Integer.MAX_VALUE || id < 0 || id > 0xffffffffL) {
+				return -1;
+			}
+			return cls << 32 | id;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	static String identifier(long key) {
+		return (key >>> 32) + "_" + (key & 0xffffffffL);
+	}
+
+	private void reserve(Log growing) throws IOException {
+		buffered += BUFFERED_RECORD_BYTES;
+		if (buffered <= budget) {
+			return;
+		}
+		Log biggest = growing;
+		for (Log log : logs.values()) {
+			if (log.size > biggest.size) {
+				biggest = log;
+			}
+		}
+		biggest.spill();
+	}
+
+	private long append(long owner, int name, long ref) throws IOException {
+		if (spill == null) {
+			spillFile = File.createTempFile("sgd-deferred", ".log");
+			spillFile.deleteOnExit();
+			spill = new RandomAccessFile(spillFile, "rw");
+		}
+		int segment = (int) (spillEnd / segmentBytes);
+		if (segment == segments.size()) {
+			segments.add(spill.getChannel().map(FileChannel.MapMode.READ_WRITE,
+					segment * segmentBytes, segmentBytes));
+		}
+		MappedByteBuffer buffer = segments.get(segment);
+		int offset = (int) (spillEnd % segmentBytes);
+		buffer.putLong(offset, owner);
+		buffer.putInt(offset + 8, name);
+		buffer.putLong(offset + 12, ref);
+		long position = spillEnd;
+		spillEnd += RECORD_BYTES;
+		return position;
+	}
+
+	/**
+	 * The deferred updates of one group of items.
+	 */
+	public final class Log {
+		private final String name;
+		private final List<String> names = new ArrayList<String>();
+		private final List<Boolean> references = new ArrayList<Boolean>();
+		private final Map<String, Integer> nameIndex = new HashMap<String, Integer>();
+		private final List<long[]> runs = new ArrayList<long[]>();
+		private long[] owners = new long[0];
+		private int[] fields = new int[0];
+		private long[] refs = new long[0];
+		private int size;
+		private long records;
+		private boolean replayed;
+
+		Log(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Add an item to a collection of owner when owner is stored.
+		 *
+		 * @param owner the item being filled in
+		 * @param collection name of the collection
+		 * @param refId identifier of the item to add
+		 */
+		public void addToCollection(Item owner, String collection, String refId) {
+			add(owner.getIdentifier(), owner, collection, false, refId);
+		}
+
+		/**
+		 * Add an item to a collection of an owner that is only made into an Item when it is
+		 * stored, so must have an identifier from createItem().
+		 *
+		 * @param ownerIdentifier identifier of the item being filled in
+		 * @param collection name of the collection
+		 * @param refId identifier of the item to add
+		 */
+		public void addToCollection(String ownerIdentifier, String collection, String refId) {
+			add(ownerIdentifier, null, collection, false, refId);
+		}
+
+		/**
+		 * Set a reference of owner when owner is stored.
+		 *
+		 * @param owner the item being filled in
+		 * @param reference name of the reference
+		 * @param refId identifier of the referenced item
+		 */
+		public void setReference(Item owner, String reference, String refId) {
+			add(owner.getIdentifier(), owner, reference, true, refId);
+		}
+
+		private void add(String ownerId, Item owner, String field, boolean reference, String refId) {
+			if (replayed) {
+				throw new IllegalStateException(name + " have already been stored, can't update "
+						+ field + " of " + ownerId);
+			}
+			long ownerKey = key(ownerId);
+			long refKey = key(refId);
+			if (ownerKey < 0 || refKey < 0) {
+				if (owner == null) {
+					throw new IllegalArgumentException("can't defer " + field + " of " + ownerId
+							+ " to " + refId);
+				}
+				// not an identifier we can pack, nothing to save by deferring it
+				apply(owner, field, reference, refId);
+				return;
+			}
+			String fieldKey = (reference ? "r:" : "c:") + field;
+			Integer index = nameIndex.get(fieldKey);
+			if (index == null) {
+				index = names.size();
+				names.add(field);
+				references.add(reference);
+				nameIndex.put(fieldKey, index);
+			}
+			if (size == owners.length) {
+				int capacity = Math.max(1024, size * 2);
+				owners = Arrays.copyOf(owners, capacity);
+				fields = Arrays.copyOf(fields, capacity);
+				refs = Arrays.copyOf(refs, capacity);
+			}
+			owners[size] = ownerKey;
+			fields[size] = index;
+			refs[size] = refKey;
+			size++;
+			records++;
+			try {
+				reserve(this);
+			} catch (IOException e) {
+				throw new RuntimeException("couldn't spill deferred " + name + " updates", e);
+			}
+		}
+
+		/**
+		 * Apply the deferred updates to the items of this group and store each of them.  Once
+		 * replayed the log accepts no more updates.
+		 *
+		 * @param items every item of the group
+		 * @param storer stores an item once it is complete
+		 * @throws ObjectStoreException if an item can't be stored
+		 */
+		public void replay(Collection<Item> items, Storer storer) throws ObjectStoreException {
+			replayed = true;
+			Item[] sorted = items.toArray(new Item[items.size()]);
+			final long[] keys = new long[sorted.length];
+			Integer[] order = new Integer[sorted.length];
+			for (int i = 0; i < sorted.length; i++) {
+				keys[i] = key(sorted[i].getIdentifier());
+				order[i] = i;
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				public int compare(Integer a, Integer b) {
+					return Long.compare(keys[a], keys[b]);
+				}
+			});
+
+			PriorityQueue<Cursor> merge = new PriorityQueue<Cursor>();
+			for (int i = 0; i < runs.size(); i++) {
+				Cursor cursor = new SpillCursor(i, runs.get(i)[0], runs.get(i)[1]);
+				if (cursor.advance()) {
+					merge.add(cursor);
+				}
+			}
+			Cursor memory = new MemoryCursor(runs.size(), sortBuffer());
+			if (memory.advance()) {
+				merge.add(memory);
+			}
+
+			long unmatched = 0;
+			for (Integer i : order) {
+				Item item = sorted[i];
+				long key = keys[i];
+				while (!merge.isEmpty() && merge.peek().owner <= key) {
+					Cursor cursor = merge.poll();
+					if (cursor.owner == key) {
+						apply(item, names.get(cursor.field), references.get(cursor.field),
+								identifier(cursor.ref));
+					} else {
+						unmatched++;
+					}
+					if (cursor.advance()) {
+						merge.add(cursor);
+					}
+				}
+				storer.store(item);
+			}
+			while (!merge.isEmpty()) {
+				Cursor cursor = merge.poll();
+				unmatched++;
+				if (cursor.advance()) {
+					merge.add(cursor);
+				}
+			}
+			if (unmatched > 0) {
+				LOG.warn(unmatched + " deferred " + name + " updates are for items that weren't stored");
+			}
+			buffered -= (long) size * BUFFERED_RECORD_BYTES;
+			owners = new long[0];
+			fields = new int[0];
+			refs = new long[0];
+			size = 0;
+		}
+
+		private void apply(Item owner, String field, boolean reference, String refId) {
+			if (reference) {
+				owner.setReference(field, refId);
+			} else {
+				owner.addToCollection(field, refId);
+			}
+		}
+
+		private void spill() throws IOException {
+			int[] order = sortBuffer();
+			long start = -1;
+			for (int i : order) {
+				long position = append(owners[i], fields[i], refs[i]);
+				if (start < 0) {
+					start = position;
+				}
+			}
+			runs.add(new long[] {start, size});
+			SgdDeferredStore.this.runs++;
+			buffered -= (long) size * BUFFERED_RECORD_BYTES;
+			owners = new long[0];
+			fields = new int[0];
+			refs = new long[0];
+			size = 0;
+			LOG.info("spilled a run of " + order.length + " deferred " + name + " updates");
+		}
+
+		/**
+		 * @return indexes of the buffered records, sorted by owner; records with the same owner
+		 *         stay in the order they were added
+		 */
+		private int[] sortBuffer() {
+			int[] order = new int[size];
+			for (int i = 0; i < size; i++) {
+				order[i] = i;
+			}
+			int[] scratch = new int[size];
+			for (int width = 1; width < size; width *= 2) {
+				for (int lo = 0; lo < size - width; lo += 2 * width) {
+					int mid = lo + width;
+					int hi = Math.min(lo + 2 * width, size);
+					int a = lo, b = mid, out = lo;
+					while (a < mid && b < hi) {
+						scratch[out++] = owners[order[b]] < owners[order[a]] ? order[b++] : order[a++];
+					}
+					while (a < mid) {
+						scratch[out++] = order[a++];
+					}
+					while (b < hi) {
+						scratch[out++] = order[b++];
+					}
+					System.arraycopy(scratch, lo, order, lo, hi - lo);
+				}
+			}
+			return order;
+		}
+
+		/**
+		 * Reads one sorted run during replay.  Runs spilled earlier hold earlier updates, so for
+		 * the same owner they go first.
+		 */
+		private abstract class Cursor implements Comparable<Cursor> {
+			private final int run;
+			long owner;
+			int field;
+			long ref;
+
+			Cursor(int run) {
+				this.run = run;
+			}
+
+			abstract boolean advance();
+
+			public int compareTo(Cursor other) {
+				int cmp = Long.compare(owner, other.owner);
+				return cmp != 0 ? cmp : Integer.compare(run, other.run);
+			}
+		}
+
+		private final class SpillCursor extends Cursor {
+			private long position;
+			private long remaining;
+
+			SpillCursor(int run, long start, long count) {
+				super(run);
+				this.position = start;
+				this.remaining = count;
+			}
+
+			boolean advance() {
+				if (remaining == 0) {
+					return false;
+				}
+				MappedByteBuffer buffer = segments.get((int) (position / segmentBytes));
+				int offset = (int) (position % segmentBytes);
+				owner = buffer.getLong(offset);
+				field = buffer.getInt(offset + 8);
+				ref = buffer.getLong(offset + 12);
+				position += RECORD_BYTES;
+				remaining--;
+				return true;
+			}
+		}
+
+		private final class MemoryCursor extends Cursor {
+			private final int[] order;
+			private int next;
+
+			MemoryCursor(int run, int[] order) {
+				super(run);
+				this.order = order;
+			}
+
+			boolean advance() {
+				if (next == order.length) {
+					return false;
+				}
+				int i = order[next++];
+				owner = owners[i];
+				field = fields[i];
+				ref = refs[i];
+				return true;
+			}
+		}
+	}
+}
@@ -0,0 +1,401 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractCollection;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+import java.util.function.UnaryOperator;
+
+import org.apache.log4j.Logger;
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.Reference;
+import org.intermine.xml.full.ReferenceList;
+
+/**
+ * Holds the items of the SGD conversion that are looked up by dbentity_id (genes, proteins,
+ * alleles, transcripts, publications) until they are stored.
+ *
+ * The ids arrive from the database as strings but are numeric, so each entity type is kept in
+ * an open-addressing table of primitive longs instead of a HashMap of String keys: no key
+ * strings, no Map.Entry per item.  Like the HashMaps it replaces a table accepts any id,
+ * including null and ids that aren't plain decimal numbers (which are kept in a small map on
+ * the side), and its values come back in the order they were first added.
+ *
+ * The values are the items themselves until they are stored, because the conversion keeps
+ * setting attributes on them until then.  Once a type has been stored its items can be
+ * replaced with handles (see handle()) holding just what the later phases read from them.
+ * Alleles and transcripts are stored part way through; genes and proteins only at the end,
+ * since most phases set attributes on them directly rather than through SgdDeferredStore.
+ *
+ * @author
+ */
+public class SgdEntityRegistry {
+
+	private static final Logger LOG = Logger.getLogger(SgdEntityRegistry.class);
+
+	private final Map<String, EntityMap<?>> types = new LinkedHashMap<String, EntityMap<?>>();
+
+	/**
+	 * Create the table for an entity type.
+	 *
+	 * @param type name of the entity type, used in the footprint report
+	 * @param <V> type of the values held
+	 * @return the new table
+	 */
+	public <V> EntityMap<V> register(String type) {
+		if (types.containsKey(type)) {
+			throw new IllegalArgumentException("entity type " + type + " registered twice");
+		}
+		EntityMap<V> map = new EntityMap<V>(type);
+		types.put(type, map);
+		return map;
+	}
+
+	/**
+	 * Print and log, for each entity type, how many entries it holds, how much memory the
+	 * table takes and an estimate of the memory taken by the items themselves.
+	 */
+	public void report() {
+		StringBuilder sb = new StringBuilder("SGD entity registry footprint (bytes):\n");
+		sb.append(String.format("%-20s %10s %10s %12s %14s%n",
+				"type", "entries", "capacity", "table", "items (est.)"));
+		long totalTable = 0, totalItems = 0;
+		for (EntityMap<?> map : types.values()) {
+			long table = map.tableBytes();
+			long items = map.valueBytes();
+			totalTable += table;
+			totalItems += items;
+			sb.append(String.format("%-20s %10d %10d %12d %14d%n",
+					map.type, map.size(), map.capacity(), table, items));
+		}
+		sb.append(String.format("%-20s %10s %10s %12d %14d%n", "total", "", "", totalTable, totalItems));
+		System.out.println(sb);
+		LOG.info(sb);
+	}
+
+	/**
+	 * Make a handle for a stored item, to be held in its place: the same identifier and class
+	 * but only the attributes named.  The handle is never stored itself, so changes to it go
+	 * nowhere.
+	 *
+	 * @param item the stored item
+	 * @param attributes names of the attributes to keep
+	 * @return the handle
+	 */
+	public static Item handle(Item item, String... attributes) {
+		Item handle = new Item(item.getIdentifier(), item.getClassName(), "");
+		for (String name : attributes) {
+			Attribute attribute = item.getAttribute(name);
+			if (attribute != null) {
+				handle.addAttribute(new Attribute(name, attribute.getValue()));
+			}
+		}
+		return handle;
+	}
+
+	/**
+	 * Rough number of bytes an Item and its attributes, references and collections take on a
+	 * 64-bit JVM with compressed pointers.
+	 *
+	 * @param item the item
+	 * @return estimated size in bytes
+	 */
+	static long estimateItemBytes(Item item) {
+		long bytes = 64 + stringBytes(item.getIdentifier()) + stringBytes(item.getClassName());
+		if (item.getAttributes() != null) {
+			for (Attribute attribute : item.getAttributes()) {
+				bytes += 48 + stringBytes(attribute.getName()) + stringBytes(attribute.getValue());
+			}
+		}
+		if (item.getReferences() != null) {
+			for (Reference reference : item.getReferences()) {
+				bytes += 48 + stringBytes(reference.getName()) + stringBytes(reference.getRefId());
+			}
+		}
+		if (item.getCollections() != null) {
+			for (ReferenceList collection : item.getCollections()) {
+				bytes += 64 + stringBytes(collection.getName());
+				for (String refId : collection.getRefIds()) {
+					bytes += 8 + stringBytes(refId);
+				}
+			}
+		}
+		return bytes;
+	}
+
+	static long stringBytes(String s) {
+		return s == null ? 0 : 40 + s.length();
+	}
+
+	/**
+	 * Map from dbentity_id to a value, keyed by primitive long.
+	 *
+	 * Ids are kept in a dense array in the order they were added; an int table of twice the
+	 * capacity, probed linearly, points into it.  An id that isn't the decimal form of a long
+	 * ("007", "+7", "S000001") has a place in the dense arrays too, but is found through a
+	 * HashMap.
+	 *
+	 * @param <V> type of the values held
+	 */
+	public static final class EntityMap<V> {
+
+		private static final int INITIAL_CAPACITY = 1024;
+
+		private final String type;
+		private int[] slots = new int[INITIAL_CAPACITY * 2];
+		private long[] keys = new long[INITIAL_CAPACITY];
+		private Object[] values = new Object[INITIAL_CAPACITY];
+		private int size;
+		private boolean hasNullKey;
+		private V nullKeyValue;
+		// index + 1 of the ids that aren't numbers, and the ids by index; their keys are unused
+		private Map<String, Integer> otherIds;
+		private String[] otherKeys;
+
+		EntityMap(String type) {
+			this.type = type;
+		}
+
+		/**
+		 * @param id a dbentity_id, may be null
+		 * @return the value held for the id, or null
+		 */
+		@SuppressWarnings("unchecked")
+		public V get(String id) {
+			if (id == null) {
+				return nullKeyValue;
+			}
+			if (!isNumber(id)) {
+				Integer index = otherIds == null ? null : otherIds.get(id);
+				return index == null ? null : (V) values[index - 1];
+			}
+			int slot = find(Long.parseLong(id));
+			return slots[slot] == 0 ? null : (V) values[slots[slot] - 1];
+		}
+
+		/**
+		 * @param id a dbentity_id, may be null
+		 * @param value the value to hold
+		 * @return the value previously held for the id, or null
+		 */
+		@SuppressWarnings("unchecked")
+		public V put(String id, V value) {
+			if (id == null) {
+				V previous = nullKeyValue;
+				hasNullKey = true;
+				nullKeyValue = value;
+				return previous;
+			}
+			if (!isNumber(id)) {
+				if (otherIds == null) {
+					otherIds = new HashMap<String, Integer>();
+					otherKeys = new String[keys.length];
+				}
+				Integer index = otherIds.get(id);
+				if (index != null) {
+					V previous = (V) values[index - 1];
+					values[index - 1] = value;
+					return previous;
+				}
+				if (size == keys.length) {
+					grow();
+				}
+				values[size] = value;
+				otherKeys[size] = id;
+				otherIds.put(id, ++size);
+				return null;
+			}
+			long key = Long.parseLong(id);
+			int slot = find(key);
+			if (slots[slot] != 0) {
+				int index = slots[slot] - 1;
+				V previous = (V) values[index];
+				values[index] = value;
+				return previous;
+			}
+			if (size == keys.length) {
+				grow();
+				slot = find(key);
+			}
+			keys[size] = key;
+			values[size] = value;
+			slots[slot] = ++size;
+			return null;
+		}
+
+		/**
+		 * Replace every value, e.g. stored items with their handles.
+		 *
+		 * @param replacement called with each value, returns what to hold instead
+		 */
+		@SuppressWarnings("unchecked")
+		public void replaceAll(UnaryOperator<V> replacement) {
+			for (int i = 0; i < size; i++) {
+				values[i] = replacement.apply((V) values[i]);
+			}
+			if (hasNullKey) {
+				nullKeyValue = replacement.apply(nullKeyValue);
+			}
+		}
+
+		/**
+		 * @return number of ids held
+		 */
+		public int size() {
+			return size + (hasNullKey ? 1 : 0);
+		}
+
+		/**
+		 * @return the values, in the order their ids were first added
+		 */
+		public Collection<V> values() {
+			return new AbstractCollection<V>() {
+				public int size() {
+					return EntityMap.this.size();
+				}
+
+				public Iterator<V> iterator() {
+					return new Iterator<V>() {
+						private int next = 0;
+
+						public boolean hasNext() {
+							return next < EntityMap.this.size();
+						}
+
+						@SuppressWarnings("unchecked")
+						public V next() {
+							if (!hasNext()) {
+								throw new NoSuchElementException();
+							}
+							int index = next++;
+							return index < size ? (V) values[index] : nullKeyValue;
+						}
+
+						public void remove() {
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+			};
+		}
+
+		/**
+		 * Visit the ids held, other than null, with their values, in the order the ids were
+		 * first added.
+		 *
+		 * @param visitor called with each value and its id
+		 */
+		@SuppressWarnings("unchecked")
+		public void forEach(BiConsumer<V, String> visitor) {
+			for (int i = 0; i < size; i++) {
+				String id = otherKeys != null && otherKeys[i] != null ? otherKeys[i]
+						: Long.toString(keys[i]);
+				visitor.accept((V) values[i], id);
+			}
+		}
+
+		int capacity() {
+			return keys.length;
+		}
+
+		long tableBytes() {
+			// array headers plus 4 bytes per slot, 8 per key and 4 per value reference
+			return 3 * 16 + 4L * slots.length + 8L * keys.length + 4L * values.length
+					+ (otherKeys == null ? 0 : 16 + 4L * otherKeys.length + 80L * otherIds.size());
+		}
+
+		long valueBytes() {
+			long bytes = 0;
+			for (V value : values()) {
+				if (value instanceof Item) {
+					bytes += estimateItemBytes((Item) value);
+				} else if (value instanceof String) {
+					bytes += stringBytes((String) value);
+				} else if (value instanceof SgdPublicationIndex.Publication) {
+					bytes += ((SgdPublicationIndex.Publication) value).estimateBytes();
+				}
+			}
+			return bytes;
+		}
+
+		private int find(long key) {
+			int mask = slots.length - 1;
+			int slot = hash(key) & mask;
+			while (slots[slot] != 0 && keys[slots[slot] - 1] != key) {
+				slot = (slot + 1) & mask;
+			}
+			return slot;
+		}
+
+		private void grow() {
+			int capacity = keys.length * 2;
+			keys = Arrays.copyOf(keys, capacity);
+			values = Arrays.copyOf(values, capacity);
+			if (otherKeys != null) {
+				otherKeys = Arrays.copyOf(otherKeys, capacity);
+			}
+			slots = new int[capacity * 2];
+			int mask = slots.length - 1;
+			for (int i = 0; i < size; i++) {
+				if (otherKeys != null && otherKeys[i] != null) {
+					continue;
+				}
+				int slot = hash(keys[i]) & mask;
+				while (slots[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				slots[slot] = i + 1;
+			}
+		}
+
+		/**
+		 * @return true if the id is a long as Long.toString() would write it, so that no two
+		 * ids that are different strings are the same number
+		 */
+		static boolean isNumber(String id) {
+			int length = id.length();
+			int start = length > 0 && id.charAt(0) == '-' ? 1 : 0;
+			if (start == length || id.charAt(start) == '0' && length > 1) {
+				return false;
+			}
+			if (length - start > 18) {
+				// may not fit in a long
+				try {
+					return Long.toString(Long.parseLong(id)).equals(id);
+				} catch (NumberFormatException e) {
+					return false;
+				}
+			}
+			for (int i = start; i < length; i++) {
+				char c = id.charAt(i);
+				if (c < '0' || c > '9') {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private static int hash(long key) {
+			key ^= key >>> 33;
+			key *= 0xff51afd7ed558ccdL;
+			key ^= key >>> 33;
+			return (int) key;
+		}
+	}
+}
@@ -0,0 +1,447 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+
+import org.apache.log4j.Logger;
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.Reference;
+import org.intermine.xml.full.ReferenceList;
+
+/**
+ * Content hashes of the SGD entities (genes, alleles, transcripts, proteins, publications) as
+ * they were stored by the last conversion, so the next one can tell which have changed.
+ *
+ * The snapshot is an open-addressing hash table of (entity type, dbentity_id) to a 64-bit
+ * hash of the finished item, kept in a file and memory-mapped read-only while the next
+ * conversion compares against it.  The hashes of the current conversion are collected in
+ * memory and written next to the file as a pending snapshot at the end of a successful run.
+ * The pending snapshot only replaces the file once the run that wrote it is known to have been
+ * integrated into the mine (see resolvePending()), so neither a failed conversion nor a
+ * failed integration leaves a snapshot of data the mine doesn't hold.  The snapshot also
+ * records the mine it was integrated into, and the entities the run found deleted are listed
+ * in a separate file, as an incremental load can't remove them from the mine.
+ *
+ * The hash covers the item's class, attributes, references and collections.  Identifiers
+ * differ from run to run, so references are hashed through tokens that don't: another entity
+ * is "type:dbentity_id", a sequence its digest, and anything else only counts as being there.
+ *
+ * @author
+ */
+public class SgdEntitySnapshot {
+
+	private static final Logger LOG = Logger.getLogger(SgdEntitySnapshot.class);
+	private static final int MAGIC = 0x53474453;
+	private static final int VERSION = 2;
+	// magic, version, size, capacity, id, length of the target name, then the slots and the name
+	private static final int HEADER_BYTES = 32;
+	private static final int SLOT_BYTES = 16;
+	private static final String[] TYPES = {"genes", "alleles", "transcripts", "proteins", "publications"};
+	private static final int NEW = 0, CHANGED = 1, UNCHANGED = 2, DELETED = 3;
+	private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+	private static final String UNKNOWN = "*";
+
+	private final File file;
+	private MappedByteBuffer previous;
+	private int previousMask;
+	private String previousTarget;
+	private long[] deleted;
+	private long[] keys = new long[1024];
+	private long[] hashes = new long[1024];
+	private int size;
+	private final long[][] counts = new long[TYPES.length][4];
+
+	/**
+	 * Open the snapshot of the last conversion, if there is one.
+	 *
+	 * @param file the snapshot file
+	 * @throws IOException if the file exists but can't be read or isn't a snapshot
+	 */
+	public SgdEntitySnapshot(File file) throws IOException {
+		this.file = file;
+		if (!file.exists()) {
+			return;
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+			previous = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		}
+		if (previous.capacity() < HEADER_BYTES || previous.getInt(0) != MAGIC
+				|| previous.getInt(4) != VERSION) {
+			throw new IOException(file + " isn't an SGD entity snapshot of version " + VERSION);
+		}
+		int capacity = previous.getInt(12);
+		long slotsEnd = HEADER_BYTES + (long) capacity * SLOT_BYTES;
+		if (Integer.bitCount(capacity) != 1 || previous.capacity() < slotsEnd
+				|| previous.capacity() != slotsEnd + previous.getInt(24)) {
+			throw new IOException(file + " is truncated or corrupt");
+		}
+		previousMask = capacity - 1;
+		byte[] target = new byte[previous.getInt(24)];
+		for (int i = 0; i < target.length; i++) {
+			target[i] = previous.get((int) slotsEnd + i);
+		}
+		previousTarget = new String(target, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Deal with the pending snapshot left by the last conversion, if there is one, before the
+	 * snapshot file is opened.  If the last conversion has been integrated, as shown by
+	 * integratedId being the id it printed, its pending snapshot replaces the snapshot file.
+	 * Otherwise the pending snapshot is thrown away, unless the load is incremental: then it
+	 * isn't known what the mine holds, so this fails.
+	 *
+	 * @param file the snapshot file
+	 * @param integratedId id of the last conversion to have been integrated, or null
+	 * @param incremental true if the conversion is an incremental load
+	 * @throws IOException if the pending snapshot can't be read or moved
+	 */
+	public static void resolvePending(File file, String integratedId, boolean incremental)
+		throws IOException {
+		File pending = pendingFile(file);
+		if (!pending.exists()) {
+			return;
+		}
+		String id;
+		try (RandomAccessFile raf = new RandomAccessFile(pending, "r")) {
+			if (raf.length() < HEADER_BYTES || raf.readInt() != MAGIC || raf.readInt() != VERSION) {
+				throw new IOException(pending + " isn't an SGD entity snapshot of version " + VERSION);
+			}
+			raf.seek(16);
+			id = formatId(raf.readLong());
+		}
+		if (id.equals(integratedId)) {
+			Files.move(pending.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			LOG.info("Conversion " + id + " was integrated, " + pending + " is now " + file);
+		} else if (incremental) {
+			throw new IllegalStateException("The conversion that wrote " + pending + " (" + id
+					+ ") isn't known to have been integrated, so an incremental load can't tell"
+					+ " what the mine holds: set integratedSnapshot to " + id + " if it was,"
+					+ " or delete " + pending + " if it wasn't");
+		} else {
+			Files.delete(pending.toPath());
+			LOG.info("Deleted " + pending + ", conversion " + id + " wasn't integrated");
+		}
+	}
+
+	/**
+	 * @param file the snapshot file
+	 * @return the file a conversion writes its snapshot to until it has been integrated
+	 */
+	public static File pendingFile(File file) {
+		return new File(file.getPath() + ".pending");
+	}
+
+	/**
+	 * @return true if there is a snapshot of an earlier conversion to compare with
+	 */
+	public boolean hasPrevious() {
+		return previous != null;
+	}
+
+	/**
+	 * @return the mine the last snapshot was integrated into, empty if it wasn't named, or
+	 * null if there is no snapshot
+	 */
+	public String getTarget() {
+		return previousTarget;
+	}
+
+	/**
+	 * Record the hash of an entity and compare it with the last conversion's.
+	 *
+	 * @param type one of genes, alleles, transcripts, proteins or publications
+	 * @param id the dbentity_id
+	 * @param hash hash of the finished item, from hash()
+	 * @return true if the entity was in the last snapshot with the same hash
+	 */
+	public boolean record(String type, long id, long hash) {
+		int typeIndex = typeIndex(type);
+		long key = (id << 3) | typeIndex;
+		long old = lookup(key);
+		put(key, hash);
+		int state = old == 0 ? NEW : old == hash ? UNCHANGED : CHANGED;
+		counts[typeIndex][state]++;
+		return state == UNCHANGED;
+	}
+
+	/**
+	 * Write the hashes recorded by this conversion to the pending snapshot, to replace the
+	 * snapshot file once the conversion has been integrated.
+	 *
+	 * @param target the mine the conversion is to be integrated into, or null
+	 * @return the id of the conversion, to be passed to resolvePending() once it's integrated
+	 * @throws IOException if the file can't be written
+	 */
+	public String writePending(String target) throws IOException {
+		int capacity = Integer.highestOneBit(Math.max(1024, size * 2 - 1)) * 2;
+		int mask = capacity - 1;
+		long id = ThreadLocalRandom.current().nextLong();
+		byte[] targetBytes = (target == null ? "" : target).getBytes(StandardCharsets.UTF_8);
+		File pending = pendingFile(file);
+		File tmp = new File(file.getPath() + ".tmp");
+		try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+			long slotsEnd = HEADER_BYTES + (long) capacity * SLOT_BYTES;
+			long length = slotsEnd + targetBytes.length;
+			raf.setLength(length);
+			MappedByteBuffer out = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+			out.putInt(0, MAGIC);
+			out.putInt(4, VERSION);
+			out.putInt(8, size);
+			out.putInt(12, capacity);
+			out.putLong(16, id);
+			out.putInt(24, targetBytes.length);
+			for (int i = 0; i < targetBytes.length; i++) {
+				out.put((int) slotsEnd + i, targetBytes[i]);
+			}
+			for (int i = 0; i < keys.length; i++) {
+				if (hashes[i] == 0) {
+					continue;
+				}
+				int slot = slot(keys[i]) & mask;
+				while (out.getLong(offset(slot) + 8) != 0) {
+					slot = (slot + 1) & mask;
+				}
+				out.putLong(offset(slot), keys[i]);
+				out.putLong(offset(slot) + 8, hashes[i]);
+			}
+			out.force();
+		}
+		Files.move(tmp.toPath(), pending.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		return formatId(id);
+	}
+
+	/**
+	 * @return how many entities of the last snapshot this conversion didn't store
+	 */
+	public int getDeletedCount() {
+		return deleted().length;
+	}
+
+	/**
+	 * Write the entities of the last snapshot this conversion didn't store, a line of type and
+	 * dbentity_id separated by a tab for each.
+	 *
+	 * @param deletedFile the file to write
+	 * @throws IOException if the file can't be written
+	 */
+	public void writeDeleted(File deletedFile) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(deletedFile.toPath(),
+				StandardCharsets.UTF_8)) {
+			for (long key : deleted()) {
+				out.write(TYPES[(int) (key & 7)] + "\t" + (key >> 3));
+				out.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Print and log how many entities of each type were new, changed, unchanged or gone.
+	 */
+	public void report() {
+		long[] deletedKeys = deleted();
+		for (long[] typeCounts : counts) {
+			typeCounts[DELETED] = 0;
+		}
+		for (long key : deletedKeys) {
+			counts[(int) (key & 7)][DELETED]++;
+		}
+		StringBuilder sb = new StringBuilder("SGD entity changes since the last snapshot:\n");
+		sb.append(String.format("%-20s %10s %10s %10s %10s%n", "type", "new", "changed", "unchanged",
+				"deleted"));
+		for (int i = 0; i < TYPES.length; i++) {
+			sb.append(String.format("%-20s %10d %10d %10d %10d%n", TYPES[i], counts[i][NEW],
+					counts[i][CHANGED], counts[i][UNCHANGED], counts[i][DELETED]));
+		}
+		System.out.println(sb);
+		LOG.info(sb);
+	}
+
+	/**
+	 * Hash the content of a finished item.
+	 *
+	 * @param item the item
+	 * @param tokens gives the stable token for the identifier of a referenced item, or null
+	 * @return the hash, never 0
+	 */
+	static long hash(Item item, Function<String, String> tokens) {
+		// the parts are summed, so the order attributes and collection members were added in
+		// doesn't matter
+		long hash = string(FNV_OFFSET, item.getClassName());
+		if (item.getAttributes() != null) {
+			for (Attribute attribute : item.getAttributes()) {
+				hash += mix64(string(string(1, attribute.getName()), attribute.getValue()));
+			}
+		}
+		if (item.getReferences() != null) {
+			for (Reference reference : item.getReferences()) {
+				hash += mix64(string(string(2, reference.getName()), token(tokens, reference.getRefId())));
+			}
+		}
+		if (item.getCollections() != null) {
+			for (ReferenceList collection : item.getCollections()) {
+				long name = string(3, collection.getName());
+				for (String refId : collection.getRefIds()) {
+					hash += mix64(string(name, token(tokens, refId)));
+				}
+			}
+		}
+		hash = mix64(hash);
+		return hash == 0 ? 1 : hash;
+	}
+
+	private static String token(Function<String, String> tokens, String refId) {
+		String token = tokens.apply(refId);
+		return token == null ? UNKNOWN : token;
+	}
+
+	private long lookup(long key) {
+		if (previous == null) {
+			return 0;
+		}
+		int slot = slot(key) & previousMask;
+		while (true) {
+			long hash = previous.getLong(offset(slot) + 8);
+			if (hash == 0) {
+				return 0;
+			}
+			if (previous.getLong(offset(slot)) == key) {
+				return hash;
+			}
+			slot = (slot + 1) & previousMask;
+		}
+	}
+
+	private void put(long key, long hash) {
+		if ((size + 1) * 2 > keys.length) {
+			grow();
+		}
+		int mask = keys.length - 1;
+		int slot = slot(key) & mask;
+		while (hashes[slot] != 0 && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		if (hashes[slot] == 0) {
+			size++;
+		}
+		keys[slot] = key;
+		hashes[slot] = hash;
+	}
+
+	private boolean contains(long key) {
+		int mask = keys.length - 1;
+		int slot = slot(key) & mask;
+		while (hashes[slot] != 0) {
+			if (keys[slot] == key) {
+				return true;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return false;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		long[] oldHashes = hashes;
+		keys = new long[oldKeys.length * 2];
+		hashes = new long[oldKeys.length * 2];
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldHashes[i] != 0) {
+				put(oldKeys[i], oldHashes[i]);
+			}
+		}
+	}
+
+	/**
+	 * @return the keys of the last snapshot that this conversion hasn't recorded, in order
+	 */
+	private long[] deleted() {
+		if (deleted != null) {
+			return deleted;
+		}
+		if (previous == null) {
+			return new long[0];
+		}
+		long[] keys = new long[16];
+		int n = 0;
+		for (int slot = 0; slot <= previousMask; slot++) {
+			if (previous.getLong(offset(slot) + 8) != 0) {
+				long key = previous.getLong(offset(slot));
+				if (!contains(key)) {
+					if (n == keys.length) {
+						keys = Arrays.copyOf(keys, n * 2);
+					}
+					keys[n++] = key;
+				}
+			}
+		}
+		deleted = Arrays.copyOf(keys, n);
+		Arrays.sort(deleted);
+		return deleted;
+	}
+
+	private static String formatId(long id) {
+		return String.format("%016x", id);
+	}
+
+	private static int typeIndex(String type) {
+		for (int i = 0; i < TYPES.length; i++) {
+			if (TYPES[i].equals(type)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("no entity type " + type);
+	}
+
+	private static int offset(int slot) {
+		return HEADER_BYTES + slot * SLOT_BYTES;
+	}
+
+	private static long string(long seed, String s) {
+		long hash = seed;
+		if (s != null) {
+			for (int i = 0; i < s.length(); i++) {
+				hash = (hash ^ s.charAt(i)) * FNV_PRIME;
+			}
+		}
+		// separates the strings hashed one after the other
+		return (hash ^ 0xff) * FNV_PRIME;
+	}
+
+	private static long mix64(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static int slot(long key) {
+		return (int) mix64(key);
+	}
+}
@@ -0,0 +1,188 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.apache.log4j.Logger;
+import org.intermine.metadata.ClassDescriptor;
+import org.intermine.metadata.Model;
+
+/**
+ * Maps the feature types of the SGD database to the classes they are loaded as and to the
+ * reference from a child feature to its parent, as configured in sgd_feature_types.properties.
+ *
+ * Types are matched ignoring case.  Entries whose class or reference isn't in the model are
+ * dropped when the file is read, and every type the converter asks about without finding it
+ * is counted so it can be reported.
+ *
+ * @author
+ */
+public class SgdFeatureTypes {
+
+	private static final Logger LOG = Logger.getLogger(SgdFeatureTypes.class);
+	private static final String PROP_FILE = "sgd_feature_types.properties";
+	private static final String ANY_PARENT = "";
+
+	private final Map<String, String> geneClasses = new HashMap<String, String>();
+	private final Map<String, String> childClasses = new HashMap<String, String>();
+	private final Map<String, Map<String, String>> references = new HashMap<String, Map<String, String>>();
+	private final Map<String, Integer> unknown = new TreeMap<String, Integer>();
+
+	/**
+	 * Read the feature types from sgd_feature_types.properties.
+	 *
+	 * @param model the model the items are created in
+	 */
+	public SgdFeatureTypes(Model model) {
+		Properties props = new Properties();
+		InputStream in = getClass().getClassLoader().getResourceAsStream(PROP_FILE);
+		if (in == null) {
+			throw new RuntimeException("Couldn't find " + PROP_FILE);
+		}
+		try {
+			props.load(in);
+			in.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Problem loading properties '" + PROP_FILE + "'", e);
+		}
+		for (String key : props.stringPropertyNames()) {
+			String value = props.getProperty(key).trim();
+			int dot = key.indexOf('.');
+			if (dot < 0) {
+				throw new RuntimeException("Problem loading properties '" + PROP_FILE + "' on line "
+						+ key);
+			}
+			String section = key.substring(0, dot);
+			String type = key.substring(dot + 1);
+			if ("gene".equals(section) || "child".equals(section)) {
+				if (model != null && model.getClassDescriptorByName(value) == null) {
+					LOG.warn(PROP_FILE + ": " + key + " names class " + value
+							+ " which isn't in the model, ignoring it");
+					continue;
+				}
+				("gene".equals(section) ? geneClasses : childClasses).put(fold(type), value);
+			} else if ("reference".equals(section)) {
+				int parentDot = type.indexOf('.');
+				String child = parentDot < 0 ? type : type.substring(0, parentDot);
+				String parent = parentDot < 0 ? ANY_PARENT : type.substring(parentDot + 1);
+				Map<String, String> byParent = references.get(fold(child));
+				if (byParent == null) {
+					byParent = new HashMap<String, String>();
+					references.put(fold(child), byParent);
+				}
+				byParent.put(fold(parent), value);
+			} else {
+				throw new RuntimeException("Problem loading properties '" + PROP_FILE + "' on line "
+						+ key);
+			}
+		}
+		if (model != null) {
+			checkReferences(model);
+		}
+	}
+
+	/**
+	 * @param featureType feature type of a gene-level feature
+	 * @return the class to create, or null if the type isn't configured
+	 */
+	public String getGeneClass(String featureType) {
+		return lookup(geneClasses, "gene", featureType);
+	}
+
+	/**
+	 * @param childType feature type of a child feature
+	 * @return the class to create, or null if the type isn't configured
+	 */
+	public String getChildClass(String childType) {
+		return lookup(childClasses, "child", childType);
+	}
+
+	/**
+	 * @param childType feature type of a child feature
+	 * @param parentType feature type of its parent
+	 * @return name of the reference from the child to the parent, or null if there is none
+	 */
+	public String getReferenceName(String childType, String parentType) {
+		Map<String, String> byParent = childType == null ? null : references.get(fold(childType));
+		String name = null;
+		if (byParent != null) {
+			name = parentType == null ? null : byParent.get(fold(parentType));
+			if (name == null) {
+				name = byParent.get(ANY_PARENT);
+			}
+		}
+		if (name == null) {
+			count("reference " + childType + " -> " + parentType);
+		}
+		return name;
+	}
+
+	/**
+	 * Print and log the feature types that weren't configured and how often they were seen.
+	 */
+	public void report() {
+		if (unknown.isEmpty()) {
+			return;
+		}
+		StringBuilder sb = new StringBuilder("Feature types not in " + PROP_FILE
+				+ " (their rows or references were skipped):\n");
+		for (Map.Entry<String, Integer> entry : unknown.entrySet()) {
+			sb.append(String.format("  %-60s %8d%n", entry.getKey(), entry.getValue()));
+		}
+		System.out.println(sb);
+		LOG.warn(sb);
+	}
+
+	private String lookup(Map<String, String> classes, String section, String type) {
+		String cls = type == null ? null : classes.get(fold(type));
+		if (cls == null) {
+			count(section + " " + type);
+		}
+		return cls;
+	}
+
+	private void count(String what) {
+		Integer seen = unknown.get(what);
+		if (seen == null) {
+			LOG.warn("unknown feature type: " + what);
+		}
+		unknown.put(what, seen == null ? 1 : seen + 1);
+	}
+
+	private void checkReferences(Model model) {
+		for (Map.Entry<String, Map<String, String>> entry : references.entrySet()) {
+			String cls = childClasses.get(entry.getKey());
+			if (cls == null) {
+				continue;
+			}
+			ClassDescriptor cd = model.getClassDescriptorByName(cls);
+			for (Iterator<String> it = entry.getValue().values().iterator(); it.hasNext();) {
+				String name = it.next();
+				if (cd.getFieldDescriptorByName(name) == null) {
+					LOG.warn(PROP_FILE + ": " + cls + " has no reference " + name + ", ignoring it");
+					it.remove();
+				}
+			}
+		}
+	}
+
+	private static String fold(String type) {
+		return type.toLowerCase(Locale.ENGLISH);
+	}
+}
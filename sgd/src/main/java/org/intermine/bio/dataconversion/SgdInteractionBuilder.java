@@ -0,0 +1,269 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.DataConverter;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+/**
+ * Builds the Interactions, InteractionDetails and InteractionExperiments of the BioGRID
+ * physical and genetic interaction annotations.
+ *
+ * Each row is decoded once.  Its publication is merged into the publication index the first
+ * time its reference number is seen, its InteractionExperiment (first author, PubMed id and
+ * experimental system) is looked up once, and both directions of the interaction, A-B and B-A,
+ * get an Interaction and an InteractionDetail made from the same decoded values.  As before
+ * there are two Interactions per annotation, or one if a gene interacts with itself.  The
+ * short vocabulary values (experimental system, annotation type, roles, ...) are interned, so
+ * the details waiting to be stored share them instead of holding a copy per row.
+ *
+ * @author
+ */
+public class SgdInteractionBuilder {
+
+	private static final Logger LOG = Logger.getLogger(SgdInteractionBuilder.class);
+	private static final int MAX_INTERNED = 10000;
+
+	private final DataConverter converter;
+	private final AsyncItemStore store;
+	private final SgdPublicationIndex publications;
+	private final Map<String, SgdPublicationIndex.Publication> references =
+			new HashMap<String, SgdPublicationIndex.Publication>();
+	private final Map<String, Item> experiments = new HashMap<String, Item>();
+	private final Map<String, String> terms = new HashMap<String, String>();
+	private final List<Item> interactionItems = new ArrayList<Item>();
+	private final Map<String, String> strings = new HashMap<String, String>();
+	private String dataSet;
+	private long rows;
+	private long details;
+
+	/**
+	 * Construct a new SgdInteractionBuilder.
+	 *
+	 * @param converter the converter creating the items
+	 * @param store the store the items are queued to
+	 * @param publications the publications of the conversion
+	 */
+	public SgdInteractionBuilder(DataConverter converter, AsyncItemStore store,
+			SgdPublicationIndex publications) {
+		this.converter = converter;
+		this.store = store;
+		this.publications = publications;
+	}
+
+	/**
+	 * Add the interaction of a row of one of the interaction queries, in both directions if
+	 * the genes differ.  The InteractionDetails are stored straight away, the Interactions and
+	 * InteractionExperiments by storeExperiments() and storeInteractions().
+	 *
+	 * @param row the row
+	 * @param gene the gene of dbentity1_id
+	 * @param interactingGene the gene of dbentity2_id
+	 * @param interactionType "physical interactions" or "genetic interactions"
+	 * @param modificationColumn column holding the modification, null if the query has none
+	 * @param phenotypeColumn column holding the phenotype, null if the query has none
+	 * @return the Interaction of each direction
+	 * @throws SQLException if the row can't be read
+	 * @throws ObjectStoreException if a detail can't be stored
+	 */
+	public Item[] add(RowDecoder row, Item gene, Item interactingGene, String interactionType,
+			String modificationColumn, String phenotypeColumn)
+			throws SQLException, ObjectStoreException {
+		rows++;
+		String experimentType = intern(row.getString("biogrid_experimental_system"));
+		String annotationType = intern(row.getString("annotation_type"));
+		String modification = modificationColumn == null ? null
+				: intern(row.getString(modificationColumn));
+		String phenotype = phenotypeColumn == null ? null : intern(row.getString(phenotypeColumn));
+		String note = row.getString("note");
+		String[] roles = row.getString("bait_hit").split("-");
+		String pubMedId = row.getString("pmid");
+		String relationshipType = interactionType.substring(0, interactionType.indexOf(' '));
+
+		String publication = getPublication(row, pubMedId).getIdentifier();
+		Item experiment = getExperiment(row.getString("first_author") + "-" + pubMedId + "-"
+				+ experimentType, experimentType, publication);
+
+		Item interaction = createInteraction(gene.getIdentifier(), interactingGene.getIdentifier());
+		storeDetail(interaction, interactingGene, interactionType, relationshipType, annotationType,
+				modification, phenotype, note, intern(roles[0]), experiment);
+		Item reverse = null;
+		//store the reverse relationship so that template changes do not have to be made; act1 in gene.X or participant.X
+		if (!gene.getIdentifier().equals(interactingGene.getIdentifier())) {
+			reverse = createInteraction(interactingGene.getIdentifier(), gene.getIdentifier());
+			storeDetail(reverse, gene, interactionType, relationshipType, annotationType,
+					modification, phenotype, note, intern(roles[1]), experiment);
+		}
+		return reverse == null ? new Item[] {interaction} : new Item[] {interaction, reverse};
+	}
+
+	/**
+	 * Store the InteractionExperiments.
+	 *
+	 * @throws ObjectStoreException if they can't be stored
+	 */
+	public void storeExperiments() throws ObjectStoreException {
+		for (Item exp : experiments.values()) {
+			try {
+				store.store(exp);
+			} catch (ObjectStoreException e) {
+				throw new ObjectStoreException(e);
+			}
+		}
+	}
+
+	/**
+	 * Store the Interactions, once everything referring to them has been added, and print
+	 * and log how many there were.
+	 *
+	 * @throws ObjectStoreException if they can't be stored
+	 */
+	public void storeInteractions() throws ObjectStoreException {
+		for (Item intact : interactionItems) {
+			try {
+				store.store(intact);
+			} catch (ObjectStoreException e) {
+				throw new ObjectStoreException(e);
+			}
+		}
+		String report = String.format("interactions: %d annotations, %d details, %d interactions,"
+				+ " %d experiments, %d publications", rows, details, interactionItems.size(),
+				experiments.size(), references.size());
+		System.out.println(report);
+		LOG.info(report);
+	}
+
+	private void storeDetail(Item interaction, Item interactingGene, String interactionType,
+			String relationshipType, String annotationType, String modification, String phenotype, String note,
+			String role, Item experiment) throws ObjectStoreException {
+		Item detail = converter.createItem("InteractionDetail");
+		detail.setAttribute("type", interactionType);
+		detail.setAttribute("annotationType", annotationType);
+		if (StringUtils.isNotEmpty(modification)) detail.setAttribute("modification", modification);
+		if (StringUtils.isNotEmpty(phenotype)) detail.setAttribute("phenotype", phenotype);
+		detail.setAttribute("role1", role);
+		detail.addToCollection("allInteractors", interactingGene.getIdentifier());
+		detail.addToCollection("dataSets", getDataSet());
+		detail.setAttribute("relationshipType", relationshipType); //interactionType
+		if (StringUtils.isNotEmpty(note)) detail.setAttribute("note", note);
+		detail.setReference("experiment", experiment.getIdentifier());
+		detail.setReference("interaction", interaction);
+		details++;
+		try {
+			store.store(detail);
+		} catch (ObjectStoreException e) {
+			throw new ObjectStoreException(e);
+		}
+	}
+
+	private SgdPublicationIndex.Publication getPublication(RowDecoder row, String pubMedId)
+			throws SQLException {
+		String referenceNo = row.getString("reference_id");
+		SgdPublicationIndex.Publication pub = references.get(referenceNo);
+		if (pub == null) {
+			// every row of a reference carries the same publication columns, merge them once
+			pub = publications.get(referenceNo, pubMedId)
+					.set("pubXrefId", row.getString("sgdid"))
+					.set("title", row.getString("title"))
+					.set("citation", row.getString("citation"))
+					.set("journal", row.getString("med_abbr"))
+					.set("volume", row.getString("volume"))
+					.set("pages", row.getString("page"))
+					.set("year", row.getString("year"))
+					.set("issue", row.getString("issue"));
+			references.put(referenceNo, pub);
+		}
+		return pub;
+	}
+
+	private Item getExperiment(String name, String experimentType, String publication)
+			throws ObjectStoreException {
+		Item experiment = experiments.get(name);
+		if (experiment == null) {
+			experiment = converter.createItem("InteractionExperiment");
+			experiment.setAttribute("name", name);
+			// the name holds the PubMed id, so the rows of an experiment share the publication
+			// of its first row
+			experiment.setReference("publication", publication);
+			experiment.addToCollection("interactionDetectionMethods", getTerm(experimentType));
+			experiments.put(name, experiment);
+		}
+		return experiment;
+	}
+
+	private Item createInteraction(String refId, String gene2RefId) {
+		Item interaction = converter.createItem("Interaction");
+		interaction.setReference("participant1", refId); //gene1
+		interaction.setReference("participant2", gene2RefId); //gene2
+		interactionItems.add(interaction);
+		return interaction;
+	}
+
+	private String getTerm(String identifier) throws ObjectStoreException {
+		String refId = terms.get(identifier);
+		if (refId != null) {
+			return refId;
+		}
+		Item item = converter.createItem("InteractionTerm");
+		item.setAttribute("identifier", identifier);
+		terms.put(identifier, item.getIdentifier());
+		try {
+			store.store(item);
+		} catch (ObjectStoreException e) {
+			throw new ObjectStoreException(e);
+		}
+		return item.getIdentifier();
+	}
+
+	private String getDataSet() throws ObjectStoreException {
+		if (dataSet != null) {
+			return dataSet;
+		}
+		Item item = converter.createItem("DataSet");
+		item.setAttribute("name", "BioGRID interaction data set");
+
+		Item ds = converter.createItem("DataSource");
+		ds.setAttribute("name", "BioGRID");
+		ds.addToCollection("dataSets", item.getIdentifier());
+		try {
+			store.store(item);
+			store.store(ds);
+		} catch (ObjectStoreException e) {
+			throw new ObjectStoreException(e);
+		}
+		dataSet = item.getIdentifier();
+		return dataSet;
+	}
+
+	private String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+		String interned = strings.get(value);
+		if (interned != null) {
+			return interned;
+		}
+		// only worth it for vocabularies, stop taking new values if a column turns out not to be one
+		if (strings.size() < MAX_INTERNED) {
+			strings.put(value, value);
+		}
+		return value;
+	}
+}
@@ -0,0 +1,565 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.intermine.sql.Database;
+
+/**
+ * Runs the phases of the SGD conversion.
+ *
+ * The scheduler is a query prefetcher, it doesn't process phases concurrently.  The queries
+ * of prefetched phases are run ahead of time, each on its own pooled connection from the
+ * Database, and their rows are read into memory while earlier phases are still being
+ * processed, up to a budget of bytes shared by all of them; a query that doesn't fit has the
+ * rest of its rows read from its connection when its phase is processed.  The rows themselves
+ * are always handed to the converter one phase at a time, in the order the phases were added,
+ * on the calling thread: phases fill and read the converter's maps and item identifiers are
+ * handed out in creation order, so this is what keeps the items written the same from run to
+ * run.
+ *
+ * A partitioned phase is the exception to one query per phase: its query is split into ranges,
+ * which are read and decoded by threads of their own, each on its own connection, while the
+ * rows are still handed to the converter in range order on the calling thread (see
+ * PartitionedRows).
+ *
+ * A phase names the earlier phases it needs (typically the ones filling genes, proteins or
+ * publications).  Those have to be added first, so a phase can't be moved ahead of the data
+ * it relies on by accident.
+ *
+ * With a checkpoint set, the rows of every phase are also written to disk as they are
+ * processed, and a resumed run replays the phases a failed run finished instead of running
+ * their queries again (see SgdCheckpoint).
+ *
+ * @author
+ */
+public class SgdPhaseScheduler {
+
+	private static final Logger LOG = Logger.getLogger(SgdPhaseScheduler.class);
+	private static final long DEFAULT_BUFFER_BUDGET = 256L * 1024 * 1024;
+
+	/**
+	 * Runs the query of a phase.
+	 */
+	public interface Query {
+		/**
+		 * @param connection the connection to run the query on
+		 * @return the results
+		 * @throws SQLException if there is a database problem
+		 */
+		QueryRows execute(Connection connection) throws SQLException;
+	}
+
+	/**
+	 * Runs the query of one partition of a partitioned phase.
+	 */
+	public interface PartitionQuery {
+		/**
+		 * @param connection the connection to run the query on
+		 * @param partition which partition, from 0
+		 * @param partitions how many partitions there are
+		 * @return the results
+		 * @throws SQLException if there is a database problem
+		 */
+		QueryRows execute(Connection connection, int partition, int partitions)
+			throws SQLException;
+	}
+
+	/**
+	 * Runs a JDBC query, e.g. one of SgdProcessor's.
+	 */
+	public interface JdbcQuery {
+		/**
+		 * @param connection the connection to run the query on
+		 * @return the results
+		 * @throws SQLException if there is a database problem
+		 */
+		ResultSet execute(Connection connection) throws SQLException;
+	}
+
+	/**
+	 * Processes the rows of a phase.
+	 */
+	public interface Handler {
+		/**
+		 * @param res the rows returned by the phase's query
+		 * @throws Exception if the rows can't be processed
+		 */
+		void process(QueryRows res) throws Exception;
+	}
+
+	/**
+	 * Where prefetched queries get their connections.
+	 */
+	interface Connections {
+		/**
+		 * @return a connection, closed by the scheduler when the query's rows have been read
+		 * @throws SQLException if there is a database problem
+		 */
+		Connection getConnection() throws SQLException;
+	}
+
+	/**
+	 * A phase that doesn't read from the database, e.g. storing the items collected so far.
+	 */
+	public interface Task {
+		/**
+		 * @throws Exception if the task fails
+		 */
+		void run() throws Exception;
+	}
+
+	private enum Mode { PREFETCH, STREAMING, PARTITIONED, TASK }
+
+	private final Connections connections;
+	private final int poolSize;
+	private final Map<String, Phase> phases = new LinkedHashMap<String, Phase>();
+	private BufferedRows.Budget budget = new BufferedRows.Budget(DEFAULT_BUFFER_BUDGET);
+	private ConverterMetrics metrics;
+	private SgdCheckpoint checkpoint;
+	private String checkpointSettings = "";
+
+	/**
+	 * @param query a JDBC query
+	 * @return the query of a phase reading its results
+	 */
+	public static Query jdbc(final JdbcQuery query) {
+		return connection -> new ResultSetRows(query.execute(connection));
+	}
+
+	/**
+	 * Construct a new scheduler.
+	 *
+	 * @param database the database to take connections from for prefetched queries
+	 * @param poolSize how many queries may run or wait ahead of the phase being processed;
+	 *            0 runs every query on the converter's own connection when its turn comes
+	 */
+	public SgdPhaseScheduler(final Database database, int poolSize) {
+		this(() -> database.getConnection(), poolSize);
+	}
+
+	/**
+	 * Construct a new scheduler.
+	 *
+	 * @param connections where prefetched queries get their connections
+	 * @param poolSize how many queries may run or wait ahead of the phase being processed
+	 */
+	SgdPhaseScheduler(Connections connections, int poolSize) {
+		this.connections = connections;
+		this.poolSize = Math.max(0, poolSize);
+	}
+
+	/**
+	 * @param bytes how much memory the rows read ahead by prefetched queries may take in all
+	 */
+	public void setBufferBudget(long bytes) {
+		this.budget = new BufferedRows.Budget(bytes);
+	}
+
+	/**
+	 * @param metrics where to record each phase's rows, items and timings as it is processed
+	 */
+	public void setMetrics(ConverterMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * @param checkpoint where to save the rows of each phase, and replay them from on resume
+	 * @param settings converter settings that change the rows or how they are processed; a
+	 *            checkpoint written with different settings isn't resumed
+	 */
+	public void setCheckpoint(SgdCheckpoint checkpoint, String settings) {
+		this.checkpoint = checkpoint;
+		this.checkpointSettings = settings;
+	}
+
+	/**
+	 * Add a phase whose query can run ahead on its own connection.
+	 *
+	 * @param name unique name of the phase
+	 * @param query runs the query
+	 * @param handler processes the rows
+	 * @param requires phases that must be processed before this one
+	 */
+	public void addPhase(String name, Query query, Handler handler, String... requires) {
+		add(new Phase(name, Mode.PREFETCH, query, handler, null, requires));
+	}
+
+	/**
+	 * Add a phase whose rows are too big to hold in memory (sequences, interactions).  Its query
+	 * runs on the converter's connection when its turn comes and the rows are streamed.
+	 *
+	 * @param name unique name of the phase
+	 * @param query runs the query
+	 * @param handler processes the rows
+	 * @param requires phases that must be processed before this one
+	 */
+	public void addStreamingPhase(String name, Query query, Handler handler, String... requires) {
+		add(new Phase(name, Mode.STREAMING, query, handler, null, requires));
+	}
+
+	/**
+	 * Add a phase whose rows are too big to hold in memory and whose query can be split into
+	 * partitions.  When its turn comes up to poolSize partitions are read at once, each on a
+	 * connection of its own, and the rows are handed to the handler partition by partition,
+	 * in order.  With a poolSize of 0 the partitions are streamed one after another on the
+	 * converter's connection.
+	 *
+	 * @param name unique name of the phase
+	 * @param partitions how many partitions the query is split into
+	 * @param query runs the query of a partition
+	 * @param handler processes the rows of all the partitions
+	 * @param requires phases that must be processed before this one
+	 */
+	public void addPartitionedPhase(String name, int partitions, PartitionQuery query,
+			Handler handler, String... requires) {
+		Phase phase = new Phase(name, Mode.PARTITIONED, null, handler, null, requires);
+		phase.partitions = Math.max(1, partitions);
+		phase.partitionQuery = query;
+		add(phase);
+	}
+
+	/**
+	 * Add a phase that doesn't query the database.
+	 *
+	 * @param name unique name of the phase
+	 * @param task the work to do
+	 * @param requires phases that must be processed before this one
+	 */
+	public void addTask(String name, Task task, String... requires) {
+		add(new Phase(name, Mode.TASK, null, null, task, requires));
+	}
+
+	/**
+	 * @param name name of a phase
+	 * @return the query of the phase, null for a task
+	 */
+	Query getQuery(String name) {
+		return phase(name).query;
+	}
+
+	/**
+	 * @param name name of a phase
+	 * @return the handler of the phase, null for a task
+	 */
+	Handler getHandler(String name) {
+		return phase(name).handler;
+	}
+
+	/**
+	 * @param name name of a phase
+	 * @return all phases that have to be processed before it, in the order they were added
+	 */
+	List<String> getRequiredPhases(String name) {
+		Set<String> required = new HashSet<String>();
+		collectRequired(phase(name), required);
+		List<String> ordered = new ArrayList<String>();
+		for (String phase : phases.keySet()) {
+			if (required.contains(phase)) {
+				ordered.add(phase);
+			}
+		}
+		return ordered;
+	}
+
+	private void collectRequired(Phase phase, Set<String> required) {
+		for (String name : phase.requires) {
+			if (required.add(name)) {
+				collectRequired(phases.get(name), required);
+			}
+		}
+	}
+
+	private Phase phase(String name) {
+		Phase phase = phases.get(name);
+		if (phase == null) {
+			throw new IllegalArgumentException("no phase " + name);
+		}
+		return phase;
+	}
+
+	private void add(Phase phase) {
+		if (phases.containsKey(phase.name)) {
+			throw new IllegalArgumentException("phase " + phase.name + " added twice");
+		}
+		for (String required : phase.requires) {
+			if (!phases.containsKey(required)) {
+				throw new IllegalArgumentException("phase " + phase.name + " requires " + required
+						+ " which has to be added before it");
+			}
+		}
+		phases.put(phase.name, phase);
+	}
+
+	/**
+	 * Run all phases and print the timing report.
+	 *
+	 * @param connection the converter's connection, used for streaming phases
+	 * @throws Exception if any phase fails
+	 */
+	public void run(Connection connection) throws Exception {
+		List<Phase> ordered = new ArrayList<Phase>(phases.values());
+		if (checkpoint != null) {
+			List<String> names = new ArrayList<String>();
+			for (Phase phase : ordered) {
+				names.add(phase.mode.name() + " " + phase.name);
+			}
+			checkpoint.open(names, checkpointSettings);
+			for (Phase phase : ordered) {
+				phase.replayed = phase.mode != Mode.TASK && checkpoint.isComplete(phase.name);
+			}
+		}
+		ExecutorService pool = null;
+		if (poolSize > 0) {
+			pool = Executors.newFixedThreadPool(poolSize, new PhaseThreadFactory());
+		}
+		try {
+			int submitted = 0;
+			for (int i = 0; i < ordered.size(); i++) {
+				// keep up to poolSize prefetched phases in flight ahead of this one
+				while (pool != null && submitted < ordered.size()
+						&& inFlight(ordered, i, submitted) < poolSize) {
+					Phase next = ordered.get(submitted++);
+					if (next.mode == Mode.PREFETCH && !next.replayed) {
+						next.future = pool.submit(new Prefetch(next));
+					}
+				}
+				runPhase(ordered.get(i), connection);
+			}
+			if (checkpoint != null) {
+				checkpoint.finish();
+			}
+		} finally {
+			if (pool != null) {
+				pool.shutdownNow();
+				discard(ordered);
+			}
+			report(ordered);
+		}
+	}
+
+	/**
+	 * Close the rows of phases that were prefetched but not processed because an earlier
+	 * phase failed, giving back their memory and connections.
+	 */
+	private static void discard(List<Phase> ordered) {
+		for (Phase phase : ordered) {
+			Future<BufferedRows> future = phase.future;
+			phase.future = null;
+			if (future != null && !future.cancel(true)) {
+				try {
+					future.get().close();
+				} catch (ExecutionException e) {
+					// the query failed, there are no rows to close
+				} catch (Exception e) {
+					LOG.warn("can't close the rows of " + phase.name, e);
+				}
+			}
+		}
+	}
+
+	private static int inFlight(List<Phase> ordered, int current, int submitted) {
+		int count = 0;
+		for (int i = current; i < submitted; i++) {
+			if (ordered.get(i).future != null) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void runPhase(Phase phase, Connection connection) throws Exception {
+		if (metrics != null) {
+			metrics.startPhase(phase.name);
+		}
+		try {
+			processPhase(phase, connection);
+		} finally {
+			if (metrics != null) {
+				metrics.endPhase();
+			}
+		}
+	}
+
+	private void processPhase(Phase phase, Connection connection) throws Exception {
+		if (phase.mode == Mode.TASK) {
+			long start = System.currentTimeMillis();
+			phase.task.run();
+			phase.applyMillis = System.currentTimeMillis() - start;
+			return;
+		}
+		QueryRows res;
+		long start = System.currentTimeMillis();
+		if (phase.replayed) {
+			res = checkpoint.replay(phase.name);
+			phase.fetchMillis = System.currentTimeMillis() - start;
+			phase.rows = (int) checkpoint.getRows(phase.name);
+		} else if (phase.mode == Mode.PARTITIONED) {
+			res = PartitionedRows.open(phase.name, phase.partitionQuery, phase.partitions,
+					connections, poolSize, connection);
+			phase.fetchMillis = System.currentTimeMillis() - start;
+		} else if (phase.future != null) {
+			try {
+				res = phase.future.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw e;
+			} finally {
+				phase.future = null;
+			}
+			phase.waitMillis = System.currentTimeMillis() - start;
+		} else {
+			res = phase.query.execute(connection);
+			phase.fetchMillis = System.currentTimeMillis() - start;
+		}
+		boolean recording = checkpoint != null && !phase.replayed;
+		if (recording) {
+			res = checkpoint.record(phase.name, res);
+		}
+		start = System.currentTimeMillis();
+		try {
+			phase.handler.process(res);
+		} finally {
+			res.close();
+		}
+		if (res instanceof BufferedRows) {
+			phase.rows = ((BufferedRows) res).getRowCount();
+		}
+		phase.applyMillis = System.currentTimeMillis() - start;
+		if (recording) {
+			checkpoint.complete(phase.name);
+		}
+	}
+
+	private void report(List<Phase> ordered) {
+		StringBuilder sb = new StringBuilder("SGD phase timings (ms):\n");
+		sb.append(String.format("%-36s %-10s %10s %10s %10s %10s%n",
+				"phase", "mode", "rows", "fetch", "wait", "process"));
+		for (Phase phase : ordered) {
+			sb.append(String.format("%-36s %-10s %10s %10d %10d %10d%n", phase.name,
+					phase.replayed ? "replayed" : phase.mode.name().toLowerCase(), phase.rows < 0 ? "-" : String.valueOf(phase.rows),
+					phase.fetchMillis, phase.waitMillis, phase.applyMillis));
+		}
+		System.out.println(sb);
+		LOG.info(sb);
+	}
+
+	/**
+	 * Runs a prefetched query on a connection of its own and reads the rows into memory.  If
+	 * they don't all fit in the budget the connection is kept open for the rest of them and
+	 * closed with the result set.
+	 */
+	private final class Prefetch implements Callable<BufferedRows> {
+		private final Phase phase;
+
+		Prefetch(Phase phase) {
+			this.phase = phase;
+		}
+
+		public BufferedRows call() throws Exception {
+			long start = System.currentTimeMillis();
+			final Connection connection = connections.getConnection();
+			boolean streaming = false;
+			try {
+				BufferedRows res = BufferedRows.buffer(phase.query.execute(connection), budget);
+				phase.fetchMillis = System.currentTimeMillis() - start;
+				if (!res.isComplete()) {
+					LOG.info(phase.name + " doesn't fit in the buffer budget, the rest of its"
+							+ " rows are streamed when it is processed");
+					res.setOnClose(() -> release(connection));
+					streaming = true;
+				}
+				if (Thread.interrupted()) {
+					// cancelled by discard(), nobody will close the rows
+					res.close();
+					throw new InterruptedException(phase.name + " was cancelled");
+				}
+				return res;
+			} finally {
+				if (!streaming) {
+					release(connection);
+				}
+			}
+		}
+	}
+
+	/**
+	 * End the read-only transaction a streaming query may have opened on a connection and
+	 * close it.
+	 */
+	static void release(Connection connection) throws SQLException {
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+		} finally {
+			connection.close();
+		}
+	}
+
+	private static final class PhaseThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "sgd-phase-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+	private static final class Phase {
+		private final String name;
+		private final Mode mode;
+		private final Query query;
+		private final Handler handler;
+		private final Task task;
+		private final List<String> requires;
+		private volatile Future<BufferedRows> future;
+		private volatile long fetchMillis;
+		private long waitMillis;
+		private long applyMillis;
+		private int rows = -1;
+		private boolean replayed;
+		private int partitions;
+		private PartitionQuery partitionQuery;
+
+		Phase(String name, Mode mode, Query query, Handler handler, Task task, String[] requires) {
+			this.name = name;
+			this.mode = mode;
+			this.query = query;
+			this.handler = handler;
+			this.task = task;
+			this.requires = Arrays.asList(requires);
+		}
+	}
+}
@@ -0,0 +1,251 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Decodes the phenotype, strain and experimental conditions of the rows of the phenotype query.
+ *
+ * The conditions of an annotation come as four parallel arrays, condition class, name, value
+ * and unit, which are made into the chemical and condition text of the Phenotype.  The same
+ * few combinations of conditions, phenotypes and strains turn up on many annotations, so each
+ * is decoded once and the result cached.
+ *
+ * @author
+ */
+public class SgdPhenotypeDecoder {
+
+	private static final Logger LOG = Logger.getLogger(SgdPhenotypeDecoder.class);
+
+	private final Map<ConditionKey, Condition> conditions = new HashMap<ConditionKey, Condition>();
+	private final Map<String, Observable> observables = new HashMap<String, Observable>();
+	private final Map<String, String> strains = new HashMap<String, String>();
+	private long lookups;
+
+	/**
+	 * The chemicals and other conditions of a phenotype annotation.
+	 */
+	public static final class Condition {
+		private final String chemical;
+		private final String condition;
+
+		Condition(String chemical, String condition) {
+			this.chemical = chemical;
+			this.condition = condition;
+		}
+
+		/**
+		 * @return the chemicals, e.g. "5 mM hydroxyurea, 2% ethanol"
+		 */
+		public String getChemical() {
+			return chemical;
+		}
+
+		/**
+		 * @return the other conditions, e.g. "Temperature: heat (37 degrees C)"
+		 */
+		public String getCondition() {
+			return condition;
+		}
+	}
+
+	/**
+	 * A phenotype split into its observable and qualifier, "observable: qualifier".
+	 */
+	public static final class Observable {
+		private final String observable;
+		private final String qualifier;
+
+		Observable(String observable, String qualifier) {
+			this.observable = observable;
+			this.qualifier = qualifier;
+		}
+
+		/**
+		 * @return the observable
+		 */
+		public String getObservable() {
+			return observable;
+		}
+
+		/**
+		 * @return the qualifier, "" if there is none
+		 */
+		public String getQualifier() {
+			return qualifier;
+		}
+	}
+
+	/**
+	 * Decode the condition arrays of a row, array_agg(condition_class) etc.
+	 *
+	 * @param classes the condition classes, e.g. "chemical" or "temperature"
+	 * @param names the condition names
+	 * @param values the condition values
+	 * @param units the condition units
+	 * @return the chemical and condition text
+	 * @throws SQLException if the arrays can't be read
+	 */
+	public Condition getCondition(Array classes, Array names, Array values, Array units)
+			throws SQLException {
+		lookups++;
+		ConditionKey key = new ConditionKey(new String[][] {strings(classes), strings(names),
+			strings(values), strings(units)});
+		Condition condition = conditions.get(key);
+		if (condition == null) {
+			condition = decode(key.arrays[0], key.arrays[1], key.arrays[2], key.arrays[3]);
+			conditions.put(key, condition);
+		}
+		return condition;
+	}
+
+	/**
+	 * @param phenotype the phenotype, "observable" or "observable: qualifier"
+	 * @return the observable and qualifier
+	 */
+	public Observable getObservable(String phenotype) {
+		Observable observable = observables.get(phenotype);
+		if (observable == null) {
+			int colon = phenotype.indexOf(':');
+			if (colon < 0) {
+				observable = new Observable(phenotype.trim(), "");
+			} else {
+				int end = phenotype.indexOf(':', colon + 1);
+				String qualifier = phenotype.substring(colon + 1, end < 0 ? phenotype.length() : end);
+				observable = new Observable(phenotype.substring(0, colon).trim(), qualifier.trim());
+			}
+			observables.put(phenotype, observable);
+		}
+		return observable;
+	}
+
+	/**
+	 * @param strainBackground the strain name, e.g. "S288C_background_S288C"
+	 * @return the last of its three parts, "Other" if it hasn't three, "" if it's empty
+	 */
+	public String getStrain(String strainBackground) {
+		if (StringUtils.isEmpty(strainBackground)) {
+			return "";
+		}
+		String strain = strains.get(strainBackground);
+		if (strain == null) {
+			String[] parts = strainBackground.split("_");
+			strain = parts.length == 3 ? parts[2] : "Other";
+			strains.put(strainBackground, strain);
+		}
+		return strain;
+	}
+
+	/**
+	 * Print and log how many distinct conditions there were.
+	 */
+	public void report() {
+		String report = "phenotype conditions: " + lookups + " annotations, " + conditions.size()
+				+ " distinct conditions, " + observables.size() + " phenotypes, " + strains.size()
+				+ " strains";
+		System.out.println(report);
+		LOG.info(report);
+	}
+
+	private static Condition decode(String[] condClass, String[] condName, String[] condValue,
+			String[] condUnits) {
+		StringBuilder chemical = new StringBuilder(" ");
+		StringBuilder condition = new StringBuilder(" ");
+		for (int i = 0; i < condClass.length; i++) {
+			String cc = condClass[i];
+			String cn = i < condName.length ? condName[i] : null;
+			String cv = i < condValue.length ? condValue[i] : null;
+			String cu = i < condUnits.length ? condUnits[i] : null;
+			if (cc == null || cn == null) {
+				continue;
+			}
+			if (cc.length() > 0) {
+				cc = Character.toUpperCase(cc.charAt(0)) + cc.substring(1);
+			}
+			if ("Chemical".equals(cc)) {
+				if (cv != null) chemical.append(cv);
+				if (cu != null) {
+					if (!"%".equals(cu)) {
+						chemical.append(' ');
+					}
+					chemical.append(cu);
+				}
+				chemical.append(' ').append(cn).append(", ");
+			} else if ("Temperature".equals(cc)) {
+				condition.append(cc).append(": ").append(cn);
+				if (cv != null && cu != null) {
+					condition.append(" (").append(cv).append(cu).append(") ");
+				} else if (cv != null && !cv.isEmpty()) {
+					condition.append(" (").append(cv).append(") ");
+				}
+			} else {
+				condition.append(cc).append(": ");
+				if (cv != null) condition.append(cv);
+				if (cu != null) condition.append(cu);
+				condition.append(' ').append(cn).append(", ");
+			}
+		}
+		return new Condition(stripComma(chemical.toString()), stripComma(condition.toString()));
+	}
+
+	// a list of conditions is trimmed and loses its last comma, anything else is kept as it is
+	private static String stripComma(String text) {
+		if (text.indexOf(',') <= 0) {
+			return text;
+		}
+		String trimmed = text.trim();
+		return trimmed.endsWith(",") ? trimmed.substring(0, trimmed.length() - 1) : trimmed;
+	}
+
+	private static String[] strings(Array array) throws SQLException {
+		if (array == null) {
+			return new String[0];
+		}
+		Object[] elements = (Object[]) array.getArray();
+		if (elements instanceof String[]) {
+			return (String[]) elements;
+		}
+		String[] strings = new String[elements.length];
+		for (int i = 0; i < elements.length; i++) {
+			strings[i] = elements[i] == null ? null : elements[i].toString();
+		}
+		return strings;
+	}
+
+	/**
+	 * The four condition arrays of a row, compared by content.
+	 */
+	private static final class ConditionKey {
+		private final String[][] arrays;
+		private final int hash;
+
+		ConditionKey(String[][] arrays) {
+			this.arrays = arrays;
+			this.hash = Arrays.deepHashCode(arrays);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof ConditionKey && Arrays.deepEquals(arrays, ((ConditionKey) o).arrays);
+		}
+	}
+}
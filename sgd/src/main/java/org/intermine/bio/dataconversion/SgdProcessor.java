@@ -13,7 +13,8 @@ package org.intermine.bio.dataconversion;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -25,6 +26,103 @@ public class SgdProcessor
 {
 	private static final Logger LOG = Logger.getLogger(SgdProcessor.class);  
 	private static final String SCHEMA_OWNER = "nex.";
+	private static final int DEFAULT_FETCH_SIZE = 1000;
+
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+	private boolean aggregating;
+	private int interactionPartitions = 1;
+	private final Map<String, long[]> annotationRanges = new HashMap<String, long[]>();
+	private final SgdQueryCatalog catalog = new SgdQueryCatalog();
+
+	/**
+	 * Set how many rows the driver fetches at a time.  With the Postgres driver a fetch size
+	 * only takes effect on a forward-only statement outside autocommit, where the rows are read
+	 * through a server-side cursor instead of being pulled into memory all at once.
+	 * 0 turns streaming off and every result set is read whole, as before.
+	 * @param fetchSize number of rows per round trip
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = Math.max(0, fetchSize);
+	}
+
+	/**
+	 * @return number of rows the driver fetches at a time, 0 if streaming is off
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Set whether the queries that left-join an entity to its references aggregate them on the
+	 * server, returning one row per entity with the reference_ids and pmids as arrays, instead
+	 * of one row per reference.
+	 * @param aggregating true for one row per entity
+	 */
+	public void setAggregating(boolean aggregating) {
+		this.aggregating = aggregating;
+	}
+
+	/**
+	 * @return true if the allele and transcript queries return their references as arrays
+	 */
+	public boolean isAggregating() {
+		return aggregating;
+	}
+
+	/**
+	 * Set how many annotation_id ranges the physical and genetic interaction queries are split
+	 * into.  1 runs each as one query.
+	 * @param interactionPartitions number of ranges
+	 */
+	public void setInteractionPartitions(int interactionPartitions) {
+		this.interactionPartitions = Math.max(1, interactionPartitions);
+	}
+
+	/**
+	 * @return number of annotation_id ranges the interaction queries are split into
+	 */
+	public int getInteractionPartitions() {
+		return interactionPartitions;
+	}
+
+	/**
+	 * @return the catalog the queries are run and timed through
+	 */
+	public SgdQueryCatalog getCatalog() {
+		return catalog;
+	}
+
+	/**
+	 * Run a query as a prepared statement through the catalog, streaming the rows through a
+	 * server-side cursor if a fetch size is set.
+	 * The statement is closed as soon as the result set is, so callers only close the result set.
+	 * @param connection the connection
+	 * @param name name of the query in the catalog's report
+	 * @param query the SQL to run
+	 * @return the results
+	 * @throws SQLException if there is a database problem
+	 */
+	protected ResultSet executeQuery(Connection connection, String name, String query)
+			throws SQLException {
+		if (fetchSize > 0 && connection.getAutoCommit()) {
+			// cursors only live inside a transaction; these are all read-only selects
+			connection.setAutoCommit(false);
+		}
+		return catalog.execute(connection, name, query, fetchSize);
+	}
+
+	/**
+	 * End the read-only transaction opened for streaming, so the connection can go back to
+	 * the pool or be used with autocommit again.
+	 * @param connection the connection
+	 * @throws SQLException if there is a database problem
+	 */
+	protected void release(Connection connection) throws SQLException {
+		if (!connection.getAutoCommit()) {
+			connection.rollback();
+			connection.setAutoCommit(true);
+		}
+	}
 
 	/**
 	 * Return the results of running a query for genes
@@ -46,10 +144,7 @@ public class SgdProcessor
 				+ " and a.dna_type = 'GENOMIC' "
 				+ " and L.dbentity_id = D.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "chromosomalFeature", query);
 	}
 
 
@@ -62,6 +157,9 @@ public class SgdProcessor
 	protected ResultSet getAlleleResults(Connection connection)
 			throws SQLException {
 
+		if (aggregating) {
+			return getAggregatedAlleleResults(connection);
+		}
 		String query = "select ad.dbentity_id as allele, db.sgdid as allelesgdid, la.locus_id as locus, ad.description, db.display_name as allele_name, "
 			    + " aa.display_name as alias_name, ar.reference_id, rdb.pmid, s.display_name as allele_class "
 				+ "from nex.alleledbentity ad "
@@ -72,10 +170,34 @@ public class SgdProcessor
 				+ "left join nex.allele_alias aa on ad.dbentity_id = aa.allele_id "
 				+ "left join nex.referencedbentity rdb on ar.reference_id = rdb.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "allele", query);
+	}
+
+	/**
+	 * Return the results of running a query for alleles, one row per allele and locus, with
+	 * the aliases and the references as arrays; only the references of alleles are aggregated
+	 * @param connection the connection
+	 * @return the results
+	 * @throws SQLException if there is a database problem
+	 */
+	protected ResultSet getAggregatedAlleleResults(Connection connection)
+			throws SQLException {
+
+		String query = "select ad.dbentity_id as allele, db.sgdid as allelesgdid, la.locus_id as locus, ad.description, db.display_name as allele_name, "
+				+ " (select array_agg(aa.display_name order by aa.display_name) from nex.allele_alias aa where aa.allele_id = ad.dbentity_id) as alias_names, "
+				+ " r.reference_ids, r.pmids, s.display_name as allele_class "
+				+ "from nex.alleledbentity ad "
+				+ "inner join nex.dbentity db on ad.dbentity_id = db.dbentity_id "
+				+ "inner join nex.so s on ad.so_id = s.so_id "
+				+ "left join nex.locus_allele la on la.allele_id = ad.dbentity_id "
+				+ "left join (select ar.dbentity_id, array_agg(ar.reference_id order by ar.reference_id) as reference_ids, "
+				+ "   array_agg(rdb.pmid order by ar.reference_id) as pmids "
+				+ "   from (select distinct dbentity_id, reference_id from nex.literatureannotation "
+				+ "      where dbentity_id in (select dbentity_id from nex.alleledbentity)) ar "
+				+ "   left join nex.referencedbentity rdb on ar.reference_id = rdb.dbentity_id "
+				+ "   group by ar.dbentity_id) r on r.dbentity_id = ad.dbentity_id";
+
+		return executeQuery(connection, "aggregatedAllele", query);
 	}
 
 	/**
@@ -96,10 +218,7 @@ public class SgdProcessor
 				+ "group by ad.dbentity_id , db.display_name "
 				+ "order by ad.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "alleleAliases", query);
 	}
 
 
@@ -113,6 +232,9 @@ public class SgdProcessor
 	protected ResultSet getTranscriptResults(Connection connection)
 			throws SQLException {
 
+		if (aggregating) {
+			return getAggregatedTranscriptResults(connection);
+		}
 		String query = "select ad.dbentity_id as transcript, db.format_name, start_index, end_index, strand, in_gal, in_ypd, in_ncbi, ar.reference_id, pmid "
 				+ "from nex.transcriptdbentity ad "
 				+ "inner join nex.dbentity db on ad.dbentity_id = db.dbentity_id "
@@ -120,10 +242,30 @@ public class SgdProcessor
 				+ "left join nex.transcript_reference ar on ad.dbentity_id = ar.transcript_id "
 				+ "left join nex.referencedbentity rdb on ar.reference_id = rdb.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "transcript", query);
+	}
+
+	/**
+	 * Return the results of running a query for transcripts, one row per transcript location,
+	 * with the references as arrays
+	 * @param connection the connection
+	 * @return the results
+	 * @throws SQLException if there is a database problem
+	 */
+	protected ResultSet getAggregatedTranscriptResults(Connection connection)
+			throws SQLException {
+
+		String query = "select ad.dbentity_id as transcript, db.format_name, start_index, end_index, strand, in_gal, in_ypd, in_ncbi, r.reference_ids, r.pmids "
+				+ "from nex.transcriptdbentity ad "
+				+ "inner join nex.dbentity db on ad.dbentity_id = db.dbentity_id "
+				+ "inner join nex.dnasequenceannotation dsa on dsa.dbentity_id = ad.dbentity_id "
+				+ "left join (select ar.transcript_id, array_agg(ar.reference_id order by ar.reference_id) as reference_ids, "
+				+ "   array_agg(rdb.pmid order by ar.reference_id) as pmids "
+				+ "   from nex.transcript_reference ar "
+				+ "   left join nex.referencedbentity rdb on ar.reference_id = rdb.dbentity_id "
+				+ "   group by ar.transcript_id) r on r.transcript_id = ad.dbentity_id";
+
+		return executeQuery(connection, "aggregatedTranscript", query);
 	}
 
 
@@ -143,10 +285,7 @@ public class SgdProcessor
 				+ " where not_in_s288c = true"
 				+ " and L.dbentity_id = D.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "niss", query);
 	}
 
 	/**
@@ -168,10 +307,7 @@ public class SgdProcessor
 				+ " and a.dna_type = 'GENOMIC'";
 
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "chromosomalFeatureLocation", query);
 	}
 
 
@@ -202,10 +338,7 @@ public class SgdProcessor
 				+ " and    t.taxid = 'TAX:559292'";
 				//+ " and    t.display_name = 'Saccharomyces cerevisiae S288c'";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "childrenFeatureLocation", query);
 	}
 
 
@@ -224,10 +357,7 @@ public class SgdProcessor
 				+ "AND s.display_name in ('chromosome', 'plasmid') "
 				+ "AND taxonomy_id = 274901";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "chromosomeSequence", query);
 	}
 
 
@@ -247,10 +377,7 @@ public class SgdProcessor
 				+ " and ps.dbentity_id = db.dbentity_id"
 				+ " and ps.taxonomy_id = 274901";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "protein", query);
 	}
 
 
@@ -269,10 +396,7 @@ public class SgdProcessor
 				+ " and pea.reference_id = rdb.dbentity_id"
 				+ " and experiment_type = 'half-life'";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "proteinHalfLife", query);
 	}
 
 	/**
@@ -294,10 +418,7 @@ public class SgdProcessor
 				+ " and psd.annotation_id = ps.annotation_id"
 				+ " and ps.taxonomy_id = 274901";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "proteinInfo", query);
 	}
 
 
@@ -325,10 +446,7 @@ public class SgdProcessor
 				+ "left join nex.eco ec on ec.eco_id = pea.assay_id "
 				+ "left join nex.chebi chb on chb.chebi_id = pea.chemical_id ";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "proteinAbundance", query);
 	}
 
 
@@ -348,10 +466,7 @@ public class SgdProcessor
 				+ " and pdu.proteindomain_id = pd.proteindomain_id"
 				+ " and pda.taxonomy_id = 274901";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "proteinDomains", query);
 	}
 
 
@@ -371,10 +486,7 @@ public class SgdProcessor
 				+ " inner join nex.psimod p on  p.psimod_id = pda.psimod_id"
 				+ " left join nex.dbentity m on m.dbentity_id = pda.modifier_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "proteinModification", query);
 	}
 
 
@@ -398,10 +510,7 @@ public class SgdProcessor
 				+ " group by ldb.dbentity_id, r.dbentity_id, r.pmid, r.fulltext_status, r.title, r.volume, r.page, r.year, r.issue, r.citation, la.topic, j.med_abbr, db.sgdid, db.date_created"
 				+ " order by ldb.dbentity_id, r.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "pubWithFeatures", query);
 	}
 
 	/**
@@ -423,10 +532,7 @@ public class SgdProcessor
 				+ " where rd.document_type = 'Abstract'"
 				+ " order by r.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res; 
+		return executeQuery(connection, "pubAll", query);
 	}
 
 
@@ -447,10 +553,7 @@ public class SgdProcessor
 				+ " and rdb.dbentity_id = db.dbentity_id"
 				+ " order by annotation_id, reference_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res; 
+		return executeQuery(connection, "pubForPhenotype", query);
 	}
 	/**
 	 * Return the results of running a query for phenotype summaries
@@ -468,10 +571,7 @@ public class SgdProcessor
 				+ " and summary_type = 'Phenotype'"
 				+ " group by text, db.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res; 
+		return executeQuery(connection, "phenotypeSummary", query);
 	}
 
 	/**
@@ -490,10 +590,7 @@ public class SgdProcessor
 				+ " and summary_type = 'Function'"
 				+ " group by text, db.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res; 
+		return executeQuery(connection, "functionSummary", query);
 	}
 
 	/**
@@ -512,10 +609,7 @@ public class SgdProcessor
 				+ " and summary_type = 'Gene'"
 				+ " group by text, db.dbentity_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res; 
+		return executeQuery(connection, "geneSummary", query);
 	}
 
 
@@ -537,10 +631,7 @@ public class SgdProcessor
 				+ " and summary_type = 'Regulation'"
 				+ " group by text, db.dbentity_id, reference_id, pmid";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res; 
+		return executeQuery(connection, "regulationSummary", query);
 	}
 
 	/**
@@ -552,6 +643,26 @@ public class SgdProcessor
 	protected ResultSet getPhysicalInteractionResults(Connection connection)
 			throws SQLException {
 		
+		return executeQuery(connection, "physicalInteraction", getPhysicalInteractionQuery());
+	}
+
+	/**
+	 * Return the physical interactions with an annotation_id in one of interactionPartitions
+	 * ranges, in annotation_id order.
+	 * @param connection the connection
+	 * @param partition which range, from 0
+	 * @param partitions how many ranges there are
+	 * @return the results
+	 * @throws SQLException if there is a database problem
+	 */
+	protected ResultSet getPhysicalInteractionResults(Connection connection, int partition,
+			int partitions) throws SQLException {
+		String query = getPhysicalInteractionQuery() + annotationRange(connection,
+				"physinteractionannotation", "pa", partition, partitions);
+		return executeQuery(connection, "physicalInteraction." + (partition + 1), query);
+	}
+
+	private String getPhysicalInteractionQuery() {
 		String query = "select annotation_id, dbentity1_id, dbentity2_id, biogrid_experimental_system, bait_hit, s.display_name, annotation_type, psi.display_name as modification,"
 				+ " citation, pmid, rdb.title, volume, page, year, issue, med_abbr, reference_id, substring(citation, 0, position( ')' in citation)+1) as first_author, db.sgdid, "
 				+ " pa.description as note"
@@ -562,10 +673,7 @@ public class SgdProcessor
 				+ " left join nex.journal j on rdb.journal_id = j.journal_id"
 				+ " inner join nex.dbentity db on  db.dbentity_id = rdb.dbentity_id";
 				//+ " and (pa.dbentity1_id = 1268334 or pa.dbentity2_id = 1268334)";
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return query;
 	}
 
 	/**
@@ -577,6 +685,26 @@ public class SgdProcessor
 	protected ResultSet getGeneticInteractionResults(Connection connection)
 			throws SQLException {
 
+		return executeQuery(connection, "geneticInteraction", getGeneticInteractionQuery());
+	}
+
+	/**
+	 * Return the genetic interactions with an annotation_id in one of interactionPartitions
+	 * ranges, in annotation_id order.
+	 * @param connection the connection
+	 * @param partition which range, from 0
+	 * @param partitions how many ranges there are
+	 * @return the results
+	 * @throws SQLException if there is a database problem
+	 */
+	protected ResultSet getGeneticInteractionResults(Connection connection, int partition,
+			int partitions) throws SQLException {
+		String query = getGeneticInteractionQuery() + annotationRange(connection,
+				"geninteractionannotation", "ga", partition, partitions);
+		return executeQuery(connection, "geneticInteraction." + (partition + 1), query);
+	}
+
+	private String getGeneticInteractionQuery() {
 		String query = "select annotation_id, dbentity1_id, dbentity2_id, biogrid_experimental_system, p.display_name as phenotype, bait_hit, s.display_name as source, annotation_type,"
 				+ " citation, pmid, rdb.title, volume, page, year, issue, med_abbr, reference_id, substring(citation, 0, position( ')' in citation)+1) as first_author, db.sgdid, "
 				+ " split_part(ga.description, '|', 1) as note"
@@ -587,10 +715,39 @@ public class SgdProcessor
 				+ " left join nex.journal j on rdb.journal_id = j.journal_id"
 				+ " inner join nex.dbentity db on  db.dbentity_id = rdb.dbentity_id";
 				//+ " and (ga.dbentity1_id = 1268334 or ga.dbentity2_id = 1268334)";
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return query;
+	}
+
+	/**
+	 * Where clause selecting one of a number of equal ranges of the annotation_ids of a table.
+	 * The first partition to ask reads the smallest and largest annotation_id; the other
+	 * partitions, possibly on other connections, reuse them.
+	 */
+	private String annotationRange(Connection connection, String table, String alias,
+			int partition, int partitions) throws SQLException {
+		long[] range;
+		synchronized (annotationRanges) {
+			range = annotationRanges.get(table);
+			if (range == null) {
+				range = new long[2];
+				ResultSet res = executeQuery(connection, table + "Range", "select min(annotation_id),"
+						+ " max(annotation_id) from " + SCHEMA_OWNER + table);
+				try {
+					if (res.next() && res.getString(1) != null) {
+						range[0] = res.getLong(1);
+						range[1] = res.getLong(2) + 1;
+					}
+				} finally {
+					res.close();
+				}
+				annotationRanges.put(table, range);
+			}
+		}
+		long span = range[1] - range[0];
+		long from = range[0] + span * partition / partitions;
+		long to = range[0] + span * (partition + 1) / partitions;
+		return " where " + alias + ".annotation_id >= " + from + " and " + alias + ".annotation_id < "
+				+ to + " order by " + alias + ".annotation_id";
 	}
 
 
@@ -609,10 +766,7 @@ public class SgdProcessor
 		    //+ " and (ga.dbentity1_id = 1268334 or ga.dbentity2_id = 1268334)"
 			+ " order by ga.annotation_id ";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "geneticInteractionWithAlleles", query);
 	}
 
 
@@ -648,10 +802,7 @@ public class SgdProcessor
 				+ " al.dbentity_id, rp.display_name, o.display_name, rdb.pmid, rdb.dbentity_id"
 				+ " order by db.dbentity_id, pa.annotation_id, pac.group_id ";
 	
-		LOG.info("executing: " + query);        
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "phenotype", query);
 	}
 
 	/**
@@ -677,10 +828,7 @@ public class SgdProcessor
 				+ "and alias_type in ('Uniform', 'Non-uniform', 'Retired name', 'NCBI protein name')";
 
 
-		LOG.info("executing: " + query);        
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "aliases", query);
 	}
 
 
@@ -698,10 +846,7 @@ public class SgdProcessor
 				+ " where ro_id = 169738 "
 				+ " and lr.relation_id = lrr.relation_id";
 
-		LOG.info("executing: " + query);        
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "paralogs", query);
 	}
 
 	/**
@@ -727,10 +872,7 @@ public class SgdProcessor
 				+ "and d.dbentity_status = 'Active' "
 				+ "and alias_type NOT in ('Uniform', 'Non-uniform', 'Retired name', 'NCBI protein name')";
 
-		LOG.info("executing: " + query);        
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "crossReferences", query);
 	}
 
 	/**
@@ -749,10 +891,7 @@ public class SgdProcessor
 				" inner join nex.dbentity db2 on db2.dbentity_id = pdf.dbentity_id" +
 				" order by 1";
 
-		LOG.info("executing: " + query);        
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "genePathways", query);
 	}
 
 
@@ -771,10 +910,7 @@ public class SgdProcessor
 				" inner join nex.pathwaysummary ps on ps.pathway_id = pdb.dbentity_id" +
 				" left join nex.pathwaysummary_reference pss on pss.summary_id = ps.summary_id";
 
-		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "allPathways", query);
 	}
 
 
@@ -800,10 +936,7 @@ public class SgdProcessor
 				//+ " where db.dbentity_id = 1267652"
 				+ " order by 1";
 
-		LOG.info("executing: " + query);        
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
-		return res;
+		return executeQuery(connection, "regulationData", query);
 	}
 
 
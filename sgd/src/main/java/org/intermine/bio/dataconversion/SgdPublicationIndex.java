@@ -0,0 +1,239 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.xml.full.Item;
+
+/**
+ * The publications of the SGD conversion, shared by every phase that refers to one.
+ *
+ * A publication is looked up by reference number (the dbentity_id of the reference) and, if it
+ * isn't known by that yet, by PubMed id, so a paper only becomes one Publication item however
+ * many reference numbers and queries it turns up under.  Each query knows a different part of
+ * a publication; whatever it knows is merged into the record, the first value of an attribute
+ * winning.  Values that disagree with the one kept are counted, and report() warns of them.
+ *
+ * Until they are stored publications are kept as compact records, an identifier and an array
+ * of attribute values, and only made into Items by items(), for storePublications().
+ *
+ * @author
+ */
+public class SgdPublicationIndex {
+
+	private static final Logger LOG = Logger.getLogger(SgdPublicationIndex.class);
+
+	/** the attributes of a Publication the SGD queries fill in */
+	static final String[] FIELDS = {"pubMedId", "pubXrefId", "title", "citation", "journal",
+		"volume", "pages", "year", "issue", "abstractText", "dateCreated"};
+	private static final int PUBMED_ID = 0;
+
+	private final SgdEntityRegistry.EntityMap<Publication> byReference;
+	private final Map<String, Publication> aliases = new HashMap<String, Publication>();
+	private final Map<String, Publication> byPubMedId = new HashMap<String, Publication>();
+	private final Supplier<String> identifiers;
+	private long lookups;
+	private long mergedByPubMedId;
+	private long filledIn;
+	private long conflicts;
+
+	/**
+	 * A publication waiting to be stored.
+	 */
+	public final class Publication {
+		private final String identifier;
+		private final String[] values = new String[FIELDS.length];
+
+		Publication(String identifier) {
+			this.identifier = identifier;
+		}
+
+		/**
+		 * @return the identifier of the Publication item
+		 */
+		public String getIdentifier() {
+			return identifier;
+		}
+
+		/**
+		 * Set an attribute if it isn't set yet.  Empty values are ignored.
+		 *
+		 * @param field one of FIELDS
+		 * @param value the value, may be null
+		 * @return this publication
+		 */
+		public Publication set(String field, String value) {
+			if (StringUtils.isEmpty(value)) {
+				return this;
+			}
+			int index = fieldIndex(field);
+			String current = values[index];
+			if (current == null) {
+				values[index] = value;
+				if (index == PUBMED_ID && !byPubMedId.containsKey(value)) {
+					byPubMedId.put(value, this);
+				}
+				filledIn++;
+			} else if (!current.equals(value)) {
+				conflicts++;
+				LOG.debug("publication " + identifier + " has " + field + " " + current
+						+ ", ignoring " + value);
+			}
+			return this;
+		}
+
+		Item toItem() {
+			Item item = new Item(identifier, "Publication", "");
+			for (int i = 0; i < FIELDS.length; i++) {
+				if (values[i] != null) {
+					item.setAttribute(FIELDS[i], values[i]);
+				}
+			}
+			return item;
+		}
+
+		long estimateBytes() {
+			long bytes = 48 + 16 + 8 * FIELDS.length + 40 + identifier.length();
+			for (String value : values) {
+				if (value != null) {
+					bytes += 40 + value.length();
+				}
+			}
+			return bytes;
+		}
+	}
+
+	/**
+	 * Construct a new SgdPublicationIndex.
+	 *
+	 * @param registry the registry the publications are kept in, as "publications"
+	 * @param identifiers hands out the identifiers of new Publication items
+	 */
+	public SgdPublicationIndex(SgdEntityRegistry registry, Supplier<String> identifiers) {
+		this.byReference = registry.register("publications");
+		this.identifiers = identifiers;
+	}
+
+	/**
+	 * Find a publication by reference number or PubMed id, creating it if it's new.
+	 *
+	 * @param referenceNo the reference number
+	 * @param pubMedId the PubMed id, may be null
+	 * @return the publication, with the PubMed id merged in
+	 */
+	public Publication get(String referenceNo, String pubMedId) {
+		lookups++;
+		Publication pub = find(referenceNo);
+		if (pub == null && StringUtils.isNotEmpty(pubMedId)) {
+			pub = byPubMedId.get(pubMedId);
+			if (pub != null) {
+				aliases.put(referenceNo, pub);
+				mergedByPubMedId++;
+			}
+		}
+		if (pub == null) {
+			pub = new Publication(identifiers.get());
+			byReference.put(referenceNo, pub);
+		}
+		return pub.set("pubMedId", pubMedId);
+	}
+
+	/**
+	 * @param referenceNo the reference number
+	 * @return the publication with that reference number, or null if there is none yet
+	 */
+	public Publication find(String referenceNo) {
+		Publication pub = byReference.get(referenceNo);
+		return pub != null ? pub : aliases.get(referenceNo);
+	}
+
+	/**
+	 * @return the number of publications
+	 */
+	public int size() {
+		return byReference.size();
+	}
+
+	/**
+	 * Visit the publications with the reference number they were first created for.
+	 *
+	 * @param action called with each publication and its reference number
+	 */
+	public void forEach(BiConsumer<Publication, String> action) {
+		byReference.forEach(action);
+	}
+
+	/**
+	 * @return the publications as Items, made as the collection is iterated
+	 */
+	public Collection<Item> items() {
+		final Collection<Publication> values = byReference.values();
+		return new AbstractCollection<Item>() {
+			public int size() {
+				return values.size();
+			}
+
+			public Iterator<Item> iterator() {
+				final Iterator<Publication> it = values.iterator();
+				return new Iterator<Item>() {
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					public Item next() {
+						return it.next().toItem();
+					}
+				};
+			}
+		};
+	}
+
+	/**
+	 * @return the number of values ignored because the attribute already had another value
+	 */
+	public long getConflicts() {
+		return conflicts;
+	}
+
+	/**
+	 * Print and log how many lookups there were and how many were merged, warning if any
+	 * values were ignored.
+	 */
+	public void report() {
+		String report = String.format("publications: %d, %d lookups, %d reference numbers merged"
+				+ " by PubMed id, %d attributes set, %d conflicting values ignored", size(),
+				lookups, mergedByPubMedId, filledIn, conflicts);
+		System.out.println(report);
+		if (conflicts > 0) {
+			LOG.warn(report + " (first value kept, enable debug logging for each one)");
+		} else {
+			LOG.info(report);
+		}
+	}
+
+	private static int fieldIndex(String field) {
+		for (int i = 0; i < FIELDS.length; i++) {
+			if (FIELDS[i].equals(field)) {
+				return i;
+			}
+		}
+		throw new IllegalArgumentException("no publication attribute " + field);
+	}
+}
@@ -0,0 +1,244 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the named queries of SgdProcessor as prepared statements and times them.
+ *
+ * For each query it records how long preparing and executing the statement took, how long
+ * until the first row arrived, how long until the last row had been read (or the result set
+ * was closed) and how many rows there were.  Queries named in setExplain() are also run with
+ * EXPLAIN ANALYZE first, on the same connection, and the plan is logged together with the
+ * planning and execution times the server reports.  That runs the query twice, so it is meant
+ * for finding out which query is slow on a given database, not for every build.
+ *
+ * Queries may run on several connections at once, so the timings are kept per query name
+ * under a lock.
+ *
+ * @author
+ */
+public class SgdQueryCatalog {
+
+	private static final Logger LOG = Logger.getLogger(SgdQueryCatalog.class);
+	private static final Pattern SERVER_TIME =
+			Pattern.compile("(Planning|Execution) Time: ([0-9.]+) ms");
+
+	private final Map<String, Timing> timings = new LinkedHashMap<String, Timing>();
+	private final Set<String> explain = new HashSet<String>();
+	private boolean explainAll;
+
+	/**
+	 * Timings of one query.
+	 */
+	private static final class Timing {
+		long prepareNanos;
+		long executeNanos;
+		long firstRowNanos = -1;
+		long readNanos;
+		long rows;
+		double planningMillis = -1;
+		double executionMillis = -1;
+	}
+
+	/**
+	 * Set the queries to run EXPLAIN ANALYZE for.
+	 *
+	 * @param names comma separated query names, e.g. "alleles, pubAll", or "all"
+	 */
+	public void setExplain(String names) {
+		explain.clear();
+		explainAll = false;
+		for (String name : names.split(",")) {
+			name = name.trim();
+			if ("all".equalsIgnoreCase(name)) {
+				explainAll = true;
+			} else if (name.length() > 0) {
+				explain.add(name);
+			}
+		}
+	}
+
+	/**
+	 * Prepare and run a query, returning results that time themselves as they are read.
+	 *
+	 * @param connection the connection
+	 * @param name the name of the query, as reported
+	 * @param sql the query
+	 * @param fetchSize rows per round trip, 0 to read the whole result at once
+	 * @return the results; closing them closes the statement
+	 * @throws SQLException if there is a database problem
+	 */
+	public ResultSet execute(Connection connection, String name, String sql, int fetchSize)
+			throws SQLException {
+		Timing timing = new Timing();
+		synchronized (this) {
+			timings.put(name, timing);
+		}
+		if (explainAll || explain.contains(name)) {
+			explain(connection, name, sql, timing);
+		}
+		LOG.info("executing " + name + ": " + sql);
+
+		long start = System.nanoTime();
+		PreparedStatement stmt = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY);
+		try {
+			stmt.setFetchSize(fetchSize);
+			long prepared = System.nanoTime();
+			ResultSet res = stmt.executeQuery();
+			stmt.closeOnCompletion();
+			long executed = System.nanoTime();
+			synchronized (this) {
+				timing.prepareNanos = prepared - start;
+				timing.executeNanos = executed - prepared;
+			}
+			return (ResultSet) Proxy.newProxyInstance(SgdQueryCatalog.class.getClassLoader(),
+					new Class<?>[] {ResultSet.class}, new TimedResults(res, timing, start));
+		} catch (SQLException e) {
+			stmt.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Print and log the timings of every query run so far, slowest first.
+	 */
+	public synchronized void report() {
+		if (timings.isEmpty()) {
+			return;
+		}
+		List<Map.Entry<String, Timing>> entries =
+				new ArrayList<Map.Entry<String, Timing>>(timings.entrySet());
+		entries.sort((a, b) -> Long.compare(total(b.getValue()), total(a.getValue())));
+		StringBuilder sb = new StringBuilder("SGD query timings (ms):\n");
+		sb.append(String.format("%-40s %10s %9s %9s %10s %10s %10s %10s%n", "query", "rows",
+				"prepare", "execute", "first row", "total", "planning", "server"));
+		for (Map.Entry<String, Timing> entry : entries) {
+			Timing t = entry.getValue();
+			sb.append(String.format("%-40s %10d %9d %9d %10s %10d %10s %10s%n", entry.getKey(),
+					t.rows, t.prepareNanos / 1000000, t.executeNanos / 1000000,
+					t.firstRowNanos < 0 ? "-" : String.valueOf(t.firstRowNanos / 1000000),
+					total(t) / 1000000, millis(t.planningMillis), millis(t.executionMillis)));
+		}
+		System.out.println(sb);
+		LOG.info(sb);
+	}
+
+	private void explain(Connection connection, String name, String sql, Timing timing)
+			throws SQLException {
+		StringBuilder plan = new StringBuilder("EXPLAIN ANALYZE of " + name + ":\n");
+		Statement stmt = connection.createStatement();
+		try {
+			ResultSet res = stmt.executeQuery("EXPLAIN (ANALYZE, BUFFERS) " + sql);
+			while (res.next()) {
+				String line = res.getString(1);
+				plan.append(line).append('\n');
+				Matcher m = SERVER_TIME.matcher(line);
+				if (m.find()) {
+					double millis = Double.parseDouble(m.group(2));
+					synchronized (this) {
+						if ("Planning".equals(m.group(1))) {
+							timing.planningMillis = millis;
+						} else {
+							timing.executionMillis = millis;
+						}
+					}
+				}
+			}
+		} finally {
+			stmt.close();
+		}
+		System.out.println(plan);
+		LOG.info(plan);
+	}
+
+	private static long total(Timing t) {
+		return t.prepareNanos + t.executeNanos + t.readNanos;
+	}
+
+	private static String millis(double millis) {
+		return millis < 0 ? "-" : String.format("%.0f", millis);
+	}
+
+	/**
+	 * Counts the rows of a result set and times reading them.
+	 */
+	private final class TimedResults implements InvocationHandler {
+		private final ResultSet res;
+		private final Timing timing;
+		private final long start;
+		private long rows;
+		private boolean done;
+
+		TimedResults(ResultSet res, Timing timing, long start) {
+			this.res = res;
+			this.timing = timing;
+			this.start = start;
+		}
+
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if ("close".equals(name)) {
+				finish();
+			}
+			Object result;
+			try {
+				result = method.invoke(res, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+			if ("next".equals(name)) {
+				if (Boolean.TRUE.equals(result)) {
+					if (rows++ == 0) {
+						synchronized (SgdQueryCatalog.this) {
+							timing.firstRowNanos = System.nanoTime() - start;
+						}
+					}
+				} else {
+					finish();
+				}
+			}
+			return result;
+		}
+
+		private void finish() {
+			if (done) {
+				return;
+			}
+			done = true;
+			long end = System.nanoTime();
+			synchronized (SgdQueryCatalog.this) {
+				timing.rows = rows;
+				timing.readNanos = end - start - timing.prepareNanos - timing.executeNanos;
+			}
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+
+/**
+ * Reads a residues column as a character stream into a reusable off-heap buffer, one byte per
+ * residue, and computes its MD5 while doing so.
+ *
+ * Only sequences that are actually going to be written need to be turned into a String, and
+ * identical sequences can be recognised by digest() without comparing or keeping the residues.
+ * The buffer grows to the longest sequence read and is reused for every row.
+ *
+ * @author
+ */
+public class SgdResidueBuffer {
+
+	private static final int INITIAL_CAPACITY = 64 * 1024;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final char[] chunk = new char[8192];
+	private final byte[] transfer = new byte[8192];
+	private final MessageDigest md5;
+	private ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY);
+	private boolean isNull = true;
+	private String digest;
+
+	/**
+	 * Construct a new buffer.
+	 */
+	public SgdResidueBuffer() {
+		try {
+			md5 = MessageDigest.getInstance("MD5");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException("MD5 isn't available", e);
+		}
+	}
+
+	/**
+	 * Read a residues column of the current row.
+	 *
+	 * @param row the rows, positioned on a row
+	 * @param column label of the residues column
+	 * @return false if the column is null
+	 * @throws SQLException if the column can't be read or holds something other than residues
+	 */
+	public boolean read(RowDecoder row, String column) throws SQLException {
+		buffer.clear();
+		md5.reset();
+		digest = null;
+		Reader reader = row.getCharacterStream(column);
+		isNull = reader == null;
+		if (isNull) {
+			return false;
+		}
+		try {
+			int n;
+			while ((n = reader.read(chunk)) > 0) {
+				if (buffer.remaining() < n) {
+					grow(n);
+				}
+				for (int i = 0; i < n; i++) {
+					char c = chunk[i];
+					if (c > 0xff) {
+						throw new SQLException("unexpected character " + c + " in " + column);
+					}
+					transfer[i] = (byte) c;
+				}
+				md5.update(transfer, 0, n);
+				buffer.put(transfer, 0, n);
+			}
+			reader.close();
+		} catch (IOException e) {
+			throw new SQLException("couldn't read " + column, e);
+		}
+		buffer.flip();
+		return true;
+	}
+
+	/**
+	 * @return true if the last column read was null
+	 */
+	public boolean isNull() {
+		return isNull;
+	}
+
+	/**
+	 * @return number of residues read
+	 */
+	public int length() {
+		return isNull ? 0 : buffer.limit();
+	}
+
+	/**
+	 * @return hex MD5 of the residues read, or null if the column was null
+	 */
+	public String digest() {
+		if (isNull) {
+			return null;
+		}
+		if (digest == null) {
+			byte[] bytes = md5.digest();
+			char[] hex = new char[bytes.length * 2];
+			for (int i = 0; i < bytes.length; i++) {
+				hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+				hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+			}
+			digest = new String(hex);
+		}
+		return digest;
+	}
+
+	/**
+	 * @return the residues read, or null if the column was null
+	 */
+	public String residues() {
+		if (isNull) {
+			return null;
+		}
+		byte[] bytes = new byte[buffer.limit()];
+		buffer.duplicate().get(bytes);
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	private void grow(int needed) {
+		int capacity = buffer.capacity();
+		while (capacity - buffer.position() < needed) {
+			capacity *= 2;
+		}
+		ByteBuffer bigger = ByteBuffer.allocateDirect(capacity);
+		buffer.flip();
+		bigger.put(buffer);
+		buffer = bigger;
+	}
+}
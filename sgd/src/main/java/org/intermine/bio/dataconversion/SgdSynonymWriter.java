@@ -0,0 +1,204 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+import org.intermine.dataconversion.DataConverter;
+import org.intermine.objectstore.ObjectStoreException;
+import org.intermine.xml.full.Item;
+
+/**
+ * Creates and stores Synonyms, at most one per subject and value.
+ *
+ * Each (subject, value) pair written is remembered as two longs, the packed subject identifier
+ * and a 64 bit hash of the value, in an open-addressing set; a pair seen before is counted and
+ * skipped.  New synonyms are stored in batches.
+ *
+ * @author
+ */
+public class SgdSynonymWriter {
+
+	private static final Logger LOG = Logger.getLogger(SgdSynonymWriter.class);
+	private static final int DEFAULT_BATCH_SIZE = 1000;
+
+	private final DataConverter converter;
+	private final AsyncItemStore store;
+	private final int batchSize;
+	private final List<Item> batch = new ArrayList<Item>();
+	private long[] subjects = new long[4096];
+	private long[] values = new long[4096];
+	private boolean[] used = new boolean[4096];
+	private int size;
+	private long written;
+	private long duplicates;
+
+	/**
+	 * @param converter the converter creating the synonyms
+	 * @param store the store the synonyms are queued to
+	 */
+	public SgdSynonymWriter(DataConverter converter, AsyncItemStore store) {
+		this(converter, store, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * @param converter the converter creating the synonyms
+	 * @param store the store the synonyms are queued to
+	 * @param batchSize how many synonyms to store at a time
+	 */
+	public SgdSynonymWriter(DataConverter converter, AsyncItemStore store, int batchSize) {
+		this.converter = converter;
+		this.store = store;
+		this.batchSize = Math.max(1, batchSize);
+	}
+
+	/**
+	 * Create a synonym for a subject, unless it already has one with this value.
+	 *
+	 * @param subjectId identifier of the item the synonym is for
+	 * @param value the synonym
+	 * @return identifier of the new synonym, or null if value is empty or a duplicate
+	 * @throws ObjectStoreException if a batch can't be stored
+	 */
+	public String write(String subjectId, String value) throws ObjectStoreException {
+		if (StringUtils.isEmpty(value)) {
+			return null;
+		}
+		if (!add(subjectKey(subjectId), hash(value))) {
+			duplicates++;
+			return null;
+		}
+		Item syn = converter.createItem("Synonym");
+		syn.setReference("subject", subjectId);
+		syn.setAttribute("value", value);
+		batch.add(syn);
+		written++;
+		if (batch.size() >= batchSize) {
+			flush();
+		}
+		return syn.getIdentifier();
+	}
+
+	/**
+	 * Store the synonyms not stored yet.
+	 *
+	 * @throws ObjectStoreException if they can't be stored
+	 */
+	public void flush() throws ObjectStoreException {
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			for (Item syn : batch) {
+				store.store(syn);
+			}
+		} catch (ObjectStoreException e) {
+			throw new ObjectStoreException(e);
+		}
+		batch.clear();
+	}
+
+	/**
+	 * Store what is left and print and log how many synonyms were written and skipped.
+	 *
+	 * @throws ObjectStoreException if the last batch can't be stored
+	 */
+	public void close() throws ObjectStoreException {
+		flush();
+		String msg = "Synonyms: " + written + " stored, " + duplicates + " duplicates skipped";
+		System.out.println(msg);
+		LOG.info(msg);
+	}
+
+	/**
+	 * @return number of synonyms created
+	 */
+	public long getWritten() {
+		return written;
+	}
+
+	/**
+	 * @return number of synonyms skipped because the subject already had that value
+	 */
+	public long getDuplicates() {
+		return duplicates;
+	}
+
+	private boolean add(long subject, long value) {
+		if (size * 2 >= used.length) {
+			grow();
+		}
+		int mask = used.length - 1;
+		int slot = (int) mix(subject ^ value * 31) & mask;
+		while (used[slot]) {
+			if (subjects[slot] == subject && values[slot] == value) {
+				return false;
+			}
+			slot = (slot + 1) & mask;
+		}
+		used[slot] = true;
+		subjects[slot] = subject;
+		values[slot] = value;
+		size++;
+		return true;
+	}
+
+	private void grow() {
+		long[] oldSubjects = subjects, oldValues = values;
+		boolean[] oldUsed = used;
+		subjects = new long[oldUsed.length * 2];
+		values = new long[oldUsed.length * 2];
+		used = new boolean[oldUsed.length * 2];
+		int mask = used.length - 1;
+		for (int i = 0; i < oldUsed.length; i++) {
+			if (oldUsed[i]) {
+				int slot = (int) mix(oldSubjects[i] ^ oldValues[i] * 31) & mask;
+				while (used[slot]) {
+					slot = (slot + 1) & mask;
+				}
+				used[slot] = true;
+				subjects[slot] = oldSubjects[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	private static long subjectKey(String subjectId) {
+		long key = SgdDeferredStore.key(subjectId);
+		// not a createItem() identifier, fall back to a hash; keep it apart from packed keys
+		return key >= 0 ? key : hash(subjectId) | Long.MIN_VALUE;
+	}
+
+	private static long hash(String s) {
+		if (s == null) {
+			return 0;
+		}
+		// FNV-1a over the chars
+		long h = 0xcbf29ce484222325L;
+		for (int i = 0; i < s.length(); i++) {
+			h ^= s.charAt(i);
+			h *= 0x100000001b3L;
+		}
+		return mix(h);
+	}
+
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,170 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class BufferedRowsTest extends TestCase
+{
+    private static final String[] LABELS = new String[] {"dbentity_id", "display_name", "alias_names"};
+    private static final int[] TYPES = new int[] {Types.BIGINT, Types.VARCHAR, Types.ARRAY};
+
+    private boolean sourceClosed;
+
+    public BufferedRowsTest(String arg) {
+        super(arg);
+    }
+
+    public void testBufferEverything() throws Exception {
+        BufferedRows.Budget budget = new BufferedRows.Budget(1024 * 1024);
+        BufferedRows res = BufferedRows.buffer(source(100), budget);
+        assertTrue(res.isComplete());
+        assertTrue(sourceClosed);
+        assertTrue(budget.getUsed() > 0);
+        assertTrue(res.isBeforeFirst());
+
+        assertEquals(100, readAll(res).size());
+        assertEquals(100, res.getRowCount());
+        assertTrue(res.isAfterLast());
+        assertEquals(0, budget.getUsed());
+        res.close();
+        assertEquals(0, budget.getUsed());
+    }
+
+    public void testRowsThatDontFitAreStreamed() throws Exception {
+        BufferedRows.Budget budget = new BufferedRows.Budget(1000);
+        final boolean[] connectionClosed = new boolean[1];
+        BufferedRows res = BufferedRows.buffer(source(100), budget);
+        res.setOnClose(() -> connectionClosed[0] = true);
+        assertFalse(res.isComplete());
+        assertFalse(sourceClosed);
+        assertTrue(budget.getUsed() >= 1000);
+
+        List<String> rows = readAll(res);
+        assertEquals(100, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertEquals(i + " name" + i + " {a" + i + ",b}", rows.get(i));
+        }
+        assertEquals(0, budget.getUsed());
+        res.close();
+        assertTrue(sourceClosed);
+        assertTrue(connectionClosed[0]);
+    }
+
+    public void testClosingGivesBackTheBudget() throws Exception {
+        BufferedRows.Budget budget = new BufferedRows.Budget(1024 * 1024);
+        BufferedRows res = BufferedRows.buffer(source(10), budget);
+        assertTrue(res.next());
+        res.close();
+        assertEquals(0, budget.getUsed());
+        try {
+            res.next();
+            fail("expected an SQLException");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    public void testValues() throws Exception {
+        BufferedRows res = BufferedRows.buffer(source(2),
+                new BufferedRows.Budget(1024));
+        assertEquals(Arrays.asList(LABELS), Arrays.asList(res.getLabels()));
+        assertEquals(Types.ARRAY, res.getTypes()[2]);
+        assertEquals(1, res.findColumn("DBENTITY_ID"));
+        assertTrue(res.next());
+        assertEquals(0, res.getInt(1));
+        assertEquals("name0", res.getString(2));
+        assertFalse(res.wasNull());
+        Array array = res.getArray(3);
+        assertEquals(Types.VARCHAR, array.getBaseType());
+        assertEquals("b", ((Object[]) array.getArray())[1]);
+        assertEquals("{a0,b}", res.getString(3));
+        assertTrue(res.next());
+        assertNull(res.getString(2));
+        assertTrue(res.wasNull());
+        assertNull(res.getCharacterStream(2));
+        assertNull(res.getArray(3));
+        assertFalse(res.next());
+        try {
+            res.findColumn("sgdid");
+            fail("expected an SQLException");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    public void testNoRows() throws Exception {
+        BufferedRows.Budget budget = new BufferedRows.Budget(1024);
+        BufferedRows res = BufferedRows.buffer(source(0), budget);
+        assertTrue(res.isComplete());
+        assertFalse(res.isBeforeFirst());
+        assertFalse(res.next());
+        assertFalse(res.isAfterLast());
+        assertEquals(0, res.getRowCount());
+        res.close();
+        assertEquals(0, budget.getUsed());
+    }
+
+    public void testDecodedByName() throws Exception {
+        RowDecoder row = new RowDecoder(BufferedRows.buffer(source(100),
+                new BufferedRows.Budget(1000)));
+        for (int i = 0; i < 100; i++) {
+            assertTrue(row.next());
+            assertEquals(i, row.getLong("DBENTITY_ID"));
+            assertEquals("name" + i, row.getString("display_name"));
+            assertEquals("a" + i, ((Object[]) row.getArray("alias_names").getArray())[0]);
+        }
+        assertFalse(row.next());
+        row.getRows().close();
+    }
+
+    private List<String> readAll(QueryRows res) throws SQLException {
+        List<String> rows = new ArrayList<String>();
+        while (res.next()) {
+            rows.add(res.getLong(1) + " " + res.getString(res.findColumn("display_name")) + " "
+                    + res.getString(3));
+        }
+        return rows;
+    }
+
+    /**
+     * Rows numbered from 0, the second one with nulls.
+     */
+    private BufferedRows source(final int count) {
+        sourceClosed = false;
+        return BufferedRows.stream(LABELS, TYPES, new BufferedRows.RowSource() {
+            private int i;
+
+            public Object[] next() {
+                if (i == count) {
+                    return null;
+                }
+                int n = i++;
+                if (n == 1 && count == 2) {
+                    return new Object[] {"1", null, null};
+                }
+                return new Object[] {String.valueOf(n), "name" + n, new BufferedRows.ArrayValue(
+                        "{a" + n + ",b}", Types.VARCHAR, new String[] {"a" + n, "b"})};
+            }
+
+            public void close() {
+                sourceClosed = true;
+            }
+        });
+    }
+}
@@ -0,0 +1,300 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Array;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+public class SgdCheckpointTest extends TestCase
+{
+    private static final String[] LABELS = new String[] {"dbentity_id", "display_name", "alias_names"};
+    private static final int[] TYPES = new int[] {Types.BIGINT, Types.VARCHAR, Types.ARRAY};
+
+    private File dir;
+    private int queries;
+
+    public SgdCheckpointTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        dir = Files.createTempDirectory("checkpoint").toFile();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testReplaySameRows() throws Exception {
+        SgdCheckpoint checkpoint = new SgdCheckpoint(dir, false);
+        List<String> phases = Arrays.asList("PREFETCH genes", "STREAMING sequences");
+        checkpoint.open(phases, "aggregating=true");
+        QueryRows genes = checkpoint.record("genes", source(500));
+        List<String> read = readAll(genes);
+        genes.close();
+        checkpoint.complete("genes");
+        // the run fails half way through the second phase
+        QueryRows sequences = checkpoint.record("sequences", source(500));
+        sequences.next();
+        sequences.close();
+
+        SgdCheckpoint resumed = new SgdCheckpoint(dir, true);
+        resumed.open(phases, "aggregating=true");
+        assertTrue(resumed.isComplete("genes"));
+        assertFalse(resumed.isComplete("sequences"));
+        assertEquals(500, resumed.getRows("genes"));
+        QueryRows replayed = resumed.replay("genes");
+        assertEquals(Arrays.asList(LABELS), Arrays.asList(replayed.getLabels()));
+        assertEquals(Types.ARRAY, replayed.getTypes()[2]);
+        assertEquals(read, readAll(replayed));
+        replayed.close();
+
+        // another query setting, the rows may differ
+        SgdCheckpoint other = new SgdCheckpoint(dir, true);
+        other.open(phases, "aggregating=false");
+        assertFalse(other.isComplete("genes"));
+        assertEquals(1, dir.listFiles().length);
+    }
+
+    public void testEmptyPhase() throws Exception {
+        List<String> phases = Arrays.asList("PREFETCH genes");
+        SgdCheckpoint checkpoint = new SgdCheckpoint(dir, false);
+        checkpoint.open(phases, "");
+        try {
+            checkpoint.complete("genes");
+            fail("expected an IOException");
+        } catch (IOException e) {
+            // nothing was recorded
+        }
+        QueryRows genes = checkpoint.record("genes", source(0));
+        assertFalse(genes.next());
+        genes.close();
+        checkpoint.complete("genes");
+
+        SgdCheckpoint resumed = new SgdCheckpoint(dir, true);
+        resumed.open(phases, "");
+        assertTrue(resumed.isComplete("genes"));
+        assertEquals(0, resumed.getRows("genes"));
+        assertEquals(-1, resumed.getRows("sequences"));
+        QueryRows replayed = resumed.replay("genes");
+        assertFalse(replayed.next());
+        replayed.close();
+    }
+
+    public void testArraysOfNumbersAndNulls() throws Exception {
+        SgdCheckpoint checkpoint = new SgdCheckpoint(dir, false);
+        checkpoint.open(Arrays.asList("PREFETCH pubs"), "");
+        String[] labels = new String[] {"reference_ids", "pmids"};
+        int[] types = new int[] {Types.ARRAY, Types.ARRAY};
+        final Object[][] rows = new Object[][] {
+            {new BufferedRows.ArrayValue("{1,2}", Types.INTEGER, new Integer[] {1, 2}),
+                new BufferedRows.ArrayValue("{NULL,20}", Types.BIGINT, new Long[] {null, 20L})},
+            {new BufferedRows.ArrayValue("{}", Types.INTEGER, new Integer[0]), null}};
+        QueryRows pubs = checkpoint.record("pubs", BufferedRows.stream(labels, types,
+                new BufferedRows.RowSource() {
+                    private int i;
+
+                    public Object[] next() {
+                        return i < rows.length ? rows[i++] : null;
+                    }
+
+                    public void close() {
+                        // nothing to close
+                    }
+                }));
+        while (pubs.next()) {
+            // just recorded
+        }
+        pubs.close();
+        checkpoint.complete("pubs");
+
+        QueryRows replayed = checkpoint.replay("pubs");
+        assertTrue(replayed.next());
+        Object[] referenceIds = (Object[]) replayed.getArray(1).getArray();
+        assertEquals(Integer[].class, referenceIds.getClass());
+        assertEquals(Arrays.asList(1, 2), Arrays.asList(referenceIds));
+        assertEquals(Arrays.asList(null, 20L),
+                Arrays.asList((Object[]) replayed.getArray(2).getArray()));
+        assertTrue(replayed.next());
+        assertEquals(0, ((Object[]) replayed.getArray(1).getArray()).length);
+        assertNull(replayed.getArray(2));
+        assertFalse(replayed.next());
+        replayed.close();
+    }
+
+    /**
+     * A manifest line cut short by a failure, or one that can't be read, is not a finished
+     * phase; a manifest that isn't a checkpoint's is started afresh.
+     */
+    public void testDamagedManifest() throws Exception {
+        List<String> phases = Arrays.asList("PREFETCH genes", "PREFETCH pubs");
+        SgdCheckpoint checkpoint = new SgdCheckpoint(dir, false);
+        checkpoint.open(phases, "");
+        for (String phase : new String[] {"genes", "pubs"}) {
+            QueryRows rows = checkpoint.record(phase, source(5));
+            readAll(rows);
+            rows.close();
+            checkpoint.complete(phase);
+        }
+        File manifest = new File(dir, "manifest");
+        List<String> lines = Files.readAllLines(manifest.toPath(), StandardCharsets.UTF_8);
+        assertEquals(4, lines.size());
+        lines.set(2, "done genes 5x");
+        lines.set(3, "done pubs");
+        Files.write(manifest.toPath(), lines, StandardCharsets.UTF_8);
+        SgdCheckpoint resumed = new SgdCheckpoint(dir, true);
+        resumed.open(phases, "");
+        assertFalse(resumed.isComplete("genes"));
+        assertFalse(resumed.isComplete("pubs"));
+
+        Files.write(manifest.toPath(), "done genes 5\n".getBytes(StandardCharsets.UTF_8));
+        resumed = new SgdCheckpoint(dir, true);
+        resumed.open(phases, "");
+        assertFalse(resumed.isComplete("genes"));
+        // started afresh: only the new manifest is left
+        assertEquals(Arrays.asList("manifest"), Arrays.asList(dir.list()));
+    }
+
+    public void testDamagedRowsFile() throws Exception {
+        List<String> phases = Arrays.asList("PREFETCH genes");
+        SgdCheckpoint checkpoint = new SgdCheckpoint(dir, false);
+        checkpoint.open(phases, "");
+        QueryRows genes = checkpoint.record("genes", source(2000));
+        readAll(genes);
+        genes.close();
+        checkpoint.complete("genes");
+        File rows = new File(dir, "genes.rows.gz");
+        byte[] bytes = Files.readAllBytes(rows.toPath());
+
+        // cut short
+        Files.write(rows.toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        QueryRows replayed = checkpoint.replay("genes");
+        try {
+            readAll(replayed);
+            fail("expected an SQLException");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("can't read checkpoint of genes"));
+        }
+        replayed.close();
+
+        // not a checkpoint file at all
+        ByteArrayOutputStream other = new ByteArrayOutputStream();
+        GZIPOutputStream out = new GZIPOutputStream(other);
+        out.write("dbentity_id\tdisplay_name\n".getBytes(StandardCharsets.UTF_8));
+        out.close();
+        Files.write(rows.toPath(), other.toByteArray());
+        try {
+            checkpoint.replay("genes");
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("not a checkpoint file"));
+        }
+    }
+
+    /**
+     * A run that fails in its second phase, resumed: the first phase isn't queried again but
+     * is processed with the same rows, and the checkpoint is deleted at the end.
+     */
+    public void testResumeScheduler() throws Exception {
+        List<String> first = new ArrayList<String>();
+        try {
+            run(false, true, first);
+            fail("expected the second phase to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(2, queries);
+        assertEquals(300, first.size());
+
+        queries = 0;
+        List<String> resumed = new ArrayList<String>();
+        run(true, false, resumed);
+        assertEquals(1, queries);
+        assertEquals(first, resumed.subList(0, 300));
+        assertEquals(600, resumed.size());
+        assertEquals(0, dir.listFiles().length);
+    }
+
+    private void run(boolean resume, final boolean fail, final List<String> rows)
+        throws Exception {
+        SgdPhaseScheduler phases = new SgdPhaseScheduler((SgdPhaseScheduler.Connections) null, 0);
+        phases.setCheckpoint(new SgdCheckpoint(dir, resume), "");
+        phases.addPhase("genes", connection -> {
+            queries++;
+            return source(300);
+        }, res -> rows.addAll(readAll(res)));
+        phases.addStreamingPhase("sequences", connection -> {
+            queries++;
+            return source(300);
+        }, res -> {
+            if (fail) {
+                throw new IllegalStateException("no more sequences");
+            }
+            rows.addAll(readAll(res));
+        }, "genes");
+        phases.run(null);
+    }
+
+    private static List<String> readAll(QueryRows res) throws SQLException {
+        List<String> rows = new ArrayList<String>();
+        while (res.next()) {
+            Array array = res.getArray(3);
+            rows.add(res.getLong(1) + " " + res.getString(res.findColumn("display_name")) + " "
+                    + (array == null ? null : Arrays.asList((Object[]) array.getArray())));
+        }
+        return rows;
+    }
+
+    /**
+     * Rows numbered from 0, every tenth with nulls.
+     */
+    private static BufferedRows source(final int count) {
+        return BufferedRows.stream(LABELS, TYPES, new BufferedRows.RowSource() {
+            private int i;
+
+            public Object[] next() {
+                if (i == count) {
+                    return null;
+                }
+                int n = i++;
+                if (n % 10 == 0) {
+                    return new Object[] {String.valueOf(n), null, null};
+                }
+                return new Object[] {String.valueOf(n), "name\u00e9" + n,
+                    new BufferedRows.ArrayValue("{a" + n + ",\"b c\"}", Types.VARCHAR,
+                            new String[] {"a" + n, "b c"})};
+            }
+
+            public void close() {
+                // nothing to close
+            }
+        });
+    }
+}
@@ -14,7 +14,9 @@ import java.io.IOException;
 import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.dataconversion.ItemsTestCase;
@@ -47,6 +49,250 @@ public class SgdConverterTest extends ItemsTestCase
         doTestProcess(orgId);
     }
 
+    public void testGenesStoredWhole() throws Exception {
+        TestSgdConversion conversion = new TestSgdConversion()
+            .add("chromosomalFeature", GENE_COLUMNS,
+                    gene("1", "YAL001C", "S000000001", "TFC3"),
+                    gene("2", "YAL002W", "S000000002", null))
+            .add("functionSummary", new String[] {"dbentity_id", "text"},
+                    new Object[] {"1", "subunit of TFIIIC"});
+        MockItemWriter writer = writer();
+        List<Item> items = TestSgdConversion.run(conversion.converter(writer), writer, 0);
+        List<Item> genes = TestSgdConversion.ofClass(items, "ORF");
+        assertEquals(2, genes.size());
+        // the genes are replaced with handles once stored, what was stored keeps every field
+        Item gene = genes.get(0).getAttribute("symbol") == null ? genes.get(1) : genes.get(0);
+        assertEquals("TFC3", gene.getAttribute("symbol").getValue());
+        assertEquals("subunit of TFIIIC", gene.getAttribute("functionSummary").getValue());
+        assertEquals("S000000001", gene.getAttribute("primaryIdentifier").getValue());
+        assertNotNull(gene.getReference("organism"));
+    }
+
+    public void testIdenticalResiduesShareASequence() throws Exception {
+        String[] columns = new String[] {"contig_id", "format_name", "feature_type", "dbentity_id",
+            "gene_name", "systematic_name", "strand", "end_index", "start_index", "residues",
+            "length"};
+        TestSgdConversion conversion = new TestSgdConversion()
+            .add("chromosomalFeature", GENE_COLUMNS,
+                    gene("1", "YAL001C", "S000000001", null),
+                    gene("2", "YAL002W", "S000000002", null),
+                    gene("3", "YAL003W", "S000000003", null))
+            .add("chromosomalFeatureLocation", columns,
+                    location("1", "ACGTACGT"),
+                    location("2", "TTTT"),
+                    location("3", "ACGTACGT"));
+        MockItemWriter writer = writer();
+        List<Item> items = TestSgdConversion.run(conversion.converter(writer), writer, 0);
+        List<Item> sequences = TestSgdConversion.ofClass(items, "Sequence");
+        assertEquals(2, sequences.size());
+        Map<String, String> residues = new HashMap<String, String>();
+        for (Item sequence : sequences) {
+            residues.put(sequence.getIdentifier(), sequence.getAttribute("residues").getValue());
+        }
+        Map<String, String> genes = new HashMap<String, String>();
+        for (Item gene : TestSgdConversion.ofClass(items, "ORF")) {
+            genes.put(gene.getAttribute("secondaryIdentifier").getValue(),
+                    residues.get(gene.getReference("sequence").getRefId()));
+        }
+        assertEquals("ACGTACGT", genes.get("YAL001C"));
+        assertEquals("TTTT", genes.get("YAL002W"));
+        assertEquals("ACGTACGT", genes.get("YAL003W"));
+    }
+
+    public void testDisagreeingPublicationRows() throws Exception {
+        String[] columns = new String[] {"dbentity_id", "pmid", "title", "volume", "page", "year",
+            "issue", "citation", "topic", "med_abbr", "text", "sgdid", "date_created"};
+        // two reference numbers for one paper, disagreeing on the title and year
+        TestSgdConversion conversion = new TestSgdConversion()
+            .add("pubAll", columns,
+                    new Object[] {"10", "12345", "Actin", null, null, "1999", null, "Smith 1999",
+                        null, null, null, "S100000010", null},
+                    new Object[] {"11", "12345", "Actin.", null, "1-10", "2000", null, null,
+                        null, null, null, "S100000011", null});
+        MockItemWriter writer = writer();
+        List<Item> pubs = TestSgdConversion.ofClass(
+                TestSgdConversion.run(conversion.converter(writer), writer, 0), "Publication");
+        assertEquals(1, pubs.size());
+        Item pub = pubs.get(0);
+        assertEquals("Actin", pub.getAttribute("title").getValue());
+        assertEquals("1999", pub.getAttribute("year").getValue());
+        assertEquals("S100000010", pub.getAttribute("pubXrefId").getValue());
+        // what the first row didn't have is filled in from the second
+        assertEquals("1-10", pub.getAttribute("pages").getValue());
+        assertEquals("Smith 1999", pub.getAttribute("citation").getValue());
+    }
+
+    /**
+     * The allele and transcript queries return a row per reference and alias, or with
+     * aggregateQueries one row per allele or transcript with arrays of them; both make the same
+     * items.
+     */
+    public void testAggregatedQueriesSameItems() throws Exception {
+        String[] locationColumns = new String[] {"contig_id", "format_name", "feature_type",
+            "dbentity_id", "gene_name", "systematic_name", "strand", "end_index", "start_index",
+            "residues", "length"};
+        String[] alleleColumns = new String[] {"allele", "allelesgdid", "locus", "description",
+            "allele_name", "alias_name", "reference_id", "pmid", "allele_class"};
+        String[] aggregatedAlleleColumns = new String[] {"allele", "allelesgdid", "locus",
+            "description", "allele_name", "alias_names", "reference_ids", "pmids",
+            "allele_class"};
+        String[] transcriptColumns = new String[] {"transcript", "format_name", "start_index",
+            "end_index", "strand", "in_gal", "in_ypd", "in_ncbi", "reference_id", "pmid"};
+        String[] aggregatedTranscriptColumns = new String[] {"transcript", "format_name",
+            "start_index", "end_index", "strand", "in_gal", "in_ypd", "in_ncbi", "reference_ids",
+            "pmids"};
+
+        TestSgdConversion rows = new TestSgdConversion()
+            .add("allele", alleleColumns,
+                    new Object[] {"20", "S000200020", "1", "a", "tfc3-1", "ts1", "10", "111",
+                        "missense"},
+                    new Object[] {"20", "S000200020", "1", "a", "tfc3-1", "ts2", "10", "111",
+                        "missense"},
+                    new Object[] {"20", "S000200020", "1", "a", "tfc3-1", "ts1", "11", null,
+                        "missense"},
+                    new Object[] {"20", "S000200020", "1", "a", "tfc3-1", "ts2", "11", null,
+                        "missense"},
+                    // no aliases or references, and an allele of a gene that isn't loaded
+                    new Object[] {"21", "S000200021", "2", null, "yal002w-1", null, null, null,
+                        null},
+                    new Object[] {"22", "S000200022", "9", null, "other-1", "o1", "12", "222",
+                        null})
+            .add("transcript", transcriptColumns,
+                    new Object[] {"30", "YAL001_id001", "101", "200", "+", "t", "f", "t", "11",
+                        null},
+                    new Object[] {"30", "YAL001_id001", "101", "200", "+", "t", "f", "t", "13",
+                        "333"},
+                    new Object[] {"31", "YAL002_id002", "151", "180", "-", "f", "f", "f", null,
+                        null});
+        TestSgdConversion aggregated = new TestSgdConversion()
+            .add("aggregatedAllele", aggregatedAlleleColumns,
+                    new Object[] {"20", "S000200020", "1", "a", "tfc3-1",
+                        TestRows.array("ts1", "ts2"), TestRows.array("10", "11"),
+                        TestRows.array("111", null), "missense"},
+                    new Object[] {"21", "S000200021", "2", null, "yal002w-1", null, null, null,
+                        null},
+                    new Object[] {"22", "S000200022", "9", null, "other-1",
+                        TestRows.array("o1"), TestRows.array("12"), TestRows.array("222"), null})
+            .add("aggregatedTranscript", aggregatedTranscriptColumns,
+                    new Object[] {"30", "YAL001_id001", "101", "200", "+", "t", "f", "t",
+                        TestRows.array("11", "13"), TestRows.array(null, "333")},
+                    new Object[] {"31", "YAL002_id002", "151", "180", "-", "f", "f", "f", null,
+                        null});
+
+        List<Item> expected = null;
+        for (TestSgdConversion conversion : new TestSgdConversion[] {rows, aggregated}) {
+            conversion.add("chromosomalFeature", GENE_COLUMNS,
+                    gene("1", "YAL001", "S000000001", "TFC3"),
+                    gene("2", "YAL002", "S000000002", null))
+                .add("chromosomalFeatureLocation", locationColumns,
+                    location("1", "ACGT"), location("2", "TTTT"));
+            MockItemWriter writer = writer();
+            SgdConverter converter = conversion.converter(writer);
+            converter.setAggregateQueries(String.valueOf(conversion == aggregated));
+            List<Item> items = TestSgdConversion.run(converter, writer, 0);
+            if (expected == null) {
+                expected = items;
+            } else {
+                assertEquals(TestSgdConversion.render(expected), TestSgdConversion.render(items));
+            }
+        }
+        assertTrue(rows.getQueries().contains("allele"));
+        assertFalse(rows.getQueries().contains("aggregatedAllele"));
+        assertTrue(aggregated.getQueries().contains("aggregatedTranscript"));
+        assertFalse(aggregated.getQueries().contains("transcript"));
+
+        List<Item> alleles = TestSgdConversion.ofClass(expected, "Allele");
+        assertEquals(2, alleles.size());
+        for (Item allele : alleles) {
+            if ("tfc3-1".equals(allele.getAttribute("name").getValue())) {
+                assertEquals("ts1", allele.getAttribute("aliasName").getValue());
+                assertEquals(2, new HashSet<String>(
+                        allele.getCollection("publications").getRefIds()).size());
+            } else {
+                assertNull(allele.getAttribute("aliasName"));
+                assertNull(allele.getCollection("publications"));
+            }
+        }
+        List<Item> transcripts = TestSgdConversion.ofClass(expected, "MRNA");
+        assertEquals(2, transcripts.size());
+        // references 10, 11 and 13, and the empty one allPubs makes when it has no rows
+        assertEquals(4, TestSgdConversion.ofClass(expected, "Publication").size());
+    }
+
+    /**
+     * Interactions read as two annotation_id ranges, on readers or on the converter's own
+     * connection, make the same items as when read with one query.
+     */
+    public void testInteractionPartitionsSameItems() throws Exception {
+        Object[][] interactions = new Object[][] {
+            interaction("40", "1", "2", "Bait-Hit", "Smith", "111"),
+            interaction("41", "2", "1", "Hit-Bait", "Smith", "111"),
+            interaction("42", "1", "1", "Bait-Hit", "Jones", null),
+            interaction("43", "2", "3", "Bait-Hit", "Jones", "222")
+        };
+        List<Item> expected = null;
+        for (int poolSize : new int[] {0, 0, 2}) {
+            TestSgdConversion conversion = new TestSgdConversion()
+                .add("chromosomalFeature", GENE_COLUMNS,
+                    gene("1", "YAL001", "S000000001", "TFC3"),
+                    gene("2", "YAL002", "S000000002", null),
+                    gene("3", "YAL003", "S000000003", "EFB1"));
+            MockItemWriter writer = writer();
+            SgdConverter converter = conversion.converter(writer);
+            if (expected == null) {
+                conversion.add("physicalInteraction", INTERACTION_COLUMNS, interactions);
+            } else {
+                converter.setInteractionPartitions("2");
+                conversion.add("physinteractionannotationRange", new String[] {"min", "max"},
+                        new Object[] {"40", "43"})
+                    .add("physicalInteraction.1", INTERACTION_COLUMNS, interactions[0],
+                            interactions[1])
+                    .add("physicalInteraction.2", INTERACTION_COLUMNS, interactions[2],
+                            interactions[3]);
+            }
+            List<Item> items = TestSgdConversion.run(converter, writer, poolSize);
+            if (expected == null) {
+                expected = items;
+                assertFalse(conversion.getQueries().contains("physicalInteraction.1"));
+            } else {
+                assertEquals(TestSgdConversion.render(expected), TestSgdConversion.render(items));
+                assertTrue(conversion.getQueries().contains("physicalInteraction.2"));
+                assertFalse(conversion.getQueries().contains("physicalInteraction"));
+            }
+        }
+        assertEquals(7, TestSgdConversion.ofClass(expected, "Interaction").size());
+    }
+
+    private static final String[] INTERACTION_COLUMNS = new String[] {"annotation_id",
+        "dbentity1_id", "dbentity2_id", "biogrid_experimental_system", "bait_hit", "display_name",
+        "annotation_type", "modification", "citation", "pmid", "title", "volume", "page", "year",
+        "issue", "med_abbr", "reference_id", "first_author", "sgdid", "note"};
+
+    private static Object[] interaction(String id, String gene, String interactingGene,
+            String baitHit, String firstAuthor, String pmid) {
+        return new Object[] {id, gene, interactingGene, "Two-hybrid", baitHit, "BioGRID",
+            "manually curated", null, firstAuthor + " 2001", pmid, "A title", "1", "1-10", "2001",
+            "1", "J Biol", "1" + id, firstAuthor, "S1000000" + id, null};
+    }
+
+    private static Object[] location(String id, String residues) {
+        return new Object[] {"100", "Chromosome_I", "chromosome", id, null, "YAL00" + id,
+            "+", "200", "101", residues, residues.length()};
+    }
+
+    static final String[] GENE_COLUMNS = new String[] {"dbentity_id", "systematic_name", "sgdid",
+        "gene_name", "name_description", "feature_type", "headline", "description", "qualifier",
+        "dbentity_status"};
+
+    static Object[] gene(String id, String systematicName, String sgdid, String symbol) {
+        return new Object[] {id, systematicName, sgdid, symbol, null, "ORF", null, null,
+            "Verified", "Active"};
+    }
+
+    static MockItemWriter writer() {
+        return new MockItemWriter(new HashMap<String, org.intermine.model.fulldata.Item>());
+    }
+
     private void doTestProcess(String orgId) throws Exception, IOException {
         MockItemWriter itemWriter =
             new MockItemWriter(new HashMap<String, org.intermine.model.fulldata.Item>());
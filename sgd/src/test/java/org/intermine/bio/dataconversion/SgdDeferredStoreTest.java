@@ -0,0 +1,206 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.Reference;
+import org.intermine.xml.full.ReferenceList;
+
+public class SgdDeferredStoreTest extends TestCase
+{
+    private SgdDeferredStore deferred;
+
+    public SgdDeferredStoreTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        deferred = new SgdDeferredStore();
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        deferred.close();
+        super.tearDown();
+    }
+
+    public void testSameItemsAsUpdatingDirectly() throws Exception {
+        checkSameItems(64L * 1024 * 1024);
+    }
+
+    public void testSameItemsWhenSpilled() throws Exception {
+        // the smallest budget, a run is spilled every thousand or so updates
+        checkSameItems(0);
+    }
+
+    public void testSameItemsWhenRunsCrossSegments() throws Exception {
+        // runs of about a thousand records in segments of seven, none starting on a boundary
+        deferred.setSegmentRecords(7);
+        checkSameItems(0);
+    }
+
+    public void testNothingDeferred() throws Exception {
+        SgdDeferredStore.Log genes = deferred.open("genes");
+        List<Item> stored = new ArrayList<Item>();
+        genes.replay(new ArrayList<Item>(), stored::add);
+        assertTrue(stored.isEmpty());
+        SgdDeferredStore.Log proteins = deferred.open("proteins");
+        Item protein = new Item("4_1", "Protein", "");
+        proteins.replay(list(protein), stored::add);
+        assertEquals(list(protein), stored);
+        assertTrue(protein.getCollections().isEmpty());
+        assertTrue(protein.getReferences().isEmpty());
+    }
+
+    public void testUpdatesWithoutItems() throws Exception {
+        deferred.setBudget(0);
+        deferred.setSegmentRecords(7);
+        SgdDeferredStore.Log genes = deferred.open("genes");
+        for (int i = 0; i < 5000; i++) {
+            genes.addToCollection("3_" + i, "publications", "5_" + i);
+        }
+        // the updates, spilled and in memory, are counted as unmatched and dropped
+        List<Item> stored = new ArrayList<Item>();
+        genes.replay(new ArrayList<Item>(), stored::add);
+        assertTrue(stored.isEmpty());
+    }
+
+    public void testKeys() throws Exception {
+        assertEquals("3_1234", SgdDeferredStore.identifier(SgdDeferredStore.key("3_1234")));
+        assertEquals("2147483647_4294967295", SgdDeferredStore.identifier(
+                SgdDeferredStore.key("2147483647_4294967295")));
+        assertTrue(SgdDeferredStore.key("3_1") < SgdDeferredStore.key("3_2"));
+        assertTrue(SgdDeferredStore.key("3_4294967295") < SgdDeferredStore.key("4_0"));
+        assertEquals(-1, SgdDeferredStore.key(null));
+        assertEquals(-1, SgdDeferredStore.key("3"));
+        assertEquals(-1, SgdDeferredStore.key("_3"));
+        assertEquals(-1, SgdDeferredStore.key("3_"));
+        assertEquals(-1, SgdDeferredStore.key("3_-1"));
+        assertEquals(-1, SgdDeferredStore.key("3_4294967296"));
+        assertEquals(-1, SgdDeferredStore.key("a_1"));
+    }
+
+    public void testOtherIdentifiersAppliedAtOnce() throws Exception {
+        SgdDeferredStore.Log log = deferred.open("genes");
+        Item gene = new Item("3_1", "Gene", "");
+        log.addToCollection(gene, "publications", "a publication");
+        log.addToCollection(gene, "publications", "5_1");
+        assertEquals(1, gene.getCollection("publications").getRefIds().size());
+        try {
+            log.addToCollection("gene", "publications", "5_1");
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        List<Item> stored = new ArrayList<Item>();
+        log.replay(list(gene), stored::add);
+        assertEquals(list(gene), stored);
+        assertEquals(list("a publication", "5_1"), gene.getCollection("publications").getRefIds());
+        try {
+            log.setReference(gene, "organism", "1_1");
+            fail("expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Make the same random updates to two copies of the items, one directly as the converter
+     * used to, the other through the deferred logs, and compare the stored items.
+     */
+    private void checkSameItems(long budget) throws Exception {
+        deferred.setBudget(budget);
+        SgdDeferredStore.Log genes = deferred.open("genes");
+        SgdDeferredStore.Log proteins = deferred.open("proteins");
+        List<Item> directGenes = items("Gene", 3, 500);
+        List<Item> directProteins = items("Protein", 4, 300);
+        List<Item> deferredGenes = items("Gene", 3, 500);
+        List<Item> deferredProteins = items("Protein", 4, 300);
+        // ids that sort differently as strings and as numbers
+        directGenes.add(new Item("3_100000", "Gene", ""));
+        deferredGenes.add(new Item("3_100000", "Gene", ""));
+
+        Random random = new Random(42);
+        for (int i = 0; i < 40000; i++) {
+            boolean gene = random.nextInt(3) > 0;
+            List<Item> direct = gene ? directGenes : directProteins;
+            int owner = random.nextInt(direct.size());
+            String refId = (5 + random.nextInt(2)) + "_" + random.nextInt(100000);
+            SgdDeferredStore.Log log = gene ? genes : proteins;
+            Item item = (gene ? deferredGenes : deferredProteins).get(owner);
+            switch (random.nextInt(4)) {
+            case 0:
+                direct.get(owner).setReference("sequence", refId);
+                log.setReference(item, "sequence", refId);
+                break;
+            case 1:
+                direct.get(owner).addToCollection("synonyms", refId);
+                log.addToCollection(item.getIdentifier(), "synonyms", refId);
+                break;
+            default:
+                direct.get(owner).addToCollection("publications", refId);
+                log.addToCollection(item, "publications", refId);
+            }
+        }
+
+        List<Item> stored = new ArrayList<Item>();
+        genes.replay(deferredGenes, stored::add);
+        proteins.replay(deferredProteins, stored::add);
+        assertEquals(deferredGenes.size() + deferredProteins.size(), stored.size());
+        assertSameItems(directGenes, deferredGenes);
+        assertSameItems(directProteins, deferredProteins);
+    }
+
+    private void assertSameItems(List<Item> expected, List<Item> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            Item e = expected.get(i);
+            Item a = actual.get(i);
+            assertEquals(e.getIdentifier(), a.getIdentifier());
+            assertEquals(e.getReferences().size(), a.getReferences().size());
+            for (Reference reference : e.getReferences()) {
+                assertEquals(reference.getRefId(), a.getReference(reference.getName()).getRefId());
+            }
+            assertEquals(e.getCollections().size(), a.getCollections().size());
+            for (ReferenceList collection : e.getCollections()) {
+                // in the order they were added
+                assertEquals(e.getIdentifier() + " " + collection.getName(), collection.getRefIds(),
+                        a.getCollection(collection.getName()).getRefIds());
+            }
+        }
+    }
+
+    private List<Item> items(String className, int classId, int count) {
+        List<Item> items = new ArrayList<Item>();
+        for (int i = 1; i <= count; i++) {
+            items.add(new Item(classId + "_" + i, className, ""));
+        }
+        return items;
+    }
+
+    @SafeVarargs
+    private static <T> List<T> list(T... values) {
+        List<T> list = new ArrayList<T>();
+        for (T value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,144 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import junit.framework.TestCase;
+
+import org.intermine.xml.full.Item;
+
+public class SgdEntityRegistryTest extends TestCase
+{
+    private SgdEntityRegistry.EntityMap<String> map;
+
+    public SgdEntityRegistryTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        map = new SgdEntityRegistry().register("test");
+    }
+
+    public void testNumericIds() throws Exception {
+        assertNull(map.put("1234", "a"));
+        assertNull(map.put("-5", "b"));
+        assertEquals("a", map.put("1234", "c"));
+        assertEquals("c", map.get("1234"));
+        assertEquals("b", map.get("-5"));
+        assertNull(map.get("1235"));
+        assertEquals(2, map.size());
+    }
+
+    public void testIdsThatAreNotNumbers() throws Exception {
+        // each of these is a different key to a HashMap, so it must be here too
+        String[] ids = {"7", "007", "+7", "-0", "0", "S000001", "", "12345678901234567890",
+            "9223372036854775807", "-9223372036854775808"};
+        for (int i = 0; i < ids.length; i++) {
+            assertNull(ids[i], map.put(ids[i], "v" + i));
+        }
+        map.put(null, "null");
+        assertEquals(ids.length + 1, map.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], "v" + i, map.get(ids[i]));
+        }
+        assertEquals("null", map.get(null));
+        assertEquals("v1", map.put("007", "again"));
+        assertEquals("again", map.get("007"));
+        assertNull(map.get("08"));
+    }
+
+    public void testOrderKeptThroughGrowth() throws Exception {
+        Map<String, String> expected = new LinkedHashMap<String, String>();
+        for (int i = 0; i < 5000; i++) {
+            String id = i % 3 == 0 ? "S" + i : i % 7 == 0 ? "0" + i : String.valueOf(i * 31L);
+            expected.put(id, "v" + i);
+            map.put(id, "v" + i);
+        }
+        assertEquals(expected.size(), map.size());
+        assertEquals(new ArrayList<String>(expected.values()), new ArrayList<String>(map.values()));
+        final List<String> ids = new ArrayList<String>();
+        map.forEach((value, id) -> {
+            assertEquals(expected.get(id), value);
+            ids.add(id);
+        });
+        assertEquals(new ArrayList<String>(expected.keySet()), ids);
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    public void testEmpty() throws Exception {
+        assertEquals(0, map.size());
+        assertNull(map.get("1"));
+        assertNull(map.get(null));
+        assertTrue(map.values().isEmpty());
+        try {
+            map.values().iterator().next();
+            fail("expected a NoSuchElementException");
+        } catch (NoSuchElementException e) {
+            // expected
+        }
+        map.forEach((value, id) -> fail());
+        map.replaceAll(value -> "x");
+        assertEquals(0, map.size());
+    }
+
+    public void testRegisteredTwice() throws Exception {
+        SgdEntityRegistry registry = new SgdEntityRegistry();
+        registry.register("genes");
+        try {
+            registry.register("genes");
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testIsNumber() throws Exception {
+        assertTrue(SgdEntityRegistry.EntityMap.isNumber("0"));
+        assertTrue(SgdEntityRegistry.EntityMap.isNumber("1266"));
+        assertTrue(SgdEntityRegistry.EntityMap.isNumber("-1266"));
+        assertTrue(SgdEntityRegistry.EntityMap.isNumber("9223372036854775807"));
+        assertFalse(SgdEntityRegistry.EntityMap.isNumber("9223372036854775808"));
+        assertFalse(SgdEntityRegistry.EntityMap.isNumber("-"));
+        assertFalse(SgdEntityRegistry.EntityMap.isNumber("01"));
+        assertFalse(SgdEntityRegistry.EntityMap.isNumber("1e3"));
+        assertFalse(SgdEntityRegistry.EntityMap.isNumber(" 1"));
+    }
+
+    public void testReplaceWithHandles() throws Exception {
+        SgdEntityRegistry.EntityMap<Item> alleles = new SgdEntityRegistry().register("alleles");
+        Item allele = new Item("7_1", "Allele", "");
+        allele.setAttribute("name", "act1-1");
+        allele.setAttribute("description", "a description");
+        allele.setAttribute("alleleClass", "point mutation");
+        allele.setReference("gene", "3_1");
+        alleles.put("1266", allele);
+
+        alleles.replaceAll(item -> SgdEntityRegistry.handle(item, "name"));
+        Item handle = alleles.get("1266");
+        assertNotSame(allele, handle);
+        assertEquals("7_1", handle.getIdentifier());
+        assertEquals("Allele", handle.getClassName());
+        assertEquals("act1-1", handle.getAttribute("name").getValue());
+        assertNull(handle.getAttribute("description"));
+        assertNull(handle.getReference("gene"));
+        assertTrue(SgdEntityRegistry.estimateItemBytes(handle)
+                < SgdEntityRegistry.estimateItemBytes(allele));
+    }
+}
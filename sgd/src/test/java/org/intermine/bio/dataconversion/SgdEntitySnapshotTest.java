@@ -0,0 +1,221 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.intermine.xml.full.Item;
+
+public class SgdEntitySnapshotTest extends TestCase
+{
+    private File dir;
+    private File file;
+
+    public SgdEntitySnapshotTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        dir = Files.createTempDirectory("snapshot").toFile();
+        file = new File(dir, "sgd-entities.snapshot");
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+        super.tearDown();
+    }
+
+    public void testChangesAgainstIntegratedSnapshot() throws Exception {
+        SgdEntitySnapshot first = new SgdEntitySnapshot(file);
+        assertFalse(first.hasPrevious());
+        for (int i = 0; i < 3000; i++) {
+            assertFalse(first.record("genes", i, 1000 + i));
+        }
+        assertFalse(first.record("proteins", 1, 7));
+        String id = first.writePending("yeastmine");
+        assertFalse(file.exists());
+
+        SgdEntitySnapshot.resolvePending(file, id, true);
+        assertTrue(file.exists());
+        assertFalse(SgdEntitySnapshot.pendingFile(file).exists());
+
+        SgdEntitySnapshot second = new SgdEntitySnapshot(file);
+        assertTrue(second.hasPrevious());
+        assertEquals("yeastmine", second.getTarget());
+        assertTrue(second.record("genes", 0, 1000));
+        assertFalse(second.record("genes", 1, 5));
+        assertFalse(second.record("genes", 5000, 1));
+        // the same id of another type is another entity
+        assertFalse(second.record("alleles", 2, 1002));
+        for (int i = 3; i < 2999; i++) {
+            assertTrue(second.record("genes", i, 1000 + i));
+        }
+        assertEquals(3, second.getDeletedCount());
+
+        File deleted = new File(dir, "deleted");
+        second.writeDeleted(deleted);
+        assertEquals(Arrays.asList("proteins\t1", "genes\t2", "genes\t2999"),
+                Files.readAllLines(deleted.toPath(), StandardCharsets.UTF_8));
+    }
+
+    public void testPendingSnapshotNotIntegrated() throws Exception {
+        SgdEntitySnapshot first = new SgdEntitySnapshot(file);
+        first.record("genes", 1, 1);
+        String firstId = first.writePending("yeastmine");
+        SgdEntitySnapshot.resolvePending(file, firstId, false);
+
+        SgdEntitySnapshot second = new SgdEntitySnapshot(file);
+        second.record("genes", 1, 2);
+        String secondId = second.writePending("yeastmine");
+        assertFalse(firstId.equals(secondId));
+
+        // an incremental load can't tell whether the mine holds the second conversion
+        try {
+            SgdEntitySnapshot.resolvePending(file, firstId, true);
+            fail("expected an IllegalStateException");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains(secondId));
+        }
+        assertTrue(SgdEntitySnapshot.pendingFile(file).exists());
+
+        // a full load throws it away and compares with the first
+        SgdEntitySnapshot.resolvePending(file, firstId, false);
+        assertFalse(SgdEntitySnapshot.pendingFile(file).exists());
+        assertTrue(new SgdEntitySnapshot(file).record("genes", 1, 1));
+    }
+
+    public void testHashIgnoresOrderAndIdentifiers() throws Exception {
+        Map<String, String> tokens = new HashMap<String, String>();
+        tokens.put("1_1", "organism");
+        tokens.put("5_1", "publications:10");
+        tokens.put("5_2", "publications:11");
+        Item a = new Item("3_1", "Gene", "");
+        a.setAttribute("symbol", "ACT1");
+        a.setAttribute("name", "actin");
+        a.setReference("organism", "1_1");
+        a.addToCollection("publications", "5_1");
+        a.addToCollection("publications", "5_2");
+
+        tokens.put("1_9", "organism");
+        tokens.put("5_8", "publications:10");
+        tokens.put("5_9", "publications:11");
+        Item b = new Item("3_9", "Gene", "");
+        b.setAttribute("name", "actin");
+        b.setAttribute("symbol", "ACT1");
+        b.setReference("organism", "1_9");
+        b.addToCollection("publications", "5_9");
+        b.addToCollection("publications", "5_8");
+        assertEquals(SgdEntitySnapshot.hash(a, tokens::get), SgdEntitySnapshot.hash(b, tokens::get));
+
+        b.setAttribute("name", "actin!");
+        assertFalse(SgdEntitySnapshot.hash(a, tokens::get) == SgdEntitySnapshot.hash(b, tokens::get));
+    }
+
+    public void testEmptyConversions() throws Exception {
+        // nothing recorded, no target
+        SgdEntitySnapshot empty = new SgdEntitySnapshot(file);
+        assertEquals(0, empty.getDeletedCount());
+        empty.report();
+        SgdEntitySnapshot.resolvePending(file, empty.writePending(null), true);
+
+        SgdEntitySnapshot first = new SgdEntitySnapshot(file);
+        assertTrue(first.hasPrevious());
+        assertEquals("", first.getTarget());
+        assertEquals(0, first.getDeletedCount());
+        assertFalse(first.record("genes", 1, 1));
+        assertFalse(first.record("publications", 1, 1));
+        SgdEntitySnapshot.resolvePending(file, first.writePending("yeastmine"), false);
+
+        // everything has gone
+        SgdEntitySnapshot second = new SgdEntitySnapshot(file);
+        assertEquals(2, second.getDeletedCount());
+        File deleted = new File(dir, "deleted");
+        second.writeDeleted(deleted);
+        assertEquals(Arrays.asList("genes\t1", "publications\t1"),
+                Files.readAllLines(deleted.toPath(), StandardCharsets.UTF_8));
+    }
+
+    public void testNoPendingSnapshot() throws Exception {
+        SgdEntitySnapshot.resolvePending(file, "0123456789abcdef", true);
+        SgdEntitySnapshot.resolvePending(file, null, false);
+        assertFalse(file.exists());
+        assertNull(new SgdEntitySnapshot(file).getTarget());
+    }
+
+    public void testNotASnapshot() throws Exception {
+        Files.write(file.toPath(), "genes\t1\n".getBytes(StandardCharsets.UTF_8));
+        try {
+            new SgdEntitySnapshot(file);
+            fail("expected an IOException");
+        } catch (java.io.IOException e) {
+            // expected
+        }
+        Files.write(SgdEntitySnapshot.pendingFile(file).toPath(), new byte[0]);
+        try {
+            SgdEntitySnapshot.resolvePending(file, null, false);
+            fail("expected an IOException");
+        } catch (java.io.IOException e) {
+            // expected
+        }
+    }
+
+    public void testTruncatedSnapshot() throws Exception {
+        SgdEntitySnapshot first = new SgdEntitySnapshot(file);
+        first.record("genes", 1, 1);
+        SgdEntitySnapshot.resolvePending(file, first.writePending("yeastmine"), false);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+        try {
+            new SgdEntitySnapshot(file);
+            fail("expected an IOException");
+        } catch (java.io.IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("truncated"));
+        }
+    }
+
+    public void testUnknownType() throws Exception {
+        try {
+            new SgdEntitySnapshot(file).record("interactions", 1, 1);
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testHashOfEmptyAndUnknownReferences() throws Exception {
+        Map<String, String> tokens = new HashMap<String, String>();
+        Item empty = new Item("3_1", "Gene", "");
+        assertFalse(SgdEntitySnapshot.hash(empty, tokens::get) == 0);
+        assertFalse(SgdEntitySnapshot.hash(empty, tokens::get)
+                == SgdEntitySnapshot.hash(new Item("3_1", "Protein", ""), tokens::get));
+
+        // references without a stable token hash alike, whatever they point to
+        Item a = new Item("3_1", "Gene", "");
+        a.setReference("sequence", "7_1");
+        Item b = new Item("3_2", "Gene", "");
+        b.setReference("sequence", "7_2");
+        assertEquals(SgdEntitySnapshot.hash(a, tokens::get), SgdEntitySnapshot.hash(b, tokens::get));
+        assertFalse(SgdEntitySnapshot.hash(a, tokens::get) == SgdEntitySnapshot.hash(empty, tokens::get));
+    }
+}
@@ -0,0 +1,198 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.InputStream;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+public class SgdFeatureTypesTest extends TestCase
+{
+    // what the equalsIgnoreCase chains in SgdConverter used to create, type and class
+    private static final String[][] GENE_CLASSES = new String[][] {
+        {"ORF", "ORF"},
+        {"pseudogene", "Pseudogene"},
+        {"transposable element gene", "TransposableElementGene"},
+        {"not physically mapped", "NotPhysicallyMapped"},
+        {"long terminal repeat", "LongTerminalRepeat"},
+        {"ARS", "ARS"},
+        {"tRNA gene", "TRNAGene"},
+        {"snoRNA gene", "SnoRNAGene"},
+        {"not in systematic sequence of S288C", "NotInSystematicSequenceOfS288C"},
+        {"LTR retrotransposon", "Retrotransposon"},
+        {"X element combinatorial repeats", "XElementCombinatorialRepeat"},
+        {"X element", "XElement"},
+        {"telomere", "Telomere"},
+        {"telomeric repeat", "TelomericRepeat"},
+        {"rRNA gene", "RRNAGene"},
+        {"Y prime element", "YPrimeElement"},
+        {"centromere", "Centromere"},
+        {"ncRNA gene", "NcRNAGene"},
+        {"snRNA gene", "SnRNAGene"},
+        {"blocked reading frame", "BlockedReadingFrame"},
+        {"origin of replication", "OriginOfReplication"},
+        {"matrix attachment site", "MatrixAttachmentSite"},
+        {"telomerase RNA gene", "TelomeraseRNAGene"},
+        {"gene group", "GeneGroup"},
+        {"silent mating type cassette array", "SilentMatingTypeCassetteArray"},
+        {"mating type region", "MatingTypeRegion"},
+        {"intein encoding region", "InteinEncodingRegion"},
+        {"recombination enhancer", "RecombinationEnhancer"},
+        {"non transcribed region", "NonTranscribedRegion"}
+    };
+
+    private static final String[][] CHILD_CLASSES = new String[][] {
+        {"CDS", "CDS"},
+        {"intron", "Intron"},
+        {"five_prime_UTR_intron", "FivePrimeUTRIntron"},
+        {"plus_1_translational_frameshift", "Plus1TranslationalFrameshift"},
+        {"ARS consensus sequence", "ARSConsensusSequence"},
+        {"binding_site", "BindingSite"},
+        {"insertion", "Insertion"},
+        {"repeat_region", "RepeatRegion"},
+        {"noncoding_exon", "NoncodingExon"},
+        {"external_transcribed_spacer_region", "ExternalTranscribedSpacerRegion"},
+        {"internal_transcribed_spacer_region", "InternalTranscribedSpacerRegion"},
+        {"non_transcribed_region", "NonTranscribedRegion"},
+        {"centromere_DNA_Element_I", "CentromereDNAElementI"},
+        {"centromere_DNA_Element_II", "CentromereDNAElementII"},
+        {"centromere_DNA_Element_III", "CentromereDNAElementIII"},
+        {"intein_encoding_region", "InteinEncodingRegion"},
+        {"ARS_consensus_sequence", "ARSConsensusSequence"},
+        {"Y_prime_element", "YPrimeElement"},
+        {"X_element_combinatorial_repeat", "XElementCombinatorialRepeat"},
+        {"X_element", "XElement"},
+        {"telomeric_repeat", "TelomericRepeat"},
+        {"uORF", "uORF"},
+        {"W_region", "W_region"},
+        {"X_region", "X_region"},
+        {"Y_region", "Y_region"},
+        {"Z1_region", "Z1_region"},
+        {"Z2_region", "Z2_region"}
+    };
+
+    // child type, parent type or null for any parent, reference name
+    private static final String[][] REFERENCES = new String[][] {
+        {"ARS_consensus_sequence", "ARS", "ars"},
+        {"CDS", "blocked reading frame", "blockedreadingframe"},
+        {"CDS", "ORF", "orf"},
+        {"uORF", "ORF", "orf"},
+        {"CDS", "pseudogene", "pseudogene"},
+        {"CDS", "transposable element gene", "transposableelementgene"},
+        {"centromere_DNA_Element_I", null, "centromere"},
+        {"centromere_DNA_Element_II", null, "centromere"},
+        {"centromere_DNA_Element_III", null, "centromere"},
+        {"external_transcribed_spacer_region", null, "ncrna_gene"},
+        {"five_prime_UTR_intron", null, "orf"},
+        {"intein_encoding_region", null, "orf"},
+        {"internal_transcribed_spacer_region", null, "ncrna_gene"},
+        {"intron", "ORF", "orf"},
+        {"intron", "rRNA gene", "rrna_gene"},
+        {"intron", "snoRNA gene", "snorna_gene"},
+        {"intron", "tRNA gene", "trna_gene"},
+        {"non_transcribed_region", null, "ncrna_gene"},
+        {"noncoding_exon", "ncRNA gene", "ncrna_gene"},
+        {"noncoding_exon", "rRNA gene", "ncrna_gene"},
+        {"noncoding_exon", "snoRNA gene", "ncrna_gene"},
+        {"noncoding_exon", "snRNA gene", "ncrna_gene"},
+        {"noncoding_exon", "tRNA gene", "ncrna_gene"},
+        {"plus_1_translational_frameshift", "ORF", "orf"},
+        {"plus_1_translational_frameshift", "pseudogene", "pseudogene"},
+        {"plus_1_translational_frameshift", "transposable element gene", "transposableelementgene"},
+        {"telomeric_repeat", "telomere", "telomere"},
+        {"telomeric_repeat", "ORF", "orf"},
+        {"X_element", "telomere", "telomere"},
+        {"X_element_combinatorial_repeat", "telomere", "telomere"},
+        {"Y_prime_element", "telomere", "telomere"},
+        {"noncoding_exon", "telomerase RNA gene", "ncrna_gene"},
+        {"W_region", "silent mating type cassette array", "matingtyperegion"},
+        {"W_region", "mating type region", "matingtyperegion"},
+        {"Y_region", "mating type region", "matingtyperegion"},
+        {"X_region", "silent mating type cassette array", "matingtyperegion"},
+        {"Y_region", "silent mating type cassette array", "matingtyperegion"},
+        {"X_region", "mating type region", "matingtyperegion"},
+        {"Z1_region", "silent mating type cassette array", "matingtyperegion"},
+        {"Z1_region", "mating type region", "matingtyperegion"},
+        {"Z2_region", "silent mating type cassette array", "matingtyperegion"},
+        {"Z2_region", "mating type region", "matingtyperegion"}
+    };
+
+    private SgdFeatureTypes types;
+
+    public SgdFeatureTypesTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        types = new SgdFeatureTypes(null);
+    }
+
+    public void testSameAsTheOldChains() throws Exception {
+        for (String[] gene : GENE_CLASSES) {
+            assertEquals(gene[0], gene[1], types.getGeneClass(gene[0]));
+        }
+        for (String[] child : CHILD_CLASSES) {
+            assertEquals(child[0], child[1], types.getChildClass(child[0]));
+        }
+        for (String[] reference : REFERENCES) {
+            String parent = reference[1] == null ? "ORF" : reference[1];
+            assertEquals(reference[0] + " " + parent, reference[2],
+                    types.getReferenceName(reference[0], parent));
+        }
+    }
+
+    public void testNothingElseInTheFile() throws Exception {
+        Properties props = new Properties();
+        InputStream in = getClass().getClassLoader().getResourceAsStream(
+                "sgd_feature_types.properties");
+        assertNotNull(in);
+        props.load(in);
+        in.close();
+        int genes = 0, children = 0, references = 0;
+        for (String key : props.stringPropertyNames()) {
+            if (key.startsWith("gene.")) {
+                genes++;
+            } else if (key.startsWith("child.")) {
+                children++;
+            } else {
+                assertTrue(key, key.startsWith("reference."));
+                references++;
+            }
+        }
+        assertEquals(GENE_CLASSES.length, genes);
+        assertEquals(CHILD_CLASSES.length, children);
+        assertEquals(REFERENCES.length, references);
+    }
+
+    public void testTypesMatchedIgnoringCase() throws Exception {
+        assertEquals("TRNAGene", types.getGeneClass("TRNA GENE"));
+        assertEquals("CDS", types.getChildClass("cds"));
+        assertEquals("orf", types.getReferenceName("Cds", "orf"));
+    }
+
+    public void testUnknownTypes() throws Exception {
+        assertNull(types.getGeneClass(null));
+        assertNull(types.getGeneClass("gene of unknown function"));
+        assertNull(types.getChildClass(null));
+        assertNull(types.getChildClass("ORF"));
+        // a parent the child has no rule for, where the old chain gave ""
+        assertNull(types.getReferenceName("CDS", "telomere"));
+        assertNull(types.getReferenceName("CDS", null));
+        assertNull(types.getReferenceName(null, "ORF"));
+        // a rule for any parent
+        assertEquals("centromere", types.getReferenceName("centromere_DNA_Element_I", null));
+        assertEquals("centromere", types.getReferenceName("centromere_DNA_Element_I", "ORF"));
+        types.report();
+    }
+}
@@ -0,0 +1,189 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.DataConverter;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Item;
+
+public class SgdInteractionBuilderTest extends TestCase
+{
+    private static final String[] COLUMNS = new String[] {
+        "biogrid_experimental_system", "annotation_type", "note", "bait_hit", "pmid",
+        "first_author", "reference_id", "sgdid", "title", "citation", "med_abbr", "volume",
+        "page", "year", "issue", "modification"
+    };
+
+    private List<Item> stored;
+    private DataConverter converter;
+    private SgdInteractionBuilder builder;
+    private Item act1;
+    private Item cdc42;
+
+    public SgdInteractionBuilderTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        stored = new ArrayList<Item>();
+        converter = new DataConverter(new MockItemWriter(
+                new HashMap<String, org.intermine.model.fulldata.Item>()),
+                Model.getInstanceByName("genomic")) {
+            // creates the items
+        };
+        AsyncItemStore store = new AsyncItemStore("test", items -> stored.addAll(items));
+        store.setQueueSize(0);
+        final int[] publications = new int[1];
+        builder = new SgdInteractionBuilder(converter, store, new SgdPublicationIndex(
+                new SgdEntityRegistry(), () -> "pub_" + ++publications[0]));
+        act1 = converter.createItem("Gene");
+        cdc42 = converter.createItem("Gene");
+    }
+
+    public void testTwoInteractionsPerAnnotation() throws Exception {
+        RowDecoder row = rows(
+                row("Two-hybrid", "manually curated", "Bait-Hit", "1001", "Smith", "11"),
+                row("Two-hybrid", "manually curated", "Bait-Hit", "1001", "Smith", "11"),
+                row("Affinity Capture-MS", "high-throughput", "Hit-Bait", "1002", "Jones", "12"));
+        List<Item[]> added = new ArrayList<Item[]>();
+        while (row.next()) {
+            added.add(builder.add(row, act1, cdc42, "physical interactions", "modification",
+                    null));
+        }
+        builder.storeExperiments();
+        builder.storeInteractions();
+
+        // the same pair of genes on three rows is still three annotations of two directions
+        List<Item> interactions = ofClass("Interaction");
+        assertEquals(6, interactions.size());
+        for (int i = 0; i < added.size(); i++) {
+            Item[] both = added.get(i);
+            assertEquals(2, both.length);
+            assertEquals(act1.getIdentifier(), both[0].getReference("participant1").getRefId());
+            assertEquals(cdc42.getIdentifier(), both[0].getReference("participant2").getRefId());
+            assertEquals(cdc42.getIdentifier(), both[1].getReference("participant1").getRefId());
+            assertEquals(act1.getIdentifier(), both[1].getReference("participant2").getRefId());
+            for (int j = 0; j < i; j++) {
+                assertNotSame(added.get(j)[0], both[0]);
+                assertNotSame(added.get(j)[1], both[1]);
+            }
+        }
+
+        // one detail per Interaction, pointing at it
+        List<Item> details = ofClass("InteractionDetail");
+        assertEquals(6, details.size());
+        for (int i = 0; i < details.size(); i++) {
+            Item[] both = added.get(i / 2);
+            assertEquals(both[i % 2].getIdentifier(),
+                    details.get(i).getReference("interaction").getRefId());
+        }
+        assertEquals("Bait", details.get(0).getAttribute("role1").getValue());
+        assertEquals("Hit", details.get(1).getAttribute("role1").getValue());
+        assertEquals("Hit", details.get(4).getAttribute("role1").getValue());
+
+        // the experiments and publications are shared by the rows that have them in common
+        assertEquals(2, ofClass("InteractionExperiment").size());
+        assertEquals(details.get(0).getReference("experiment").getRefId(),
+                details.get(2).getReference("experiment").getRefId());
+        assertFalse(details.get(0).getReference("experiment").getRefId().equals(
+                details.get(4).getReference("experiment").getRefId()));
+        assertEquals(2, ofClass("InteractionTerm").size());
+    }
+
+    public void testOneInteractionWhenAGeneInteractsWithItself() throws Exception {
+        RowDecoder row = rows(
+                row("Two-hybrid", "manually curated", "Bait-Hit", "1001", "Smith", "11"));
+        assertTrue(row.next());
+        Item[] added = builder.add(row, act1, act1, "physical interactions", null, null);
+        builder.storeInteractions();
+
+        assertEquals(1, added.length);
+        assertEquals(1, ofClass("Interaction").size());
+        assertEquals(1, ofClass("InteractionDetail").size());
+        assertEquals(act1.getIdentifier(), added[0].getReference("participant1").getRefId());
+        assertEquals(act1.getIdentifier(), added[0].getReference("participant2").getRefId());
+    }
+
+    public void testNoRows() throws Exception {
+        RowDecoder row = rows();
+        assertFalse(row.next());
+        builder.storeExperiments();
+        builder.storeInteractions();
+        // not even the BioGRID data set
+        assertTrue(stored.isEmpty());
+    }
+
+    /**
+     * A row without PubMed id, note, modification or publication columns: nothing is set
+     * from the missing values, and the experiment keeps the publication of its first row.
+     */
+    public void testNullColumns() throws Exception {
+        Object[] bare = new Object[COLUMNS.length];
+        bare[0] = "Two-hybrid";
+        bare[1] = "manually curated";
+        bare[3] = "Bait-Hit";
+        bare[5] = "Smith";
+        bare[6] = "11";
+        Object[] other = bare.clone();
+        other[6] = "12";
+        RowDecoder row = rows(bare, other);
+        while (row.next()) {
+            builder.add(row, act1, cdc42, "genetic interactions", "modification", null);
+        }
+        builder.storeExperiments();
+        builder.storeInteractions();
+
+        for (Item detail : ofClass("InteractionDetail")) {
+            assertNull(detail.getAttribute("note"));
+            assertNull(detail.getAttribute("modification"));
+            assertNull(detail.getAttribute("phenotype"));
+            assertEquals("genetic", detail.getAttribute("relationshipType").getValue());
+        }
+        List<Item> experiments = ofClass("InteractionExperiment");
+        assertEquals(1, experiments.size());
+        assertEquals("Smith-null-Two-hybrid", experiments.get(0).getAttribute("name").getValue());
+        assertEquals("pub_1", experiments.get(0).getReference("publication").getRefId());
+        assertEquals(1, ofClass("DataSet").size());
+        assertEquals(1, ofClass("DataSource").size());
+    }
+
+    private Object[] row(String system, String annotationType, String baitHit, String pmid,
+            String firstAuthor, String referenceId) {
+        return new Object[] {
+            system, annotationType, null, baitHit, pmid, firstAuthor, referenceId,
+            "S0000" + referenceId, "A title", "A citation", "J Biol", "1", "1-10", "2001", "1",
+            null
+        };
+    }
+
+    private RowDecoder rows(Object[]... rows) throws Exception {
+        return new RowDecoder(TestRows.of(COLUMNS, rows));
+    }
+
+    private List<Item> ofClass(String className) {
+        List<Item> items = new ArrayList<Item>();
+        for (Item item : stored) {
+            if (className.equals(item.getClassName())) {
+                items.add(item);
+            }
+        }
+        return items;
+    }
+}
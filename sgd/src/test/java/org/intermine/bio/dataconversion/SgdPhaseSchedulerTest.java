@@ -0,0 +1,230 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class SgdPhaseSchedulerTest extends TestCase
+{
+    private static final String[] LABELS = new String[] {"dbentity_id", "display_name"};
+
+    private final AtomicInteger opened = new AtomicInteger();
+    private final AtomicInteger closed = new AtomicInteger();
+    private final AtomicInteger queried = new AtomicInteger();
+    private final List<String> processed = Collections.synchronizedList(new ArrayList<String>());
+    private final List<String> closedRows = Collections.synchronizedList(new ArrayList<String>());
+
+    public SgdPhaseSchedulerTest(String arg) {
+        super(arg);
+    }
+
+    public void testPrefetchedSameAsOneAtATime() throws Exception {
+        List<String> expected = run(0, Long.MAX_VALUE, null);
+        assertEquals(0, opened.get());
+        for (long budget : new long[] {Long.MAX_VALUE, 2000, 1}) {
+            processed.clear();
+            opened.set(0);
+            closed.set(0);
+            assertEquals(expected, run(3, budget, null));
+            // every prefetched phase had a connection of its own, all given back
+            assertEquals(4, opened.get());
+            assertEquals(4, closed.get());
+        }
+        assertEquals(5 * 200 + 1, expected.size());
+        assertEquals("a 0 a0", expected.get(0));
+        assertEquals("task", expected.get(200));
+    }
+
+    public void testFailureClosesPrefetchedRows() throws Exception {
+        try {
+            run(3, Long.MAX_VALUE, "b");
+            fail("expected the phase to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // c was never processed, its rows and connection are given back all the same
+        assertFalse(processed.contains("c 0 c0"));
+        assertTrue(closedRows.containsAll(Arrays.asList("a", "b")));
+        Thread.sleep(100);
+        assertEquals(opened.get(), closed.get());
+    }
+
+    public void testRequiredPhasesAddedFirst() throws Exception {
+        SgdPhaseScheduler phases = new SgdPhaseScheduler((SgdPhaseScheduler.Connections) null, 0);
+        phases.addPhase("genes", connection -> rows("genes", 1), res -> { });
+        phases.addTask("storeGenes", () -> { }, "genes");
+        try {
+            phases.addPhase("proteins", connection -> rows("proteins", 1), res -> { },
+                    "transcripts");
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            phases.addTask("genes", () -> { });
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertEquals(Arrays.asList("genes"), phases.getRequiredPhases("storeGenes"));
+    }
+
+    /**
+     * A partitioned phase hands out the rows of its partitions in order, on the caller's
+     * thread, whether they are read by several readers or one after another on the caller's
+     * connection; more rows than the readers may queue are read as they are taken.
+     */
+    public void testPartitionsInOrder() throws Exception {
+        final int rows = PartitionedRows.BLOCK_ROWS * (PartitionedRows.QUEUED_BLOCKS + 2) + 7;
+        List<String> expected = new ArrayList<String>();
+        for (int partition = 0; partition < 5; partition++) {
+            for (int i = 0; i < (partition == 3 ? 0 : rows); i++) {
+                expected.add(i + " p" + partition + "." + i);
+            }
+        }
+        for (int poolSize : new int[] {0, 1, 3, 8}) {
+            processed.clear();
+            opened.set(0);
+            closed.set(0);
+            closedRows.clear();
+            assertEquals(expected, runPartitioned(poolSize, rows, -1));
+            // a connection per reader, none if the partitions are read on the caller's
+            assertEquals(Math.min(poolSize, 5), opened.get());
+            assertEquals(opened.get(), closed.get());
+            if (poolSize == 0) {
+                assertEquals(Arrays.asList("p0.", "p1.", "p2.", "p3.", "p4."), closedRows);
+            } else {
+                assertEquals(5, closedRows.size());
+            }
+        }
+    }
+
+    public void testPartitionFails() throws Exception {
+        for (int poolSize : new int[] {0, 3}) {
+            opened.set(0);
+            closed.set(0);
+            closedRows.clear();
+            queried.set(0);
+            try {
+                runPartitioned(poolSize, PartitionedRows.BLOCK_ROWS * 20, 2);
+                fail("expected an SQLException");
+            } catch (SQLException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("no partition 2"));
+            }
+            // every reader stopped, closing its rows and giving its connection back
+            assertEquals(opened.get(), closed.get());
+            assertEquals(queried.get(), closedRows.size());
+            if (poolSize == 0) {
+                assertEquals(Arrays.asList("p0.", "p1."), closedRows);
+            }
+        }
+    }
+
+    /**
+     * A partitioned phase of 5 partitions of a number of rows each, but none in partition 3,
+     * the failing partition failing to run its query.
+     */
+    private List<String> runPartitioned(int poolSize, final int rows, final int failing)
+        throws Exception {
+        SgdPhaseScheduler phases = new SgdPhaseScheduler(() -> connection(), poolSize);
+        final Thread caller = Thread.currentThread();
+        phases.addPartitionedPhase("p", 5, (connection, partition, partitions) -> {
+            assertEquals(5, partitions);
+            if (partition == failing) {
+                throw new SQLException("no partition " + partition);
+            }
+            queried.incrementAndGet();
+            return rows("p" + partition + ".", partition == 3 ? 0 : rows);
+        }, res -> {
+            assertSame(caller, Thread.currentThread());
+            RowDecoder row = new RowDecoder(res);
+            while (row.next()) {
+                processed.add(row.getInt("dbentity_id") + " " + row.getString("display_name"));
+            }
+        });
+        phases.run(null);
+        return new ArrayList<String>(processed);
+    }
+
+    /**
+     * Phases a to e of 200 rows each, with a task after a; a is streamed, the others may be
+     * prefetched.
+     */
+    private List<String> run(int poolSize, long budget, final String failing) throws Exception {
+        SgdPhaseScheduler phases = new SgdPhaseScheduler(() -> connection(), poolSize);
+        phases.setBufferBudget(budget);
+        final Thread caller = Thread.currentThread();
+        String previous = null;
+        for (final String name : new String[] {"a", "b", "c", "d", "e"}) {
+            SgdPhaseScheduler.Handler handler = res -> {
+                assertSame(caller, Thread.currentThread());
+                if (name.equals(failing)) {
+                    throw new IllegalStateException(name + " failed");
+                }
+                RowDecoder row = new RowDecoder(res);
+                while (row.next()) {
+                    processed.add(name + " " + row.getInt("dbentity_id") + " "
+                            + row.getString("display_name"));
+                }
+            };
+            String[] requires = previous == null ? new String[0] : new String[] {previous};
+            if (previous == null) {
+                phases.addStreamingPhase(name, connection -> rows(name, 200), handler);
+                phases.addTask("task", () -> processed.add("task"), name);
+            } else {
+                phases.addPhase(name, connection -> rows(name, 200), handler, requires);
+            }
+            previous = name;
+        }
+        phases.run(null);
+        return new ArrayList<String>(processed);
+    }
+
+    private BufferedRows rows(final String name, final int count) {
+        Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[] {String.valueOf(i), name + i};
+        }
+        final BufferedRows res = TestRows.of(LABELS, rows);
+        // note when the rows are closed
+        return BufferedRows.stream(LABELS, res.getTypes(), new BufferedRows.RowSource() {
+            public Object[] next() throws java.sql.SQLException {
+                return res.next() ? new Object[] {res.getString(1), res.getString(2)} : null;
+            }
+
+            public void close() {
+                closedRows.add(name);
+            }
+        });
+    }
+
+    private Connection connection() {
+        opened.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        closed.incrementAndGet();
+                    } else if ("getAutoCommit".equals(method.getName())) {
+                        return Boolean.TRUE;
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,205 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Array;
+import java.sql.Types;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.lang.StringUtils;
+
+public class SgdPhenotypeDecoderTest extends TestCase
+{
+    private static final String[] CLASSES = {"chemical", "Chemical", "temperature", "treatment",
+        "media", null};
+    private static final String[] NAMES = {"rapamycin", "heat", "YPD", "glucose, 2%", "", null};
+    private static final String[] VALUES = {"0.2", "37", "", null};
+    private static final String[] UNITS = {"%", "ug/ml", "C", "", null};
+
+    private SgdPhenotypeDecoder decoder;
+
+    public SgdPhenotypeDecoderTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        decoder = new SgdPhenotypeDecoder();
+    }
+
+    public void testSameConditionsAsBefore() throws Exception {
+        Random random = new Random(19);
+        for (int i = 0; i < 50000; i++) {
+            int length = random.nextInt(4);
+            String[] classes = new String[length];
+            String[] names = new String[length];
+            String[] values = new String[length];
+            String[] units = new String[length];
+            for (int j = 0; j < length; j++) {
+                classes[j] = pick(random, CLASSES);
+                names[j] = pick(random, NAMES);
+                values[j] = pick(random, VALUES);
+                units[j] = pick(random, UNITS);
+            }
+            String[] expected = oldCondition(classes, names, values, units).split("_");
+            SgdPhenotypeDecoder.Condition condition = decoder.getCondition(array(classes),
+                    array(names), array(values), array(units));
+            assertEquals(expected[0], condition.getChemical());
+            assertEquals(expected[1], condition.getCondition());
+        }
+    }
+
+    public void testUnderscoreKept() throws Exception {
+        SgdPhenotypeDecoder.Condition condition = decoder.getCondition(
+                array(new String[] {"chemical", "treatment"}),
+                array(new String[] {"sodium_chloride", "UV_light"}),
+                array(new String[] {"1", null}), array(new String[] {"M", null}));
+        assertEquals("1 M sodium_chloride", condition.getChemical());
+        assertEquals("Treatment:  UV_light", condition.getCondition());
+    }
+
+    /**
+     * Rows with no condition arrays, arrays shorter than the classes, an empty class and
+     * numbers instead of strings.
+     */
+    public void testNullAndRaggedArrays() throws Exception {
+        SgdPhenotypeDecoder.Condition none = decoder.getCondition(null, null, null, null);
+        assertEquals(" ", none.getChemical());
+        assertEquals(" ", none.getCondition());
+        assertSame(none, decoder.getCondition(null, null, null, null));
+        assertSame(none, decoder.getCondition(array(new String[0]), null, null, null));
+
+        SgdPhenotypeDecoder.Condition ragged = decoder.getCondition(
+                array(new String[] {"chemical", "temperature"}), array(new String[] {"rapamycin"}),
+                null, null);
+        assertEquals("rapamycin", ragged.getChemical());
+        assertEquals(" ", ragged.getCondition());
+
+        SgdPhenotypeDecoder.Condition unnamed = decoder.getCondition(array(new String[] {""}),
+                array(new String[] {"YPD"}), null, null);
+        assertEquals(":  YPD", unnamed.getCondition());
+
+        SgdPhenotypeDecoder.Condition numbers = decoder.getCondition(
+                array(new String[] {"temperature"}), array(new String[] {"heat"}),
+                new BufferedRows.ArrayValue("{37}", Types.INTEGER, new Integer[] {37}),
+                array(new String[] {"C"}));
+        assertEquals(" Temperature: heat (37C) ", numbers.getCondition());
+    }
+
+    public void testSameObservablesAndStrainsAsBefore() throws Exception {
+        String[] phenotypes = {"viable", "resistance to chemicals: increased",
+            " protein activity : decreased ", "a: b: c", "a::b"};
+        for (String phenotype : phenotypes) {
+            for (int i = 0; i < 2; i++) {
+                SgdPhenotypeDecoder.Observable observable = decoder.getObservable(phenotype);
+                String[] expected = oldObservable(phenotype);
+                assertEquals(phenotype, expected[0], observable.getObservable());
+                assertEquals(phenotype, expected[1], observable.getQualifier());
+            }
+        }
+        // the old split threw on this
+        assertEquals("cell shape", decoder.getObservable("cell shape:").getObservable());
+        assertEquals("", decoder.getObservable("cell shape:").getQualifier());
+
+        String[] strains = {"S288C", "strain_background_S288C", "a_b", "a_b_c_d", "", null};
+        for (String strain : strains) {
+            assertEquals(strain, oldStrain(strain), decoder.getStrain(strain));
+        }
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private static Array array(String[] values) {
+        return new BufferedRows.ArrayValue("{}", Types.VARCHAR, values);
+    }
+
+    /**
+     * SgdConverter.getPhenotypeCondition() as it was before the decoder.
+     */
+    private static String oldCondition(String[] condClass, String[] condName, String[] condValue,
+            String[] condUnits) {
+        String chemical = " ";
+        String condition = " ";
+        for (int i = 0; i < condClass.length; i++) {
+            String cc = condClass[i];
+            String cn = condName[i];
+            String cv = condValue[i];
+            String cu = condUnits[i];
+            if (cc != null && cn != null) {
+                cc = Character.toUpperCase(cc.charAt(0)) + cc.substring(1);
+                if (cc.equals("Chemical")) {
+                    if (cv != null) chemical += cv;
+                    if (cu != null) {
+                        if (cu.equals("%")) {
+                            chemical += cu;
+                        } else {
+                            chemical += " " + cu;
+                        }
+                    }
+                    if (cn != null) chemical += " " + cn + ", ";
+                } else if (cc.equals("Temperature")) {
+                    if (cc != null) condition += cc + ": ";
+                    if (cn != null) condition += cn;
+                    if (cv != null && cu != null) {
+                        condition += " (" + cv + cu + ") ";
+                    } else {
+                        if (cv != null && !cv.isEmpty()) condition += " (" + cv + ") ";
+                    }
+                } else {
+                    if (cc != null) condition += cc + ": ";
+                    if (cv != null) condition += cv;
+                    if (cu != null) condition += cu;
+                    if (cn != null) condition += " " + cn + ", ";
+                }
+            }
+        }
+        String newChemical;
+        String newCondition;
+        if (condition.indexOf(",") > 0) {
+            newCondition = condition.trim().replaceAll(",$", "");
+        } else {
+            newCondition = condition;
+        }
+        if (chemical.indexOf(",") > 0) {
+            newChemical = chemical.trim().replaceAll(",$", "");
+        } else {
+            newChemical = chemical;
+        }
+        return newChemical + "_" + newCondition;
+    }
+
+    private static String[] oldObservable(String qualifierObservable) {
+        String qualifier = "";
+        String observable = "";
+        if (qualifierObservable.contains(":")) {
+            String[] t = qualifierObservable.split(":");
+            qualifier = t[1].trim();
+            observable = t[0].trim();
+        } else {
+            observable = qualifierObservable.trim();
+        }
+        return new String[] {observable, qualifier};
+    }
+
+    private static String oldStrain(String strainBackground) {
+        String strain = "";
+        if (StringUtils.isNotEmpty(strainBackground)) {
+            String[] q = strainBackground.split("_");
+            strain = q.length == 3 ? q[2] : "Other";
+        }
+        return strain;
+    }
+}
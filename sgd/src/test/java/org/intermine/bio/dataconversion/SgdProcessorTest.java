@@ -0,0 +1,123 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.mockobjects.sql.MockMultiRowResultSet;
+
+public class SgdProcessorTest extends TestCase
+{
+    private List<String> calls;
+    private boolean autoCommit;
+    private SgdProcessor processor;
+
+    public SgdProcessorTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        calls = new ArrayList<String>();
+        autoCommit = true;
+        processor = new SgdProcessor();
+    }
+
+    public void testStreamedThroughACursor() throws Exception {
+        Connection connection = connection();
+        ResultSet res = processor.getChromosomalFeatureResults(connection);
+        assertEquals(Arrays.asList("setAutoCommit false", "prepareStatement forward-only read-only",
+                "setFetchSize 1000", "executeQuery", "closeOnCompletion"), calls);
+        assertFalse(autoCommit);
+        res.close();
+        calls.clear();
+        processor.release(connection);
+        assertEquals(Arrays.asList("rollback", "setAutoCommit true"), calls);
+        assertTrue(autoCommit);
+    }
+
+    public void testNotStreamed() throws Exception {
+        processor.setFetchSize(0);
+        Connection connection = connection();
+        processor.getChromosomalFeatureResults(connection).close();
+        assertEquals(Arrays.asList("prepareStatement forward-only read-only", "setFetchSize 0",
+                "executeQuery", "closeOnCompletion"), calls);
+        assertTrue(autoCommit);
+        calls.clear();
+        processor.release(connection);
+        assertTrue(calls.isEmpty());
+    }
+
+    public void testFetchSize() throws Exception {
+        processor.setFetchSize(-5);
+        assertEquals(0, processor.getFetchSize());
+        processor.setFetchSize(50);
+        Connection connection = connection();
+        processor.getAlleleResults(connection).close();
+        assertTrue(calls.contains("setFetchSize 50"));
+        // a second query on the same connection stays in the transaction
+        calls.clear();
+        processor.getAlleleResults(connection).close();
+        assertFalse(calls.contains("setAutoCommit false"));
+    }
+
+    /**
+     * A connection that records the calls made on it and its statements.
+     */
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("getAutoCommit".equals(name)) {
+                        return Boolean.valueOf(autoCommit);
+                    } else if ("setAutoCommit".equals(name)) {
+                        autoCommit = ((Boolean) args[0]).booleanValue();
+                        calls.add(name + " " + autoCommit);
+                    } else if ("prepareStatement".equals(name)) {
+                        assertEquals(ResultSet.TYPE_FORWARD_ONLY, args[1]);
+                        assertEquals(ResultSet.CONCUR_READ_ONLY, args[2]);
+                        calls.add(name + " forward-only read-only");
+                        return statement();
+                    } else {
+                        calls.add(name);
+                    }
+                    return null;
+                });
+    }
+
+    private PreparedStatement statement() {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("setFetchSize".equals(name)) {
+                        calls.add(name + " " + args[0]);
+                    } else if ("executeQuery".equals(name)) {
+                        calls.add(name);
+                        MockMultiRowResultSet res = new MockMultiRowResultSet();
+                        res.setupRows(new Object[0][]);
+                        res.setupColumnNames(new String[0]);
+                        return res;
+                    } else {
+                        calls.add(name);
+                    }
+                    return null;
+                });
+    }
+}
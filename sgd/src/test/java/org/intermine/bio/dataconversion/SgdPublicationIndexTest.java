@@ -0,0 +1,161 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+
+public class SgdPublicationIndexTest extends TestCase
+{
+    private SgdPublicationIndex index;
+
+    public SgdPublicationIndexTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        final int[] n = new int[1];
+        index = new SgdPublicationIndex(new SgdEntityRegistry(), () -> "5_" + ++n[0]);
+    }
+
+    public void testMergedByPubMedId() throws Exception {
+        SgdPublicationIndex.Publication pub = index.get("100", "12345");
+        pub.set("title", "Actin").set("year", "");
+        // another reference number for the same paper
+        assertSame(pub, index.get("200", "12345"));
+        assertSame(pub, index.find("200"));
+        assertSame(pub, index.get("200", null));
+        // no PubMed id to go on
+        SgdPublicationIndex.Publication other = index.get("300", null);
+        assertNotSame(pub, other);
+        assertNull(index.find("400"));
+        pub.set("title", "Not actin").set("year", "1999");
+        assertEquals(2, index.size());
+
+        List<Item> items = new ArrayList<Item>(index.items());
+        assertEquals(2, items.size());
+        assertEquals(pub.getIdentifier(), items.get(0).getIdentifier());
+        assertEquals("Publication", items.get(0).getClassName());
+        assertEquals("Actin", items.get(0).getAttribute("title").getValue());
+        assertEquals("1999", items.get(0).getAttribute("year").getValue());
+        assertEquals("12345", items.get(0).getAttribute("pubMedId").getValue());
+        assertNull(items.get(1).getAttribute("pubMedId"));
+        try {
+            pub.set("authors", "Smith");
+            fail("expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testConflictsCounted() throws Exception {
+        SgdPublicationIndex.Publication pub = index.get("100", "12345").set("title", "Actin");
+        index.get("100", "12345").set("title", "Actin");
+        assertEquals(0, index.getConflicts());
+        // the same paper under another reference number, with another title and PubMed id
+        index.get("200", "12345").set("title", "Actin!").set("pubMedId", "54321")
+            .set("year", "");
+        assertEquals(2, index.getConflicts());
+        index.report();
+        Item item = index.items().iterator().next();
+        assertEquals(pub.getIdentifier(), item.getIdentifier());
+        assertEquals("Actin", item.getAttribute("title").getValue());
+        assertEquals("12345", item.getAttribute("pubMedId").getValue());
+        // nothing to merge on
+        index.get("300", null).set("title", null);
+        assertEquals(2, index.size());
+        assertEquals(2, index.getConflicts());
+    }
+
+    public void testEmpty() throws Exception {
+        assertEquals(0, index.size());
+        assertTrue(index.items().isEmpty());
+        assertFalse(index.items().iterator().hasNext());
+        assertNull(index.find("100"));
+        assertNull(index.find(null));
+        index.report();
+        assertEquals(0, index.getConflicts());
+    }
+
+    public void testNullReferenceNumber() throws Exception {
+        // rows without a reference number share one publication, as they shared a map key
+        SgdPublicationIndex.Publication pub = index.get(null, "");
+        assertSame(pub, index.get(null, null));
+        assertSame(pub, index.find(null));
+        assertEquals(1, index.size());
+        assertNull(index.items().iterator().next().getAttribute("pubMedId"));
+    }
+
+    /**
+     * Random lookups against the same rules written out with plain maps: reference numbers,
+     * then PubMed ids, the first value of an attribute winning.
+     */
+    public void testSameAsMaps() throws Exception {
+        Map<String, Map<String, String>> byReference = new LinkedHashMap<String, Map<String, String>>();
+        Map<String, Map<String, String>> aliases = new HashMap<String, Map<String, String>>();
+        Map<String, Map<String, String>> byPubMedId = new HashMap<String, Map<String, String>>();
+        Random random = new Random(3);
+        for (int i = 0; i < 20000; i++) {
+            String referenceNo = String.valueOf(random.nextInt(3000));
+            String pubMedId = random.nextInt(4) == 0 ? null : String.valueOf(random.nextInt(2000));
+            String field = SgdPublicationIndex.FIELDS[1 + random.nextInt(
+                    SgdPublicationIndex.FIELDS.length - 1)];
+            String value = random.nextInt(5) == 0 ? "" : field + random.nextInt(3);
+
+            Map<String, String> expected = byReference.get(referenceNo);
+            if (expected == null) {
+                expected = aliases.get(referenceNo);
+            }
+            if (expected == null && pubMedId != null) {
+                expected = byPubMedId.get(pubMedId);
+                if (expected != null) {
+                    aliases.put(referenceNo, expected);
+                }
+            }
+            if (expected == null) {
+                expected = new LinkedHashMap<String, String>();
+                byReference.put(referenceNo, expected);
+            }
+            for (String[] pair : new String[][] {{"pubMedId", pubMedId}, {field, value}}) {
+                if (pair[1] != null && !pair[1].isEmpty() && !expected.containsKey(pair[0])) {
+                    expected.put(pair[0], pair[1]);
+                    if ("pubMedId".equals(pair[0]) && !byPubMedId.containsKey(pair[1])) {
+                        byPubMedId.put(pair[1], expected);
+                    }
+                }
+            }
+
+            index.get(referenceNo, pubMedId).set(field, value);
+        }
+
+        List<Item> items = new ArrayList<Item>(index.items());
+        assertEquals(byReference.size(), items.size());
+        int i = 0;
+        for (Map<String, String> expected : byReference.values()) {
+            Map<String, String> actual = new HashMap<String, String>();
+            for (Attribute attribute : items.get(i++).getAttributes()) {
+                actual.put(attribute.getName(), attribute.getValue());
+            }
+            assertEquals(expected, actual);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SgdQueryCatalogTest extends TestCase
+{
+    private SgdQueryCatalog catalog;
+    private List<String> calls;
+
+    public SgdQueryCatalogTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        catalog = new SgdQueryCatalog();
+        calls = new ArrayList<String>();
+    }
+
+    public void testRowsCountedAndExplained() throws Exception {
+        catalog.setExplain(" alleles , ,");
+        Connection connection = connection(3);
+        ResultSet res = catalog.execute(connection, "alleles", "select 1", 100);
+        int rows = 0;
+        while (res.next()) {
+            assertEquals("row" + rows, res.getString(1));
+            rows++;
+        }
+        res.close();
+        assertEquals(3, rows);
+        assertEquals(Arrays.asList("EXPLAIN (ANALYZE, BUFFERS) select 1", "setFetchSize 100",
+                "executeQuery select 1"), calls);
+
+        // not explained, and closed before the last row
+        calls.clear();
+        res = catalog.execute(connection, "pubAll", "select 2", 0);
+        res.next();
+        res.close();
+        assertEquals(Arrays.asList("setFetchSize 0", "executeQuery select 2"), calls);
+
+        String report = report();
+        String[] lines = report.split("\n");
+        assertEquals("SGD query timings (ms):", lines[0]);
+        List<String> alleles = fields(report, "alleles");
+        assertEquals("3", alleles.get(1));
+        assertEquals("1", alleles.get(alleles.size() - 2));
+        assertEquals("12", alleles.get(alleles.size() - 1));
+        List<String> pubAll = fields(report, "pubAll");
+        assertEquals("1", pubAll.get(1));
+        assertEquals(Arrays.asList("-", "-"), pubAll.subList(pubAll.size() - 2, pubAll.size()));
+    }
+
+    public void testExplainAll() throws Exception {
+        catalog.setExplain("All");
+        catalog.execute(connection(0), "pubAll", "select 2", 0).close();
+        assertEquals("EXPLAIN (ANALYZE, BUFFERS) select 2", calls.get(0));
+        List<String> pubAll = fields(report(), "pubAll");
+        assertEquals("0", pubAll.get(1));
+        // no first row
+        assertEquals("-", pubAll.get(4));
+
+        // explain turned off again
+        calls.clear();
+        catalog.setExplain("");
+        catalog.execute(connection(0), "pubAll", "select 2", 0).close();
+        assertEquals("setFetchSize 0", calls.get(0));
+    }
+
+    public void testFailedQueryClosesStatement() throws Exception {
+        try {
+            catalog.execute(connection(-1), "alleles", "select 1", 0);
+            fail("expected an SQLException");
+        } catch (SQLException e) {
+            // expected
+        }
+        assertEquals(Arrays.asList("setFetchSize 0", "executeQuery select 1", "close"), calls);
+    }
+
+    public void testNothingToReport() throws Exception {
+        assertEquals("", report());
+    }
+
+    private String report() {
+        PrintStream out = System.out;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(bytes, true));
+        try {
+            catalog.report();
+        } finally {
+            System.setOut(out);
+        }
+        return bytes.toString().replace("\r", "");
+    }
+
+    /**
+     * @return the columns of the report line of a query
+     */
+    private static List<String> fields(String report, String name) {
+        for (String line : report.split("\n")) {
+            List<String> fields = Arrays.asList(line.trim().split(" +"));
+            if (name.equals(fields.get(0))) {
+                return fields;
+            }
+        }
+        fail("no line for " + name + " in " + report);
+        return null;
+    }
+
+    /**
+     * A connection whose queries return rows rows, or fail if rows is negative; EXPLAIN
+     * returns a plan with planning and execution times.
+     */
+    private Connection connection(final int rows) {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if ("prepareStatement".equals(method.getName())) {
+                        return statement(PreparedStatement.class, (String) args[0], rows);
+                    } else if ("createStatement".equals(method.getName())) {
+                        return statement(Statement.class, null, rows);
+                    }
+                    return null;
+                });
+    }
+
+    private Object statement(Class<?> type, final String sql, final int rows) {
+        return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {type},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("executeQuery".equals(name) && args != null) {
+                        calls.add((String) args[0]);
+                        return results("Seq Scan on allele", "Planning Time: 1.4 ms",
+                                "Execution Time: 12.3 ms");
+                    } else if ("executeQuery".equals(name)) {
+                        calls.add(name + " " + sql);
+                        if (rows < 0) {
+                            throw new SQLException("relation does not exist");
+                        }
+                        String[] values = new String[rows];
+                        for (int i = 0; i < rows; i++) {
+                            values[i] = "row" + i;
+                        }
+                        return results(values);
+                    } else if ("setFetchSize".equals(name)) {
+                        calls.add(name + " " + args[0]);
+                    } else if ("close".equals(name) && sql != null) {
+                        calls.add(name);
+                    }
+                    return null;
+                });
+    }
+
+    private ResultSet results(final String... values) {
+        final int[] row = new int[] {-1};
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("next".equals(name)) {
+                        return Boolean.valueOf(++row[0] < values.length);
+                    } else if ("getString".equals(name)) {
+                        return values[row[0]];
+                    }
+                    return null;
+                });
+    }
+}
@@ -0,0 +1,104 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.sql.SQLException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class SgdResidueBufferTest extends TestCase
+{
+    private SgdResidueBuffer buffer;
+
+    public SgdResidueBufferTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        buffer = new SgdResidueBuffer();
+    }
+
+    public void testSameAsGetString() throws Exception {
+        // longer than the first buffer and than a chunk, then shorter again in the same buffer
+        Random random = new Random(3);
+        String[] residues = new String[] {residues(random, 200000), "ACGT", residues(random, 9000),
+            residues(random, 8192), "N"};
+        RowDecoder row = rows((Object[]) residues);
+        for (String expected : residues) {
+            assertTrue(row.next());
+            assertTrue(buffer.read(row, "residues"));
+            assertFalse(buffer.isNull());
+            assertEquals(expected.length(), buffer.length());
+            assertEquals(expected, buffer.residues());
+            assertEquals(md5(expected), buffer.digest());
+            // asking again doesn't redo or change it
+            assertEquals(md5(expected), buffer.digest());
+        }
+        assertFalse(row.next());
+    }
+
+    public void testNullAndEmpty() throws Exception {
+        RowDecoder row = rows("ACGT", null, "");
+        row.next();
+        buffer.read(row, "residues");
+        row.next();
+        assertFalse(buffer.read(row, "residues"));
+        assertTrue(buffer.isNull());
+        assertEquals(0, buffer.length());
+        assertNull(buffer.digest());
+        assertNull(buffer.residues());
+        row.next();
+        assertTrue(buffer.read(row, "residues"));
+        assertFalse(buffer.isNull());
+        assertEquals(0, buffer.length());
+        assertEquals("", buffer.residues());
+        assertEquals("d41d8cd98f00b204e9800998ecf8427e", buffer.digest());
+    }
+
+    public void testNotResidues() throws Exception {
+        RowDecoder row = rows("AC\u0394T");
+        row.next();
+        try {
+            buffer.read(row, "residues");
+            fail("expected an SQLException");
+        } catch (SQLException e) {
+            // expected
+        }
+    }
+
+    private static RowDecoder rows(Object... residues) throws SQLException {
+        Object[][] rows = new Object[residues.length][];
+        for (int i = 0; i < residues.length; i++) {
+            rows[i] = new Object[] {String.valueOf(i), residues[i]};
+        }
+        return new RowDecoder(TestRows.of(new String[] {"dbentity_id", "residues"}, rows));
+    }
+
+    private static String residues(Random random, int length) {
+        char[] residues = new char[length];
+        for (int i = 0; i < length; i++) {
+            residues[i] = "ACGT".charAt(random.nextInt(4));
+        }
+        return new String(residues);
+    }
+
+    private static String md5(String residues) throws Exception {
+        byte[] digest = MessageDigest.getInstance("MD5").digest(
+                residues.getBytes(StandardCharsets.ISO_8859_1));
+        return String.format("%032x", new BigInteger(1, digest));
+    }
+}
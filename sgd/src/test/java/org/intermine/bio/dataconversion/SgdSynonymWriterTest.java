@@ -0,0 +1,124 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.DataConverter;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Item;
+
+public class SgdSynonymWriterTest extends TestCase
+{
+    private List<Item> stored;
+    private SgdSynonymWriter writer;
+
+    public SgdSynonymWriterTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        stored = new ArrayList<Item>();
+        DataConverter converter = new DataConverter(new MockItemWriter(
+                new HashMap<String, org.intermine.model.fulldata.Item>()),
+                Model.getInstanceByName("genomic")) {
+            // creates the items
+        };
+        AsyncItemStore store = new AsyncItemStore("test", items -> stored.addAll(items));
+        store.setQueueSize(0);
+        writer = new SgdSynonymWriter(converter, store, 100);
+    }
+
+    public void testSameSynonymsAsASetOfPairs() throws Exception {
+        // what a set of subject and value would keep, in the order first seen
+        Set<String> expected = new LinkedHashSet<String>();
+        Random random = new Random(7);
+        int calls = 0;
+        for (int i = 0; i < 50000; i++) {
+            String subject = random.nextInt(10) == 0 ? "gene" + random.nextInt(50)
+                    : "3_" + random.nextInt(3000);
+            String value = random.nextInt(2) == 0 ? "YAL" + random.nextInt(20) + "W"
+                    : String.valueOf(random.nextInt(20));
+            String id = writer.write(subject, value);
+            calls++;
+            assertEquals(expected.add(subject + "\t" + value), id != null);
+        }
+        assertTrue(stored.size() < expected.size());
+        writer.close();
+
+        List<String> actual = new ArrayList<String>();
+        for (Item syn : stored) {
+            assertEquals("Synonym", syn.getClassName());
+            actual.add(syn.getReference("subject").getRefId() + "\t"
+                    + syn.getAttribute("value").getValue());
+        }
+        assertEquals(new ArrayList<String>(expected), actual);
+        assertEquals(expected.size(), writer.getWritten());
+        assertEquals(calls - expected.size(), writer.getDuplicates());
+    }
+
+    public void testEmptyValues() throws Exception {
+        assertNull(writer.write("3_1", null));
+        assertNull(writer.write("3_1", ""));
+        assertNotNull(writer.write("3_1", "ACT1"));
+        assertNotNull(writer.write("3_2", "ACT1"));
+        assertNotNull(writer.write("3_1", "act1"));
+        writer.flush();
+        assertEquals(3, stored.size());
+        assertEquals(0, writer.getDuplicates());
+    }
+
+    public void testNothingWritten() throws Exception {
+        writer.flush();
+        writer.close();
+        assertTrue(stored.isEmpty());
+        assertEquals(0, writer.getWritten());
+        assertEquals(0, writer.getDuplicates());
+    }
+
+    public void testStoredInBatches() throws Exception {
+        for (int i = 0; i < 99; i++) {
+            writer.write("3_" + i, "ACT1");
+        }
+        assertTrue(stored.isEmpty());
+        writer.write("3_99", "ACT1");
+        assertEquals(100, stored.size());
+        writer.write("3_100", "ACT1");
+        assertEquals(100, stored.size());
+        writer.close();
+        assertEquals(101, stored.size());
+    }
+
+    public void testOddSubjectsAndValues() throws Exception {
+        // a subject that isn't a createItem() identifier, and one that is
+        assertNotNull(writer.write("gene", "ACT1"));
+        assertNotNull(writer.write("3_1", "ACT1"));
+        assertNull(writer.write("gene", "ACT1"));
+        // only null and "" are skipped as empty
+        assertNotNull(writer.write("3_1", " "));
+        assertNull(writer.write("3_1", " "));
+        assertNotNull(writer.write("3_1", "ACT1 "));
+        writer.close();
+        assertEquals(4, stored.size());
+        assertEquals(" ", stored.get(2).getAttribute("value").getValue());
+        assertEquals(2, writer.getDuplicates());
+    }
+}
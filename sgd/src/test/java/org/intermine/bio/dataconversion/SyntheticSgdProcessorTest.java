@@ -0,0 +1,76 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.util.HashMap;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Item;
+
+public class SyntheticSgdProcessorTest extends TestCase
+{
+    private static final int GENES = 90;
+
+    public SyntheticSgdProcessorTest(String arg) {
+        super(arg);
+    }
+
+    public void testGenesAndLocations() throws Exception {
+        runPhase("genes", GENES);
+        // every gene has a feature type the converter knows, or its location would fail
+        List<Item> items = runPhase("geneLocations", GENES);
+        // one location each, no two genes sharing a sequence
+        assertEquals(GENES, TestSgdConversion.ofClass(items, "Location").size());
+        assertEquals(GENES + TestSgdConversion.ofClass(items, "Chromosome").size(),
+                TestSgdConversion.ofClass(items, "Sequence").size());
+    }
+
+    public void testPublications() throws Exception {
+        runPhase("allPubs", GENES * SyntheticSgdProcessor.PUBS_PER_GENE
+                * SyntheticSgdProcessor.TOPICS_PER_PUB);
+        runPhase("pubsWithFeatures", GENES * SyntheticSgdProcessor.PUB_LINKS_PER_GENE);
+    }
+
+    public void testPhysicalInteractions() throws Exception {
+        List<Item> items = runPhase("physicalInteractions",
+                GENES * SyntheticSgdProcessor.INTERACTIONS_PER_GENE);
+        assertFalse(TestSgdConversion.ofClass(items, "InteractionDetail").isEmpty());
+    }
+
+    /**
+     * Run a phase the way SgdConverterBenchmark does, after the phases it needs, and check
+     * that every row was read.
+     *
+     * @return the items stored by the phase and the ones before it
+     */
+    private List<Item> runPhase(String phase, long rows) throws Exception {
+        MockItemWriter writer = new MockItemWriter(
+                new HashMap<String, org.intermine.model.fulldata.Item>());
+        SgdConverter converter = new SgdConverter(null, Model.getInstanceByName("genomic"),
+                writer);
+        converter.setProcessor(new SyntheticSgdProcessor(GENES, 5000));
+        SgdPhaseScheduler phases = new SgdPhaseScheduler((SgdPhaseScheduler.Connections) null, 0);
+        converter.addPhases(phases);
+        for (String required : phases.getRequiredPhases(phase)) {
+            phases.getHandler(required).process(phases.getQuery(required).execute(null));
+        }
+        QueryRows res = phases.getQuery(phase).execute(null);
+        assertEquals(rows, SyntheticResultSet.rowCount(((ResultSetRows) res).getResultSet()));
+        phases.getHandler(phase).process(res);
+        assertFalse(res.next());
+        converter.closeItemStore();
+        return TestSgdConversion.items(writer);
+    }
+}
@@ -0,0 +1,64 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.sql.Types;
+
+/**
+ * Query rows made up in a test, as the strings a driver would return.  A column with an
+ * ArrayValue in any row is an array column.
+ */
+public class TestRows
+{
+    private TestRows() {
+        // static methods only
+    }
+
+    public static BufferedRows of(String[] labels, final Object[]... rows) {
+        int[] types = new int[labels.length];
+        for (int i = 0; i < labels.length; i++) {
+            types[i] = Types.VARCHAR;
+            for (Object[] row : rows) {
+                if (row[i] instanceof BufferedRows.ArrayValue) {
+                    types[i] = Types.ARRAY;
+                }
+            }
+        }
+        return BufferedRows.stream(labels, types, new BufferedRows.RowSource() {
+            private int next;
+
+            public Object[] next() {
+                if (next == rows.length) {
+                    return null;
+                }
+                Object[] row = rows[next++].clone();
+                for (int i = 0; i < row.length; i++) {
+                    if (row[i] != null && !(row[i] instanceof BufferedRows.ArrayValue)) {
+                        row[i] = row[i].toString();
+                    }
+                }
+                return row;
+            }
+
+            public void close() {
+                // nothing to close
+            }
+        });
+    }
+
+    public static BufferedRows.ArrayValue array(String... elements) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < elements.length; i++) {
+            sb.append(i == 0 ? "" : ",").append(elements[i] == null ? "NULL" : elements[i]);
+        }
+        return new BufferedRows.ArrayValue(sb.append('}').toString(), Types.VARCHAR, elements);
+    }
+}
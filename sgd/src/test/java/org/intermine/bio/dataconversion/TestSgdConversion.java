@@ -0,0 +1,197 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2010 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ItemHelper;
+import org.intermine.xml.full.Reference;
+import org.intermine.xml.full.ReferenceList;
+
+/**
+ * Runs every phase of an SgdConverter over rows given for some of SgdProcessor's queries, by
+ * the name the processor runs them under; the other queries return no rows.
+ */
+public class TestSgdConversion
+{
+    private final Map<String, String[]> columns = new HashMap<String, String[]>();
+    private final Map<String, Object[][]> rows = new HashMap<String, Object[][]>();
+    private final List<String> queries = new ArrayList<String>();
+
+    /**
+     * Set the rows of a query.
+     */
+    public TestSgdConversion add(String query, String[] labels, Object[]... values) {
+        columns.put(query, labels);
+        rows.put(query, values);
+        return this;
+    }
+
+    /**
+     * @return the names of the queries run, in the order they were run
+     */
+    public List<String> getQueries() {
+        return queries;
+    }
+
+    /**
+     * Set up a converter on the rows, for the caller to set options on.  Items changed after
+     * they were stored fail the conversion.
+     */
+    public SgdConverter converter(MockItemWriter writer) throws Exception {
+        SgdConverter converter = new SgdConverter(null, Model.getInstanceByName("genomic"),
+                writer);
+        converter.setProcessor(new SgdProcessor() {
+            @Override
+            protected ResultSet executeQuery(Connection connection, String name, String query)
+                throws SQLException {
+                synchronized (queries) {
+                    queries.add(name);
+                }
+                if (!columns.containsKey(name)) {
+                    return resultSet(TestRows.of(new String[0]));
+                }
+                return resultSet(TestRows.of(columns.get(name), rows.get(name)));
+            }
+        });
+        // fail if an item is changed after it has been queued to be stored
+        converter.setCheckStoredItems("true");
+        return converter;
+    }
+
+    /**
+     * Run the phases of a converter, prefetching up to poolSize queries.
+     *
+     * @return the items stored
+     */
+    public static List<Item> run(SgdConverter converter, MockItemWriter writer, int poolSize)
+        throws Exception {
+        SgdPhaseScheduler phases = new SgdPhaseScheduler(() -> connection(), poolSize);
+        converter.addPhases(phases);
+        phases.run(null);
+        return items(writer);
+    }
+
+    /**
+     * @return the items stored so far
+     */
+    public static List<Item> items(MockItemWriter writer) {
+        List<Item> items = new ArrayList<Item>();
+        for (org.intermine.model.fulldata.Item item : writer.getItems()) {
+            items.add(ItemHelper.convert(item));
+        }
+        return items;
+    }
+
+    /**
+     * @return the items with their fields in a form that can be compared, collections as the
+     * sets of items they are once loaded
+     */
+    public static TreeSet<String> render(List<Item> items) {
+        TreeSet<String> rendered = new TreeSet<String>();
+        for (Item item : items) {
+            List<String> fields = new ArrayList<String>();
+            for (Attribute attribute : item.getAttributes()) {
+                fields.add(attribute.getName() + "=" + attribute.getValue());
+            }
+            for (Reference reference : item.getReferences()) {
+                fields.add(reference.getName() + "->" + reference.getRefId());
+            }
+            for (ReferenceList collection : item.getCollections()) {
+                fields.add(collection.getName() + "->"
+                        + new TreeSet<String>(collection.getRefIds()));
+            }
+            Collections.sort(fields);
+            rendered.add(item.getIdentifier() + " " + item.getClassName() + " " + fields);
+        }
+        return rendered;
+    }
+
+    /**
+     * @return the items of a class
+     */
+    public static List<Item> ofClass(List<Item> items, String className) {
+        List<Item> found = new ArrayList<Item>();
+        for (Item item : items) {
+            if (className.equals(item.getClassName())) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    private static Connection connection() {
+        return (Connection) Proxy.newProxyInstance(TestSgdConversion.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if ("getAutoCommit".equals(method.getName())) {
+                        return Boolean.TRUE;
+                    }
+                    return null;
+                });
+    }
+
+    /**
+     * A result set over test rows, through the QueryRows methods; a column may be given by
+     * label or index.
+     */
+    private static ResultSet resultSet(final QueryRows rows) {
+        return (ResultSet) Proxy.newProxyInstance(TestSgdConversion.class.getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    if ("getMetaData".equals(method.getName())) {
+                        return metaData(rows.getLabels(), rows.getTypes());
+                    }
+                    Class<?>[] types = method.getParameterTypes();
+                    Object[] values = args;
+                    if (types.length == 1 && types[0] == String.class
+                            && !"findColumn".equals(method.getName())) {
+                        types = new Class<?>[] {int.class};
+                        values = new Object[] {Integer.valueOf(rows.findColumn((String) args[0]))};
+                    }
+                    Method delegate = QueryRows.class.getMethod(method.getName(), types);
+                    try {
+                        return delegate.invoke(rows, values);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static ResultSetMetaData metaData(final String[] labels, final int[] types) {
+        return (ResultSetMetaData) Proxy.newProxyInstance(
+                TestSgdConversion.class.getClassLoader(), new Class<?>[] {ResultSetMetaData.class},
+                (proxy, method, args) -> {
+                    if ("getColumnCount".equals(method.getName())) {
+                        return Integer.valueOf(labels.length);
+                    } else if ("getColumnLabel".equals(method.getName())) {
+                        return labels[((Integer) args[0]).intValue() - 1];
+                    } else if ("getColumnType".equals(method.getName())) {
+                        return Integer.valueOf(types[((Integer) args[0]).intValue() - 1]);
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -12,7 +12,10 @@ package org.intermine.bio.dataconversion;
 
 import java.io.Reader;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
 import org.intermine.dataconversion.ItemWriter;
 import org.intermine.metadata.Model;
 import org.intermine.xml.full.Item;
@@ -32,13 +35,20 @@ public class SpellExpressionFileConverter extends BioFileConverter {
     protected static final Logger LOG = Logger.getLogger(SpellExpressionFileConverter.class);
     private static final String DATASET_TITLE = "Spell Expression Data Dumped from MySQL";
     private static final String DATA_SOURCE_NAME = "Spell";
-    private Map<String, Item> genes = new HashMap();
+    // the identifiers of the genes, each stored as soon as it is made
+    private Map<String, String> genes = new HashMap<String, String>();
     private Map<String, Item> datasets = new HashMap();
     private Map<String, Item> conditions = new HashMap();
+    // the conditions of each dataset, when they aren't streamed
+    private Map<String, Map<String, Item>> conditionsByFile = new HashMap<String, Map<String, Item>>();
+    private Set<String> finishedFiles = new HashSet<String>();
     private Map<String, Item> tags = new HashMap();
     private ArrayList<String> filenames = new ArrayList();
     private static final String TAXON_ID = "4932";
     private Item organism;
+    private boolean scoreItems = true;
+    private boolean streaming;
+    private final AsyncItemStore itemStore = new AsyncItemStore("spell-expression-file", this::storeNow);
 
     /**
      * Constructor
@@ -57,13 +67,125 @@ public class SpellExpressionFileConverter extends BioFileConverter {
         store(organism);
     }
 
+    /**
+     * Store an item straight away, once the items queued before it have been written.
+     *
+     * @param item the item
+     * @return the id of the stored item
+     * @throws ObjectStoreException if the item, or one queued before it, can't be stored
+     */
+    @Override
+    public Integer store(Item item) throws ObjectStoreException {
+        if (itemStore != null) {
+            // itemStore is null while the super constructor stores the data source and data set
+            itemStore.flush();
+        }
+        return super.store(item);
+    }
+
+    /**
+     * Queue an item to be stored on the writer thread, for the many items whose stored id
+     * isn't needed.  A change made to the item afterwards isn't written.
+     *
+     * @param item a finished item
+     * @throws ObjectStoreException if storing an earlier item failed
+     */
+    private void storeAsync(Item item) throws ObjectStoreException {
+        itemStore.store(item);
+    }
+
+    private void storeNow(List<Item> items) throws ObjectStoreException {
+        for (Item item : items) {
+            super.store(item);
+        }
+    }
+
+    /**
+     * Set how many items may wait for the writer thread before the converter has to wait for
+     * it.  0 stores every item straight away, on the converter's thread.
+     *
+     * @param storeQueueSize number of items
+     */
+    public void setStoreQueueSize(String storeQueueSize) {
+        itemStore.setQueueSize(Integer.parseInt(storeQueueSize.trim()));
+    }
+
+    /**
+     * Set how many items the writer thread takes off the queue at a time.
+     *
+     * @param storeBatchSize number of items
+     */
+    public void setStoreBatchSize(String storeBatchSize) {
+        itemStore.setBatchSize(Integer.parseInt(storeBatchSize.trim()));
+    }
+
+    /**
+     * If true, fail the conversion if an item is changed after it was queued to be stored,
+     * which would otherwise be silently lost.  For debugging: every stored item is kept.
+     *
+     * @param checkStoredItems "true" to check
+     */
+    public void setCheckStoredItems(String checkStoredItems) {
+        itemStore.setCheckStored(Boolean.parseBoolean(checkStoredItems.trim()));
+    }
+
+    /**
+     * If false, the scores are only stored in the ExpressionProfile of each gene and dataset.
+     * By default every score is also stored as an ExpressionScore in the gene's
+     * expressionScores, as it always was, so queries and templates on ExpressionScore keep
+     * working.  There is one of those per gene per condition, millions of them; a mine whose
+     * queries have moved to ExpressionProfile can set this to false to load without them.
+     *
+     * @param scoreItems "false" to store ExpressionProfiles only
+     */
+    public void setScoreItems(String scoreItems) {
+        this.scoreItems = Boolean.parseBoolean(scoreItems.trim());
+    }
+
+    /**
+     * If true, the rows of each dataset are expected to be together, as they are in an export
+     * sorted by file name, and each dataset is stored and forgotten, with its conditions, as
+     * soon as its last row has been read.  Memory then only has to hold the largest dataset
+     * rather than all of them, besides the tags and an identifier per gene.  A dataset that
+     * turns up again after its rows have ended, in the same file or a later one, fails the
+     * conversion.
+     *
+     * @param streaming "true" to stream the datasets
+     */
+    public void setStreaming(String streaming) {
+        this.streaming = Boolean.parseBoolean(streaming.trim());
+    }
+
     /**
      * {@inheritDoc}
      */
     public void process(Reader reader) throws Exception {
-        processDataSets(reader); //process each file
-        storeDataSets();
-        storeGenes();
+        try {
+            processDataSets(reader); //process each file
+            // fail with the file whose items couldn't be written, not the next one
+            itemStore.flush();
+        } catch (Exception e) {
+            itemStore.stop();
+            throw e;
+        }
+    }
+
+    /**
+     * Store the datasets that are still held, once every file has been read: without
+     * streaming, a dataset's rows may be spread over more than one file.
+     *
+     * @throws Exception if an item can't be stored
+     */
+    @Override
+    public void close() throws Exception {
+        try {
+            storeDataSets();
+        } catch (Exception e) {
+            itemStore.stop();
+            throw e;
+        }
+        itemStore.close();
+        super.close();
     }
 
 
@@ -71,6 +193,9 @@ public class SpellExpressionFileConverter extends BioFileConverter {
 
         int count = 0;
         String prevFileNo = "";
+        SpellRowDecoder spell = new SpellRowDecoder();
+        Item[] conditionItems = null;
+        Item conditionsDataSet = null;
         System.out.println("Processing DataSet No. ...");
 
         Iterator<?> tsvIter;
@@ -84,8 +209,8 @@ public class SpellExpressionFileConverter extends BioFileConverter {
 
             String[] line = (String[]) tsvIter.next();
 
-            if (line.length < 17) {
-                LOG.error("Couldn't process line. Expected 17 cols, but was " + line.length);
+            if (line.length < 18) {
+                LOG.error("Couldn't process line. Expected 18 cols, but was " + line.length);
                 continue;
             }
             count++;
@@ -109,44 +234,96 @@ public class SpellExpressionFileConverter extends BioFileConverter {
             String tags = line[16].trim();
             String dataTable = line[17].trim();
 
-            prevFileNo = fileName;
-            if(!fileName.equalsIgnoreCase(prevFileNo)) {
-                conditions = new HashMap();  //reset conditions for each dataset - filename change
+            if (!fileName.equals(prevFileNo)) {
+                //reset conditions for each dataset - filename change
+                if (streaming) {
+                    finishDataSet(prevFileNo);
+                    if (finishedFiles.contains(fileName)) {
+                        throw new BuildException("the rows of " + fileName + " aren't together in "
+                                + getCurrentFile() + ", it can't be streamed");
+                    }
+                } else {
+                    conditions = conditionsByFile.get(fileName);
+                    if (conditions == null) {
+                        conditions = new HashMap<String, Item>();
+                        conditionsByFile.put(fileName, conditions);
+                    }
+                }
+                prevFileNo = fileName;
             }
             //System.out.println("gene: "+geneName + "    condDesc: "+ condDesc + " data_table: " + dataTable);
 
             // create gene first time you see it
-            Item gene = getGene(geneName);
+            String gene = getGene(geneName);
 
             // create dataset first time you see it
             Item dataset = getDataSet(pubmedID, fileName, geoID, platformID,
                     channelCount, datasetName, description, numCond, numGenes,
                     author, allAuthors, title, journal, pubYear, tags);
 
+            // the conditions are the same on every row of the dataset, look them up once
+            if (spell.setConditions(condDesc) || dataset != conditionsDataSet) {
+                conditionItems = getConditions(dataset, spell);
+                conditionsDataSet = dataset;
+            }
+
             // add score to gene - using the condition and dataset info
-            getConditionScore(dataset, condDesc, dataTable, geneName);
+            getConditionScore(dataset, conditionItems, spell, dataTable, gene);
 
         }
+        if (streaming) {
+            finishDataSet(prevFileNo);
+        }
+    }
+
+    /**
+     * Store a streamed dataset once its last row has been read, and forget it and its
+     * conditions.
+     *
+     * @param fileName the file name of the dataset, "" before the first
+     * @throws ObjectStoreException
+     */
+    private void finishDataSet(String fileName) throws ObjectStoreException {
+        Item dataset = datasets.remove(fileName);
+        if (dataset == null) {
+            return;
+        }
+        try {
+            storeAsync(dataset);
+        } catch (ObjectStoreException e) {
+            throw new ObjectStoreException(e);
+        }
+        finishedFiles.add(fileName);
+        conditions = new HashMap<String, Item>();
     }
 
     /**
+     * Store a gene the first time it is seen.  Its scores and profiles refer to it, so nothing
+     * is added to it later and only its identifier is kept.
+     *
      * @param geneName
-     * @return
+     * @return the identifier of the Gene
      * @throws ObjectStoreException
      */
 
-    private Item getGene(String geneName) throws ObjectStoreException {
+    private String getGene(String geneName) throws ObjectStoreException {
 
-        Item item = genes.get(geneName);
+        String identifier = genes.get(geneName);
 
-        if (item == null) {
-            item = createItem("Gene");
+        if (identifier == null) {
+            Item item = createItem("Gene");
             item.setAttribute("secondaryIdentifier", geneName);
             item.setReference("organism", organism.getIdentifier());
-            genes.put(geneName, item);
+            try {
+                storeAsync(item);
+            } catch (ObjectStoreException e) {
+                throw new ObjectStoreException(e);
+            }
+            identifier = item.getIdentifier();
+            genes.put(geneName, identifier);
         }
 
-        return item;
+        return identifier;
     }
 
     /**
@@ -211,7 +388,7 @@ public class SpellExpressionFileConverter extends BioFileConverter {
                         dtag = createItem("ExpressionDataSetTag");
                         dtag.setAttribute("tagname", kw);
                         try {
-                            store(dtag);
+                            storeAsync(dtag);
                         } catch (ObjectStoreException e) {
                             throw new ObjectStoreException(e);
                         }
@@ -228,7 +405,7 @@ public class SpellExpressionFileConverter extends BioFileConverter {
                     dtag = createItem("ExpressionDataSetTag");
                     dtag.setAttribute("tagname", kwtags);
                     try {
-                        store(dtag);
+                        storeAsync(dtag);
                     } catch (ObjectStoreException e) {
                         throw new ObjectStoreException(e);
                     }
@@ -245,26 +422,20 @@ public class SpellExpressionFileConverter extends BioFileConverter {
     }
 
     /**
+     * Find or make the conditions of the dataset, in the order of its scores.
+     *
      * @param dataSet
-     * @param condDesc
-     * @param dataTable
-     * @param geneName
+     * @param spell the decoder holding the dataset's cond_descs
+     * @return the ExpressionConditions
      * @throws ObjectStoreException
      */
-    private void getConditionScore(Item dataSet, String condDesc,
-                                   String dataTable, String geneName) throws ObjectStoreException {
-
-        Item gene = genes.get(geneName);
-        String newconds = condDesc.replaceAll("~", "|");
+    private Item[] getConditions(Item dataSet, SpellRowDecoder spell)
+            throws ObjectStoreException {
 
-        String[] expconditions = newconds.split("\\|");
-        String[] scores = dataTable.split(",");
+        Item[] items = new Item[spell.getConditionCount()];
+        for (int i = 0; i < items.length; i++) {
 
-
-        for (int i = 0; i < scores.length; i++) {
-
-            String cond = expconditions[i];
-            String condscore = scores[i];
+            String cond = spell.getCondition(i);
 
             Item dcond = conditions.get(cond);
             if (dcond == null) {
@@ -274,46 +445,69 @@ public class SpellExpressionFileConverter extends BioFileConverter {
                 dcond.setAttribute("ordernumber", String.valueOf(i));
                 dcond.setReference("expressiondataset", dataSet.getIdentifier());
                 try {
-                    store(dcond);
+                    storeAsync(dcond);
                 } catch (ObjectStoreException e) {
                     throw new ObjectStoreException(e);
                 }
                 conditions.put(cond, dcond);
+                // the conditions are per dataset, so this is once per condition even when the
+                // rows of the dataset aren't together
+                dataSet.addToCollection("expressionconditions", dcond.getIdentifier());
             }
 
-            dataSet.addToCollection("expressionconditions", dcond.getIdentifier());
-
-            // tie up the score with gene
-            Item score = createItem("ExpressionScore");
-            if (!condscore.equals("NA")) {
-                score.setAttribute("score", condscore);
-            }
-            score.setReference("expressioncondition", dcond.getIdentifier());
-
-            try {
-                store(score);
-            } catch (ObjectStoreException e) {
-                throw new ObjectStoreException(e);
-            }
-
-            gene.addToCollection("expressionScores", score.getIdentifier());
-
+            items[i] = dcond;
         }
-
+        return items;
     }
 
     /**
+     * @param dataSet
+     * @param conditionItems the conditions of the dataset, from getConditions()
+     * @param spell the decoder, reused from row to row
+     * @param dataTable
+     * @param gene the identifier of the Gene
      * @throws ObjectStoreException
      */
+    private void getConditionScore(Item dataSet, Item[] conditionItems, SpellRowDecoder spell,
+            String dataTable, String gene) throws ObjectStoreException {
 
-    private void storeGenes() throws ObjectStoreException {
-        for (Item gene : genes.values()) {
-            try {
-                store(gene);
-            } catch (ObjectStoreException e) {
-                throw new ObjectStoreException(e);
+        int count = spell.setScores(dataTable);
+        if (count > conditionItems.length) {
+            throw new IllegalArgumentException(count + " scores for " + conditionItems.length
+                    + " conditions in " + dataSet.getAttribute("fileName").getValue());
+        }
+
+        if (scoreItems) {
+            for (int i = 0; i < count; i++) {
+
+                // tie up the score with gene
+                Item score = createItem("ExpressionScore");
+                String condscore = spell.getScoreText(i);
+                if (condscore != null) {
+                    score.setAttribute("score", condscore);
+                }
+                score.setReference("expressioncondition", conditionItems[i].getIdentifier());
+                // the gene's expressionScores is the reverse of this
+                score.setReference("gene", gene);
+
+                try {
+                    storeAsync(score);
+                } catch (ObjectStoreException e) {
+                    throw new ObjectStoreException(e);
+                }
             }
         }
+
+        // all the gene's scores in the dataset in one item
+        Item expression = createItem("ExpressionProfile");
+        expression.setAttribute("scores", ExpressionVector.encode(spell.getScores(), count));
+        expression.setReference("gene", gene);
+        expression.setReference("expressiondataset", dataSet.getIdentifier());
+        try {
+            storeAsync(expression);
+        } catch (ObjectStoreException e) {
+            throw new ObjectStoreException(e);
+        }
     }
 
     /**
@@ -323,7 +517,7 @@ public class SpellExpressionFileConverter extends BioFileConverter {
     private void storeDataSets() throws ObjectStoreException {
         for (Item dataset : datasets.values()) {
             try {
-                store(dataset);
+                storeAsync(dataset);
             } catch (ObjectStoreException e) {
                 throw new ObjectStoreException(e);
             }
@@ -10,8 +10,32 @@ package org.intermine.bio.dataconversion;
  *
  */
 
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.tools.ant.BuildException;
+import org.intermine.dataconversion.ItemsTestCase;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ItemHelper;
+import org.intermine.xml.full.Reference;
+import org.intermine.xml.full.ReferenceList;
+
 public class SpellExpressionFileConverterTest extends ItemsTestCase
 {
+    private static final String[] FILES = {"GSE1.pcl", "GSE2.pcl", "GSE3.pcl", "GSE4.pcl"};
+    private static final String[] GENES = {"YAL001C", "YAL002W", "YAL003W"};
+    // every dataset has conditions of the same names
+    private static final String CONDITIONS = "0 min|10 min~20 min";
+
     Model model = Model.getInstanceByName("genomic");
     SpellExpressionFileConverter converter;
     MockItemWriter itemWriter;
@@ -22,13 +46,188 @@ public class SpellExpressionFileConverterTest extends ItemsTestCase
 
     public void setUp() throws Exception {
         super.setUp();
-        // if you need to do some preprocessing and set up, do that here
+        itemWriter = new MockItemWriter(new HashMap<String, org.intermine.model.fulldata.Item>());
+        converter = new SpellExpressionFileConverter(itemWriter, model);
+    }
+
+    public void testStreamingSameAsWholeFile() throws Exception {
+        String export = export(false);
+        List<Item> whole = process(export, false);
+        setUp();
+        List<Item> streamed = process(export, true);
+        assertEquals(render(whole), render(streamed));
+        checkConditions(whole);
+    }
+
+    public void testConditionsPerDatasetWhenInterleaved() throws Exception {
+        List<Item> items = process(export(true), false);
+        checkConditions(items);
+        assertEquals(FILES.length * GENES.length, ofClass(items, "ExpressionProfile").size());
+    }
+
+    public void testScoreItems() throws Exception {
+        List<Item> items = process(export(false), false);
+        assertEquals(FILES.length * GENES.length * 3, ofClass(items, "ExpressionScore").size());
+        setUp();
+        converter.setScoreItems("false");
+        items = process(export(false), false);
+        assertTrue(ofClass(items, "ExpressionScore").isEmpty());
+        assertEquals(FILES.length * GENES.length, ofClass(items, "ExpressionProfile").size());
+    }
+
+    /**
+     * Genes and datasets are stored once however many files there are, and a dataset's rows
+     * may go on in the next file unless streaming.
+     */
+    public void testSeveralFiles() throws Exception {
+        String[] lines = export(false).split("(?<=\n)");
+        StringBuilder first = new StringBuilder();
+        StringBuilder second = new StringBuilder();
+        for (int i = 0; i < lines.length; i++) {
+            // the second dataset is split between the files
+            (i < GENES.length + 1 ? first : second).append(lines[i]);
+        }
+        converter.process(new StringReader(first.toString()));
+        converter.process(new StringReader(second.toString()));
+        converter.close();
+        List<Item> items = items();
+        checkConditions(items);
+        assertEquals(GENES.length, ofClass(items, "Gene").size());
+        Set<String> genes = new HashSet<String>();
+        for (Item gene : ofClass(items, "Gene")) {
+            genes.add(gene.getIdentifier());
+        }
+        List<Item> scores = ofClass(items, "ExpressionScore");
+        assertEquals(FILES.length * GENES.length * 3, scores.size());
+        for (Item score : scores) {
+            assertTrue(genes.contains(score.getReference("gene").getRefId()));
+        }
+
+        setUp();
+        converter.setStreaming("true");
+        converter.process(new StringReader(first.toString()));
+        try {
+            converter.process(new StringReader(second.toString()));
+            fail("expected a BuildException");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+
+    public void testEmptyInput() throws Exception {
+        for (boolean streaming : new boolean[] {false, true}) {
+            setUp();
+            List<Item> items = process("", streaming);
+            assertEquals(1, items.size());
+            assertEquals("Organism", items.get(0).getClassName());
+        }
+    }
+
+    public void testShortLinesSkipped() throws Exception {
+        String export = export(false);
+        // no data_table
+        String shortLine = export.substring(0, export.indexOf('\n'));
+        shortLine = shortLine.substring(0, shortLine.lastIndexOf('\t')) + "\n";
+        List<Item> items = process(shortLine + export + "YAL001C\t1\n", false);
+        checkConditions(items);
+        assertEquals(FILES.length * GENES.length, ofClass(items, "ExpressionProfile").size());
+    }
+
+    public void testStreamingRejectsInterleaved() throws Exception {
+        try {
+            process(export(true), true);
+            fail("expected a BuildException");
+        } catch (BuildException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Each dataset has its own three conditions, in its collection once each.
+     */
+    private void checkConditions(List<Item> items) {
+        List<Item> datasets = ofClass(items, "ExpressionDataSet");
+        assertEquals(FILES.length, datasets.size());
+        List<Item> conditions = ofClass(items, "ExpressionCondition");
+        assertEquals(FILES.length * 3, conditions.size());
+        Map<String, Item> byId = new HashMap<String, Item>();
+        for (Item condition : conditions) {
+            byId.put(condition.getIdentifier(), condition);
+        }
+        for (Item dataset : datasets) {
+            List<String> refIds = dataset.getCollection("expressionconditions").getRefIds();
+            assertEquals(3, refIds.size());
+            assertEquals(3, new HashSet<String>(refIds).size());
+            for (int i = 0; i < refIds.size(); i++) {
+                Item condition = byId.get(refIds.get(i));
+                assertEquals(dataset.getIdentifier(),
+                        condition.getReference("expressiondataset").getRefId());
+                assertEquals(String.valueOf(i), condition.getAttribute("ordernumber").getValue());
+            }
+        }
+    }
+
+    private List<Item> process(String export, boolean streaming) throws Exception {
+        converter.setStreaming(String.valueOf(streaming));
+        converter.process(new StringReader(export));
+        converter.close();
+        return items();
+    }
+
+    private List<Item> items() {
+        List<Item> items = new ArrayList<Item>();
+        for (org.intermine.model.fulldata.Item item : itemWriter.getItems()) {
+            items.add(ItemHelper.convert(item));
+        }
+        return items;
+    }
+
+    /**
+     * A SPELL export of every gene in every dataset, grouped by dataset or not.
+     */
+    private static String export(boolean interleaved) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < FILES.length * GENES.length; i++) {
+            int file = interleaved ? i % FILES.length : i / GENES.length;
+            int gene = interleaved ? i / FILES.length : i % GENES.length;
+            String[] row = {GENES[gene], "1000" + file, FILES[file], "GSE" + file, "GPL90", "2",
+                "dataset " + file, "a time course", "3", "3", "Smith", "Smith J, Jones K",
+                "A title", "Yeast", "2001", CONDITIONS, "stress|heat",
+                gene + ".5,-1.25," + (gene == 1 ? "NA" : "0.0" + file)};
+            for (int j = 0; j < row.length; j++) {
+                sb.append(j == 0 ? "" : "\t").append(row[j]);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static List<Item> ofClass(List<Item> items, String className) {
+        List<Item> found = new ArrayList<Item>();
+        for (Item item : items) {
+            if (className.equals(item.getClassName())) {
+                found.add(item);
+            }
+        }
+        return found;
     }
 
-    public void testProcess() throws Exception {
-        // read in a test file (place in test/resources so it's on the classpath)
-        // process using your converter
-        // compare results to expected results
-        // look at the other intermine unit tests for help!
+    private static Set<String> render(List<Item> items) {
+        Set<String> rendered = new HashSet<String>();
+        for (Item item : items) {
+            List<String> fields = new ArrayList<String>();
+            for (Attribute attribute : item.getAttributes()) {
+                fields.add(attribute.getName() + "=" + attribute.getValue());
+            }
+            for (Reference reference : item.getReferences()) {
+                fields.add(reference.getName() + "->" + reference.getRefId());
+            }
+            for (ReferenceList collection : item.getCollections()) {
+                fields.add(collection.getName() + "->" + collection.getRefIds());
+            }
+            Collections.sort(fields);
+            rendered.add(item.getIdentifier() + " " + item.getClassName() + " " + fields);
+        }
+        return rendered;
     }
 }
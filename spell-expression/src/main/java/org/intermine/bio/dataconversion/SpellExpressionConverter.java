@@ -18,13 +18,21 @@ import org.intermine.sql.Database;
 import org.intermine.xml.full.Item;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 
@@ -34,16 +42,26 @@ public class SpellExpressionConverter extends BioDBConverter {
 	// 
 	private static final String DATASET_TITLE = "Spell Expression Data";
 	private static final String DATA_SOURCE_NAME = "SPELL";
-	private static final SpellExpressionProcessor PROCESSOR = new SpellExpressionProcessor();
-	private Map<String, Item> genes = new HashMap();
-	private Map<String, Item> datasets = new HashMap();
+	private SpellExpressionProcessor processor = new SpellExpressionProcessor();
+	// only used on the converter's thread, the dataset workers just read rows
+	private Map<String, Item> genes = new HashMap<String, Item>();
+	private Map<String, Item> datasets = new HashMap<String, Item>();
 	//private Map<String, String> uniqconds = new HashMap()
-	private Map<String, Item> conditions = new HashMap();
-	private Map<String, Item> tags = new HashMap();
+	private Map<String, Item> tags = new HashMap<String, Item>();
+	// the dataset rows are being added to and its conditions
+	private Item conditionsDataSet;
+	private Map<String, Item> conditions;
+	private Item[] conditionItems;
+	private final SpellRowDecoder conditionNames = new SpellRowDecoder();
 	private ArrayList<String> filenames = new ArrayList();
 	private static final String TAXON_ID = "4932";
 	private Item organism;
 	private String licence;
+	private int dataSetPoolSize = 4;
+	private int dataSetCount;
+	private boolean scoreItems = true;
+	private final ConverterMetrics metrics;
+	private final AsyncItemStore itemStore = new AsyncItemStore("spell-expression", this::storeNow);
 
 	/**
 	 * Construct a new SpellExpressionConverter.
@@ -58,7 +76,13 @@ public class SpellExpressionConverter extends BioDBConverter {
 	 */
 	public SpellExpressionConverter(Database database, Model model,
 			ItemWriter writer) throws ObjectStoreException {
-		super(database, model, writer, DATA_SOURCE_NAME, DATASET_TITLE);
+		this(database, model, writer, new ConverterMetrics("spell-expression"));
+	}
+
+	private SpellExpressionConverter(Database database, Model model, ItemWriter writer,
+			ConverterMetrics metrics) throws ObjectStoreException {
+		super(database, model, metrics.track(writer), DATA_SOURCE_NAME, DATASET_TITLE);
+		this.metrics = metrics;
 		organism = createItem("Organism");
 		organism.setAttribute("taxonId", TAXON_ID);
 		organism.setAttribute("genus", "Saccharomyces");
@@ -68,18 +92,174 @@ public class SpellExpressionConverter extends BioDBConverter {
 		store(organism);
 	}
 
+	/**
+	 * Set the file the metrics of each phase are written to, e.g. spell-expression-metrics.tsv.
+	 * By default, or if it is "none", no file is written.
+	 *
+	 * @param metricsFile name of the file
+	 */
+	public void setMetricsFile(String metricsFile) {
+		metrics.setFile(metricsFile.trim());
+	}
+
+	/**
+	 * Set how often, in seconds, a running phase logs how far it has got.
+	 *
+	 * @param metricsInterval interval in seconds
+	 */
+	public void setMetricsInterval(String metricsInterval) {
+		metrics.setInterval(Long.parseLong(metricsInterval.trim()));
+	}
+
+	/**
+	 * Set how many datasets are read at once, each by its own thread on its own connection.
+	 * 0 reads them all with one query on the converter's connection.
+	 *
+	 * @param dataSetPoolSize number of threads
+	 */
+	public void setDataSetPoolSize(String dataSetPoolSize) {
+		this.dataSetPoolSize = Integer.parseInt(dataSetPoolSize.trim());
+	}
+
+	/**
+	 * If false, the scores are only stored in the ExpressionProfile of each gene and dataset.
+	 * By default every score is also stored as an ExpressionScore in the gene's
+	 * expressionScores, as it always was, so queries and templates on ExpressionScore keep
+	 * working.  There is one of those per gene per condition, millions of them; a mine whose
+	 * queries have moved to ExpressionProfile can set this to false to load without them.
+	 *
+	 * @param scoreItems "false" to store ExpressionProfiles only
+	 */
+	public void setScoreItems(String scoreItems) {
+		this.scoreItems = Boolean.parseBoolean(scoreItems.trim());
+	}
+
+	/**
+	 * Use a different processor to run the queries, e.g. one returning test data.
+	 *
+	 * @param processor the processor
+	 */
+	void setProcessor(SpellExpressionProcessor processor) {
+		this.processor = processor;
+	}
+
+	/**
+	 * Set how many rows are fetched at a time when streaming the expression rows.  0 reads
+	 * each dataset's rows, or every row if dataSetPoolSize is 0, into memory in one go.
+	 *
+	 * @param fetchSize rows per round trip to the database
+	 */
+	public void setFetchSize(String fetchSize) {
+		processor.setFetchSize(Integer.parseInt(fetchSize.trim()));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Item createItem(String className) {
+		if (metrics != null) {
+			metrics.itemCreated();
+		}
+		return super.createItem(className);
+	}
+
+	/**
+	 * Store an item straight away, once the items queued before it have been written.
+	 *
+	 * @param item the item
+	 * @return the id of the stored item
+	 * @throws ObjectStoreException if the item, or one queued before it, can't be stored
+	 */
+	@Override
+	public Integer store(Item item) throws ObjectStoreException {
+		if (itemStore != null) {
+			// itemStore is null while the super constructor stores the data source and data set
+			itemStore.flush();
+		}
+		return super.store(item);
+	}
+
+	/**
+	 * Queue an item to be stored on the writer thread, for the many items whose stored id
+	 * isn't needed.  A change made to the item afterwards isn't written.
+	 *
+	 * @param item a finished item
+	 * @throws ObjectStoreException if storing an earlier item failed
+	 */
+	private void storeAsync(Item item) throws ObjectStoreException {
+		itemStore.store(item);
+	}
+
+	private void storeNow(List<Item> items) throws ObjectStoreException {
+		for (Item item : items) {
+			super.store(item);
+		}
+	}
+
+	/**
+	 * Set how many items may wait for the writer thread before the converter has to wait for
+	 * it.  0 stores every item straight away, on the converter's thread.
+	 *
+	 * @param storeQueueSize number of items
+	 */
+	public void setStoreQueueSize(String storeQueueSize) {
+		itemStore.setQueueSize(Integer.parseInt(storeQueueSize.trim()));
+	}
+
+	/**
+	 * Set how many items the writer thread takes off the queue at a time.
+	 *
+	 * @param storeBatchSize number of items
+	 */
+	public void setStoreBatchSize(String storeBatchSize) {
+		itemStore.setBatchSize(Integer.parseInt(storeBatchSize.trim()));
+	}
+
+	/**
+	 * If true, fail the conversion if an item is changed after it was queued to be stored,
+	 * which would otherwise be silently lost.  For debugging: every stored item is kept.
+	 *
+	 * @param checkStoredItems "true" to check
+	 */
+	public void setCheckStoredItems(String checkStoredItems) {
+		itemStore.setCheckStored(Boolean.parseBoolean(checkStoredItems.trim()));
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
 	public void process() throws Exception {
-		Connection connection = getDatabase().getConnection();
-		processDataSetFiles(connection); //get all dataset file names
-		processDataSets(connection); //process each file
-		storeDataSets();
-		//storeDataSetTags();
-		storeGenes();
+		Connection connection = getConnection();
+		try {
+			metrics.startPhase("dataSetFiles");
+			processDataSetFiles(connection); //get all dataset file names
+			metrics.startPhase("dataSets");
+			processDataSets(connection); //process each file
+			metrics.startPhase("storeDataSets");
+			storeDataSets();
+			//storeDataSetTags();
+			metrics.startPhase("storeGenes");
+			storeGenes();
+			metrics.startPhase("storeQueuedItems");
+			itemStore.close();
+		} finally {
+			itemStore.stop();
+			metrics.close();
+			processor.release(connection);
+		}
 	}
 	
+	/**
+	 * Open a connection to the SPELL database, for the converter or for a dataset worker.
+	 *
+	 * @return the connection
+	 * @throws SQLException if there is a database problem
+	 */
+	protected Connection getConnection() throws SQLException {
+		return getDatabase().getConnection();
+	}
+
 	/**
 	 * 
 	 * @param connection
@@ -88,70 +268,192 @@ public class SpellExpressionConverter extends BioDBConverter {
 	 */
 	private void processDataSetFiles(Connection connection) throws SQLException, ObjectStoreException {
 
-		ResultSet res = PROCESSOR.getDataSetFileNames(connection);
+		ResultSet res = processor.getDataSetFileNames(connection);
 		System.out.println("Processing DataSet Files...");
 
-		while (res.next()) {
-			String fileName = res.getString("filename");
-			filenames.add(fileName);			
+		try {
+			RowDecoder row = new RowDecoder(res);
+			while (row.next()) {
+				metrics.row();
+				String fileName = row.getString("filename");
+				filenames.add(fileName);
+			}
+		} finally {
+			res.close();
 		}
 	}
 	/**
-	 * 
+	 * Load every dataset.  With dataSetPoolSize 0 every row comes from one query on the
+	 * converter's connection.  Otherwise dataSetPoolSize workers read and decode whole datasets,
+	 * each on a connection of its own, and the datasets are made into items here, on the
+	 * converter's thread, in the order of their file names: the items and their identifiers
+	 * are the same from one run to the next however the workers are scheduled.  At most twice
+	 * dataSetPoolSize datasets wait in memory to be made into items.
+	 *
 	 * @param connection
+	 * @throws Exception if a dataset can't be loaded
+	 */
+	private void processDataSets(Connection connection) throws Exception {
+
+		if (dataSetPoolSize <= 0) {
+			// one query for every dataset, streamed through in dsetID order
+			processRows(processor.getAllDataSets(connection));
+			return;
+		}
+		final List<CompletableFuture<List<ExpressionRow>>> loaded =
+				new ArrayList<CompletableFuture<List<ExpressionRow>>>();
+		for (int i = 0; i < filenames.size(); i++) {
+			loaded.add(new CompletableFuture<List<ExpressionRow>>());
+		}
+		// no more workers, or connections, than datasets
+		int workers = Math.min(dataSetPoolSize, filenames.size());
+		if (workers == 0) {
+			return;
+		}
+		final AtomicInteger next = new AtomicInteger();
+		final Semaphore room = new Semaphore(dataSetPoolSize * 2);
+		ExecutorService pool = Executors.newFixedThreadPool(workers, new DataSetThreadFactory());
+		try {
+			for (int i = 0; i < workers; i++) {
+				pool.execute(() -> loadDataSets(loaded, next, room));
+			}
+			for (CompletableFuture<List<ExpressionRow>> dataSet : loaded) {
+				List<ExpressionRow> rows;
+				try {
+					rows = dataSet.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) {
+						throw (Exception) cause;
+					}
+					throw e;
+				}
+				for (ExpressionRow row : rows) {
+					addRow(row);
+				}
+				room.release();
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Read datasets until there are none left.  Runs on a worker thread, with a connection of
+	 * its own on which the dataset query is prepared once.  A worker waits for room before
+	 * taking the next dataset, so it can't get far ahead of the converter.
+	 *
+	 * @param loaded the rows of each dataset in filenames, completed as they are read
+	 * @param next the index of the next dataset to read
+	 * @param room how many more datasets may be read before the converter catches up
+	 */
+	private void loadDataSets(List<CompletableFuture<List<ExpressionRow>>> loaded,
+			AtomicInteger next, Semaphore room) {
+		try {
+			Connection connection = getConnection();
+			try {
+				PreparedStatement stmt = processor.prepareDataSets(connection);
+				try {
+					while (true) {
+						room.acquire();
+						int i = next.getAndIncrement();
+						if (i >= loaded.size()) {
+							break;
+						}
+						loaded.get(i).complete(readDataSet(stmt, filenames.get(i)));
+					}
+				} finally {
+					stmt.close();
+				}
+				processor.release(connection);
+			} finally {
+				connection.close();
+			}
+		} catch (Exception e) {
+			// the converter stops at the first dataset that wasn't read
+			for (CompletableFuture<List<ExpressionRow>> dataSet : loaded) {
+				dataSet.completeExceptionally(e);
+			}
+		}
+	}
+
+	/**
+	 * Read the rows of one dataset.  Runs on a worker thread.
+	 *
+	 * @param stmt the statement from prepareDataSets()
+	 * @param filename the file name of the dataset
+	 * @return the rows
+	 * @throws SQLException
+	 */
+	private List<ExpressionRow> readDataSet(PreparedStatement stmt, String filename)
+			throws SQLException {
+		List<ExpressionRow> rows = new ArrayList<ExpressionRow>();
+		ResultSet res = processor.getDataSets(stmt, filename);
+		try {
+			RowReader reader = new RowReader(res);
+			ExpressionRow row;
+			while ((row = reader.next()) != null) {
+				rows.add(row);
+			}
+		} finally {
+			res.close();
+		}
+		metrics.rows(rows.size());
+		return rows;
+	}
+
+	/**
+	 * Load the rows of one or more datasets, each dataset's rows together.
+	 *
+	 * @param res the rows
 	 * @throws SQLException
 	 * @throws ObjectStoreException
 	 */
-	private void processDataSets(Connection connection) throws SQLException,
-	ObjectStoreException {
-		
-		int count = 0;
-		
-		
-    Iterator it = filenames.iterator();
-    while(it.hasNext() && count < 10) { //&& count < 10
-    	count++; 
-    	String filename = (String) it.next();
-    	System.out.println("Processing DataSet No. ..."+ count + "   " +filename);
-    	
-		ResultSet res = PROCESSOR.getDataSets(connection, filename);
-		conditions = new HashMap();  //reset conditions for each dataset
-		while (res.next()) {
-			String pubmedID = res.getString("pubmedID");
-			String fileName = res.getString("filename");
-			String geoID = res.getString("geoID");
-			String platformID = res.getString("platformID");
-			String channelCount = res.getString("channelCount");
-			String datasetName = res.getString("d.name");
-			String description = res.getString("description");
-			String numCond = res.getString("num_conds");
-			String numGenes = res.getString("num_genes");
-			String author = res.getString("author");
-			String allAuthors = res.getString("all_authors");
-			String title = res.getString("title");
-			String journal = res.getString("journal");
-			String pubYear = res.getString("pub_year");
-			String condDesc = res.getString("cond_descs");
-			String tags = res.getString("tags");
-			String geneName = res.getString("g.name");
-			String dataTable = res.getString("data_table");
-
-			// create gene first time you see it
-			Item gene = getGene(geneName);
-
-			// create dataset first time you see it			
-			Item dataset = getDataSet(pubmedID, fileName, geoID, platformID,
-					channelCount, datasetName, description, numCond, numGenes,
-					author, allAuthors, title, journal, pubYear, tags);		
-			//System.out.println("gene: "+geneName + "    condDesc: "+ condDesc + " data_table: " + dataTable);
-			
-			// add score to gene - using the condition and dataset info
-			getConditionScore(dataset, condDesc, dataTable, geneName);
+	private void processRows(ResultSet res) throws SQLException, ObjectStoreException {
+		try {
+			RowReader reader = new RowReader(res);
+			ExpressionRow row;
+			while ((row = reader.next()) != null) {
+				metrics.row();
+				addRow(row);
+			}
+		} finally {
+			res.close();
+		}
+	}
+
+	/**
+	 * Make the items for one row: the gene and dataset the first time they are seen, the
+	 * conditions when they change, and the gene's ExpressionProfile.
+	 *
+	 * @param row the row
+	 * @throws ObjectStoreException
+	 */
+	private void addRow(ExpressionRow row) throws ObjectStoreException {
 
-		}	
-    }//while files
-    
+		// create gene first time you see it
+		Item gene = getGene(row.geneName);
+
+		// create dataset first time you see it
+		String[] d = row.dataSet;
+		Item dataset = getDataSet(d[0], d[1], d[2], d[3], d[4], d[5], d[6], d[7], d[8], d[9],
+				d[10], d[11], d[12], d[13], d[14]);
+
+		if (dataset != conditionsDataSet) {
+			System.out.println("Processing DataSet No. ..." + ++dataSetCount + "   " + d[1]);
+			conditions = new HashMap<String, Item>();  //reset conditions for each dataset
+		}
+
+		// the conditions are the same on every row of the dataset, look them up once
+		if (conditionNames.setConditions(row.condDescs) || dataset != conditionsDataSet) {
+			conditionItems = getConditions(dataset, conditions, conditionNames);
+			conditionsDataSet = dataset;
+		}
+
+		// add score to gene - using the condition and dataset info
+		getConditionScore(dataset, conditionItems, row, gene);
 	}
+
 	/**
 	 * 
 	 * @param geneName
@@ -222,45 +524,10 @@ public class SpellExpressionConverter extends BioDBConverter {
 			item.setAttribute("publicationYear", publicationYear);					
 			//item.setAttribute("tags", tags); store keywords as collection on spelldataset to make it querieable
 						
-			if(kwtags.contains("|")){
-		 								
-				String[] keywords = kwtags.split("\\|");
-				
-				for (int i = 0; i < keywords.length; i++) {					
-			        String kw = keywords[i];
-			       
-			        Item dtag = tags.get(kw);
-			        
-					if(dtag == null){
-                    
-						dtag = createItem("ExpressionDataSetTag");
-						dtag.setAttribute("tagname", kw);
-                           try {
-                                 store(dtag);
-                            } catch (ObjectStoreException e) {
-                                 throw new ObjectStoreException(e);
-                            }
-						tags.put(kw, dtag);
-					}
-					item.addToCollection("expressiondatasettags", dtag.getIdentifier());
-					
-				}
-				
-			}else{
-				Item dtag = tags.get(kwtags);
-				
-				if(dtag == null){
-					dtag = createItem("ExpressionDataSetTag");
-					dtag.setAttribute("tagname", kwtags);
-                                  try {
-                                         store(dtag);
-                                 } catch (ObjectStoreException e) {
-                                         throw new ObjectStoreException(e);
-                                 }
-					tags.put(kwtags, dtag);
+			if (kwtags != null) {
+				for (String kw : kwtags.split("\\|")) {
+					item.addToCollection("expressiondatasettags", getTag(kw));
 				}
-			         item.addToCollection("expressiondatasettags", dtag.getIdentifier());
-				
 			}
 			//System.out.println("pubmed: "+pubmedID + "    geoID: "+ geoID + " datasetName: " + datasetName);
 			datasets.put(fileName, item);
@@ -269,63 +536,114 @@ public class SpellExpressionConverter extends BioDBConverter {
 		return item;
 	}
 	/**
-	 * 
+	 * Store a dataset tag the first time it is seen.
+	 *
+	 * @param kw the keyword
+	 * @return the id of the ExpressionDataSetTag
+	 * @throws ObjectStoreException
+	 */
+	private String getTag(String kw) throws ObjectStoreException {
+		Item dtag = tags.get(kw);
+		if (dtag == null) {
+			dtag = createItem("ExpressionDataSetTag");
+			dtag.setAttribute("tagname", kw);
+			try {
+				storeAsync(dtag);
+			} catch (ObjectStoreException e) {
+				throw new ObjectStoreException(e);
+			}
+			tags.put(kw, dtag);
+		}
+		return dtag.getIdentifier();
+	}
+
+	/**
+	 * Find or make the conditions of the dataset, in the order of its scores.
+	 *
 	 * @param dataSet
-	 * @param condDesc
-	 * @param dataTable
-	 * @param geneName
+	 * @param conditions the conditions of the dataset so far
+	 * @param spell the decoder holding the dataset's cond_descs
+	 * @return the ExpressionConditions
 	 * @throws ObjectStoreException
 	 */
-	private void getConditionScore(Item dataSet, String condDesc,
-			String dataTable, String geneName) throws ObjectStoreException {
+	private Item[] getConditions(Item dataSet, Map<String, Item> conditions, SpellRowDecoder spell)
+			throws ObjectStoreException {
 
-		Item gene = genes.get(geneName);
-		String newconds = condDesc.replaceAll("~", "|");
-	 
-		String[] expconditions = newconds.split("\\|");
-		String[] scores = dataTable.split(",");
-       
-		
-		for (int i = 0; i < scores.length; i++) {
+		Item[] items = new Item[spell.getConditionCount()];
+		for (int i = 0; i < items.length; i++) {
+
+			String cond = spell.getCondition(i);
 
-			String cond = expconditions[i];
-			String condscore = scores[i];
-			
 			Item dcond = conditions.get(cond);
 			if (dcond == null) {
-				
-				 dcond = createItem("ExpressionCondition");
-				 dcond.setAttribute("conditionname", cond);
-				 dcond.setAttribute("ordernumber", String.valueOf(i));
-				 dcond.setReference("expressiondataset",dataSet.getIdentifier());
+
+				dcond = createItem("ExpressionCondition");
+				dcond.setAttribute("conditionname", cond);
+				dcond.setAttribute("ordernumber", String.valueOf(i));
+				dcond.setReference("expressiondataset", dataSet.getIdentifier());
 				try {
-					store(dcond);
+					storeAsync(dcond);
 				} catch (ObjectStoreException e) {
 					throw new ObjectStoreException(e);
 				}
 				conditions.put(cond, dcond);
+				dataSet.addToCollection("expressionconditions", dcond.getIdentifier());
 			}
-			
-			dataSet.addToCollection("expressionconditions", dcond.getIdentifier());
-			
-			// tie up the score with gene
-			Item score = createItem("ExpressionScore");
-			if(!condscore.equals("NA")) {
-				score.setAttribute("score", condscore);
-			}
-			score.setReference("expressioncondition", dcond.getIdentifier());
-			
-			try {
-				store(score);
-			} catch (ObjectStoreException e) {
-				throw new ObjectStoreException(e);
-			}
-			
-			gene.addToCollection("expressionScores", score.getIdentifier());
 
+			items[i] = dcond;
+		}
+		return items;
+	}
+
+	/**
+	 * @param dataSet
+	 * @param conditionItems the conditions of the dataset, from getConditions()
+	 * @param row the gene's row in the dataset
+	 * @param gene
+	 * @throws ObjectStoreException
+	 */
+	private void getConditionScore(Item dataSet, Item[] conditionItems, ExpressionRow row,
+			Item gene) throws ObjectStoreException {
+
+		int count = row.scoreCount;
+		if (count > conditionItems.length) {
+			throw new IllegalArgumentException(count + " scores for " + conditionItems.length
+					+ " conditions in " + dataSet.getAttribute("fileName").getValue());
+		}
+
+		if (scoreItems) {
+			for (int i = 0; i < count; i++) {
+
+				// tie up the score with gene
+				Item score = createItem("ExpressionScore");
+				String condscore = row.scoreTexts[i];
+				if (condscore != null) {
+					score.setAttribute("score", condscore);
+				}
+				score.setReference("expressioncondition", conditionItems[i].getIdentifier());
+
+				try {
+					storeAsync(score);
+				} catch (ObjectStoreException e) {
+					throw new ObjectStoreException(e);
+				}
+
+				gene.addToCollection("expressionScores", score.getIdentifier());
+			}
 		}
 
+		// all the gene's scores in the dataset in one item
+		Item expression = createItem("ExpressionProfile");
+		expression.setAttribute("scores", row.scores);
+		expression.setReference("gene", gene.getIdentifier());
+		expression.setReference("expressiondataset", dataSet.getIdentifier());
+		try {
+			storeAsync(expression);
+		} catch (ObjectStoreException e) {
+			throw new ObjectStoreException(e);
+		}
 	}
+
 	/**
 	 * 
 	 * @throws ObjectStoreException
@@ -334,7 +652,7 @@ public class SpellExpressionConverter extends BioDBConverter {
 	private void storeGenes() throws ObjectStoreException {
 		for (Item gene : genes.values()) {
 			try {
-				store(gene);
+				storeAsync(gene);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -349,7 +667,7 @@ public class SpellExpressionConverter extends BioDBConverter {
 	private void storeDataSets() throws ObjectStoreException {
 		for (Item dataset : datasets.values()) {
 			try {
-				store(dataset);
+				storeAsync(dataset);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -364,7 +682,7 @@ public class SpellExpressionConverter extends BioDBConverter {
 	private void storeDataSetTags() throws ObjectStoreException {
 		for (Item datasettag : tags.values()) {
 			try {
-				store(datasettag);
+				storeAsync(datasettag);
 			} catch (ObjectStoreException e) {
 				throw new ObjectStoreException(e);
 			}
@@ -397,6 +715,83 @@ public class SpellExpressionConverter extends BioDBConverter {
 		return licence;
 	}
 
+	/**
+	 * Reads and decodes rows, on whichever thread runs the query.
+	 */
+	private final class RowReader {
+		private final RowDecoder row;
+		private final SpellRowDecoder spell = new SpellRowDecoder();
+		private String[] dataSet;
+		private String condDescs;
+
+		RowReader(ResultSet res) throws SQLException {
+			row = new RowDecoder(res);
+		}
 
+		/**
+		 * @return the next row, null if there are no more
+		 * @throws SQLException
+		 */
+		ExpressionRow next() throws SQLException {
+			if (!row.next()) {
+				return null;
+			}
+			String fileName = row.getString("filename");
+			if (dataSet == null || !fileName.equals(dataSet[1])) {
+				// the same on every row of the dataset
+				dataSet = new String[] {row.getString("pubmedID"), fileName,
+					row.getString("geoID"), row.getString("platformID"),
+					row.getString("channelCount"), row.getString("d.name"),
+					row.getString("description"), row.getString("num_conds"),
+					row.getString("num_genes"), row.getString("author"),
+					row.getString("all_authors"), row.getString("title"),
+					row.getString("journal"), row.getString("pub_year"), row.getString("tags")};
+			}
+			ExpressionRow expression = new ExpressionRow();
+			expression.dataSet = dataSet;
+			String condDesc = row.getString("cond_descs");
+			if (condDesc == null) {
+				condDesc = "";
+			}
+			if (!condDesc.equals(condDescs)) {
+				condDescs = condDesc;
+			}
+			expression.condDescs = condDescs;
+			expression.geneName = row.getString("g.name");
+			int count = spell.setScores(row.getString("data_table"));
+			expression.scoreCount = count;
+			expression.scores = ExpressionVector.encode(spell.getScores(), count);
+			if (scoreItems) {
+				expression.scoreTexts = new String[count];
+				for (int i = 0; i < count; i++) {
+					expression.scoreTexts[i] = spell.getScoreText(i);
+				}
+			}
+			return expression;
+		}
+	}
+
+	/**
+	 * A gene's row in a dataset, with its scores already encoded.
+	 */
+	private static final class ExpressionRow {
+		// pubmedID, filename, ..., pub_year, tags; shared by the rows of a dataset
+		private String[] dataSet;
+		private String condDescs;
+		private String geneName;
+		private int scoreCount;
+		private String scores;
+		// only if scoreItems
+		private String[] scoreTexts;
+	}
 
+	private static final class DataSetThreadFactory implements ThreadFactory {
+		private final AtomicInteger count = new AtomicInteger();
+
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "spell-dataset-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
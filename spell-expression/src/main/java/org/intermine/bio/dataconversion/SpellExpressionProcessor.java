@@ -1,52 +1,143 @@
 package org.intermine.bio.dataconversion;
 
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.sql.Statement;
 
 import org.apache.log4j.Logger;
 
 
 public class SpellExpressionProcessor {
-	
-	private static final Logger LOG = Logger.getLogger(SpellExpressionProcessor.class);  
-	
-    /**
-     * Return the results of running a query for genes
-     * @param connection the connection
-     * @return the results
-     * @throws SQLException if there is a database problem
-     */
-	protected ResultSet getDataSets(Connection connection, String filename) throws SQLException {
-
-		String query = "select pubmedID, filename, geoID, platformID, channelCount, d.name, description, num_conds, "
-				+ "num_genes, author, all_authors, title, journal, pub_year, cond_descs, tags, g.name, data_table "
-				+ " from datasets d, exprs e, genes g "
-				+ " where d.id = e.dsetID and g.id = e.geneID and filename = '"+filename+"'";
 
+	private static final Logger LOG = Logger.getLogger(SpellExpressionProcessor.class);
+	private static final int DEFAULT_FETCH_SIZE = 1000;
+	private static final String EXCLUDED_FILE = "GSE12822_setA_family.pcl";
+	private static final String DATASET_QUERY = "select pubmedID, filename, geoID, platformID, "
+			+ "channelCount, d.name, description, num_conds, num_genes, author, all_authors, title, "
+			+ "journal, pub_year, cond_descs, tags, g.name, data_table "
+			+ " from datasets d join exprs e on e.dsetID = d.id join genes g on g.id = e.geneID ";
+
+	private int fetchSize = DEFAULT_FETCH_SIZE;
+
+	/**
+	 * Set how many rows the driver fetches at a time.  With Postgres a fetch size only takes
+	 * effect outside autocommit, and with MySQL Connector/J only if the connection URL has
+	 * useCursorFetch=true; without it, Connector/J is asked to stream the rows one at a time
+	 * instead.  0 reads every result set whole.
+	 * @param fetchSize number of rows per round trip
+	 */
+	public void setFetchSize(int fetchSize) {
+		this.fetchSize = Math.max(0, fetchSize);
+	}
+
+	/**
+	 * @return number of rows the driver fetches at a time, 0 if streaming is off
+	 */
+	public int getFetchSize() {
+		return fetchSize;
+	}
+
+	/**
+	 * Prepare the query for the rows of one dataset, to be run for each dataset with
+	 * getDataSets(statement, filename).
+	 * @param connection the connection
+	 * @return the statement, to be closed by the caller
+	 * @throws SQLException if there is a database problem
+	 */
+	protected PreparedStatement prepareDataSets(Connection connection) throws SQLException {
+		String query = DATASET_QUERY + " where d.filename = ? order by e.geneID";
+		LOG.info("preparing: " + query);
+		return prepare(connection, query);
+	}
+
+	/**
+	 * Return the rows of one dataset, one per gene, in the order of the genes' ids
+	 * @param stmt the statement from prepareDataSets()
+	 * @param filename the file name of the dataset
+	 * @return the results
+	 * @throws SQLException if there is a database problem
+	 */
+	protected ResultSet getDataSets(PreparedStatement stmt, String filename) throws SQLException {
+		stmt.setString(1, filename);
+		return stmt.executeQuery();
+	}
+
+	/**
+	 * Return the rows of every dataset in one query, each dataset's rows together, in the
+	 * order of getDataSetFileNames().
+	 * The statement is closed as soon as the result set is.
+	 * @param connection the connection
+	 * @return the results
+	 * @throws SQLException if there is a database problem
+	 */
+	protected ResultSet getAllDataSets(Connection connection) throws SQLException {
+		String query = DATASET_QUERY + " where d.filename != ? order by e.dsetID, e.geneID";
 		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
+		PreparedStatement stmt = prepare(connection, query);
+		stmt.setString(1, EXCLUDED_FILE);
+		ResultSet res = stmt.executeQuery();
+		stmt.closeOnCompletion();
 		return res;
 	}
-	
-    /**
-     * 
-     * @param connection
-     * @return
-     * @throws SQLException
-     */
-	
+
+	/**
+	 * Return the file names of the datasets in the order of their ids.
+	 * The statement is closed as soon as the result set is.
+	 * @param connection
+	 * @return
+	 * @throws SQLException
+	 */
+
 	protected ResultSet getDataSetFileNames(Connection connection) throws SQLException {
 
-		String query = "select filename from datasets where filename != 'GSE12822_setA_family.pcl' ";
+		String query = "select filename from datasets where filename != ? order by id";
 		LOG.info("executing: " + query);
-		Statement stmt = connection.createStatement();
-		ResultSet res = stmt.executeQuery(query);
+		PreparedStatement stmt = connection.prepareStatement(query);
+		stmt.setString(1, EXCLUDED_FILE);
+		ResultSet res = stmt.executeQuery();
+		stmt.closeOnCompletion();
 		return res;
 	}
-    
-	
+
+	/**
+	 * End the read-only transaction opened for streaming, so the connection can go back to
+	 * the pool or be used with autocommit again.
+	 * @param connection the connection
+	 * @throws SQLException if there is a database problem
+	 */
+	protected void release(Connection connection) throws SQLException {
+		if (!connection.getAutoCommit()) {
+			connection.rollback();
+			connection.setAutoCommit(true);
+		}
+	}
+
+	private PreparedStatement prepare(Connection connection, String query) throws SQLException {
+		if (fetchSize > 0 && connection.getAutoCommit()) {
+			// cursors only live inside a transaction; these are all read-only selects
+			connection.setAutoCommit(false);
+		}
+		PreparedStatement stmt = connection.prepareStatement(query, ResultSet.TYPE_FORWARD_ONLY,
+				ResultSet.CONCUR_READ_ONLY);
+		stmt.setFetchSize(getFetchSize(connection));
+		return stmt;
+	}
+
+	private int getFetchSize(Connection connection) throws SQLException {
+		if (fetchSize == 0) {
+			return 0;
+		}
+		DatabaseMetaData meta = connection.getMetaData();
+		if ("MySQL".equalsIgnoreCase(meta.getDatabaseProductName())
+				&& !meta.getURL().contains("useCursorFetch=true")) {
+			// Connector/J reads the whole result unless it has a cursor to fetch from, or is
+			// given Integer.MIN_VALUE, which streams the rows one by one off the connection
+			LOG.info("no useCursorFetch=true in " + meta.getURL() + ", streaming row by row");
+			return Integer.MIN_VALUE;
+		}
+		return fetchSize;
+	}
 
 }
@@ -0,0 +1,336 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2018 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.intermine.dataconversion.ItemsTestCase;
+import org.intermine.dataconversion.MockItemWriter;
+import org.intermine.metadata.Model;
+import org.intermine.xml.full.Attribute;
+import org.intermine.xml.full.Item;
+import org.intermine.xml.full.ItemHelper;
+import org.intermine.xml.full.Reference;
+import org.intermine.xml.full.ReferenceList;
+
+public class SpellExpressionConverterTest extends ItemsTestCase
+{
+    private static final String[] COLUMNS = {"pubmedID", "filename", "geoID", "platformID",
+        "channelCount", "d.name", "description", "num_conds", "num_genes", "author",
+        "all_authors", "title", "journal", "pub_year", "cond_descs", "tags", "g.name",
+        "data_table"};
+    private static final String[] FILES = {"GSE1.pcl", "GSE2.pcl", "GSE3.pcl", "GSE4.pcl",
+        "GSE5.pcl"};
+    private static final String[] GENES = {"YAL001C", "YAL002W", "YAL003W"};
+
+    Model model = Model.getInstanceByName("genomic");
+    private Map<String, List<Object[]>> dataSets;
+    private List<String> closed;
+    private String scoreItems;
+
+    public SpellExpressionConverterTest(String arg) {
+        super(arg);
+    }
+
+    public void setUp() throws Exception {
+        super.setUp();
+        dataSets = new HashMap<String, List<Object[]>>();
+        closed = new ArrayList<String>();
+        scoreItems = "true";
+        for (int file = 0; file < FILES.length; file++) {
+            List<Object[]> rows = new ArrayList<Object[]>();
+            // the third dataset has no genes
+            for (int gene = 0; file != 2 && gene < GENES.length; gene++) {
+                // the same conditions, written two ways
+                String condDescs = gene % 2 == 0 ? "0 min|10 min~20 min" : "0 min~10 min|20 min";
+                rows.add(new Object[] {"1000" + file, FILES[file], "GSE" + file, "GPL90", "2",
+                    "dataset " + file, "a time course", "3", "3", "Smith", "Smith J, Jones K",
+                    "A title", "Yeast", "2001", condDescs, "stress|heat", GENES[gene],
+                    gene + ".5,-1.25," + (gene == 1 ? "NA" : "0.0" + file)});
+            }
+            dataSets.put(FILES[file], rows);
+        }
+    }
+
+    /**
+     * The datasets read by a pool of workers, each on its own connection, make the same items
+     * as one query on the converter's connection.
+     */
+    public void testPoolSameAsOneQuery() throws Exception {
+        List<Item> expected = process("0");
+        checkConditions(expected);
+        assertEquals(4 * GENES.length, ofClass(expected, "ExpressionProfile").size());
+        assertEquals(GENES.length, ofClass(expected, "Gene").size());
+        for (String poolSize : new String[] {"1", "2", "8"}) {
+            closed.clear();
+            List<Item> items = process(poolSize);
+            assertEquals(poolSize, render(expected), render(items));
+            // every worker gave its connection back
+            assertEquals(poolSize, Math.min(Integer.parseInt(poolSize), FILES.length),
+                    closed.size());
+        }
+    }
+
+    /**
+     * Every score is an ExpressionScore of the gene as well as in its profile, unless only
+     * profiles are asked for.
+     */
+    public void testScoreItems() throws Exception {
+        List<Item> items = process("2");
+        List<Item> scores = ofClass(items, "ExpressionScore");
+        assertEquals(4 * GENES.length * 3, scores.size());
+        int missing = 0;
+        for (Item score : scores) {
+            if (score.getAttribute("score") == null) {
+                missing++;
+            }
+        }
+        // the NAs of the second gene
+        assertEquals(4, missing);
+        for (Item gene : ofClass(items, "Gene")) {
+            assertEquals(4 * 3, gene.getCollection("expressionScores").getRefIds().size());
+        }
+
+        scoreItems = "false";
+        items = process("2");
+        assertTrue(ofClass(items, "ExpressionScore").isEmpty());
+        assertEquals(4 * GENES.length, ofClass(items, "ExpressionProfile").size());
+        for (Item gene : ofClass(items, "Gene")) {
+            assertNull(gene.getCollection("expressionScores"));
+        }
+    }
+
+    /**
+     * A dataset without cond_descs, tags or scores has no conditions, tags or scores, and
+     * empty profiles.
+     */
+    public void testNullColumns() throws Exception {
+        for (Object[] row : dataSets.get(FILES[0])) {
+            row[14] = null;
+            row[15] = null;
+            row[17] = null;
+        }
+        for (String poolSize : new String[] {"0", "2"}) {
+            List<Item> items = process(poolSize);
+            Item dataSet = null;
+            for (Item item : ofClass(items, "ExpressionDataSet")) {
+                if (FILES[0].equals(item.getAttribute("fileName").getValue())) {
+                    dataSet = item;
+                }
+            }
+            assertNull(dataSet.getCollection("expressionconditions"));
+            assertNull(dataSet.getCollection("expressiondatasettags"));
+            assertEquals(3 * 3, ofClass(items, "ExpressionCondition").size());
+            int empty = 0;
+            for (Item profile : ofClass(items, "ExpressionProfile")) {
+                if (profile.getReference("expressiondataset").getRefId()
+                        .equals(dataSet.getIdentifier())) {
+                    assertEquals("", profile.getAttribute("scores").getValue());
+                    empty++;
+                }
+            }
+            assertEquals(GENES.length, empty);
+        }
+    }
+
+    public void testNoDataSets() throws Exception {
+        dataSets.clear();
+        for (String poolSize : new String[] {"0", "2"}) {
+            List<Item> items = process(poolSize);
+            assertEquals(1, items.size());
+            assertEquals("Organism", items.get(0).getClassName());
+        }
+    }
+
+    public void testDataSetFails() throws Exception {
+        dataSets.put(FILES[3], null);
+        try {
+            process("2");
+            fail("expected an SQLException");
+        } catch (SQLException e) {
+            assertEquals("no dataset " + FILES[3], e.getMessage());
+        }
+    }
+
+    /**
+     * Each dataset has its own three conditions, in its collection once each.
+     */
+    private void checkConditions(List<Item> items) {
+        List<Item> datasets = ofClass(items, "ExpressionDataSet");
+        assertEquals(4, datasets.size());
+        Map<String, Item> byId = new HashMap<String, Item>();
+        for (Item condition : ofClass(items, "ExpressionCondition")) {
+            byId.put(condition.getIdentifier(), condition);
+        }
+        assertEquals(4 * 3, byId.size());
+        for (Item dataset : datasets) {
+            List<String> refIds = dataset.getCollection("expressionconditions").getRefIds();
+            assertEquals(3, refIds.size());
+            for (int i = 0; i < refIds.size(); i++) {
+                Item condition = byId.get(refIds.get(i));
+                assertEquals(dataset.getIdentifier(),
+                        condition.getReference("expressiondataset").getRefId());
+                assertEquals(String.valueOf(i), condition.getAttribute("ordernumber").getValue());
+            }
+        }
+    }
+
+    private List<Item> process(String dataSetPoolSize) throws Exception {
+        MockItemWriter itemWriter =
+            new MockItemWriter(new HashMap<String, org.intermine.model.fulldata.Item>());
+        SpellExpressionConverter converter = new SpellExpressionConverter(null, model,
+                itemWriter) {
+            @Override
+            protected Connection getConnection() {
+                return connection();
+            }
+        };
+        converter.setProcessor(new SpellExpressionProcessor() {
+            @Override
+            protected ResultSet getDataSetFileNames(Connection connection) {
+                List<Object[]> rows = new ArrayList<Object[]>();
+                for (String file : FILES) {
+                    if (dataSets.containsKey(file)) {
+                        rows.add(new Object[] {file});
+                    }
+                }
+                return resultSet(new String[] {"filename"}, rows);
+            }
+
+            @Override
+            protected PreparedStatement prepareDataSets(Connection connection) {
+                return statement();
+            }
+
+            @Override
+            protected ResultSet getDataSets(PreparedStatement stmt, String filename)
+                throws SQLException {
+                List<Object[]> rows = dataSets.get(filename);
+                if (rows == null) {
+                    throw new SQLException("no dataset " + filename);
+                }
+                return resultSet(COLUMNS, rows);
+            }
+
+            @Override
+            protected ResultSet getAllDataSets(Connection connection) {
+                List<Object[]> rows = new ArrayList<Object[]>();
+                for (String file : FILES) {
+                    if (dataSets.containsKey(file)) {
+                        rows.addAll(dataSets.get(file));
+                    }
+                }
+                return resultSet(COLUMNS, rows);
+            }
+
+            @Override
+            protected void release(Connection connection) {
+                // nothing to end
+            }
+        });
+        converter.setDataSetPoolSize(dataSetPoolSize);
+        converter.setScoreItems(scoreItems);
+        converter.setCheckStoredItems("true");
+        converter.process();
+        converter.close();
+        List<Item> items = new ArrayList<Item>();
+        for (org.intermine.model.fulldata.Item item : itemWriter.getItems()) {
+            items.add(ItemHelper.convert(item));
+        }
+        return items;
+    }
+
+    private Connection connection() {
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    if ("close".equals(method.getName())) {
+                        synchronized (closed) {
+                            closed.add("connection");
+                        }
+                    }
+                    return null;
+                });
+    }
+
+    private PreparedStatement statement() {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> null);
+    }
+
+    /**
+     * Rows of strings, with no metadata: the columns are found by name.
+     */
+    private ResultSet resultSet(final String[] labels, final List<Object[]> rows) {
+        final int[] row = new int[] {-1};
+        final boolean[] wasNull = new boolean[1];
+        return (ResultSet) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {ResultSet.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("next".equals(name)) {
+                        return Boolean.valueOf(++row[0] < rows.size());
+                    } else if ("findColumn".equals(name)) {
+                        for (int i = 0; i < labels.length; i++) {
+                            if (labels[i].equals(args[0])) {
+                                return Integer.valueOf(i + 1);
+                            }
+                        }
+                        throw new SQLException("no column " + args[0]);
+                    } else if ("getString".equals(name)) {
+                        Object value = rows.get(row[0])[((Integer) args[0]).intValue() - 1];
+                        wasNull[0] = value == null;
+                        return value;
+                    } else if ("wasNull".equals(name)) {
+                        return Boolean.valueOf(wasNull[0]);
+                    }
+                    return null;
+                });
+    }
+
+    private static List<Item> ofClass(List<Item> items, String className) {
+        List<Item> found = new ArrayList<Item>();
+        for (Item item : items) {
+            if (className.equals(item.getClassName())) {
+                found.add(item);
+            }
+        }
+        return found;
+    }
+
+    private static Set<String> render(List<Item> items) {
+        Set<String> rendered = new HashSet<String>();
+        for (Item item : items) {
+            List<String> fields = new ArrayList<String>();
+            for (Attribute attribute : item.getAttributes()) {
+                fields.add(attribute.getName() + "=" + attribute.getValue());
+            }
+            for (Reference reference : item.getReferences()) {
+                fields.add(reference.getName() + "->" + reference.getRefId());
+            }
+            for (ReferenceList collection : item.getCollections()) {
+                fields.add(collection.getName() + "->" + collection.getRefIds());
+            }
+            Collections.sort(fields);
+            rendered.add(item.getIdentifier() + " " + item.getClassName() + " " + fields);
+        }
+        return rendered;
+    }
+}
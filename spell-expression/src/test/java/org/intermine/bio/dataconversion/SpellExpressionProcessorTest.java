@@ -0,0 +1,136 @@
+package org.intermine.bio.dataconversion;
+
+/*
+ * Copyright (C) 2002-2018 FlyMine
+ *
+ * This code may be freely distributed and modified under the
+ * terms of the GNU Lesser General Public Licence.  This should
+ * be distributed with the code.  See the LICENSE file for more
+ * information or http://www.gnu.org/copyleft/lesser.html.
+ *
+ */
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class SpellExpressionProcessorTest extends TestCase
+{
+    private SpellExpressionProcessor processor;
+    private List<String> calls;
+    private boolean autoCommit;
+
+    public SpellExpressionProcessorTest(String arg) {
+        super(arg);
+    }
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        processor = new SpellExpressionProcessor();
+        calls = new ArrayList<String>();
+        autoCommit = true;
+    }
+
+    public void testMySqlWithoutCursorFetchStreams() throws Exception {
+        processor.prepareDataSets(connection("MySQL", "jdbc:mysql://db/spell"));
+        // Connector/J's signal to stream row by row
+        assertEquals(Arrays.asList("setAutoCommit false", "setFetchSize " + Integer.MIN_VALUE),
+                calls);
+    }
+
+    public void testMySqlWithCursorFetch() throws Exception {
+        processor.setFetchSize(500);
+        processor.prepareDataSets(connection("MySQL",
+                "jdbc:mysql://db/spell?useCursorFetch=true"));
+        assertEquals(Arrays.asList("setAutoCommit false", "setFetchSize 500"), calls);
+    }
+
+    public void testPostgres() throws Exception {
+        processor.prepareDataSets(connection("PostgreSQL", "jdbc:postgresql://db/spell"));
+        assertEquals(Arrays.asList("setAutoCommit false", "setFetchSize 1000"), calls);
+
+        // the transaction is ended, and autocommit back on, once the rows have been read
+        calls.clear();
+        processor.release(connection("PostgreSQL", "jdbc:postgresql://db/spell"));
+        assertEquals(Arrays.asList("rollback", "setAutoCommit true"), calls);
+    }
+
+    public void testNoFetchSize() throws Exception {
+        processor.setFetchSize(-1);
+        assertEquals(0, processor.getFetchSize());
+        processor.prepareDataSets(connection("MySQL", "jdbc:mysql://db/spell"));
+        // read whole, in autocommit
+        assertEquals(Arrays.asList("setFetchSize 0"), calls);
+        calls.clear();
+        processor.release(connection("MySQL", "jdbc:mysql://db/spell"));
+        assertTrue(calls.isEmpty());
+    }
+
+    public void testExcludedFileBound() throws Exception {
+        processor.getDataSetFileNames(connection("MySQL", "jdbc:mysql://db/spell"));
+        assertEquals(Arrays.asList(
+                "prepareStatement select filename from datasets where filename != ? order by id",
+                "setString 1 GSE12822_setA_family.pcl", "executeQuery", "closeOnCompletion"),
+                calls.subList(calls.size() - 4, calls.size()));
+    }
+
+    private Connection connection(final String product, final String url) {
+        final DatabaseMetaData meta = (DatabaseMetaData) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] {DatabaseMetaData.class},
+                (proxy, method, args) -> {
+                    if ("getDatabaseProductName".equals(method.getName())) {
+                        return product;
+                    } else if ("getURL".equals(method.getName())) {
+                        return url;
+                    }
+                    return null;
+                });
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {Connection.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("getMetaData".equals(name)) {
+                        return meta;
+                    } else if ("getAutoCommit".equals(name)) {
+                        return Boolean.valueOf(autoCommit);
+                    } else if ("setAutoCommit".equals(name)) {
+                        autoCommit = ((Boolean) args[0]).booleanValue();
+                        calls.add(name + " " + autoCommit);
+                    } else if ("rollback".equals(name)) {
+                        calls.add(name);
+                    } else if ("prepareStatement".equals(name)) {
+                        if (args.length == 1) {
+                            calls.add(name + " " + args[0]);
+                        }
+                        return statement();
+                    }
+                    return null;
+                });
+    }
+
+    private PreparedStatement statement() {
+        return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(),
+                new Class<?>[] {PreparedStatement.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("setFetchSize".equals(name)) {
+                        calls.add(name + " " + args[0]);
+                    } else if ("setString".equals(name)) {
+                        calls.add(name + " " + args[0] + " " + args[1]);
+                    } else if ("executeQuery".equals(name) || "closeOnCompletion".equals(name)) {
+                        calls.add(name);
+                    }
+                    if ("executeQuery".equals(name)) {
+                        return Proxy.newProxyInstance(getClass().getClassLoader(),
+                                new Class<?>[] {ResultSet.class}, (p, m, a) -> null);
+                    }
+                    return null;
+                });
+    }
+}